@@ -219,7 +219,7 @@ public final class VarInt {
         return 4;
       }
       buf.add(251);
-      buf.add((int) y);
+      write32(buf, y);
       return 5;
     }
     if (w <= 255) {
@@ -30,6 +30,10 @@ public class IntArray {
     this.count = 0;
   }
 
+  public void truncate(final int size) {
+    this.count = size;
+  }
+
   public void reset() {
     this.count = 0;
   }
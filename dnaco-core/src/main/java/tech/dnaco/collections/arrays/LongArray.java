@@ -31,6 +31,10 @@ public class LongArray {
     this.count = 0;
   }
 
+  public void truncate(final int size) {
+    this.count = size;
+  }
+
   public void reset() {
     this.count = 0;
   }
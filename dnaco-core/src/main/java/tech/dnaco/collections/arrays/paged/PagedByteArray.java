@@ -202,7 +202,10 @@ public class PagedByteArray implements ByteArrayAppender {
   }
 
   public void addBlob8(final String value) {
-    addBlob8(value.getBytes());
+    // | length 1b | utf-8 bytes | truncated to 255 bytes, on a char boundary
+    final int length = utf8Length(value, 0xff);
+    add(length);
+    addUtf8(value, length);
   }
 
   public void addBlob8(final byte[] value) {
@@ -219,6 +222,83 @@ public class PagedByteArray implements ByteArrayAppender {
     add(value);
   }
 
+  /**
+   * Append the UTF-8 encoding of the value, without allocating a temporary byte[].
+   * Unpaired surrogates are replaced by '?', like {@link String#getBytes(java.nio.charset.Charset)}.
+   */
+  public void addUtf8(final CharSequence value) {
+    addUtf8(value, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Append the UTF-8 encoding of the value, stopping before the char that would go over maxBytes.
+   */
+  public void addUtf8(final CharSequence value, final int maxBytes) {
+    int written = 0;
+    for (int i = 0, n = value.length(); i < n; ++i) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        if (written + 1 > maxBytes) return;
+        if (pageItems == pageSize) rollPage();
+        lastPage[pageItems++] = (byte) c;
+        written++;
+      } else if (c < 0x800) {
+        if (written + 2 > maxBytes) return;
+        add(0xc0 | (c >> 6));
+        add(0x80 | (c & 0x3f));
+        written += 2;
+      } else if (Character.isHighSurrogate(c) && (i + 1) < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+        if (written + 4 > maxBytes) return;
+        final int cp = Character.toCodePoint(c, value.charAt(++i));
+        add(0xf0 | (cp >> 18));
+        add(0x80 | ((cp >> 12) & 0x3f));
+        add(0x80 | ((cp >> 6) & 0x3f));
+        add(0x80 | (cp & 0x3f));
+        written += 4;
+      } else if (Character.isSurrogate(c)) {
+        if (written + 1 > maxBytes) return;
+        add('?');
+        written++;
+      } else {
+        if (written + 3 > maxBytes) return;
+        add(0xe0 | (c >> 12));
+        add(0x80 | ((c >> 6) & 0x3f));
+        add(0x80 | (c & 0x3f));
+        written += 3;
+      }
+    }
+  }
+
+  public static int utf8Length(final CharSequence value) {
+    return utf8Length(value, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return the length of the UTF-8 encoding of the value, truncated on a char boundary to fit maxBytes
+   */
+  public static int utf8Length(final CharSequence value, final int maxBytes) {
+    int length = 0;
+    for (int i = 0, n = value.length(); i < n; ++i) {
+      final char c = value.charAt(i);
+      final int charLength;
+      if (c < 0x80) {
+        charLength = 1;
+      } else if (c < 0x800) {
+        charLength = 2;
+      } else if (Character.isHighSurrogate(c) && (i + 1) < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+        charLength = 4;
+      } else if (Character.isSurrogate(c)) {
+        charLength = 1;
+      } else {
+        charLength = 3;
+      }
+      if (length + charLength > maxBytes) break;
+      length += charLength;
+      if (charLength == 4) i++;
+    }
+    return length;
+  }
+
   public void setFixed32(final int offset, final int value) {
     setFixed(offset, 4, value);
   }
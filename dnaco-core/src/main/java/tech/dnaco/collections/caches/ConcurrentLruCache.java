@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.collections.caches;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+import tech.dnaco.collections.caches.LruCache.LruCacheStats;
+import tech.dnaco.telemetry.CounterMapData;
+import tech.dnaco.telemetry.TelemetryCollector;
+import tech.dnaco.telemetry.TelemetryCollectorData;
+import tech.dnaco.util.BitUtil;
+
+/**
+ * Concurrent version of the {@link LruCache}, for read-mostly lookups from many threads.
+ * <p>The cache is split in segments by key hash. Each segment has a ConcurrentHashMap
+ * for the lookups and a CLOCK ring for the eviction (second-chance approximation of LRU).
+ * A hit does not take any lock, it only sets the referenced bit of the entry.
+ * Inserts and evictions take the lock of the segment.
+ * <p>The cache can be registered as a {@link TelemetryCollector} to export the
+ * hit/miss/expired counters. Keys cannot be null.
+ */
+public class ConcurrentLruCache<TKey, TValue> implements TelemetryCollector {
+  private static final String[] STATS_KEYS = new String[] { "hit", "miss", "expired" };
+  private static final int MAX_SEGMENTS = BitUtil.nextPow2(Runtime.getRuntime().availableProcessors());
+  private static final int MIN_SEGMENT_SIZE = 8;
+
+  private final Segment<TKey, TValue>[] segments;
+  private final long expirationIntervalNs;
+
+  private final LongAdder cacheHit = new LongAdder();
+  private final LongAdder cacheMiss = new LongAdder();
+  private final LongAdder cacheExpired = new LongAdder();
+
+  public ConcurrentLruCache(final int initialCapacity, final int maxSize) {
+    this(initialCapacity, maxSize, null);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public ConcurrentLruCache(final int initialCapacity, final int maxSize, final Duration expiration) {
+    this.expirationIntervalNs = expiration != null ? expiration.toNanos() : -1;
+
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("invalid maxSize " + maxSize + ", must be > 0");
+    }
+
+    // the segment sizes add up to maxSize: the remainder is spread on the first segments
+    final int segmentCount = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, maxSize / MIN_SEGMENT_SIZE)));
+    final int segmentSize = maxSize / segmentCount;
+    final int remainder = maxSize % segmentCount;
+    final int segmentInitialCapacity = Math.max(1, initialCapacity / segmentCount);
+    this.segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; ++i) {
+      segments[i] = new Segment<>(segmentInitialCapacity, segmentSize + (i < remainder ? 1 : 0));
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (final Segment<TKey, TValue> segment: segments) {
+      size += segment.map.size();
+    }
+    return size;
+  }
+
+  public LruCacheStats getStats() {
+    return new LruCacheStats(cacheHit.sum(), cacheMiss.sum(), cacheExpired.sum());
+  }
+
+  public TValue get(final TKey key) {
+    final CacheItemNode<TKey, TValue> node = lookup(segmentFor(key), key);
+    return node != null ? node.value : null;
+  }
+
+  public TValue put(final TKey key, final TValue value) {
+    final long expirationNs = newExpirationNs();
+    final Segment<TKey, TValue> segment = segmentFor(key);
+    segment.lock();
+    try {
+      final CacheItemNode<TKey, TValue> node = segment.map.get(key);
+      if (node == null) {
+        segment.insertNewEntry(key, value, expirationNs, expirationIntervalNs > 0);
+        return null;
+      }
+
+      final TValue oldValue = node.value;
+      node.set(value, expirationNs);
+      return oldValue;
+    } finally {
+      segment.unlock();
+    }
+  }
+
+  public TValue computeIfAbsent(final TKey key, final Function<? super TKey, ? extends TValue> mappingFunction) {
+    final Segment<TKey, TValue> segment = segmentFor(key);
+    final CacheItemNode<TKey, TValue> node = lookup(segment, key);
+    if (node != null) return node.value;
+
+    segment.lock();
+    try {
+      // someone else may have added it while we were waiting for the lock
+      final CacheItemNode<TKey, TValue> other = segment.map.get(key);
+      if (other != null && !isExpired(other, System.nanoTime())) {
+        other.referenced = true;
+        return other.value;
+      }
+
+      final long expirationNs = newExpirationNs();
+      final TValue value = mappingFunction.apply(key);
+      if (other != null) {
+        other.set(value, expirationNs);
+      } else {
+        segment.insertNewEntry(key, value, expirationNs, expirationIntervalNs > 0);
+      }
+      return value;
+    } finally {
+      segment.unlock();
+    }
+  }
+
+  public void clear() {
+    for (final Segment<TKey, TValue> segment: segments) {
+      segment.lock();
+      try {
+        segment.clear();
+      } finally {
+        segment.unlock();
+      }
+    }
+  }
+
+  public TValue evict(final TKey key) {
+    final Segment<TKey, TValue> segment = segmentFor(key);
+    segment.lock();
+    try {
+      final CacheItemNode<TKey, TValue> node = segment.map.get(key);
+      if (node == null) return null;
+
+      segment.removeNode(node);
+      return node.value;
+    } finally {
+      segment.unlock();
+    }
+  }
+
+  public void scanEvict(final BiPredicate<TKey, TValue> predicate) {
+    for (final Segment<TKey, TValue> segment: segments) {
+      segment.lock();
+      try {
+        for (final CacheItemNode<TKey, TValue> node: segment.ring) {
+          if (node != null && predicate.test(node.key, node.value)) {
+            segment.removeNode(node);
+          }
+        }
+      } finally {
+        segment.unlock();
+      }
+    }
+  }
+
+  // ====================================================================================================
+  //  Telemetry related
+  // ====================================================================================================
+  @Override
+  public String getType() {
+    return "COUNTER_MAP";
+  }
+
+  @Override
+  public TelemetryCollectorData getSnapshot() {
+    return new CounterMapData(STATS_KEYS, new long[] { cacheHit.sum(), cacheMiss.sum(), cacheExpired.sum() });
+  }
+
+  // ====================================================================================================
+  //  Lookup related
+  // ====================================================================================================
+  private Segment<TKey, TValue> segmentFor(final Object key) {
+    final int h = key.hashCode();
+    return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+  }
+
+  private long newExpirationNs() {
+    return expirationIntervalNs < 0 ? Long.MAX_VALUE : (System.nanoTime() + expirationIntervalNs);
+  }
+
+  private boolean isExpired(final CacheItemNode<TKey, TValue> node, final long nowNs) {
+    return expirationIntervalNs > 0 && node.isExpired(nowNs);
+  }
+
+  private CacheItemNode<TKey, TValue> lookup(final Segment<TKey, TValue> segment, final TKey key) {
+    final CacheItemNode<TKey, TValue> node = segment.map.get(key);
+    if (node == null) {
+      cacheMiss.increment();
+      return null;
+    }
+
+    if (isExpired(node, System.nanoTime())) {
+      segment.lock();
+      try {
+        if (segment.map.get(key) == node) {
+          segment.removeNode(node);
+        }
+      } finally {
+        segment.unlock();
+      }
+      cacheExpired.increment();
+      cacheMiss.increment();
+      return null;
+    }
+
+    // avoid dirtying the cache line if the bit is already set
+    if (!node.referenced) node.referenced = true;
+    cacheHit.increment();
+    return node;
+  }
+
+  // ====================================================================================================
+  //  Segment related
+  // ====================================================================================================
+  private static final class Segment<TKey, TValue> extends ReentrantLock {
+    private static final long serialVersionUID = 1L;
+
+    private final ConcurrentHashMap<TKey, CacheItemNode<TKey, TValue>> map;
+    private final CacheItemNode<TKey, TValue>[] ring;
+    private int clockHand;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Segment(final int initialCapacity, final int maxSize) {
+      this.map = new ConcurrentHashMap<>(Math.min(initialCapacity, maxSize));
+      this.ring = new CacheItemNode[maxSize];
+    }
+
+    private void insertNewEntry(final TKey key, final TValue value, final long expirationNs, final boolean hasExpiration) {
+      final int slot = findFreeSlot(hasExpiration ? System.nanoTime() : 0);
+      final CacheItemNode<TKey, TValue> node = new CacheItemNode<>(slot, key, value, expirationNs);
+      ring[slot] = node;
+      map.put(key, node);
+    }
+
+    /**
+     * CLOCK sweep: the referenced entries get a second chance,
+     * the first empty, expired or unreferenced slot is taken.
+     */
+    private int findFreeSlot(final long nowNs) {
+      while (true) {
+        final int slot = clockHand;
+        clockHand = (slot + 1) % ring.length;
+
+        final CacheItemNode<TKey, TValue> node = ring[slot];
+        if (node == null) return slot;
+
+        if (node.referenced && !node.isExpired(nowNs)) {
+          node.referenced = false;
+          continue;
+        }
+
+        map.remove(node.key, node);
+        ring[slot] = null;
+        return slot;
+      }
+    }
+
+    private void removeNode(final CacheItemNode<TKey, TValue> node) {
+      map.remove(node.key, node);
+      ring[node.slot] = null;
+    }
+
+    private void clear() {
+      map.clear();
+      Arrays.fill(ring, null);
+      clockHand = 0;
+    }
+  }
+
+  // ====================================================================================================
+  //  Cache Item Node related
+  // ====================================================================================================
+  private static final class CacheItemNode<TKey, TValue> {
+    private final TKey key;
+    private final int slot;
+
+    private volatile TValue value;
+    private volatile long expirationNs;
+    private volatile boolean referenced;
+
+    private CacheItemNode(final int slot, final TKey key, final TValue value, final long expirationNs) {
+      this.slot = slot;
+      this.key = key;
+      this.value = value;
+      this.expirationNs = expirationNs;
+    }
+
+    private boolean isExpired(final long nowNs) {
+      return nowNs > expirationNs;
+    }
+
+    private void set(final TValue value, final long expirationNs) {
+      this.value = value;
+      this.expirationNs = expirationNs;
+      this.referenced = true;
+    }
+  }
+}
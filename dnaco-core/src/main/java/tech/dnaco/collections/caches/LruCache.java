@@ -381,7 +381,7 @@ public class LruCache<TKey, TValue> {
     private final long cacheMiss;
     private final long cacheExpired;
 
-    private LruCacheStats(final long cacheHit, final long cacheMiss, final long cacheExpired) {
+    LruCacheStats(final long cacheHit, final long cacheMiss, final long cacheExpired) {
       this.cacheHit = cacheHit;
       this.cacheMiss = cacheMiss;
       this.cacheExpired = cacheExpired;
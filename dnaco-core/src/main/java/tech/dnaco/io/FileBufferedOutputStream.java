@@ -47,6 +47,13 @@ public class FileBufferedOutputStream extends OutputStream {
     stream.close();
   }
 
+  @Override
+  public void flush() throws IOException {
+    if (bufLength > 0) {
+      flushBuffer();
+    }
+  }
+
   public FileChannel getChannel() {
     return stream.getChannel();
   }
@@ -19,9 +19,17 @@
 
 package tech.dnaco.journal;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
@@ -33,27 +41,36 @@ import tech.dnaco.collections.lists.ListUtil;
 import tech.dnaco.logging.LogUtil.LogLevel;
 import tech.dnaco.logging.Logger;
 import tech.dnaco.telemetry.TelemetryCollectorRegistry;
-import tech.dnaco.threading.ThreadData;
-import tech.dnaco.threading.ThreadData.ThreadLocalData;
+import tech.dnaco.threading.NamedThreadFactory;
 import tech.dnaco.threading.ThreadUtil;
 import tech.dnaco.time.TimeUtil;
 
 public class JournalAsyncWriter<T extends JournalEntry> implements AutoCloseable {
+  public enum BackPressurePolicy {
+    /** the producer waits until the buffer it wrote into is flushed */
+    BLOCK,
+    /** the entry is discarded (and counted) until the flusher catches up */
+    DROP,
+  }
+
   private final CopyOnWriteArrayList<JournalWriter<T>> writers = new CopyOnWriteArrayList<>();
-  private final ThreadData<JournalBuffer<T>> localBuffers = new ThreadData<>();
   private final AtomicBoolean running = new AtomicBoolean(false);
-  private final Supplier<JournalBuffer<T>> bufferSupplier;
+  private final JournalThreadBuffers<T> localBuffers;
 
   private final JournalStats stats;
   private final String name;
 
   private LogFlusherThread flusherThread;
+  private ThreadPoolExecutor flushPool;
+  private ScheduledExecutorService cleanerExecutor;
 
+  private int flushParallelism = Runtime.getRuntime().availableProcessors();
+  private BackPressurePolicy backPressurePolicy = BackPressurePolicy.BLOCK;
   private int threadBackPressureSize = 128 << 20; // 128M
 
   public JournalAsyncWriter(final String name, final Supplier<JournalBuffer<T>> bufferSupplier) {
     this.name = name;
-    this.bufferSupplier = bufferSupplier;
+    this.localBuffers = new JournalThreadBuffers<>(bufferSupplier);
     this.stats = TelemetryCollectorRegistry.INSTANCE.register(name + "_journal", name + " Journal", null, new JournalStats());
   }
 
@@ -68,6 +85,16 @@ public class JournalAsyncWriter<T extends JournalEntry> implements AutoCloseable
     }
 
     Logger.debug("starting {} async-log writer: {}", name, writers);
+    if (flushParallelism > 1) {
+      // the flusher waits for every group to be written, so the queue is bounded by the number of groups
+      this.flushPool = new ThreadPoolExecutor(flushParallelism, flushParallelism, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new FlushWorkerThreadFactory(name + "FlushWorker"));
+      this.flushPool.allowCoreThreadTimeOut(true);
+    }
+
+    this.cleanerExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(name + "Cleaner"));
+    this.cleanerExecutor.scheduleWithFixedDelay(this::manageOldLogs, 0, 1, TimeUnit.HOURS);
+
     this.flusherThread = new LogFlusherThread(intervalMs);
     this.flusherThread.start();
   }
@@ -79,8 +106,25 @@ public class JournalAsyncWriter<T extends JournalEntry> implements AutoCloseable
     }
 
     Logger.debug("stopping {} log writers: {}", name, writers);
-    this.flusherThread.forceFlush();
+    this.flusherThread.requestFlush();
     ThreadUtil.shutdown(flusherThread);
+    if (flushPool != null) flushPool.shutdown();
+    cleanerExecutor.shutdown();
+
+    // the flusher is gone, let the writers release the open files
+    for (final JournalWriter<T> writer: writers) {
+      writer.close();
+    }
+  }
+
+  /**
+   * Flush the entries added so far and wait until they are written.
+   */
+  public void flush() {
+    final LogFlusherThread flusher = this.flusherThread;
+    if (flusher == null || !isRunning()) return;
+
+    flusher.waitForFlush(flusher.requestFlush());
   }
 
   @Override
@@ -96,97 +140,185 @@ public class JournalAsyncWriter<T extends JournalEntry> implements AutoCloseable
     this.writers.remove(writer);
   }
 
+  /**
+   * Each producer thread can have at most two buffers of this size in memory:
+   * the one it writes into, and the one being flushed.
+   */
   public void setThreadBackPressureSize(final int size) {
     this.threadBackPressureSize = size;
   }
 
+  /**
+   * Max number of groups written in parallel by a flush. Must be set before start().
+   */
+  public void setFlushParallelism(final int parallelism) {
+    this.flushParallelism = parallelism;
+  }
+
+  public void setBackPressurePolicy(final BackPressurePolicy policy) {
+    this.backPressurePolicy = policy;
+  }
+
   public void addToLogQueue(final Thread currentThread, final T entry) {
     try {
-      final int bufSize;
-      try (ThreadLocalData<JournalBuffer<T>> buffer = localBuffers.computeIfAbsent(currentThread, bufferSupplier::get)) {
-        bufSize = buffer.get().add(entry);
+      // NOTE: the thread buffers are single-writer, currentThread is expected to be Thread.currentThread()
+      if (backPressurePolicy == BackPressurePolicy.DROP && localBuffers.size() >= threadBackPressureSize) {
         entry.release();
+        stats.addDroppedEntry();
+        requestFlush();
+        return;
       }
 
+      final int bufSize = localBuffers.add(entry);
+      entry.release();
+
       if (bufSize >= threadBackPressureSize) {
-        flusherThread.forceFlush();
-        flusherThread.waitForFlush();
+        waitForBackPressure(currentThread);
       }
     } catch (final Throwable e) {
       Logger.logToStderr(LogLevel.ERROR, e, "unable to add entry to the journal: thread={} entry={}", currentThread, entry);
     }
   }
 
+  private void requestFlush() {
+    final LogFlusherThread flusher = this.flusherThread;
+    if (flusher != null) flusher.requestFlush();
+  }
+
+  private void waitForBackPressure(final Thread currentThread) {
+    final LogFlusherThread flusher = this.flusherThread;
+    if (flusher == null) return;
+
+    if (backPressurePolicy == BackPressurePolicy.DROP || !isRunning()
+        || currentThread == flusher || currentThread instanceof FlushWorkerThread) {
+      // the flush threads must never wait on themselves, just wake up the flusher
+      flusher.requestFlush();
+      return;
+    }
+
+    final long startNs = System.nanoTime();
+    flusher.waitForFlush(flusher.requestFlush());
+    stats.addBackPressureWait(System.nanoTime() - startNs);
+  }
+
+  private void manageOldLogs() {
+    final long startTimeNs = System.nanoTime();
+    for (final JournalWriter<T> writer: writers) {
+      try {
+        writer.manageOldLogs();
+      } catch (final Throwable e) {
+        Logger.logToStderr(LogLevel.ERROR, e, "unable to manage old logs: {}", writer);
+      }
+    }
+    stats.addManageOldLogs(System.nanoTime() - startTimeNs);
+  }
+
   private final class LogFlusherThread extends Thread {
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition flushIntervalCond = lock.newCondition();
+    private final Condition flushCompletedCond = lock.newCondition();
     private final int intervalMs;
 
-    private boolean flushing = false;
+    // a flush generation is started by swapping the thread buffers,
+    // everything added before the swap is durable once the generation is completed.
+    private long startedGeneration = 0;
+    private long completedGeneration = 0;
+    private boolean flushRequested = false;
 
     private LogFlusherThread(final int intervalMs) {
       super(name + "Flusher");
       this.intervalMs = intervalMs;
     }
 
-    public void waitForFlush() {
+    /**
+     * Wake up the flusher.
+     * @return the generation that will contain the entries added so far
+     */
+    private long requestFlush() {
       lock.lock();
       try {
-        System.out.println("WAIT FOR FLUSH: " + flushing);
+        if (!flushRequested) {
+          flushRequested = true;
+          flushIntervalCond.signal();
+        }
+        return startedGeneration + 1;
       } finally {
         lock.unlock();
       }
     }
 
-    private void forceFlush() {
-      if (lock.tryLock()) {
-        try {
-          flushIntervalCond.signalAll();
-        } finally {
-          lock.unlock();
+    private void waitForFlush(final long generation) {
+      lock.lock();
+      try {
+        while (completedGeneration < generation && isRunning() && isAlive()) {
+          // timed wait, to recheck the running state in case of a stop()
+          ThreadUtil.conditionAwait(flushCompletedCond, intervalMs, TimeUnit.MILLISECONDS);
         }
+      } finally {
+        lock.unlock();
       }
     }
 
-    @Override
-    public void run() {
+    private void beginGeneration(final boolean waitInterval) {
       lock.lock();
       try {
-        long cleanerNs = 0;
-        while (isRunning()) {
-          final long startTimeNs = System.nanoTime();
-          if ((startTimeNs - cleanerNs) > TimeUnit.HOURS.toNanos(1)) {
-            // TODO: execute in another thread
-            for (final JournalWriter<T> writer: writers) writer.manageOldLogs();
-            cleanerNs = System.nanoTime();
-            stats.addManageOldLogs(cleanerNs - startTimeNs);
-          }
-
+        if (waitInterval && !flushRequested) {
           // wait the specified interval before the next flush
           ThreadUtil.conditionAwait(flushIntervalCond, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        flushRequested = false;
+        startedGeneration++;
+      } finally {
+        lock.unlock();
+      }
+    }
 
-          flushQueue();
+    private void completeGeneration() {
+      lock.lock();
+      try {
+        completedGeneration = startedGeneration;
+        flushCompletedCond.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (isRunning()) {
+          beginGeneration(true);
+          try {
+            flushQueue();
+          } finally {
+            completeGeneration();
+          }
         }
 
         // force a last flush
-        flushQueue();
+        beginGeneration(false);
+        try {
+          flushQueue();
+        } finally {
+          completeGeneration();
+        }
       } catch (final Throwable e) {
         Logger.logToStderr(LogLevel.ALERT, e, "LogWriter shutting down");
       } finally {
-        lock.unlock();
+        // release the producers waiting on a generation that will never complete
+        completeGeneration();
       }
     }
 
     private void flushQueue() {
-      // take charge of the local thread buffers
-      final List<JournalBuffer<T>> buffers = localBuffers.getThreadData();
+      // take charge of the local thread buffers, swapping them with the standby ones
+      final List<JournalBuffer<T>> buffers = localBuffers.swapBuffers();
       if (ListUtil.isEmpty(buffers)) return;
 
       final long now = TimeUtil.currentUtcMillis();
       final long startNs = System.nanoTime();
       final HashSet<String> groupIds = new HashSet<>(64);
       long bufSize = 0;
-      this.flushing = true;
       try {
         for (final JournalBuffer<T> buf: buffers) {
           buf.flush();
@@ -195,17 +327,79 @@ public class JournalAsyncWriter<T extends JournalEntry> implements AutoCloseable
           bufSize += buf.size();
         }
 
-        for (final String groupId: groupIds) {
-          for (final JournalWriter<T> writer: writers) {
-            writer.writeBuffers(groupId, buffers);
-          }
-        }
+        writeGroups(groupIds, buffers);
       } finally {
-        this.flushing = false;
+        // give back the flushed buffers to the threads, the pages will be reused
+        localBuffers.recycleBuffers();
         final long elapsedNs = System.nanoTime() - startNs;
         stats.addFlush(now, groupIds.size(), bufSize, elapsedNs);
       }
     }
+
+    private void writeGroups(final Set<String> groupIds, final List<JournalBuffer<T>> buffers) {
+      final ThreadPoolExecutor pool = flushPool;
+      if (pool == null || groupIds.size() == 1) {
+        for (final String groupId: groupIds) {
+          writeGroup(groupId, buffers);
+        }
+        return;
+      }
+
+      // fan out the groups to the workers, a slow group does not delay the others
+      final ArrayList<Future<?>> futures = new ArrayList<>(groupIds.size());
+      for (final String groupId: groupIds) {
+        futures.add(pool.submit(() -> writeGroup(groupId, buffers)));
+      }
+
+      // the buffers are recycled once we return, so we must wait for every worker
+      boolean interrupted = false;
+      for (final Future<?> future: futures) {
+        while (true) {
+          try {
+            future.get();
+            break;
+          } catch (final InterruptedException e) {
+            interrupted = true;
+          } catch (final ExecutionException e) {
+            Logger.logToStderr(LogLevel.ERROR, e.getCause(), "unable to flush journal group");
+            break;
+          }
+        }
+      }
+
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void writeGroup(final String groupId, final List<JournalBuffer<T>> buffers) {
+      final long startNs = System.nanoTime();
+      for (final JournalWriter<T> writer: writers) {
+        try {
+          writer.writeBuffers(groupId, buffers);
+        } catch (final Throwable e) {
+          Logger.logToStderr(LogLevel.ERROR, e, "unable to flush journal group {} to {}", groupId, writer);
+        }
+      }
+      stats.addGroupFlush(System.nanoTime() - startNs);
+    }
+  }
+
+  private static final class FlushWorkerThreadFactory extends NamedThreadFactory {
+    private FlushWorkerThreadFactory(final String name) {
+      super(name);
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      return new FlushWorkerThread(r, newThreadName());
+    }
+  }
+
+  private static final class FlushWorkerThread extends Thread {
+    private FlushWorkerThread(final Runnable r, final String name) {
+      super(r, name);
+    }
   }
 
   public interface JournalEntryWriter<T extends JournalEntry> {
@@ -27,6 +27,7 @@ import tech.dnaco.collections.arrays.paged.PagedByteArray;
 public interface JournalBuffer<T extends JournalEntry> {
   int size();
   void flush();
+  void clear();
 
   Thread getThread();
 
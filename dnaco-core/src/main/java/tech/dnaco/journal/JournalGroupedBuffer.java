@@ -10,10 +10,14 @@ import tech.dnaco.journal.JournalAsyncWriter.JournalEntryWriter;
 import tech.dnaco.strings.StringUtil;
 
 public class JournalGroupedBuffer<T extends JournalEntry> implements JournalBuffer<T> {
+  private static final int PAGE_SIZE = 1 << 20;
+  // on clear() the pages are kept for the next entries, unless a burst grew the buffer past this size
+  private static final int MAX_RETAINED_SIZE = 4 * PAGE_SIZE;
+
   private final HashMap<String, LogGroup<T>> groups = new HashMap<>(64);
-  private final PagedByteArray buffer = new PagedByteArray(1 << 20);
+  private final PagedByteArray buffer = new PagedByteArray(PAGE_SIZE);
   private final JournalEntryWriter<T> writer;
-  private final Thread thread;
+  private Thread thread;
 
   private LogGroup<T> lastGroup = null;
 
@@ -22,6 +26,9 @@ public class JournalGroupedBuffer<T extends JournalEntry> implements JournalBuff
     this.thread = Thread.currentThread();
   }
 
+  /**
+   * @return the thread that added the entries, the buffer may be created by another thread
+   */
   public Thread getThread() {
     return thread;
   }
@@ -45,8 +52,16 @@ public class JournalGroupedBuffer<T extends JournalEntry> implements JournalBuff
     // no-op
   }
 
+  @Override
+  public void clear() {
+    groups.clear();
+    lastGroup = null;
+    buffer.clear(buffer.size() > MAX_RETAINED_SIZE);
+  }
+
   @Override
   public int add(final T entry) {
+    if (buffer.isEmpty()) thread = Thread.currentThread();
     final LogGroup<T> group = computeIfAbsentLogGroup(entry.getGroupId());
     group.add(buffer, writer, entry);
     return buffer.size();
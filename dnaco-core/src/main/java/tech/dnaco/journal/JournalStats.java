@@ -22,6 +22,8 @@ package tech.dnaco.journal;
 import java.util.concurrent.TimeUnit;
 
 import tech.dnaco.strings.HumansUtil;
+import tech.dnaco.telemetry.ConcurrentLogHistogram;
+import tech.dnaco.telemetry.ConcurrentTimeRangeCounter;
 import tech.dnaco.telemetry.Histogram;
 import tech.dnaco.telemetry.MaxAndAvgTimeRangeGauge;
 import tech.dnaco.telemetry.TelemetryCollector;
@@ -46,19 +48,49 @@ public final class JournalStats extends TelemetryCollectorGroup {
       .setLabel("Journal Flush Time")
       .register(this, new Histogram(Histogram.DEFAULT_DURATION_BOUNDS_NS));
 
+  private final ConcurrentLogHistogram groupFlushTimeHisto = new TelemetryCollector.Builder()
+    .setUnit(HumansUtil.HUMAN_TIME_NANOS)
+    .setName("journal_group_flush_time_histo")
+    .setLabel("Journal Group Flush Time")
+    .register(this, new ConcurrentLogHistogram());
+
   private final Histogram manageOldLogsTimeHisto = new TelemetryCollector.Builder()
     .setUnit(HumansUtil.HUMAN_TIME_NANOS)
     .setName("journal_manage_old_logs_time_histo")
     .setLabel("Journal Manage Old Logs Time")
     .register(this, new Histogram(Histogram.DEFAULT_DURATION_BOUNDS_NS));
 
+  private final ConcurrentLogHistogram backPressureTimeHisto = new TelemetryCollector.Builder()
+    .setUnit(HumansUtil.HUMAN_TIME_NANOS)
+    .setName("journal_back_pressure_time_histo")
+    .setLabel("Journal Back-Pressure Blocked Time")
+    .register(this, new ConcurrentLogHistogram());
+
+  private final ConcurrentTimeRangeCounter droppedEntries = new TelemetryCollector.Builder()
+    .setUnit(HumansUtil.HUMAN_COUNT)
+    .setName("journal_dropped_entries")
+    .setLabel("Journal Dropped Entries")
+    .register(this, new ConcurrentTimeRangeCounter(24 * 60, 1, TimeUnit.MINUTES));
+
   public void addFlush(final long now, final int groupIds, final long bufSize, final long elapsedNs) {
     bufferUsage.set(now, bufSize);
     flushTime.set(now, elapsedNs);
     flushTimeHisto.add(elapsedNs);
   }
 
+  public void addGroupFlush(final long elapsedNs) {
+    groupFlushTimeHisto.add(elapsedNs);
+  }
+
   public void addManageOldLogs(final long elapsedNs) {
     manageOldLogsTimeHisto.add(elapsedNs);
   }
+
+  public void addBackPressureWait(final long elapsedNs) {
+    backPressureTimeHisto.add(elapsedNs);
+  }
+
+  public void addDroppedEntry() {
+    droppedEntries.inc();
+  }
 }
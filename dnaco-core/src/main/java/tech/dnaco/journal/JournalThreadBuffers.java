@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Double-buffered, single-writer journal buffers, one pair per producer thread.
+ * <p>The producer thread appends to its "active" buffer without taking any lock.
+ * The flusher swaps the "active" buffer with the "standby" one using a single
+ * atomic exchange, flushes the buffer it took and gives it back via
+ * {@link #recycleBuffers()}, so the pages are reused instead of reallocated.
+ * The standby buffer is allocated by the first swap, threads that are never flushed
+ * have only the active one.
+ * <p>{@link #add(JournalEntry)} must be called by the thread owning the buffer,
+ * {@link #swapBuffers()} and {@link #recycleBuffers()} by the (single) flusher thread.
+ */
+public final class JournalThreadBuffers<T extends JournalEntry> {
+  private final CopyOnWriteArrayList<ThreadBuffer<T>> threadBuffers = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<ThreadBuffer<T>> localBuffer = new ThreadLocal<>();
+  private final Supplier<JournalBuffer<T>> bufferSupplier;
+
+  public JournalThreadBuffers(final Supplier<JournalBuffer<T>> bufferSupplier) {
+    this.bufferSupplier = bufferSupplier;
+  }
+
+  public int threadCount() {
+    return threadBuffers.size();
+  }
+
+  /**
+   * @return the size of the current thread buffer that is not yet taken by the flusher
+   */
+  public int size() {
+    final ThreadBuffer<T> threadBuffer = localBuffer.get();
+    return threadBuffer != null ? threadBuffer.active.get().size() : 0;
+  }
+
+  /**
+   * Add the entry to the current thread buffer.
+   * @return the size of the current thread buffer
+   */
+  public int add(final T entry) {
+    ThreadBuffer<T> threadBuffer = localBuffer.get();
+    if (threadBuffer == null) {
+      threadBuffer = new ThreadBuffer<>(Thread.currentThread(), bufferSupplier.get());
+      localBuffer.set(threadBuffer);
+      threadBuffers.add(threadBuffer);
+    }
+    return threadBuffer.add(entry);
+  }
+
+  /**
+   * Take the filled buffers of every thread, replacing them with the standby ones.
+   * The returned buffers are owned by the caller until {@link #recycleBuffers()} is called.
+   */
+  public List<JournalBuffer<T>> swapBuffers() {
+    final ArrayList<JournalBuffer<T>> buffers = new ArrayList<>(threadBuffers.size());
+    for (final ThreadBuffer<T> threadBuffer: threadBuffers) {
+      final JournalBuffer<T> buffer = threadBuffer.swap(bufferSupplier);
+      if (buffer != null) {
+        buffers.add(buffer);
+      } else if (threadBuffer.isIdle() && !threadBuffer.isAlive()) {
+        // the thread is dead and there is nothing left to flush
+        threadBuffers.remove(threadBuffer);
+      }
+    }
+    return buffers;
+  }
+
+  /**
+   * Clear the buffers taken by the last {@link #swapBuffers()} call
+   * and make them available again as standby buffers.
+   */
+  public void recycleBuffers() {
+    for (final ThreadBuffer<T> threadBuffer: threadBuffers) {
+      threadBuffer.recycle();
+    }
+  }
+
+  private static final class ThreadBuffer<T extends JournalEntry> {
+    private final AtomicReference<JournalBuffer<T>> active;
+    // odd while the producer is writing, even otherwise
+    private final AtomicLong writeSeq = new AtomicLong();
+    private final Thread thread;
+
+    // flusher-owned state
+    private JournalBuffer<T> standby;
+    private JournalBuffer<T> flushing;
+    private long flushedSeq;
+
+    private ThreadBuffer(final Thread thread, final JournalBuffer<T> active) {
+      this.thread = thread;
+      this.active = new AtomicReference<>(active);
+    }
+
+    private boolean isAlive() {
+      return thread.isAlive();
+    }
+
+    private boolean isIdle() {
+      return flushing == null && writeSeq.get() == flushedSeq;
+    }
+
+    private int add(final T entry) {
+      final long seq = writeSeq.get();
+      writeSeq.set(seq + 1);
+      try {
+        return active.get().add(entry);
+      } finally {
+        writeSeq.set(seq + 2);
+      }
+    }
+
+    private JournalBuffer<T> swap(final Supplier<JournalBuffer<T>> bufferSupplier) {
+      final long seq = writeSeq.get();
+      if (seq == flushedSeq) return null;
+      if (standby == null) {
+        // the previous buffer is not yet recycled
+        if (flushing != null) return null;
+        // first swap, the standby buffer was not needed until now
+        this.standby = bufferSupplier.get();
+      }
+
+      final JournalBuffer<T> buffer = active.getAndSet(standby);
+      this.standby = null;
+      this.flushedSeq = seq;
+
+      // the producer may have picked the buffer just before the swap,
+      // wait for the in-flight add() to complete before taking charge of it.
+      final long inflightSeq = writeSeq.get();
+      if ((inflightSeq & 1) != 0) {
+        for (int spins = 0; writeSeq.get() == inflightSeq; ++spins) {
+          if (spins < 128) {
+            Thread.onSpinWait();
+          } else {
+            Thread.yield();
+          }
+        }
+      }
+
+      if (buffer.size() == 0) {
+        this.standby = buffer;
+        return null;
+      }
+
+      this.flushing = buffer;
+      return buffer;
+    }
+
+    private void recycle() {
+      if (flushing == null) return;
+
+      flushing.clear();
+      this.standby = flushing;
+      this.flushing = null;
+    }
+  }
+}
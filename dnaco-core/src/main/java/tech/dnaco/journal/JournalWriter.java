@@ -25,4 +25,8 @@ public interface JournalWriter<T extends JournalEntry> {
   void manageOldLogs();
 
   void writeBuffers(String groupId, List<JournalBuffer<T>> buffers);
+
+  default void close() {
+    // no-op
+  }
 }
@@ -36,7 +36,7 @@ import tech.dnaco.util.Serialization.SerializationName;
 public abstract class LogEntry implements JournalEntry {
   public static final DateTimeFormatter LOG_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
-  public enum LogEntryType { FLUSH, RESET, MESSAGE, DATA, HTTP, TABLE, JSON }
+  public enum LogEntryType { FLUSH, RESET, MESSAGE, DATA, HTTP, TABLE, JSON, DICT }
 
   private static final LogEntryType[] LOG_ENTRY_TYPES = LogEntryType.values();
   public static LogEntryType entryTypeFromOrdinal(final int ordinal) {
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.logging.format;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import tech.dnaco.collections.arrays.LongArray;
+import tech.dnaco.logging.LogUtil.LogLevel;
+import tech.dnaco.logging.format.LogFormat.LogJournalEntryHeader;
+import tech.dnaco.tracing.TraceId;
+
+/**
+ * Summary of a flush block, stored in the ".idx" sidecar of the log file.
+ * <p>Each block is written after a deflate full-flush point, so it can be
+ * decompressed on its own starting from {@link #getDataOffset()}.
+ * The reader uses the summary to skip the blocks that cannot match a query.
+ *
+ * <pre>
+ * | magic 2b | version 1b | data offset 8b | data end offset 8b | raw length 4b | entries 4b |
+ * | min ts 8b | max ts 8b | levels 8b | threads 8b | modules 8b | owners 8b |
+ * | bloom words 2b | bloom 8b * N |
+ * </pre>
+ */
+public final class LogBlockIndex {
+  private static final String INDEX_FILE_EXT = ".idx";
+
+  private static final int MAGIC = 0x4c42;
+  private static final int VERSION = 0;
+
+  private static final int BLOOM_BITS_PER_ENTRY = 10;
+  private static final int BLOOM_MAX_WORDS = 1024;
+  private static final int BLOOM_HASHES = 4;
+
+  // entries without a level (e.g. DATA) always match a level filter
+  private static final long NO_LEVEL_BIT = 1L << 63;
+
+  private final LongArray traceHashes = new LongArray(64);
+
+  private long dataOffset;
+  private long dataEndOffset;
+  private int rawLength;
+  private int entries;
+  private long minTimestamp;
+  private long maxTimestamp;
+  private long levels;
+  private long threads;
+  private long modules;
+  private long owners;
+  private long[] bloom;
+
+  public LogBlockIndex() {
+    reset();
+  }
+
+  public static File indexFile(final File logFile) {
+    return new File(logFile.getParentFile(), logFile.getName() + INDEX_FILE_EXT);
+  }
+
+  public long getDataOffset() {
+    return dataOffset;
+  }
+
+  public long getDataEndOffset() {
+    return dataEndOffset;
+  }
+
+  public int getRawLength() {
+    return rawLength;
+  }
+
+  public int getEntries() {
+    return entries;
+  }
+
+  public long getMinTimestamp() {
+    return minTimestamp;
+  }
+
+  public long getMaxTimestamp() {
+    return maxTimestamp;
+  }
+
+  // ===============================================================================================
+  //  Writer related
+  // ===============================================================================================
+  public void reset() {
+    this.traceHashes.reset();
+    this.dataOffset = 0;
+    this.dataEndOffset = 0;
+    this.rawLength = 0;
+    this.entries = 0;
+    this.minTimestamp = Long.MAX_VALUE;
+    this.maxTimestamp = Long.MIN_VALUE;
+    this.levels = 0;
+    this.threads = 0;
+    this.modules = 0;
+    this.owners = 0;
+    this.bloom = null;
+  }
+
+  public void addThread(final String threadName) {
+    threads |= bitOf(threadName);
+  }
+
+  public void add(final LogJournalEntryHeader head, final int level) {
+    entries++;
+    minTimestamp = Math.min(minTimestamp, head.timestamp);
+    maxTimestamp = Math.max(maxTimestamp, head.timestamp);
+    levels |= (level < 0) ? NO_LEVEL_BIT : (1L << level);
+    modules |= bitOf(head.module);
+    owners |= bitOf(head.owner);
+
+    final long traceHash = traceHash(head.traceIdHi, head.traceIdLo);
+    final int count = traceHashes.size();
+    if (count == 0 || traceHashes.get(count - 1) != traceHash) {
+      traceHashes.add(traceHash);
+    }
+  }
+
+  public void seal(final long dataOffset, final long dataEndOffset, final int rawLength) {
+    this.dataOffset = dataOffset;
+    this.dataEndOffset = dataEndOffset;
+    this.rawLength = rawLength;
+
+    final int words = Math.min(BLOOM_MAX_WORDS, Math.max(1, (traceHashes.size() * BLOOM_BITS_PER_ENTRY + 63) >>> 6));
+    this.bloom = new long[words];
+    for (int i = 0, n = traceHashes.size(); i < n; ++i) {
+      final long hash = traceHashes.get(i);
+      final int h1 = (int) hash;
+      final int h2 = (int) (hash >>> 32);
+      for (int k = 0; k < BLOOM_HASHES; ++k) {
+        final int bit = ((h1 + k * h2) & 0x7fffffff) % (words << 6);
+        bloom[bit >>> 6] |= 1L << bit;
+      }
+    }
+  }
+
+  public void writeTo(final OutputStream stream) throws IOException {
+    final ByteArrayOutputStream record = new ByteArrayOutputStream(96 + (bloom.length << 3));
+    final DataOutputStream out = new DataOutputStream(record);
+    out.writeShort(MAGIC);
+    out.writeByte(VERSION);
+    out.writeLong(dataOffset);
+    out.writeLong(dataEndOffset);
+    out.writeInt(rawLength);
+    out.writeInt(entries);
+    out.writeLong(minTimestamp);
+    out.writeLong(maxTimestamp);
+    out.writeLong(levels);
+    out.writeLong(threads);
+    out.writeLong(modules);
+    out.writeLong(owners);
+    out.writeShort(bloom.length);
+    for (int i = 0; i < bloom.length; ++i) {
+      out.writeLong(bloom[i]);
+    }
+    // single write, a concurrent reader sees the whole record or a truncated one
+    record.writeTo(stream);
+  }
+
+  // ===============================================================================================
+  //  Reader related
+  // ===============================================================================================
+  /**
+   * @return the blocks in the index file, empty if the file is missing.
+   *         a truncated or corrupted tail is ignored.
+   */
+  public static List<LogBlockIndex> readIndex(final File indexFile) throws IOException {
+    final ArrayList<LogBlockIndex> blocks = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+      while (true) {
+        if (in.readUnsignedShort() != MAGIC || in.readUnsignedByte() != VERSION) break;
+
+        final LogBlockIndex block = new LogBlockIndex();
+        block.dataOffset = in.readLong();
+        block.dataEndOffset = in.readLong();
+        block.rawLength = in.readInt();
+        block.entries = in.readInt();
+        block.minTimestamp = in.readLong();
+        block.maxTimestamp = in.readLong();
+        block.levels = in.readLong();
+        block.threads = in.readLong();
+        block.modules = in.readLong();
+        block.owners = in.readLong();
+        block.bloom = new long[in.readUnsignedShort()];
+        if (block.bloom.length == 0) break;
+        for (int i = 0; i < block.bloom.length; ++i) {
+          block.bloom[i] = in.readLong();
+        }
+        blocks.add(block);
+      }
+    } catch (final FileNotFoundException | EOFException e) {
+      // no-op (no index or truncated record)
+    }
+    return blocks;
+  }
+
+  public boolean overlaps(final long minTs, final long maxTs) {
+    return minTimestamp <= maxTs && maxTimestamp >= minTs;
+  }
+
+  public boolean mightContainLevels(final Collection<LogLevel> levelFilter) {
+    long mask = NO_LEVEL_BIT;
+    for (final LogLevel level: levelFilter) {
+      mask |= 1L << level.ordinal();
+    }
+    return (levels & mask) != 0;
+  }
+
+  public boolean mightContainThread(final String threadName) {
+    return (threads & bitOf(threadName)) != 0;
+  }
+
+  public boolean mightContainModule(final String module) {
+    return (modules & bitOf(module)) != 0;
+  }
+
+  public boolean mightContainOwner(final String owner) {
+    return (owners & bitOf(owner)) != 0;
+  }
+
+  public boolean mightContainTraceId(final TraceId traceId) {
+    final long hash = traceHash(traceId.getHi(), traceId.getLo());
+    final int h1 = (int) hash;
+    final int h2 = (int) (hash >>> 32);
+    final int nbits = bloom.length << 6;
+    for (int k = 0; k < BLOOM_HASHES; ++k) {
+      final int bit = ((h1 + k * h2) & 0x7fffffff) % nbits;
+      if ((bloom[bit >>> 6] & (1L << bit)) == 0) return false;
+    }
+    return true;
+  }
+
+  // ===============================================================================================
+  //  Hash related
+  // ===============================================================================================
+  private static long bitOf(final String value) {
+    return value != null ? bitOf(value.getBytes(StandardCharsets.UTF_8)) : 0;
+  }
+
+  private static long bitOf(final byte[] value) {
+    if (value == null) return 0;
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < value.length; ++i) {
+      hash = (hash ^ (value[i] & 0xff)) * 0x01000193;
+    }
+    return 1L << (hash & 63);
+  }
+
+  private static long traceHash(final long hi, final long lo) {
+    long h = hi * 0x9E3779B97F4A7C15L + lo;
+    h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+    h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+}
@@ -19,17 +19,23 @@
 
 package tech.dnaco.logging.format;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.function.ObjLongConsumer;
 import java.util.function.Predicate;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import tech.dnaco.io.LimitedInputStream;
 import tech.dnaco.logging.LogEntry;
 import tech.dnaco.logging.LogEntryMessage;
 import tech.dnaco.logging.LogUtil.LogLevel;
@@ -57,10 +63,76 @@ public class LogFileReader {
   }
 
   public void skipToEnd() throws IOException {
-    read((header) -> false, (entry, lineNo) -> {});
+    read((block) -> false, (header) -> false, (entry, lineNo) -> {});
   }
 
   public void read(final Predicate<LogEntryHeader> predicate, final ObjLongConsumer<LogEntry> consumer) throws IOException {
+    read((block) -> true, predicate, consumer);
+  }
+
+  /**
+   * Read the entries matching the predicate.
+   * If the file has a block index, the blocks rejected by the blockPredicate
+   * are skipped without decompressing them.
+   */
+  public void read(final Predicate<LogBlockIndex> blockPredicate, final Predicate<LogEntryHeader> predicate,
+      final ObjLongConsumer<LogEntry> consumer) throws IOException {
+    final List<LogBlockIndex> blocks = LogBlockIndex.readIndex(LogBlockIndex.indexFile(file));
+    if (blocks.isEmpty()) {
+      // no index, scan the whole file
+      readStream(predicate, consumer);
+      return;
+    }
+
+    final Inflater inflater = new Inflater(true);
+    try (FileInputStream fileStream = new FileInputStream(file)) {
+      for (final LogBlockIndex block: blocks) {
+        if (block.getDataOffset() < offset) continue;
+
+        if (blockPredicate.test(block)) {
+          fileStream.getChannel().position(block.getDataOffset());
+          inflater.reset();
+          final LimitedInputStream blockStream = new LimitedInputStream(fileStream, block.getDataEndOffset() - block.getDataOffset());
+          readBlock(new LimitedInputStream(new InflaterInputStream(blockStream, inflater), block.getRawLength()), predicate, consumer);
+        } else {
+          lineCount += block.getEntries();
+        }
+        offset = block.getDataEndOffset();
+      }
+    } catch (final FileNotFoundException e) {
+      // no-op (we are probably trying to tail something that will show up later)
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private void readBlock(final InputStream stream, final Predicate<LogEntryHeader> predicate,
+      final ObjLongConsumer<LogEntry> consumer) throws IOException {
+    try {
+      final LogReader reader = new LogReader(stream);
+      while (reader.readEntryHead()) {
+        lineCount++;
+        readEntry(reader, predicate, consumer);
+      }
+    } catch (final EOFException e) {
+      // no-op (end of block)
+    }
+  }
+
+  private void readEntry(final LogReader reader, final Predicate<LogEntryHeader> predicate,
+      final ObjLongConsumer<LogEntry> consumer) throws IOException {
+    if (predicate.test(reader.getEntryHeader())) {
+      final LogEntry entry = reader.readEntryData();
+      if (entry != null) {
+        entry.setTenantId(tenantId);
+        consumer.accept(entry, lineCount);
+      }
+    } else {
+      reader.skipEntryData();
+    }
+  }
+
+  private void readStream(final Predicate<LogEntryHeader> predicate, final ObjLongConsumer<LogEntry> consumer) throws IOException {
     try (FileInputStream fileStream = new FileInputStream(file)) {
       fileStream.getChannel().position(offset);
       if (fileStream.available() <= 0) return;
@@ -69,15 +141,7 @@ public class LogFileReader {
         final LogReader reader = new LogReader(stream);
         while (reader.readEntryHead()) {
           lineCount++;
-          if (predicate.test(reader.getEntryHeader())) {
-            final LogEntry entry = reader.readEntryData();
-            if (entry != null) {
-              entry.setTenantId(tenantId);
-              consumer.accept(entry, lineCount);
-            }
-          } else {
-            reader.skipEntryData();
-          }
+          readEntry(reader, predicate, consumer);
           offset = fileStream.getChannel().position();
         }
       } catch (final IOException e) {
@@ -95,13 +159,29 @@ public class LogFileReader {
     private final Set<String> threads = new HashSet<>();
     private final Set<String> modules = new HashSet<>();
     private final Set<String> owners = new HashSet<>();
+    private long minTimestamp = Long.MIN_VALUE;
+    private long maxTimestamp = Long.MAX_VALUE;
     private boolean countLines;
     private boolean tail;
 
+    public boolean matchBlock(final LogBlockIndex block) {
+      if (!block.overlaps(minTimestamp, maxTimestamp)) return false;
+      if (!levels.isEmpty() && !block.mightContainLevels(levels)) return false;
+
+      // same logic of matchFilter(LogEntryHeader): any of the filters can match
+      if (threads.isEmpty() && modules.isEmpty() && owners.isEmpty() && traceIds.isEmpty()) return true;
+      for (final String thread: threads) if (block.mightContainThread(thread)) return true;
+      for (final String module: modules) if (block.mightContainModule(module)) return true;
+      for (final String owner: owners) if (block.mightContainOwner(owner)) return true;
+      for (final TraceId traceId: traceIds) if (block.mightContainTraceId(traceId)) return true;
+      return false;
+    }
+
     public boolean matchFilter(final LogEntryHeader head) {
+      if (head.timestamp < minTimestamp || head.timestamp > maxTimestamp) return false;
       if (!threads.isEmpty() && threads.contains(head.threadName)) return true;
-      if (!modules.isEmpty() && threads.contains(head.module)) return true;
-      if (!owners.isEmpty() && threads.contains(head.owner)) return true;
+      if (!modules.isEmpty() && modules.contains(head.module)) return true;
+      if (!owners.isEmpty() && owners.contains(head.owner)) return true;
       if (!traceIds.isEmpty() && traceIds.contains(head.getTraceId())) return true;
       // if everything is empty math all
       return threads.isEmpty() && modules.isEmpty() && owners.isEmpty() && traceIds.isEmpty();
@@ -128,6 +208,10 @@ public class LogFileReader {
           threads.add(args[++i]);
         } else if (args[i].equals("-l")) {
           levels.add(LogLevel.valueOf(args[++i]));
+        } else if (args[i].equals("-s")) {
+          minTimestamp = Long.parseLong(args[++i]);
+        } else if (args[i].equals("-e")) {
+          maxTimestamp = Long.parseLong(args[++i]);
         } else if (args[i].equals("-f")) {
           tail = true;
         } else if (args[i].equals("-h")) {
@@ -152,6 +236,8 @@ public class LogFileReader {
       System.out.println("  -o <owner name>   grep logs with owner name");
       System.out.println("  -t <thread name>  grep logs with thread name");
       System.out.println("  -l <level>        grep logs with specified level");
+      System.out.println("  -s <millis>       grep logs written after the specified timestamp");
+      System.out.println("  -e <millis>       grep logs written before the specified timestamp");
     }
   }
 
@@ -170,7 +256,7 @@ public class LogFileReader {
     do {
       final StringBuilder report = new StringBuilder(1024);
       for (final LogFileReader reader: params.files) {
-        reader.read(params::matchFilter, (entry, lineNo) -> {
+        reader.read(params::matchBlock, params::matchFilter, (entry, lineNo) -> {
           if (!params.matchFilter(entry)) return;
 
           report.setLength(0);
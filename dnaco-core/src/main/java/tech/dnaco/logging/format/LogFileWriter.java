@@ -21,15 +21,23 @@ package tech.dnaco.logging.format;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 import tech.dnaco.collections.arrays.ArrayUtil;
+import tech.dnaco.io.FileBufferedOutputStream;
 import tech.dnaco.io.FileUtil;
 import tech.dnaco.io.NullOutputStream;
 import tech.dnaco.journal.JournalBuffer;
@@ -39,10 +47,11 @@ import tech.dnaco.logging.LogUtil.LogLevel;
 import tech.dnaco.logging.Logger;
 import tech.dnaco.logging.format.LogFormat.LogEntryWriter;
 import tech.dnaco.strings.HumansUtil;
+import tech.dnaco.telemetry.ConcurrentHistogram;
+import tech.dnaco.telemetry.ConcurrentTimeRangeCounter;
 import tech.dnaco.telemetry.Histogram;
 import tech.dnaco.telemetry.TelemetryCollector;
 import tech.dnaco.telemetry.TelemetryCollectorGroup;
-import tech.dnaco.telemetry.TimeRangeCounter;
 
 public class LogFileWriter implements JournalWriter<LogEntry> {
   static {
@@ -52,25 +61,37 @@ public class LogFileWriter implements JournalWriter<LogEntry> {
   private static final DateTimeFormatter LOG_FOLDER_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
   private static final DateTimeFormatter ROLL_DATE_FORMAT = DateTimeFormatter.ofPattern("HHmmssSSS");
   private static final int ROLL_SIZE = 32 << 20;
+  private static final int DEFAULT_MAX_OPEN_SEGMENTS = 256;
+  private static final long SEGMENT_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
 
   private static final class LogFileWriterStats extends TelemetryCollectorGroup {
-    private final TimeRangeCounter diskFlushes = new TelemetryCollector.Builder()
+    private final ConcurrentTimeRangeCounter diskFlushes = new TelemetryCollector.Builder()
       .setUnit(HumansUtil.HUMAN_COUNT)
       .setName("logger_disk_flushes")
       .setLabel("Logger disk flushes")
-      .register(this, new TimeRangeCounter(60, 1, TimeUnit.HOURS));
+      .register(this, new ConcurrentTimeRangeCounter(60, 1, TimeUnit.HOURS));
 
-    private final Histogram diskFlushSizeHisto = new TelemetryCollector.Builder()
+    private final ConcurrentHistogram diskFlushSizeHisto = new TelemetryCollector.Builder()
       .setUnit(HumansUtil.HUMAN_SIZE)
       .setName("logger_disk_flush_size_histo")
       .setLabel("Logger disk flush size")
-      .register(this, new Histogram(Histogram.DEFAULT_SIZE_BOUNDS));
+      .register(this, new ConcurrentHistogram(Histogram.DEFAULT_SIZE_BOUNDS));
 
-    private final Histogram diskFlushTimeHisto = new TelemetryCollector.Builder()
+    private final ConcurrentHistogram diskFlushTimeHisto = new TelemetryCollector.Builder()
       .setUnit(HumansUtil.HUMAN_TIME_NANOS)
       .setName("logger_disk_flush_time_histo")
       .setLabel("Logger disk flush time")
-      .register(this, new Histogram(Histogram.DEFAULT_DURATION_BOUNDS_NS));
+      .register(this, new ConcurrentHistogram(Histogram.DEFAULT_DURATION_BOUNDS_NS));
+
+    private final ConcurrentTimeRangeCounter diskFileOpens = new TelemetryCollector.Builder()
+      .setUnit(HumansUtil.HUMAN_COUNT)
+      .setName("logger_disk_file_opens")
+      .setLabel("Logger disk file opens")
+      .register(this, new ConcurrentTimeRangeCounter(60, 1, TimeUnit.HOURS));
+
+    public void addFileOpen() {
+      diskFileOpens.inc();
+    }
 
     public void addFlush(final long flushSize, final long elapsedNs) {
       diskFlushes.inc();
@@ -84,58 +105,74 @@ public class LogFileWriter implements JournalWriter<LogEntry> {
       .setLabel("Logger file writer")
       .register(new LogFileWriterStats());
 
+  private final HashMap<String, LogFileSegment> segments = new HashMap<>();
+  private final LinkedHashMap<String, LogFileSegment> openSegments = new LinkedHashMap<>(64, 0.75f, true);
   private final File logDir;
   private final int deleteDays;
+  private final int maxOpenSegments;
 
   public LogFileWriter(final File logDir, final int deleteDays) {
+    this(logDir, deleteDays, DEFAULT_MAX_OPEN_SEGMENTS);
+  }
+
+  public LogFileWriter(final File logDir, final int deleteDays, final int maxOpenSegments) {
     this.logDir = logDir;
     this.deleteDays = deleteDays;
+    this.maxOpenSegments = maxOpenSegments;
     System.setErr(new LoggerPrintStream(true));
     System.setOut(new LoggerPrintStream(false));
   }
 
   @Override
   public void writeBuffers(final String tenantId, final List<JournalBuffer<LogEntry>> buffers) {
-    final ZonedDateTime now = ZonedDateTime.now();
-
-    final File logDayDir = new File(logDir, LOG_FOLDER_DATE_FORMAT.format(now));
-    final File logFile = new File(logDayDir, tenantId);
-    logFile.getParentFile().mkdirs();
-
-    if (logFile.length() > ROLL_SIZE) {
-      final String rollNameName = logFile.getName() + "." + ROLL_DATE_FORMAT.format(now);
-      if (!logFile.renameTo(new File(logFile.getParentFile(), rollNameName))) {
-        Logger.warn("unable to roll-rename {} to {}", logFile, rollNameName);
-      }
-    }
+    final LogFileSegment segment = getSegment(tenantId);
 
     long flushSize = 0;
     final long startTimeNs = System.nanoTime();
-    try (FileOutputStream fileStream = new FileOutputStream(logFile, true)) {
-      final long startFileSize = fileStream.getChannel().position();
-
-      try (GZIPOutputStream stream = new GZIPOutputStream(fileStream)) {
-        try (LogEntryWriter deltaWriter = LogFormat.CURRENT.newEntryWriter()) {
-          deltaWriter.newBlock(stream);
-          for (final JournalBuffer<LogEntry> threadBuf: buffers) {
-            if (!threadBuf.hasGroupId(tenantId)) continue;
-
-            deltaWriter.reset(stream, threadBuf.getThread());
-            threadBuf.process(tenantId, (buf, off) -> deltaWriter.add(stream, buf, off));
-          }
-        }
-        stream.flush();
-        flushSize += fileStream.getChannel().position() - startFileSize;
-      }
+    try {
+      flushSize = segment.write(tenantId, buffers);
     } catch (final Throwable e) {
       Logger.logToStderr(LogLevel.ERROR, e, "unable to flush logs for tenant: {}", tenantId);
+      segment.close();
     } finally {
       stats.addFlush(flushSize, System.nanoTime() - startTimeNs);
     }
   }
 
+  @Override
+  public void close() {
+    final ArrayList<LogFileSegment> closing;
+    synchronized (segments) {
+      closing = new ArrayList<>(segments.values());
+      openSegments.clear();
+    }
+    for (final LogFileSegment segment: closing) {
+      segment.close();
+    }
+  }
+
+  private LogFileSegment getSegment(final String tenantId) {
+    LogFileSegment evicted = null;
+    final LogFileSegment segment;
+    synchronized (segments) {
+      segment = segments.computeIfAbsent(tenantId, LogFileSegment::new);
+      openSegments.put(tenantId, segment);
+      if (openSegments.size() > maxOpenSegments) {
+        final Iterator<LogFileSegment> it = openSegments.values().iterator();
+        evicted = it.next();
+        it.remove();
+      }
+    }
+
+    // close the least recently used file outside the lock, it may be in use by another flush
+    if (evicted != null) evicted.close();
+    return segment;
+  }
+
   @Override
   public void manageOldLogs() {
+    closeIdleSegments();
+
     if (!logDir.exists()) return;
 
     final File[] dateSubFolders = logDir.listFiles();
@@ -162,6 +199,30 @@ public class LogFileWriter implements JournalWriter<LogEntry> {
     }
   }
 
+  private void closeIdleSegments() {
+    final long now = System.currentTimeMillis();
+    final ArrayList<LogFileSegment> idleSegments = new ArrayList<>();
+    synchronized (segments) {
+      final Iterator<LogFileSegment> it = segments.values().iterator();
+      while (it.hasNext()) {
+        final LogFileSegment segment = it.next();
+        final long idleTime = now - segment.lastWriteMs;
+        if (idleTime < SEGMENT_IDLE_TIMEOUT_MS) continue;
+
+        idleSegments.add(segment);
+        openSegments.remove(segment.tenantId);
+        if (idleTime > TimeUnit.DAYS.toMillis(1)) {
+          // the tenant is gone, the next write will be on a new day file anyway
+          it.remove();
+        }
+      }
+    }
+
+    for (final LogFileSegment segment: idleSegments) {
+      segment.close();
+    }
+  }
+
   private static boolean isElegibleForDeletion(final File folder, final long elegibleTs) {
     final String name = folder.getName().substring(0, 10); // yyyy-MM-dd
     final LocalDate folderDate = LocalDate.parse(name, LOG_FOLDER_DATE_FORMAT);
@@ -173,6 +234,161 @@ public class LogFileWriter implements JournalWriter<LogEntry> {
     return "LogFileWriter [logDir=" + logDir + ", deleteDays=" + deleteDays + "]";
   }
 
+  // ===============================================================================================
+  // Log File Segment
+  // Keeps the tenant file and the gzip stream open across flushes.
+  // Each flush block ends with a deflate full-flush point, so readers can see the data
+  // without closing the gzip member, and the block can be decompressed on its own.
+  // The position of each block is stored in the ".idx" sidecar (see LogBlockIndex).
+  // ===============================================================================================
+  private final class LogFileSegment {
+    private final LogBlockIndex blockIndex = new LogBlockIndex();
+    private final String tenantId;
+
+    private FileBufferedOutputStream fileStream;
+    private FileOutputStream indexStream;
+    private BlockGzipOutputStream stream;
+    private File file;
+    private long openFileSize;
+    private long rollTime;
+    private volatile long lastWriteMs;
+
+    private LogFileSegment(final String tenantId) {
+      this.tenantId = tenantId;
+      this.lastWriteMs = System.currentTimeMillis();
+    }
+
+    private synchronized long write(final String groupId, final List<JournalBuffer<LogEntry>> buffers) throws Exception {
+      final ZonedDateTime now = ZonedDateTime.now();
+      final long nowMs = now.toInstant().toEpochMilli();
+      if (stream != null && nowMs >= rollTime) {
+        close();
+      } else if (stream != null && size() > ROLL_SIZE) {
+        // the file is rolled by open()
+        close();
+      }
+      if (stream == null) {
+        open(now);
+      }
+
+      final long startSize = fileStream.position();
+      final long blockOffset = size();
+      final long blockRawOffset = stream.rawBytes();
+      blockIndex.reset();
+      try (LogEntryWriter deltaWriter = LogFormat.CURRENT.newEntryWriter()) {
+        deltaWriter.setBlockIndex(blockIndex);
+        deltaWriter.newBlock(stream);
+        for (final JournalBuffer<LogEntry> threadBuf: buffers) {
+          if (!threadBuf.hasGroupId(groupId)) continue;
+
+          deltaWriter.reset(stream, threadBuf.getThread());
+          threadBuf.process(groupId, (buf, off) -> deltaWriter.add(stream, buf, off));
+        }
+      }
+      // full-flush: the block is readable, and can be decompressed starting from blockOffset
+      stream.fullFlush();
+      fileStream.flush();
+
+      // the index is written once the data is on disk, an index entry never points to missing data
+      blockIndex.seal(blockOffset, size(), Math.toIntExact(stream.rawBytes() - blockRawOffset));
+      blockIndex.writeTo(indexStream);
+      this.lastWriteMs = nowMs;
+      return fileStream.position() - startSize;
+    }
+
+    private long size() {
+      return openFileSize + fileStream.position();
+    }
+
+    private void open(final ZonedDateTime now) throws IOException {
+      final File logDayDir = new File(logDir, LOG_FOLDER_DATE_FORMAT.format(now));
+      final File logFile = new File(logDayDir, tenantId);
+      if (!logFile.equals(file)) {
+        // first time we see this file, it may be a file left open by a crashed process.
+        // roll it, appending to an unterminated gzip member will make the new data unreadable.
+        logDayDir.mkdirs();
+        if (logFile.length() > 0) {
+          if (!rollFile(logFile, now)) {
+            throw new IOException("unable to roll the log file left open: " + logFile);
+          }
+        } else {
+          LogBlockIndex.indexFile(logFile).delete();
+        }
+        this.file = logFile;
+      }
+
+      FileOutputStream fileOutput = new FileOutputStream(file, true);
+      this.openFileSize = fileOutput.getChannel().size();
+      if (openFileSize > ROLL_SIZE) {
+        fileOutput.close();
+        // if the rename fails keep appending to the same file, the roll is retried on the next open
+        rollFile(file, now);
+        fileOutput = new FileOutputStream(file, true);
+        this.openFileSize = fileOutput.getChannel().size();
+      }
+
+      this.indexStream = new FileOutputStream(LogBlockIndex.indexFile(file), true);
+      this.fileStream = new FileBufferedOutputStream(fileOutput);
+      this.stream = new BlockGzipOutputStream(fileStream);
+      this.rollTime = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone()).toInstant().toEpochMilli();
+      stats.addFileOpen();
+    }
+
+    private synchronized void close() {
+      if (stream == null) return;
+
+      try {
+        // terminate the gzip member, the next open() will append a new one
+        stream.close();
+        indexStream.close();
+      } catch (final Throwable e) {
+        Logger.logToStderr(LogLevel.ERROR, e, "unable to close log file: {}", file);
+      } finally {
+        this.stream = null;
+        this.fileStream = null;
+        this.indexStream = null;
+      }
+    }
+
+    /**
+     * @return false if the log file was not renamed, and is still in place
+     */
+    private boolean rollFile(final File logFile, final ZonedDateTime now) {
+      final String rollNameName = logFile.getName() + "." + ROLL_DATE_FORMAT.format(now);
+      final File rollFile = new File(logFile.getParentFile(), rollNameName);
+      if (!logFile.renameTo(rollFile)) {
+        Logger.warn("unable to roll-rename {} to {}", logFile, rollNameName);
+        return false;
+      }
+
+      final File indexFile = LogBlockIndex.indexFile(logFile);
+      if (indexFile.exists() && !indexFile.renameTo(LogBlockIndex.indexFile(rollFile))) {
+        Logger.warn("unable to roll-rename {} to {}", indexFile, rollNameName);
+      }
+      return true;
+    }
+  }
+
+  private static final class BlockGzipOutputStream extends GZIPOutputStream {
+    private BlockGzipOutputStream(final OutputStream stream) throws IOException {
+      super(stream, 64 << 10);
+    }
+
+    private long rawBytes() {
+      return def.getBytesRead();
+    }
+
+    private void fullFlush() throws IOException {
+      // like the syncFlush, but the following data does not refer to the previous blocks
+      int len;
+      while ((len = def.deflate(buf, 0, buf.length, Deflater.FULL_FLUSH)) > 0) {
+        out.write(buf, 0, len);
+        if (len < buf.length) break;
+      }
+      out.flush();
+    }
+  }
+
   // ===============================================================================================
   // Stdout/Stderr log wrapper
   // Redirect stdout/stderr to the Logger flow.
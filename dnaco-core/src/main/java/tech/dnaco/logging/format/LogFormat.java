@@ -34,9 +34,10 @@ import tech.dnaco.tracing.TraceId;
 
 public interface LogFormat {
   LogFormat[] VERSIONS = new LogFormat[] {
-    new LogFormatV0()
+    new LogFormatV0(),
+    new LogFormatV1()
   };
-  LogFormat CURRENT = VERSIONS[0];
+  LogFormat CURRENT = VERSIONS[1];
 
   int getVersion();
 
@@ -47,6 +48,7 @@ public interface LogFormat {
   LogEntryReader newEntryReader(final InputStream stream) throws IOException;
 
   interface LogEntryWriter extends AutoCloseable {
+    void setBlockIndex(LogBlockIndex index);
     void newBlock(OutputStream stream) throws IOException;
     void reset(OutputStream stream, Thread thread) throws IOException;
     void add(OutputStream stream, PagedByteArray buffer, int offset) throws IOException;
@@ -54,6 +56,7 @@ public interface LogFormat {
 
   interface LogEntryReader extends AutoCloseable {
     void readResetEntry(InputStream stream) throws IOException;
+    void readDictEntry(InputStream stream) throws IOException;
     boolean fetchEntryHead(InputStream stream, LogEntryType type) throws IOException;
     LogEntry fetchEntryData(InputStream stream) throws IOException;
     void skipEntryData(InputStream stream) throws IOException;
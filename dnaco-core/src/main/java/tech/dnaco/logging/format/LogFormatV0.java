@@ -50,22 +50,41 @@ public class LogFormatV0 implements LogFormat {
     return 0;
   }
 
+  protected boolean useDictionary() {
+    return false;
+  }
+
   // ===============================================================================================
   //  LogEntry related
   // ===============================================================================================
   public static void writeVarInt(final PagedByteArray buffer, final long value) {
-    final byte[] buf8 = new byte[9];
-    final int vlen = IntEncoder.writeUnsignedVarLong(buf8, 0, value);
-    buffer.add(buf8, 0, vlen);
+    IntEncoder.writeUnsignedVarLong(buffer, value);
   }
 
   public static void writeString(final PagedByteArray buffer, final String value) {
     if (StringUtil.isEmpty(value)) {
       buffer.add(0);
     } else {
-      final byte[] blob = value.getBytes(StandardCharsets.UTF_8);
-      writeVarInt(buffer, blob.length);
-      buffer.add(blob);
+      writeVarInt(buffer, PagedByteArray.utf8Length(value));
+      buffer.addUtf8(value);
+    }
+  }
+
+  private static String readString(final InputStream stream) throws IOException {
+    final int len = IntDecoder.readUnsignedVarInt(stream);
+    if (len == 0) return "";
+
+    return new String(IOUtil.readNBytes(stream, len), StandardCharsets.UTF_8);
+  }
+
+  private static void writeStringRef(final PagedByteArray buffer, final LogStringDictionary dictionary, final String value) {
+    // | dictionary id + 1 vint | or | 0 | inline string |
+    final int id = StringUtil.isEmpty(value) ? -1 : dictionary.intern(value);
+    if (id < 0) {
+      buffer.add(0);
+      writeString(buffer, value);
+    } else {
+      writeVarInt(buffer, id + 1);
     }
   }
 
@@ -74,11 +93,18 @@ public class LogFormatV0 implements LogFormat {
     // level 1byte
     buffer.add((entry.hasException() ? 1 << 7 : 0) | (entry.getLevel().ordinal() & 0xff));
 
-    // write class and method 1b + N
-    buffer.addBlob8(entry.getClassAndMethod());
+    if (useDictionary()) {
+      // write class and method and msg format as dictionary refs
+      final LogStringDictionary dictionary = LogStringDictionary.current();
+      writeStringRef(buffer, dictionary, entry.getClassAndMethod());
+      writeStringRef(buffer, dictionary, entry.getMsgFormat());
+    } else {
+      // write class and method 1b + N
+      buffer.addBlob8(entry.getClassAndMethod());
 
-    // write msg format
-    writeString(buffer, entry.getMsgFormat());
+      // write msg format
+      writeString(buffer, entry.getMsgFormat());
+    }
 
     // write msg args
     if (entry.hasMsgArgs()) {
@@ -98,37 +124,6 @@ public class LogFormatV0 implements LogFormat {
     }
   }
 
-  private void readEntryMessage(final LogEntryMessage entry, final InputStream stream) throws IOException {
-    // read level (and flag has exception)
-    final int level = stream.read();
-    entry.setLevel(LogUtil.levelFromOrdinal(level & 0x7f));
-
-    // class and method
-    entry.setClassAndMethod(new String(IOUtil.readBlob8(stream)));
-
-    // msg format
-    entry.setMsgFormat(IOUtil.readString(stream));
-
-    // msg args
-    final int argsLen = IntDecoder.readUnsignedVarInt(stream);
-    if (argsLen > 0) {
-      final String[] args = new String[argsLen];
-      for (int i = 0; i < argsLen; ++i) {
-        args[i] = IOUtil.readString(stream);
-      }
-      entry.setMsgArgs(args);
-    } else {
-      entry.setMsgArgs(null);
-    }
-
-    // read exception
-    if ((level & (1 << 7)) != 0) {
-      entry.setException(IOUtil.readString(stream));
-    } else {
-      entry.setException((String)null);
-    }
-  }
-
   @Override
   public void writeEntryData(final PagedByteArray buffer, final LogEntryData entry) {
     // TODO Auto-generated method stub
@@ -144,6 +139,12 @@ public class LogFormatV0 implements LogFormat {
   }
 
   private final class DeltaWriter implements LogEntryWriter {
+    // dictionary ids already written in the current reset section
+    private final long[] dictionaryIds = new long[LogStringDictionary.MAX_ENTRIES >>> 6];
+    private LogStringDictionary dictionary;
+    private int cursor;
+
+    private LogBlockIndex blockIndex;
     private byte[] lastModule;
     private byte[] lastOwner;
     private long lastTimestamp;
@@ -156,6 +157,11 @@ public class LogFormatV0 implements LogFormat {
       // no-op
     }
 
+    @Override
+    public void setBlockIndex(final LogBlockIndex index) {
+      this.blockIndex = index;
+    }
+
     @Override
     public void newBlock(final OutputStream stream) throws IOException {
       stream.write(LogEntryType.FLUSH.ordinal());
@@ -168,6 +174,12 @@ public class LogFormatV0 implements LogFormat {
       // write: | reset | version | thread |
       stream.write(LogEntryType.RESET.ordinal());
       IOUtil.writeString(stream, thread.getName());
+      if (blockIndex != null) blockIndex.addThread(thread.getName());
+
+      if (useDictionary()) {
+        this.dictionary = LogStringDictionary.of(thread);
+        Arrays.fill(dictionaryIds, 0);
+      }
 
       this.lastModule = null;
       this.lastOwner = null;
@@ -194,6 +206,15 @@ public class LogFormatV0 implements LogFormat {
           break;
       }
 
+      if (blockIndex != null) {
+        final boolean hasLevel = head.type == LogEntryType.MESSAGE.ordinal();
+        blockIndex.add(head, hasLevel ? entryBuffer.get(head.dataOffset) & 0x7f : -1);
+      }
+
+      if (useDictionary() && head.type == LogEntryType.MESSAGE.ordinal()) {
+        writeDictionaryEntries(stream, entryBuffer, head.dataOffset);
+      }
+
       final boolean sameModule = Arrays.equals(head.module, lastModule);
       final boolean sameOwner = Arrays.equals(head.owner, lastOwner);
 
@@ -235,6 +256,47 @@ public class LogFormatV0 implements LogFormat {
       // write data
       entryBuffer.forEach(head.dataOffset, head.dataLength, stream::write);
     }
+
+    private void writeDictionaryEntries(final OutputStream stream, final PagedByteArray entryBuffer, final int dataOffset)
+        throws IOException {
+      // | level 1b | class and method ref | msg format ref | ...
+      this.cursor = dataOffset + 1;
+      for (int i = 0; i < 2; ++i) {
+        final long ref = readVarLong(entryBuffer);
+        if (ref == 0) {
+          // inline string
+          cursor += (int) readVarLong(entryBuffer);
+        } else {
+          writeDictionaryEntry(stream, (int) (ref - 1));
+        }
+      }
+    }
+
+    private void writeDictionaryEntry(final OutputStream stream, final int id) throws IOException {
+      final long mask = 1L << id;
+      if ((dictionaryIds[id >>> 6] & mask) != 0) return;
+      dictionaryIds[id >>> 6] |= mask;
+
+      // write: | dict | id vint | length vint | value |
+      final byte[] value = dictionary != null ? dictionary.get(id) : null;
+      stream.write(LogEntryType.DICT.ordinal());
+      IntEncoder.writeUnsignedVarLong(stream, id);
+      if (value == null) {
+        stream.write(0);
+      } else {
+        IntEncoder.writeUnsignedVarLong(stream, value.length);
+        stream.write(value);
+      }
+    }
+
+    private long readVarLong(final PagedByteArray entryBuffer) {
+      long result = 0;
+      for (int shift = 0; ; shift += 7) {
+        final int b = entryBuffer.get(cursor++);
+        result |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) return result;
+      }
+    }
   }
 
   // ===============================================================================================
@@ -254,6 +316,7 @@ public class LogFormatV0 implements LogFormat {
   }
 
   private final class DeltaReader implements LogEntryReader {
+    private String[] dictionary = new String[64];
     private String threadName;
     private LogEntryType type;
     private String lastModule;
@@ -282,8 +345,10 @@ public class LogFormatV0 implements LogFormat {
       return header;
     }
 
+    @Override
     public void readResetEntry(final InputStream stream) throws IOException {
       this.threadName = IOUtil.readString(stream);
+      Arrays.fill(dictionary, null);
       this.lastModule = null;
       this.lastOwner = null;
       this.lastTimestamp = 0;
@@ -292,6 +357,27 @@ public class LogFormatV0 implements LogFormat {
       this.lastSpanId = 0;
     }
 
+    @Override
+    public void readDictEntry(final InputStream stream) throws IOException {
+      final int id = IntDecoder.readUnsignedVarInt(stream);
+      if (id >= LogStringDictionary.MAX_ENTRIES) {
+        throw new IOException("invalid dictionary id " + id);
+      }
+      if (id >= dictionary.length) {
+        dictionary = Arrays.copyOf(dictionary, LogStringDictionary.MAX_ENTRIES);
+      }
+      dictionary[id] = readString(stream);
+    }
+
+    private String readStringRef(final InputStream stream) throws IOException {
+      final int ref = IntDecoder.readUnsignedVarInt(stream);
+      if (ref == 0) return readString(stream);
+
+      final String value = (ref <= dictionary.length) ? dictionary[ref - 1] : null;
+      if (value == null) throw new IOException("missing dictionary entry " + (ref - 1));
+      return value;
+    }
+
     @Override
     public boolean fetchEntryHead(final InputStream stream, final LogEntryType type) throws IOException {
       // | type 1b | delta-ts vint | traceId/spanId 3vint | module-len 1b | owner-len 1b | data-len vint |
@@ -358,5 +444,42 @@ public class LogFormatV0 implements LogFormat {
     public void skipEntryData(final InputStream stream) throws IOException {
       stream.skip(dataLength);
     }
+
+    private void readEntryMessage(final LogEntryMessage entry, final InputStream stream) throws IOException {
+      // read level (and flag has exception)
+      final int level = stream.read();
+      entry.setLevel(LogUtil.levelFromOrdinal(level & 0x7f));
+
+      if (useDictionary()) {
+        // class and method, msg format
+        entry.setClassAndMethod(readStringRef(stream));
+        entry.setMsgFormat(readStringRef(stream));
+      } else {
+        // class and method
+        entry.setClassAndMethod(new String(IOUtil.readBlob8(stream), StandardCharsets.UTF_8));
+
+        // msg format
+        entry.setMsgFormat(readString(stream));
+      }
+
+      // msg args
+      final int argsLen = IntDecoder.readUnsignedVarInt(stream);
+      if (argsLen > 0) {
+        final String[] args = new String[argsLen];
+        for (int i = 0; i < argsLen; ++i) {
+          args[i] = readString(stream);
+        }
+        entry.setMsgArgs(args);
+      } else {
+        entry.setMsgArgs(null);
+      }
+
+      // read exception
+      if ((level & (1 << 7)) != 0) {
+        entry.setException(readString(stream));
+      } else {
+        entry.setException((String)null);
+      }
+    }
   }
 }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package tech.dnaco.logging.format;
+
+/**
+ * Same layout of {@link LogFormatV0}, but the message class-and-method and format
+ * are references to the producer thread {@link LogStringDictionary}.
+ * Each reference is preceded, the first time it is used after a RESET entry,
+ * by a DICT entry with the string value.
+ *
+ * <pre>
+ * | DICT 1b | id vint | length vint | value |
+ * </pre>
+ */
+public class LogFormatV1 extends LogFormatV0 {
+  @Override
+  public int getVersion() {
+    return 1;
+  }
+
+  @Override
+  protected boolean useDictionary() {
+    return true;
+  }
+}
@@ -61,6 +61,9 @@ public class LogReader {
           case RESET:
             reader.readResetEntry(stream);
             break;
+          case DICT:
+            reader.readDictEntry(stream);
+            break;
           default:
             if (reader.fetchEntryHead(stream, type)) {
               return true;
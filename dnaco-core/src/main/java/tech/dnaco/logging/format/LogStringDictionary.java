@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.logging.format;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import tech.dnaco.collections.sets.IndexedHashSet;
+
+/**
+ * Per-thread dictionary of the repeated log strings (msg format, class and method).
+ * <p>The producer thread interns the strings while encoding the entries in its journal buffer,
+ * and the buffer only contains the ids. The flusher looks up the dictionary of the buffer thread
+ * and emits each id used in a block once, before the first entry using it.
+ * <p>The ids are stable for the thread lifetime, the dictionary is capped and
+ * strings that don't fit are written inline.
+ */
+final class LogStringDictionary {
+  static final int MAX_ENTRIES = 1024;
+
+  private static final Map<Thread, LogStringDictionary> THREAD_DICTIONARIES = Collections.synchronizedMap(new WeakHashMap<>());
+  private static final ThreadLocal<LogStringDictionary> LOCAL_DICTIONARY = ThreadLocal.withInitial(() -> {
+    final LogStringDictionary dictionary = new LogStringDictionary();
+    THREAD_DICTIONARIES.put(Thread.currentThread(), dictionary);
+    return dictionary;
+  });
+
+  // owned by the producer thread
+  private final IndexedHashSet<String> index = new IndexedHashSet<>(64);
+
+  // published to the flusher, a slot is set before its id is handed out in a journal buffer
+  private volatile byte[][] values = new byte[64][];
+
+  private LogStringDictionary() {
+    // no-op
+  }
+
+  static LogStringDictionary current() {
+    return LOCAL_DICTIONARY.get();
+  }
+
+  static LogStringDictionary of(final Thread thread) {
+    return THREAD_DICTIONARIES.get(thread);
+  }
+
+  /**
+   * Must be called by the thread owning the dictionary.
+   * @return the id of the value, or -1 if the dictionary is full
+   */
+  int intern(final String value) {
+    int id = index.get(value);
+    if (id >= 0) return id;
+
+    if (index.size() >= MAX_ENTRIES) return -1;
+
+    id = index.add(value);
+    byte[][] newValues = values;
+    if (id >= newValues.length) {
+      newValues = Arrays.copyOf(newValues, newValues.length << 1);
+    }
+    newValues[id] = value.getBytes(StandardCharsets.UTF_8);
+    this.values = newValues;
+    return id;
+  }
+
+  /**
+   * @return the UTF-8 encoded value, or null if the id is unknown
+   */
+  byte[] get(final int id) {
+    final byte[][] snapshot = values;
+    return (id >= 0 && id < snapshot.length) ? snapshot[id] : null;
+  }
+}
@@ -17,6 +17,7 @@
 
 package tech.dnaco.telemetry;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongArray;
 
@@ -48,16 +49,13 @@ public class ConcurrentHistogram implements TelemetryCollector {
   }
 
   public void add(final long value, final long numEvents) {
-    int index = 0;
-    while ((index < bounds.length) && (value > bounds[index])) {
-      index++;
-    }
-    events.addAndGet(index, numEvents);
-    while (true) {
-      final long cmax = maxValue.get();
-      if (cmax >= value || maxValue.compareAndSet(cmax, value)) {
-        break;
-      }
+    // first bound >= value, or bounds.length
+    final int index = Arrays.binarySearch(bounds, value);
+    events.addAndGet(index < 0 ? -(index + 1) : index, numEvents);
+
+    long cmax = maxValue.get();
+    while (cmax < value && !maxValue.compareAndSet(cmax, value)) {
+      cmax = maxValue.get();
     }
   }
 
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+/**
+ * Log-linear histogram (HDR-like), for latencies and sizes.
+ * <p>Each power of two is split in 2^precisionBits linear sub-buckets,
+ * so the bucket of a value is computed in constant time and the
+ * relative error is bounded to 1 / 2^precisionBits.
+ * Values below zero are recorded as zero.
+ * <p>The counters are striped, {@link #add(long)} never takes a lock.
+ * The stripes allocate only the pages of the buckets in use, so the extra
+ * memory of the stripes follows the range of the recorded values.
+ * The snapshots are mergeable, see {@link LogHistogramData#merge(LogHistogramData)}.
+ */
+public class ConcurrentLogHistogram implements TelemetryCollector {
+  public static final int DEFAULT_PRECISION_BITS = 5;
+
+  private final StripedLongArray counters;
+  private final int precisionBits;
+  private final int sumIndex;
+  private final int maxIndex;
+  private final int minIndex;
+
+  public ConcurrentLogHistogram() {
+    this(DEFAULT_PRECISION_BITS);
+  }
+
+  public ConcurrentLogHistogram(final int precisionBits) {
+    if (precisionBits < 1 || precisionBits > 10) {
+      throw new IllegalArgumentException("expected precision bits between 1 and 10, got " + precisionBits);
+    }
+    this.precisionBits = precisionBits;
+
+    // | buckets | sum | max | MAX_VALUE - min |
+    final int buckets = LogHistogramData.bucketCount(precisionBits);
+    this.sumIndex = buckets;
+    this.maxIndex = buckets + 1;
+    this.minIndex = buckets + 2;
+    this.counters = new StripedLongArray(buckets + 3);
+  }
+
+  public int getPrecisionBits() {
+    return precisionBits;
+  }
+
+  /**
+   * not atomic with respect to concurrent adds
+   */
+  public void clear() {
+    counters.clear(0, counters.length());
+  }
+
+  public void add(final long value) {
+    add(value, 1);
+  }
+
+  public void add(final long value, final long numEvents) {
+    final long v = Math.max(0, value);
+    counters.add(LogHistogramData.bucketIndex(precisionBits, v), numEvents);
+    counters.add(sumIndex, v * numEvents);
+    counters.max(maxIndex, v);
+    counters.max(minIndex, Long.MAX_VALUE - v);
+  }
+
+  @Override
+  public String getType() {
+    return "LOG_HISTOGRAM";
+  }
+
+  @Override
+  public LogHistogramData getSnapshot() {
+    final long[] buckets = new long[sumIndex];
+    counters.sum(0, buckets, buckets.length);
+    final long sum = counters.sum(sumIndex);
+    final long max = counters.max(maxIndex);
+    final long min = Long.MAX_VALUE - counters.max(minIndex);
+    return LogHistogramData.fromBuckets(precisionBits, buckets, sum, min, max);
+  }
+}
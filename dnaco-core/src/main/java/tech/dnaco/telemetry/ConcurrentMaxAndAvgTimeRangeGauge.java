@@ -21,15 +21,27 @@ import java.util.concurrent.TimeUnit;
 
 import tech.dnaco.time.TimeUtil;
 
-public class ConcurrentMaxAndAvgTimeRangeGauge extends MaxAndAvgTimeRangeGauge {
+/**
+ * Lock-free version of the {@link MaxAndAvgTimeRangeGauge}, with the same snapshot layout.
+ * <p>Each window keeps sum, count and max in a slot tagged with the window number,
+ * striped across the cpus for the last windows (see {@link ConcurrentTimeRangeCounter}).
+ */
+public class ConcurrentMaxAndAvgTimeRangeGauge implements TelemetryCollector {
+  private static final int FIELD_SUM = 0;
+  private static final int FIELD_COUNT = 1;
+  private static final int FIELD_MAX = 2;
+
+  private final ConcurrentTimeRangeRing ring;
+
   public ConcurrentMaxAndAvgTimeRangeGauge(final long maxInterval, final long window, final TimeUnit unit) {
-    super(maxInterval, window, unit);
+    final long windowMillis = unit.toMillis(window);
+    final int slots = (int) Math.ceil(unit.toMillis(maxInterval) / (float) windowMillis);
+    this.ring = new ConcurrentTimeRangeRing(slots, 3, windowMillis, FIELD_MAX);
+    this.clear(TimeUtil.currentUtcMillis());
   }
 
   public void clear(final long now) {
-    synchronized (this) {
-      super.clear(now);
-    }
+    ring.clear(now);
   }
 
   public void update(final long value) {
@@ -37,15 +49,33 @@ public class ConcurrentMaxAndAvgTimeRangeGauge extends MaxAndAvgTimeRangeGauge {
   }
 
   public void set(final long now, final long value) {
-    synchronized (this) {
-      super.set(TimeUtil.currentUtcMillis(), value);
-    }
+    final long epoch = ring.epoch(now);
+    ring.add(epoch, FIELD_SUM, value);
+    ring.add(epoch, FIELD_COUNT, 1);
+    ring.max(epoch, FIELD_MAX, value);
+  }
+
+  @Override
+  public String getType() {
+    return "MAX_AND_AVG_TIME_RANGE_GAUGE";
   }
 
   @Override
   public MaxAndAvgTimeRangeGaugeData getSnapshot() {
-    synchronized (this) {
-      return super.getSnapshot();
+    return getSnapshot(TimeUtil.currentUtcMillis());
+  }
+
+  public MaxAndAvgTimeRangeGaugeData getSnapshot(final long now) {
+    final long lastEpoch = ring.epoch(now);
+    final int slots = ring.slotCount(lastEpoch);
+    final long firstEpoch = lastEpoch - (slots - 1);
+    final long[] vMax = new long[slots];
+    final long[] vAvg = new long[slots];
+    for (int i = 0; i < slots; ++i) {
+      final long count = ring.sum(firstEpoch + i, FIELD_COUNT);
+      vAvg[i] = count > 0 ? ring.sum(firstEpoch + i, FIELD_SUM) / count : 0;
+      vMax[i] = ring.max(firstEpoch + i, FIELD_MAX);
     }
+    return new MaxAndAvgTimeRangeGaugeData(lastEpoch * ring.window(), ring.window(), vAvg, vMax);
   }
 }
@@ -21,56 +21,69 @@ import java.util.concurrent.TimeUnit;
 
 import tech.dnaco.time.TimeUtil;
 
-public class ConcurrentTimeRangeCounter extends TimeRangeCounter {
+/**
+ * Lock-free version of the {@link TimeRangeCounter}, with the same snapshot layout.
+ * <p>Each window has its own slot tagged with the window number, and the value of the
+ * last windows is striped across the cpus, so the writers don't contend on a monitor or on a single cell.
+ */
+public class ConcurrentTimeRangeCounter implements TelemetryCollector {
+  private final ConcurrentTimeRangeRing ring;
+
   public ConcurrentTimeRangeCounter(final long maxInterval, final long window, final TimeUnit unit) {
-    super(maxInterval, window, unit);
+    final long windowMillis = unit.toMillis(window);
+    final int slots = (int) Math.ceil(unit.toMillis(maxInterval) / (float) windowMillis);
+    this.ring = new ConcurrentTimeRangeRing(slots, 1, windowMillis);
+    this.clear(TimeUtil.currentUtcMillis());
   }
 
-  @Override
   public void clear(final long now) {
-    synchronized (this) {
-      super.clear(now);
-    }
+    ring.clear(now);
   }
 
-  @Override
   public long inc() {
     return add(TimeUtil.currentUtcMillis(), 1);
   }
 
-  @Override
   public long dec() {
     return add(TimeUtil.currentUtcMillis(), -1);
   }
 
-  @Override
   public long inc(final long amount) {
     return add(TimeUtil.currentUtcMillis(), amount);
   }
 
-  @Override
+  /**
+   * @return the partial value of the window, as seen by the stripe of the current thread
+   */
   public long add(final long now, final long delta) {
-    synchronized (this) {
-      return super.add(now, delta);
-    }
+    return ring.add(ring.epoch(now), 0, delta);
   }
 
-  @Override
   public void update(final long value) {
     update(TimeUtil.currentUtcMillis(), value);
   }
 
-  @Override
   public void update(final long now, final long value) {
-    synchronized (this) {
-      super.update(now, value);
-    }
+    ring.set(ring.epoch(now), 0, value);
+  }
+
+  @Override
+  public String getType() {
+    return "TIME_RANGE_COUNTER";
   }
 
   @Override
   public TimeRangeCounterData getSnapshot() {
-    synchronized (this) {
-      return super.getSnapshot();
+    return getSnapshot(TimeUtil.currentUtcMillis());
+  }
+
+  public TimeRangeCounterData getSnapshot(final long now) {
+    final long lastEpoch = ring.epoch(now);
+    final long[] data = new long[ring.slotCount(lastEpoch)];
+    final long firstEpoch = lastEpoch - (data.length - 1);
+    for (int i = 0; i < data.length; ++i) {
+      data[i] = ring.sum(firstEpoch + i, 0);
     }
+    return new TimeRangeCounterData(lastEpoch * ring.window(), ring.window(), data);
   }
 }
@@ -19,21 +19,53 @@ package tech.dnaco.telemetry;
 
 import java.util.concurrent.TimeUnit;
 
-public class ConcurrentTimeRangeGauge extends ConcurrentTimeRangeCounter {
+import tech.dnaco.time.TimeUtil;
+
+public class ConcurrentTimeRangeGauge extends TimeRangeGauge {
   public ConcurrentTimeRangeGauge(final long maxInterval, final long window, final TimeUnit unit) {
     super(maxInterval, window, unit);
   }
 
   @Override
-  protected long computeNewValue(final long newValue) {
-    return getPrevValue() + newValue;
+  public void clear(final long now) {
+    synchronized (this) {
+      super.clear(now);
+    }
+  }
+
+  @Override
+  public long inc() {
+    return add(TimeUtil.currentUtcMillis(), 1);
   }
 
   @Override
-  protected void injectZeros(final long now) {
-    injectZeros(now, true);
+  public long dec() {
+    return add(TimeUtil.currentUtcMillis(), -1);
   }
 
+  @Override
+  public long inc(final long amount) {
+    return add(TimeUtil.currentUtcMillis(), amount);
+  }
+
+  @Override
+  public long add(final long now, final long delta) {
+    synchronized (this) {
+      return super.add(now, delta);
+    }
+  }
+
+  @Override
+  public void update(final long value) {
+    update(TimeUtil.currentUtcMillis(), value);
+  }
+
+  @Override
+  public void update(final long now, final long value) {
+    synchronized (this) {
+      super.update(now, value);
+    }
+  }
 
   @Override
   public TimeRangeCounterData getSnapshot() {
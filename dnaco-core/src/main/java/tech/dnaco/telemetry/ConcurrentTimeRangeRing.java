@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring of time slots shared by the concurrent time-range collectors.
+ * <p>Each slot is tagged with the absolute window number (now / window) it holds.
+ * A writer that finds an older tag takes the slot with a CAS on the tag, zeroes it
+ * and publishes the new tag, so there is no lock and a late update for the previous
+ * window still lands in its own slot.
+ * <p>Only the last windows are written concurrently: they are kept in a few hot slots
+ * striped in a {@link StripedLongArray}. When a hot slot is reused by a new window,
+ * its stripes are folded into the unstriped history of the ring, so the memory
+ * of the stripes doesn't grow with the number of slots.
+ */
+final class ConcurrentTimeRangeRing {
+  private static final long EMPTY_SLOT = Long.MIN_VALUE;
+  private static final long ROTATING_SLOT = -1;
+  // the current window, and the previous one receiving the late updates
+  private static final int HOT_SLOTS = 2;
+
+  private final AtomicLongArray epochs;
+  private final AtomicLongArray history;
+  private final AtomicLongArray hotEpochs;
+  private final StripedLongArray hotCells;
+  private final boolean[] maxFields;
+  private final int fieldsPerSlot;
+  private final long window;
+
+  private volatile long firstEpoch;
+
+  /**
+   * @param maxFields the fields updated with {@link #max(long, int, long)}, the others are summed
+   */
+  ConcurrentTimeRangeRing(final int slots, final int fieldsPerSlot, final long window, final int... maxFields) {
+    this.epochs = new AtomicLongArray(slots);
+    this.history = new AtomicLongArray(slots * fieldsPerSlot);
+    this.hotEpochs = new AtomicLongArray(HOT_SLOTS);
+    this.hotCells = new StripedLongArray(HOT_SLOTS * fieldsPerSlot);
+    this.maxFields = new boolean[fieldsPerSlot];
+    for (final int field: maxFields) {
+      this.maxFields[field] = true;
+    }
+    this.fieldsPerSlot = fieldsPerSlot;
+    this.window = window;
+  }
+
+  long window() {
+    return window;
+  }
+
+  int slots() {
+    return epochs.length();
+  }
+
+  long epoch(final long now) {
+    return now / window;
+  }
+
+  long firstEpoch() {
+    return firstEpoch;
+  }
+
+  /**
+   * not atomic with respect to concurrent updates
+   */
+  void clear(final long now) {
+    this.firstEpoch = epoch(now);
+    for (int i = 0, n = epochs.length(); i < n; ++i) {
+      epochs.set(i, EMPTY_SLOT);
+    }
+    for (int i = 0; i < HOT_SLOTS; ++i) {
+      hotEpochs.set(i, EMPTY_SLOT);
+    }
+    for (int i = 0, n = history.length(); i < n; ++i) {
+      history.set(i, 0);
+    }
+    hotCells.clear(0, hotCells.length());
+  }
+
+  // ================================================================================
+  //  Writer related
+  // ================================================================================
+  /**
+   * @return the value of the cell: in the stripe of the current thread if the window is hot,
+   *         0 if the slot was already reused by a newer epoch
+   */
+  long add(final long epoch, final int field, final long delta) {
+    final int hotOffset = acquireHotSlot(epoch);
+    if (hotOffset >= 0) return hotCells.add(hotOffset + field, delta);
+
+    final int offset = acquireSlot(epoch);
+    return offset < 0 ? 0 : history.addAndGet(offset + field, delta);
+  }
+
+  void max(final long epoch, final int field, final long value) {
+    final int hotOffset = acquireHotSlot(epoch);
+    if (hotOffset >= 0) {
+      hotCells.max(hotOffset + field, value);
+      return;
+    }
+
+    final int offset = acquireSlot(epoch);
+    if (offset >= 0) history.accumulateAndGet(offset + field, value, Math::max);
+  }
+
+  /**
+   * replace the slot value. not atomic with respect to concurrent adds.
+   */
+  void set(final long epoch, final int field, final long value) {
+    final int hotOffset = acquireHotSlot(epoch);
+    if (hotOffset >= 0) {
+      hotCells.set(hotOffset + field, value);
+      return;
+    }
+
+    final int offset = acquireSlot(epoch);
+    if (offset >= 0) history.set(offset + field, value);
+  }
+
+  /**
+   * @return the offset of the hot slot holding the epoch, or -1 if the epoch is older than the hot slot
+   */
+  private int acquireHotSlot(final long epoch) {
+    final int index = (int) (epoch % HOT_SLOTS);
+    while (true) {
+      final long tag = hotEpochs.get(index);
+      if (tag == epoch) return index * fieldsPerSlot;
+
+      if (tag == ROTATING_SLOT) {
+        Thread.onSpinWait();
+      } else if (tag > epoch) {
+        return -1;
+      } else if (hotEpochs.compareAndSet(index, tag, ROTATING_SLOT)) {
+        final int offset = index * fieldsPerSlot;
+        if (tag != EMPTY_SLOT) foldHotSlot(offset, tag);
+        hotCells.clear(offset, fieldsPerSlot);
+        acquireSlot(epoch);
+        hotEpochs.set(index, epoch);
+        return offset;
+      }
+    }
+  }
+
+  /**
+   * move the values of the hot slot to the history, if the epoch is still in the ring.
+   * an update racing with the fold (a writer that saw the old tag just before the rotation) may be lost.
+   */
+  private void foldHotSlot(final int hotOffset, final long epoch) {
+    final int slot = Math.toIntExact(epoch % epochs.length());
+    if (epochs.get(slot) != epoch) return;
+
+    final int offset = slot * fieldsPerSlot;
+    for (int field = 0; field < fieldsPerSlot; ++field) {
+      if (maxFields[field]) {
+        history.accumulateAndGet(offset + field, hotCells.max(hotOffset + field), Math::max);
+      } else {
+        history.addAndGet(offset + field, hotCells.sum(hotOffset + field));
+      }
+    }
+  }
+
+  /**
+   * @return the offset of the history slot holding the epoch, or -1 if the slot was already reused by a newer epoch
+   */
+  private int acquireSlot(final long epoch) {
+    final int slot = Math.toIntExact(epoch % epochs.length());
+    while (true) {
+      final long tag = epochs.get(slot);
+      if (tag == epoch) return slot * fieldsPerSlot;
+
+      if (tag == ROTATING_SLOT) {
+        Thread.onSpinWait();
+      } else if (tag > epoch) {
+        return -1;
+      } else if (epochs.compareAndSet(slot, tag, ROTATING_SLOT)) {
+        final int offset = slot * fieldsPerSlot;
+        for (int i = 0; i < fieldsPerSlot; ++i) {
+          history.set(offset + i, 0);
+        }
+        epochs.set(slot, epoch);
+        return offset;
+      }
+    }
+  }
+
+  // ================================================================================
+  //  Reader related
+  // ================================================================================
+  long sum(final long epoch, final int field) {
+    final int slot = Math.toIntExact(epoch % epochs.length());
+    if (epochs.get(slot) != epoch) return 0;
+
+    final int hotIndex = (int) (epoch % HOT_SLOTS);
+    if (hotEpochs.get(hotIndex) == epoch) {
+      return hotCells.sum(hotIndex * fieldsPerSlot + field);
+    }
+    return history.get(slot * fieldsPerSlot + field);
+  }
+
+  long max(final long epoch, final int field) {
+    final int slot = Math.toIntExact(epoch % epochs.length());
+    if (epochs.get(slot) != epoch) return 0;
+
+    final int hotIndex = (int) (epoch % HOT_SLOTS);
+    if (hotEpochs.get(hotIndex) == epoch) {
+      return hotCells.max(hotIndex * fieldsPerSlot + field);
+    }
+    return history.get(slot * fieldsPerSlot + field);
+  }
+
+  /**
+   * @return the number of slots between the first epoch and the epoch, capped to the ring size
+   */
+  int slotCount(final long lastEpoch) {
+    return (int) Math.max(1, Math.min(lastEpoch - firstEpoch + 1, epochs.length()));
+  }
+}
@@ -17,31 +17,152 @@
 
 package tech.dnaco.telemetry;
 
+import java.time.Duration;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import tech.dnaco.telemetry.TopK.TopType;
 import tech.dnaco.tracing.TraceId;
+import tech.dnaco.tracing.Tracer;
+
+/**
+ * Concurrent version of the {@link TopK}.
+ * <p>Each thread updates its own TopK sketch without taking any lock.
+ * {@link #getSnapshot()} swaps every thread sketch with an empty one,
+ * merges the sketches into an aggregated TopK and recycles them.
+ * Memory is bounded to 2k entries per thread sketch, plus the aggregated TopK.
+ */
+public class ConcurrentTopK implements TelemetryCollector {
+  private final CopyOnWriteArrayList<ThreadTopK> threadSketches = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<ThreadTopK> localSketch = new ThreadLocal<>();
+  private final Duration duration;
+  private final TopType type;
+  private final int k;
+
+  // guarded by this
+  private final TopK merged;
 
-public class ConcurrentTopK extends TopK {
   public ConcurrentTopK(final TopType type, final int k) {
-    super(type, k);
+    this(type, k, Duration.ofHours(1));
+  }
+
+  public ConcurrentTopK(final TopType type, final int k, final Duration duration) {
+    this.type = type;
+    this.k = k;
+    this.duration = duration;
+    this.merged = new TopK(type, k, duration);
+  }
+
+  public void add(final String key, final long value) {
+    add(key, key.length(), value, Tracer.getCurrentTraceId());
   }
 
-  @Override
   public void add(final String key, final long value, final TraceId traceId) {
-    synchronized (this) {
-      super.add(key, value, traceId);
+    add(key, key.length(), value, traceId);
+  }
+
+  /**
+   * Add the key prefix [0, keyLength), without allocating the substring
+   * unless the key is not already in the current thread sketch.
+   */
+  public void add(final String key, final int keyLength, final long value) {
+    add(key, keyLength, value, Tracer.getCurrentTraceId());
+  }
+
+  public void add(final String key, final int keyLength, final long value, final TraceId traceId) {
+    ThreadTopK sketch = localSketch.get();
+    if (sketch == null) {
+      sketch = new ThreadTopK(Thread.currentThread(), newSketch(), newSketch());
+      localSketch.set(sketch);
+      threadSketches.add(sketch);
     }
+    sketch.add(key, keyLength, value, traceId);
   }
 
-  @Override
   public void clear() {
     synchronized (this) {
-      super.clear();
+      final TopK discarded = newSketch();
+      drainSketches(discarded);
+      merged.clear();
     }
   }
 
+  @Override
+  public String getType() {
+    return "TOP_K";
+  }
+
   @Override
   public TopKData getSnapshot() {
     synchronized (this) {
-      return super.getSnapshot();
+      drainSketches(merged);
+      return merged.getSnapshot();
+    }
+  }
+
+  private TopK newSketch() {
+    return new TopK(type, k, duration);
+  }
+
+  private void drainSketches(final TopK target) {
+    for (final ThreadTopK sketch: threadSketches) {
+      sketch.drain(target);
+      if (!sketch.isAlive()) {
+        // the thread is dead, nothing can be added after the drain
+        threadSketches.remove(sketch);
+      }
+    }
+  }
+
+  private static final class ThreadTopK {
+    private final AtomicReference<TopK> active;
+    // odd while the owner thread is adding, even otherwise
+    private final AtomicLong writeSeq = new AtomicLong();
+    private final Thread thread;
+
+    // owned by the snapshot
+    private TopK standby;
+
+    private ThreadTopK(final Thread thread, final TopK active, final TopK standby) {
+      this.thread = thread;
+      this.active = new AtomicReference<>(active);
+      this.standby = standby;
+    }
+
+    private boolean isAlive() {
+      return thread.isAlive();
+    }
+
+    private void add(final String key, final int keyLength, final long value, final TraceId traceId) {
+      final long seq = writeSeq.get();
+      writeSeq.set(seq + 1);
+      try {
+        active.get().add(key, keyLength, value, traceId);
+      } finally {
+        writeSeq.set(seq + 2);
+      }
+    }
+
+    private void drain(final TopK target) {
+      final TopK sketch = active.getAndSet(standby);
+
+      // the owner may have picked the sketch just before the swap,
+      // wait for the in-flight add() to complete before reading it.
+      final long inflightSeq = writeSeq.get();
+      if ((inflightSeq & 1) != 0) {
+        for (int spins = 0; writeSeq.get() == inflightSeq; ++spins) {
+          if (spins < 128) {
+            Thread.onSpinWait();
+          } else {
+            Thread.yield();
+          }
+        }
+      }
+
+      target.merge(sketch);
+      sketch.clear();
+      this.standby = sketch;
     }
   }
 }
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+import tech.dnaco.strings.HumansUtil;
+import tech.dnaco.strings.HumansUtil.HumanLongValueConverter;
+import tech.dnaco.strings.StringUtil;
+import tech.dnaco.util.Serialization.SerializeWithSnakeCase;
+
+/**
+ * Snapshot of a {@link ConcurrentLogHistogram}.
+ * <p>Only the non-empty buckets are kept, as (bucket index, events) pairs.
+ * The percentiles are the upper bound of the bucket containing the rank,
+ * capped to the max value.
+ */
+@SerializeWithSnakeCase
+public class LogHistogramData implements TelemetryCollectorData {
+  public static final LogHistogramData EMPTY = new LogHistogramData(ConcurrentLogHistogram.DEFAULT_PRECISION_BITS,
+    new int[0], new long[0], 0, 0, 0);
+
+  private final int precisionBits;
+  private final int[] buckets;
+  private final long[] events;
+  private final long count;
+  private final long sum;
+  private final long min;
+  private final long max;
+  private final long p50;
+  private final long p90;
+  private final long p99;
+  private final long p999;
+
+  public LogHistogramData(final int precisionBits, final int[] buckets, final long[] events,
+      final long sum, final long min, final long max) {
+    this.precisionBits = precisionBits;
+    this.buckets = buckets;
+    this.events = events;
+    this.count = Statistics.sum(events, 0, events.length);
+    this.sum = sum;
+    this.min = min;
+    this.max = max;
+    this.p50 = computePercentile(50);
+    this.p90 = computePercentile(90);
+    this.p99 = computePercentile(99);
+    this.p999 = computePercentile(99.9);
+  }
+
+  static LogHistogramData fromBuckets(final int precisionBits, final long[] bucketEvents,
+      final long sum, final long min, final long max) {
+    int nonEmpty = 0;
+    for (int i = 0; i < bucketEvents.length; ++i) {
+      if (bucketEvents[i] != 0) nonEmpty++;
+    }
+    if (nonEmpty == 0) return EMPTY;
+
+    final int[] buckets = new int[nonEmpty];
+    final long[] events = new long[nonEmpty];
+    for (int i = 0, index = 0; i < bucketEvents.length; ++i) {
+      if (bucketEvents[i] != 0) {
+        buckets[index] = i;
+        events[index++] = bucketEvents[i];
+      }
+    }
+    return new LogHistogramData(precisionBits, buckets, events, sum, min, max);
+  }
+
+  // ================================================================================
+  //  Bucket index related
+  // ================================================================================
+  static int bucketCount(final int precisionBits) {
+    return (64 - precisionBits) << precisionBits;
+  }
+
+  static int bucketIndex(final int precisionBits, final long value) {
+    final long subBuckets = 1L << precisionBits;
+    if (value < subBuckets) return (int) value;
+
+    final int shift = (63 - Long.numberOfLeadingZeros(value)) - precisionBits;
+    return (int) (((shift + 1L) << precisionBits) + ((value >>> shift) - subBuckets));
+  }
+
+  static long bucketLowerBound(final int precisionBits, final int index) {
+    final int subBuckets = 1 << precisionBits;
+    if (index < subBuckets) return index;
+
+    final int shift = (index >>> precisionBits) - 1;
+    return (long) (subBuckets + (index & (subBuckets - 1))) << shift;
+  }
+
+  static long bucketUpperBound(final int precisionBits, final int index) {
+    return (index + 1) < bucketCount(precisionBits) ? bucketLowerBound(precisionBits, index + 1) - 1 : Long.MAX_VALUE;
+  }
+
+  // ================================================================================
+  //  Getters
+  // ================================================================================
+  public int getPrecisionBits() {
+    return precisionBits;
+  }
+
+  public int[] getBuckets() {
+    return buckets;
+  }
+
+  public long[] getEvents() {
+    return events;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getSum() {
+    return sum;
+  }
+
+  public long getMin() {
+    return min;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public long getP50() {
+    return p50;
+  }
+
+  public long getP90() {
+    return p90;
+  }
+
+  public long getP99() {
+    return p99;
+  }
+
+  public long getP999() {
+    return p999;
+  }
+
+  public double mean() {
+    return count > 0 ? (double) sum / count : 0;
+  }
+
+  public long percentile(final double p) {
+    return computePercentile(p);
+  }
+
+  private long computePercentile(final double p) {
+    if (count == 0) return 0;
+
+    final long rank = Math.max(1, (long) Math.ceil(count * (p / 100.0)));
+    long cumulative = 0;
+    for (int i = 0; i < buckets.length; ++i) {
+      cumulative += events[i];
+      if (cumulative >= rank) {
+        final long value = bucketUpperBound(precisionBits, buckets[i]);
+        return Math.max(min, Math.min(value, max));
+      }
+    }
+    return max;
+  }
+
+  // ================================================================================
+  //  Merge related
+  // ================================================================================
+  /**
+   * @return a new snapshot with the events of both snapshots
+   */
+  public LogHistogramData merge(final LogHistogramData other) {
+    if (other.count == 0) return this;
+    if (this.count == 0) return other;
+    if (other.precisionBits != precisionBits) {
+      throw new IllegalArgumentException("expected precision bits " + precisionBits + ", got " + other.precisionBits);
+    }
+
+    final int[] mergedBuckets = new int[buckets.length + other.buckets.length];
+    final long[] mergedEvents = new long[mergedBuckets.length];
+    int a = 0;
+    int b = 0;
+    int n = 0;
+    while (a < buckets.length || b < other.buckets.length) {
+      final int bucketA = a < buckets.length ? buckets[a] : Integer.MAX_VALUE;
+      final int bucketB = b < other.buckets.length ? other.buckets[b] : Integer.MAX_VALUE;
+      if (bucketA == bucketB) {
+        mergedBuckets[n] = bucketA;
+        mergedEvents[n++] = events[a++] + other.events[b++];
+      } else if (bucketA < bucketB) {
+        mergedBuckets[n] = bucketA;
+        mergedEvents[n++] = events[a++];
+      } else {
+        mergedBuckets[n] = bucketB;
+        mergedEvents[n++] = other.events[b++];
+      }
+    }
+
+    final int[] resultBuckets = new int[n];
+    final long[] resultEvents = new long[n];
+    System.arraycopy(mergedBuckets, 0, resultBuckets, 0, n);
+    System.arraycopy(mergedEvents, 0, resultEvents, 0, n);
+    return new LogHistogramData(precisionBits, resultBuckets, resultEvents,
+      sum + other.sum, Math.min(min, other.min), Math.max(max, other.max));
+  }
+
+  @Override
+  public StringBuilder toHumanReport(final StringBuilder report, final HumanLongValueConverter humanConverter) {
+    if (count == 0) return report.append("(no data)\n");
+
+    report.append("Count: ").append(HumansUtil.humanCount(count));
+    report.append(" Min: ").append(humanConverter.toHuman(min));
+    report.append(" Mean: ").append(humanConverter.toHuman(Math.round(mean())));
+    report.append(" Max: ").append(humanConverter.toHuman(max));
+    report.append('\n');
+    report.append("Percentiles: P50: ").append(humanConverter.toHuman(p50));
+    report.append(" P90: ").append(humanConverter.toHuman(p90));
+    report.append(" P99: ").append(humanConverter.toHuman(p99));
+    report.append(" P99.9: ").append(humanConverter.toHuman(p999));
+    report.append("\n--------------------------------------------------------------------------------\n");
+
+    final double mult = 100.0 / count;
+    long cumulativeSum = 0;
+    for (int i = 0; i < buckets.length; ++i) {
+      final long bucketValue = events[i];
+      cumulativeSum += bucketValue;
+      report.append(String.format("[%15s, %15s] %7s %7.3f%% %7.3f%% ",
+          humanConverter.toHuman(Math.max(min, bucketLowerBound(precisionBits, buckets[i]))),
+          humanConverter.toHuman(Math.min(max, bucketUpperBound(precisionBits, buckets[i]))),
+          HumansUtil.humanCount(bucketValue),
+          (mult * bucketValue),
+          (mult * cumulativeSum)));
+
+      // Add hash marks based on percentage
+      final long marks = Math.round(mult * bucketValue / 5 + 0.5);
+      StringUtil.append(report, '#', marks);
+      report.append('\n');
+    }
+    return report;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import tech.dnaco.util.BitUtil;
+
+/**
+ * Array of counters striped LongAdder-style, used by the concurrent collectors.
+ * <p>The array starts with one stripe, and a new one is added each time a CAS
+ * on a cell fails, up to the number of cpus. The writers update the stripe
+ * of the current thread, the readers sum (or max) the stripes.
+ * <p>The cells of a stripe are allocated lazily in pages, on the first update,
+ * so a sparse array (e.g. the buckets of a histogram) pays only for the pages in use.
+ */
+final class StripedLongArray {
+  private static final int MAX_STRIPES = BitUtil.nextPow2(Runtime.getRuntime().availableProcessors());
+  private static final int PAGE_SHIFT = 4;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  private final int length;
+  private volatile Stripe[] stripes;
+
+  StripedLongArray(final int length) {
+    this.length = length;
+    this.stripes = new Stripe[] { new Stripe(length) };
+  }
+
+  int length() {
+    return length;
+  }
+
+  int stripeCount() {
+    return stripes.length;
+  }
+
+  /**
+   * @return the number of pages allocated by all the stripes
+   */
+  int pageCount() {
+    int count = 0;
+    for (final Stripe stripe: stripes) {
+      for (int i = 0, n = stripe.pages.length(); i < n; ++i) {
+        if (stripe.pages.get(i) != null) count++;
+      }
+    }
+    return count;
+  }
+
+  private static final class Stripe {
+    private final AtomicReferenceArray<AtomicLongArray> pages;
+
+    private Stripe(final int length) {
+      this.pages = new AtomicReferenceArray<>((length + PAGE_MASK) >>> PAGE_SHIFT);
+    }
+
+    private AtomicLongArray page(final int index) {
+      final int pageIndex = index >>> PAGE_SHIFT;
+      final AtomicLongArray page = pages.get(pageIndex);
+      if (page != null) return page;
+
+      final AtomicLongArray newPage = new AtomicLongArray(PAGE_SIZE);
+      return pages.compareAndSet(pageIndex, null, newPage) ? newPage : pages.get(pageIndex);
+    }
+
+    private long get(final int index) {
+      final AtomicLongArray page = pages.get(index >>> PAGE_SHIFT);
+      return page != null ? page.get(index & PAGE_MASK) : 0;
+    }
+
+    private void clear(final int index) {
+      final AtomicLongArray page = pages.get(index >>> PAGE_SHIFT);
+      if (page != null) page.set(index & PAGE_MASK, 0);
+    }
+  }
+
+  // ================================================================================
+  //  Writer related
+  // ================================================================================
+  /**
+   * @return the value of the cell in the stripe of the current thread
+   */
+  long add(final int index, final long delta) {
+    final Stripe[] cells = stripes;
+    final AtomicLongArray page = cells[stripeIndex(cells.length)].page(index);
+    final int offset = index & PAGE_MASK;
+    final long value = page.get(offset);
+    if (page.compareAndSet(offset, value, value + delta)) {
+      return value + delta;
+    }
+    grow(cells);
+    return page.addAndGet(offset, delta);
+  }
+
+  void max(final int index, final long value) {
+    final Stripe[] cells = stripes;
+    final AtomicLongArray page = cells[stripeIndex(cells.length)].page(index);
+    final int offset = index & PAGE_MASK;
+    for (boolean contended = false; ; contended = true) {
+      final long current = page.get(offset);
+      if (current >= value || page.compareAndSet(offset, current, value)) break;
+      if (!contended) grow(cells);
+    }
+  }
+
+  /**
+   * replace the value of the cell. not atomic with respect to concurrent adds.
+   */
+  void set(final int index, final long value) {
+    final Stripe[] cells = stripes;
+    cells[0].page(index).set(index & PAGE_MASK, value);
+    for (int i = 1; i < cells.length; ++i) {
+      cells[i].clear(index);
+    }
+  }
+
+  /**
+   * zero the cells [index, index + count). not atomic with respect to concurrent adds.
+   */
+  void clear(final int index, final int count) {
+    for (final Stripe stripe: stripes) {
+      for (int i = 0; i < count; ++i) {
+        stripe.clear(index + i);
+      }
+    }
+  }
+
+  private static int stripeIndex(final int stripeCount) {
+    long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    h ^= (h >>> 32);
+    return (int) h & (stripeCount - 1);
+  }
+
+  private void grow(final Stripe[] cells) {
+    if (cells.length >= MAX_STRIPES) return;
+
+    synchronized (this) {
+      if (stripes != cells) return;
+
+      final Stripe[] newStripes = Arrays.copyOf(cells, cells.length << 1);
+      for (int i = cells.length; i < newStripes.length; ++i) {
+        newStripes[i] = new Stripe(length);
+      }
+      this.stripes = newStripes;
+    }
+  }
+
+  // ================================================================================
+  //  Reader related
+  // ================================================================================
+  long sum(final int index) {
+    long sum = 0;
+    for (final Stripe stripe: stripes) {
+      sum += stripe.get(index);
+    }
+    return sum;
+  }
+
+  long max(final int index) {
+    long max = 0;
+    for (final Stripe stripe: stripes) {
+      max = Math.max(max, stripe.get(index));
+    }
+    return max;
+  }
+
+  /**
+   * sum the cells [index, index + count) of every stripe into the target array
+   */
+  void sum(final int index, final long[] target, final int count) {
+    for (final Stripe stripe: stripes) {
+      for (int i = 0; i < count; ++i) {
+        target[i] += stripe.get(index + i);
+      }
+    }
+  }
+}
@@ -19,7 +19,7 @@ package tech.dnaco.telemetry;
 
 public class TelemetryCollectorExport {
   public enum TelemetryCollectorType {
-    HISTOGRAM, TIME_RANGE_COUNTER, MAX_AND_AVG_TIME_RANGE_GAUGE, TOP_K, COUNTER_MAP, GAUGE,
+    HISTOGRAM, LOG_HISTOGRAM, TIME_RANGE_COUNTER, MAX_AND_AVG_TIME_RANGE_GAUGE, TOP_K, COUNTER_MAP, GAUGE,
     JVM_METRICS, JVM_THREADS,
   }
 
@@ -21,7 +21,6 @@ import java.time.Duration;
 import java.util.Arrays;
 import java.util.Comparator;
 
-import tech.dnaco.strings.StringUtil;
 import tech.dnaco.telemetry.TopKData.TopEntry;
 import tech.dnaco.time.TimeUtil;
 import tech.dnaco.tracing.TraceId;
@@ -63,22 +62,43 @@ public class TopK implements TelemetryCollector {
   }
 
   public void add(final String key, final long value, final TraceId traceId) {
-    final int keyHash = hash(key);
-    final int entryIndex = findEntry(key, keyHash);
+    add(key, key.length(), value, traceId);
+  }
+
+  /**
+   * Add the key prefix [0, keyLength), the substring is allocated only when a new entry is created.
+   */
+  public void add(final String key, final int keyLength, final long value, final TraceId traceId) {
+    final int keyHash = hash(key, keyLength);
+    final int entryIndex = findEntry(key, keyLength, keyHash);
     final MinMaxEntry entry;
     if (entryIndex >= 0) {
       entry = entries[entryIndex];
     } else {
-      entry = addNewEntry(key, keyHash);
+      entry = addNewEntry(keyLength == key.length() ? key : key.substring(0, keyLength), keyHash);
     }
     entry.add(value, traceId);
   }
 
-  private int findEntry(final String key, final int keyHash) {
+  /**
+   * Merge the entries of the other TopK into this one.
+   */
+  void merge(final TopK other) {
+    for (int i = 0; i < other.entryCount; ++i) {
+      final MinMaxEntry otherEntry = other.entries[i];
+      if (otherEntry.freq == 0) continue;
+
+      final int entryIndex = findEntry(otherEntry.key, otherEntry.key.length(), otherEntry.keyHash);
+      final MinMaxEntry entry = entryIndex >= 0 ? entries[entryIndex] : addNewEntry(otherEntry.key, otherEntry.keyHash);
+      entry.merge(otherEntry);
+    }
+  }
+
+  private int findEntry(final String key, final int keyLength, final int keyHash) {
     int index = buckets[keyHash & (buckets.length - 1)];
     while (index >= 0) {
       final MinMaxEntry entry = entries[index];
-      if (entry.keyHash == keyHash && StringUtil.equals(entry.key, key)) {
+      if (entry.keyHash == keyHash && entry.key.length() == keyLength && entry.key.regionMatches(0, key, 0, keyLength)) {
         return index;
       }
       index = entry.next;
@@ -124,8 +144,18 @@ public class TopK implements TelemetryCollector {
     }
   }
 
-  private static int hash(final String key) {
-    int h = key.hashCode() & 0x7fffffff;
+  private static int hash(final String key, final int keyLength) {
+    int h;
+    if (keyLength == key.length()) {
+      h = key.hashCode();
+    } else {
+      // same as String.hashCode() on the prefix
+      h = 0;
+      for (int i = 0; i < keyLength; ++i) {
+        h = 31 * h + key.charAt(i);
+      }
+    }
+    h &= 0x7fffffff;
     h = ((h >>> 16) ^ h) * 0x45d9f3b;
     h = ((h >>> 16) ^ h) * 0x45d9f3b;
     h = (h >>> 16) ^ h;
@@ -151,7 +181,7 @@ public class TopK implements TelemetryCollector {
       if (entry.traceIdIndex > 0) {
         traceIds = new String[(int) Math.min(entry.traceIds.length, entry.traceIdIndex)];
         for (int k = 0; k < traceIds.length; ++k) {
-          traceIds[k] = entry.traceIds[(int)((entry.traceIdIndex - (k + 1)) % traceIds.length)];
+          traceIds[k] = entry.traceIds[(int)((entry.traceIdIndex - (k + 1)) % traceIds.length)].toString();
         }
       } else {
         traceIds = null;
@@ -186,7 +216,8 @@ public class TopK implements TelemetryCollector {
     private long vSum = 0;
     private long freq = 0;
 
-    private final String[] traceIds = new String[4];
+    // converted to string only when the snapshot is taken
+    private final TraceId[] traceIds = new TraceId[4];
     private long traceIdIndex = 0;
 
     private MinMaxEntry(final String key, final int keyHash) {
@@ -223,9 +254,26 @@ public class TopK implements TelemetryCollector {
       freq++;
     }
 
+    private void merge(final MinMaxEntry other) {
+      if (other.vMax >= vMax) {
+        vMax = other.vMax;
+        maxTs = other.maxTs;
+      }
+      lastTs = Math.max(lastTs, other.lastTs);
+      vMin = Math.min(vMin, other.vMin);
+      vSum += other.vSum;
+      freq += other.freq;
+
+      // oldest first, so the most recent trace ids of the other entry are kept
+      final long count = Math.min(other.traceIdIndex, other.traceIds.length);
+      for (long i = other.traceIdIndex - count; i < other.traceIdIndex; ++i) {
+        addTraceId(other.traceIds[(int) (i & (other.traceIds.length - 1))]);
+      }
+    }
+
     private void addTraceId(final TraceId traceId) {
       if (traceId != null) {
-        traceIds[(int)(traceIdIndex++ & (traceIds.length - 1))] = traceId.toString();
+        traceIds[(int)(traceIdIndex++ & (traceIds.length - 1))] = traceId;
       }
     }
   }
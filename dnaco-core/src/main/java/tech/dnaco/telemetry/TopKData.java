@@ -36,6 +36,10 @@ public class TopKData implements TelemetryCollectorData {
     this.entries = entries;
   }
 
+  TopEntry[] getEntries() {
+    return entries;
+  }
+
   private boolean hasTraceIds() {
     for (int i = 0, n = ArrayUtil.length(entries); i < n; ++i) {
       if (ArrayUtil.isNotEmpty(entries[i].traceIds)) {
@@ -95,5 +99,17 @@ public class TopKData implements TelemetryCollectorData {
       this.ts = ts;
       this.traceIds = traceIds;
     }
+
+    String getKey() {
+      return key;
+    }
+
+    long getFrequency() {
+      return freq;
+    }
+
+    long getMaxValue() {
+      return max;
+    }
   }
 }
@@ -35,7 +35,6 @@ import tech.dnaco.strings.StringUtil;
 import tech.dnaco.telemetry.ConcurrentTopK;
 import tech.dnaco.telemetry.CounterMap;
 import tech.dnaco.telemetry.TelemetryCollector;
-import tech.dnaco.telemetry.TopK;
 import tech.dnaco.telemetry.TopK.TopType;
 
 public final class TaskMonitor {
@@ -57,7 +56,7 @@ public final class TaskMonitor {
     .setLabel("Tenant CPU Time")
     .register(new CounterMap());
 
-  private final TopK topSlow = new TelemetryCollector.Builder()
+  private final ConcurrentTopK topSlow = new TelemetryCollector.Builder()
     .setUnit(HumansUtil.HUMAN_TIME_NANOS)
     .setName("slow_scripts_blocking_everyone")
     .setLabel("Slow Scripts Blocking Everyone")
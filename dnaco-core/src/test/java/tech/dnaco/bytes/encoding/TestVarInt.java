@@ -31,6 +31,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import tech.dnaco.collections.LongValue;
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
 
 public class TestVarInt {
   private static class TestRand {
@@ -89,6 +90,30 @@ public class TestVarInt {
     }
   }
 
+  @Test
+  public void testAppenderWrite() {
+    final long[] values = new long[] {
+      0, 240, 241, 2287, 2288, 67823, 67824, (1L << 24) - 1,
+      (1L << 24), (1L << 31), (1L << 32) - 1, (1L << 32),
+      (1L << 40), (1L << 48), (1L << 56), Long.MAX_VALUE, -1, Long.MIN_VALUE,
+    };
+
+    for (int i = 0; i < values.length; ++i) {
+      final long v = values[i];
+
+      final byte[] buf = new byte[16];
+      final int wr = VarInt.write(buf, v);
+
+      final PagedByteArray appender = new PagedByteArray(16);
+      Assertions.assertEquals(wr, VarInt.write(appender, v));
+      Assertions.assertArrayEquals(Arrays.copyOf(buf, wr), appender.toByteArray());
+
+      final LongValue result = new LongValue();
+      Assertions.assertEquals(wr, VarInt.read(appender.toByteArray(), 0, wr, result));
+      Assertions.assertEquals(v, result.get());
+    }
+  }
+
   private static void testEncodeDecode(final int count, final LongSupplier rand) {
     final LongValue y = new LongValue();
     long px = 0;
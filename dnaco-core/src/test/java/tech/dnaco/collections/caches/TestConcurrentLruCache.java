@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.collections.caches;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tech.dnaco.collections.caches.LruCache.LruCacheStats;
+import tech.dnaco.threading.ThreadUtil;
+
+public class TestConcurrentLruCache {
+  @Test
+  public void testCrud() {
+    final ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<>(16, 64);
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertNull(cache.get("k0"));
+
+    Assertions.assertNull(cache.put("k0", "v0"));
+    Assertions.assertEquals("v0", cache.put("k0", "v1"));
+    Assertions.assertEquals("v1", cache.get("k0"));
+    Assertions.assertEquals("v1", cache.computeIfAbsent("k0", k -> "v2"));
+    Assertions.assertEquals("v3", cache.computeIfAbsent("k1", k -> "v3"));
+    Assertions.assertEquals(2, cache.size());
+
+    Assertions.assertEquals("v1", cache.evict("k0"));
+    Assertions.assertNull(cache.get("k0"));
+    Assertions.assertEquals(1, cache.size());
+
+    cache.clear();
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertNull(cache.get("k1"));
+
+    final LruCacheStats stats = cache.getStats();
+    Assertions.assertEquals(2, stats.getCacheHit());
+    Assertions.assertEquals(4, stats.getCacheMiss());
+    Assertions.assertEquals(0, stats.getCacheExpired());
+  }
+
+  @Test
+  public void testEviction() {
+    final ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<>(16, 64);
+    // keep the hot keys referenced, the cold keys should go first
+    for (int i = 0; i < 1024; ++i) {
+      cache.put(i, i);
+      for (int k = 0; k < Math.min(i + 1, 8); ++k) {
+        Assertions.assertEquals(Integer.valueOf(k), cache.get(k));
+      }
+      Assertions.assertTrue(cache.size() <= 64, "size " + cache.size());
+    }
+
+    cache.scanEvict((key, value) -> (key & 1) == 0);
+    for (int k = 0; k < 8; k += 2) {
+      Assertions.assertNull(cache.get(k));
+    }
+  }
+
+  @Test
+  public void testExpiration() {
+    final ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<>(16, 64, Duration.ofMillis(10));
+    cache.put("k0", "v0");
+    Assertions.assertEquals("v0", cache.get("k0"));
+
+    ThreadUtil.sleep(20);
+    Assertions.assertNull(cache.get("k0"));
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertEquals(1, cache.getStats().getCacheExpired());
+
+    Assertions.assertEquals("v1", cache.computeIfAbsent("k0", k -> "v1"));
+    Assertions.assertEquals("v1", cache.get("k0"));
+  }
+
+  @Test
+  public void testConcurrentAccess() throws InterruptedException {
+    final ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<>(64, 512);
+    final Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; ++t) {
+      threads[t] = new Thread(() -> {
+        final ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; ++i) {
+          final String key = "key-" + rand.nextInt(1024);
+          Assertions.assertEquals(key, cache.computeIfAbsent(key, k -> k));
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread: threads) thread.join();
+
+    final LruCacheStats stats = cache.getStats();
+    Assertions.assertEquals(800_000, stats.getCacheHit() + stats.getCacheMiss());
+    Assertions.assertTrue(cache.size() <= 512, "size " + cache.size());
+  }
+
+  @Test
+  public void testCapacity() {
+    // small or uneven sizes are not rounded up by the segments
+    for (final int maxSize: new int[] { 1, 5, 7, 8, 100, 1000 }) {
+      final ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<>(16, maxSize);
+      for (int i = 0; i < 4 * maxSize + 64; ++i) {
+        cache.put(i, i);
+        Assertions.assertTrue(cache.size() <= maxSize, "maxSize " + maxSize + " size " + cache.size());
+      }
+    }
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrentLruCache<>(16, 0));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.journal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.journal.JournalAsyncWriter.JournalEntryWriter;
+import tech.dnaco.threading.ThreadData;
+import tech.dnaco.threading.ThreadData.ThreadLocalData;
+import tech.dnaco.threading.ThreadUtil;
+
+/**
+ * Compares the old ConcurrentHashMap+ReentrantLock ThreadData journal path
+ * with the double-buffered JournalThreadBuffers, while a flusher drains the buffers.
+ * Run with "-prof gc" to see the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchJournalThreadBuffers {
+  @State(Scope.Benchmark)
+  public static class JournalState {
+    @Param({ "THREAD_DATA", "SWAP_BUFFERS" })
+    public String impl;
+
+    private final ThreadData<JournalBuffer<BenchEntry>> threadData = new ThreadData<>();
+    private final JournalThreadBuffers<BenchEntry> threadBuffers = new JournalThreadBuffers<>(BenchEntry::newBuffer);
+    private final AtomicBoolean running = new AtomicBoolean();
+    private boolean swapBuffers;
+    private Thread flusher;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      swapBuffers = impl.equals("SWAP_BUFFERS");
+      running.set(true);
+      flusher = new Thread(this::flushLoop, "BenchFlusher");
+      flusher.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+      running.set(false);
+      flusher.join();
+    }
+
+    private void flushLoop() {
+      while (running.get()) {
+        ThreadUtil.sleep(10);
+        if (swapBuffers) {
+          final List<JournalBuffer<BenchEntry>> buffers = threadBuffers.swapBuffers();
+          consume(buffers);
+          threadBuffers.recycleBuffers();
+        } else {
+          consume(threadData.getThreadData());
+        }
+      }
+    }
+
+    private static long consume(final List<JournalBuffer<BenchEntry>> buffers) {
+      long size = 0;
+      for (final JournalBuffer<BenchEntry> buffer: buffers) {
+        size += buffer.size();
+      }
+      return size;
+    }
+
+    private int add(final BenchEntry entry) {
+      if (swapBuffers) {
+        return threadBuffers.add(entry);
+      }
+
+      try (ThreadLocalData<JournalBuffer<BenchEntry>> buffer = threadData.computeIfAbsent(Thread.currentThread(), BenchEntry::newBuffer)) {
+        return buffer.get().add(entry);
+      }
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public int add1Thread(final JournalState state) {
+    return state.add(BenchEntry.INSTANCE);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public int add8Threads(final JournalState state) {
+    return state.add(BenchEntry.INSTANCE);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public int add64Threads(final JournalState state) {
+    return state.add(BenchEntry.INSTANCE);
+  }
+
+  private static final class BenchEntry implements JournalEntry, JournalEntryWriter<BenchEntry> {
+    private static final BenchEntry INSTANCE = new BenchEntry();
+    private static final byte[] DATA = new byte[64];
+
+    private static JournalBuffer<BenchEntry> newBuffer() {
+      return new JournalGroupedBuffer<>(INSTANCE);
+    }
+
+    @Override
+    public String getGroupId() {
+      return "bench";
+    }
+
+    @Override
+    public void release() {
+      // no-op
+    }
+
+    @Override
+    public void writeEntry(final PagedByteArray buffer, final BenchEntry entry) {
+      buffer.add(DATA);
+    }
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchJournalThreadBuffers.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
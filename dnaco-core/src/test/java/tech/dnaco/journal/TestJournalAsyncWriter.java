@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tech.dnaco.journal.JournalAsyncWriter.BackPressurePolicy;
+import tech.dnaco.journal.JournalAsyncWriter.JournalEntryWriter;
+import tech.dnaco.threading.ThreadUtil;
+
+public class TestJournalAsyncWriter {
+  private static final int BACK_PRESSURE_SIZE = 1024;
+  private static final int NTHREADS = 4;
+  private static final int NENTRIES = 5_000;
+
+  @Test
+  public void testBlockBackPressure() throws Exception {
+    final SlowWriter writer = new SlowWriter();
+    try (JournalAsyncWriter<TestEntry> journal = new JournalAsyncWriter<>("test_block", TestEntry::newBuffer)) {
+      journal.registerWriter(writer);
+      journal.setThreadBackPressureSize(BACK_PRESSURE_SIZE);
+      journal.setBackPressurePolicy(BackPressurePolicy.BLOCK);
+      journal.start(60_000);
+      runProducers(journal);
+    }
+
+    // every entry is written, and the producers never went over the watermark
+    Assertions.assertEquals((long) NTHREADS * NENTRIES, writer.entries.get());
+    Assertions.assertTrue(writer.maxBufferSize.get() <= BACK_PRESSURE_SIZE, "max buffer size " + writer.maxBufferSize.get());
+  }
+
+  @Test
+  public void testDropBackPressure() throws Exception {
+    final SlowWriter writer = new SlowWriter();
+    try (JournalAsyncWriter<TestEntry> journal = new JournalAsyncWriter<>("test_drop", TestEntry::newBuffer)) {
+      journal.registerWriter(writer);
+      journal.setThreadBackPressureSize(BACK_PRESSURE_SIZE);
+      journal.setBackPressurePolicy(BackPressurePolicy.DROP);
+      journal.start(60_000);
+      runProducers(journal);
+    }
+
+    // the producers never wait, the entries over the watermark are dropped
+    Assertions.assertTrue(writer.entries.get() > 0);
+    Assertions.assertTrue(writer.entries.get() <= (long) NTHREADS * NENTRIES);
+    Assertions.assertTrue(writer.maxBufferSize.get() <= BACK_PRESSURE_SIZE, "max buffer size " + writer.maxBufferSize.get());
+  }
+
+  @Test
+  public void testFlush() {
+    final SlowWriter writer = new SlowWriter();
+    try (JournalAsyncWriter<TestEntry> journal = new JournalAsyncWriter<>("test_flush", TestEntry::newBuffer)) {
+      journal.registerWriter(writer);
+      journal.start(60_000);
+      for (int i = 0; i < 10; ++i) {
+        journal.addToLogQueue(Thread.currentThread(), new TestEntry("test", i));
+      }
+      journal.flush();
+      Assertions.assertEquals(10, writer.entries.get());
+    }
+  }
+
+  @Test
+  public void testParallelGroupFlush() {
+    final int NGROUPS = 4;
+    // each group waits for the others, the flush completes only if the groups are written in parallel
+    final CyclicBarrier barrier = new CyclicBarrier(NGROUPS);
+    final AtomicInteger parallelGroups = new AtomicInteger();
+    final JournalWriter<TestEntry> writer = new JournalWriter<>() {
+      @Override
+      public void manageOldLogs() {
+        // no-op
+      }
+
+      @Override
+      public void writeBuffers(final String groupId, final List<JournalBuffer<TestEntry>> buffers) {
+        try {
+          barrier.await(10, TimeUnit.SECONDS);
+          parallelGroups.incrementAndGet();
+        } catch (final InterruptedException | BrokenBarrierException | TimeoutException e) {
+          // not parallel
+        }
+      }
+    };
+
+    try (JournalAsyncWriter<TestEntry> journal = new JournalAsyncWriter<>("test_parallel", TestEntry::newBuffer)) {
+      journal.registerWriter(writer);
+      journal.setFlushParallelism(NGROUPS);
+      journal.start(60_000);
+      for (int i = 0; i < NGROUPS; ++i) {
+        journal.addToLogQueue(Thread.currentThread(), new TestEntry("group-" + i, i));
+      }
+      journal.flush();
+    }
+    Assertions.assertEquals(NGROUPS, parallelGroups.get());
+  }
+
+  private static void runProducers(final JournalAsyncWriter<TestEntry> journal) throws InterruptedException {
+    final Thread[] producers = new Thread[NTHREADS];
+    for (int t = 0; t < NTHREADS; ++t) {
+      producers[t] = new Thread(() -> {
+        for (int i = 0; i < NENTRIES; ++i) {
+          journal.addToLogQueue(Thread.currentThread(), new TestEntry("test", i));
+        }
+      });
+      producers[t].start();
+    }
+    for (final Thread producer: producers) producer.join();
+  }
+
+  private static final class SlowWriter implements JournalWriter<TestEntry> {
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicInteger maxBufferSize = new AtomicInteger();
+
+    @Override
+    public void manageOldLogs() {
+      // no-op
+    }
+
+    @Override
+    public void writeBuffers(final String groupId, final List<JournalBuffer<TestEntry>> buffers) {
+      for (final JournalBuffer<TestEntry> buffer: buffers) {
+        maxBufferSize.accumulateAndGet(buffer.size(), Math::max);
+        try {
+          buffer.process(groupId, (buf, offset) -> entries.incrementAndGet());
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      ThreadUtil.sleep(2);
+    }
+  }
+
+  private record TestEntry(String groupId, int value) implements JournalEntry {
+    private static final JournalEntryWriter<TestEntry> WRITER = (buffer, entry) -> buffer.addFixed32(entry.value());
+
+    private static JournalBuffer<TestEntry> newBuffer() {
+      return new JournalGroupedBuffer<>(WRITER);
+    }
+
+    @Override
+    public String getGroupId() {
+      return groupId;
+    }
+
+    @Override
+    public void release() {
+      // no-op
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.journal;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tech.dnaco.journal.JournalAsyncWriter.JournalEntryWriter;
+
+public class TestJournalThreadBuffers {
+  private static final int NTHREADS = 8;
+  private static final int NENTRIES = 100_000;
+
+  @Test
+  public void testSwapAndRecycle() throws Exception {
+    final JournalThreadBuffers<TestEntry> threadBuffers = new JournalThreadBuffers<>(TestEntry::newBuffer);
+
+    // single thread, the flusher takes the buffer and gives it back cleared
+    for (int i = 0; i < 10; ++i) threadBuffers.add(new TestEntry(i));
+    Assertions.assertEquals(1, threadBuffers.threadCount());
+    final List<JournalBuffer<TestEntry>> buffers = threadBuffers.swapBuffers();
+    Assertions.assertEquals(1, buffers.size());
+    Assertions.assertEquals(45, sumValues(buffers.get(0)));
+    Assertions.assertEquals(0, threadBuffers.swapBuffers().size());
+    threadBuffers.recycleBuffers();
+    Assertions.assertEquals(0, buffers.get(0).size());
+
+    threadBuffers.add(new TestEntry(5));
+    final List<JournalBuffer<TestEntry>> buffers2 = threadBuffers.swapBuffers();
+    Assertions.assertEquals(1, buffers2.size());
+    Assertions.assertNotSame(buffers.get(0), buffers2.get(0));
+    Assertions.assertEquals(5, sumValues(buffers2.get(0)));
+    threadBuffers.recycleBuffers();
+
+    // the swapped buffer is reused as standby
+    threadBuffers.add(new TestEntry(7));
+    final List<JournalBuffer<TestEntry>> buffers3 = threadBuffers.swapBuffers();
+    Assertions.assertSame(buffers.get(0), buffers3.get(0));
+    Assertions.assertEquals(7, sumValues(buffers3.get(0)));
+    threadBuffers.recycleBuffers();
+  }
+
+  @Test
+  public void testLazyStandbyBuffer() throws Exception {
+    final AtomicInteger allocated = new AtomicInteger();
+    final JournalThreadBuffers<TestEntry> threadBuffers = new JournalThreadBuffers<>(() -> {
+      allocated.incrementAndGet();
+      return TestEntry.newBuffer();
+    });
+
+    // the standby buffer is allocated by the first swap with something to flush
+    threadBuffers.add(new TestEntry(1));
+    Assertions.assertEquals(1, allocated.get());
+    Assertions.assertEquals(1, threadBuffers.swapBuffers().size());
+    Assertions.assertEquals(2, allocated.get());
+    threadBuffers.recycleBuffers();
+
+    // the buffers are reused, and report the thread that added the entries
+    final Thread producer = new Thread(() -> threadBuffers.add(new TestEntry(2)));
+    producer.start();
+    producer.join();
+    Assertions.assertEquals(3, allocated.get());
+    final List<JournalBuffer<TestEntry>> buffers = threadBuffers.swapBuffers();
+    Assertions.assertEquals(1, buffers.size());
+    Assertions.assertSame(producer, buffers.get(0).getThread());
+    Assertions.assertEquals(4, allocated.get());
+    threadBuffers.recycleBuffers();
+    threadBuffers.add(new TestEntry(3));
+    Assertions.assertEquals(1, threadBuffers.swapBuffers().size());
+    Assertions.assertEquals(4, allocated.get());
+  }
+
+  @Test
+  public void testConcurrentFlush() throws Exception {
+    final JournalThreadBuffers<TestEntry> threadBuffers = new JournalThreadBuffers<>(TestEntry::newBuffer);
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final long[] flushed = new long[2];
+
+    final Thread flusher = new Thread(() -> {
+      try {
+        while (true) {
+          final boolean lastRound = !running.get();
+          for (final JournalBuffer<TestEntry> buffer: threadBuffers.swapBuffers()) {
+            flushed[0] += countEntries(buffer);
+            flushed[1] += sumValues(buffer);
+          }
+          threadBuffers.recycleBuffers();
+          if (lastRound) break;
+          Thread.yield();
+        }
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    flusher.start();
+
+    final Thread[] producers = new Thread[NTHREADS];
+    for (int t = 0; t < NTHREADS; ++t) {
+      producers[t] = new Thread(() -> {
+        for (int i = 0; i < NENTRIES; ++i) {
+          threadBuffers.add(new TestEntry(i));
+        }
+      });
+      producers[t].start();
+    }
+    for (final Thread producer: producers) producer.join();
+    running.set(false);
+    flusher.join();
+
+    Assertions.assertEquals((long) NTHREADS * NENTRIES, flushed[0]);
+    Assertions.assertEquals(NTHREADS * ((long) NENTRIES * (NENTRIES - 1) / 2), flushed[1]);
+  }
+
+  private static long countEntries(final JournalBuffer<TestEntry> buffer) throws IOException {
+    final long[] count = new long[1];
+    buffer.process(TestEntry.GROUP_ID, (buf, offset) -> count[0]++);
+    return count[0];
+  }
+
+  private static long sumValues(final JournalBuffer<TestEntry> buffer) throws IOException {
+    final long[] sum = new long[1];
+    buffer.process(TestEntry.GROUP_ID, (buf, offset) -> sum[0] += buf.getFixed32(offset));
+    return sum[0];
+  }
+
+  private record TestEntry(int value) implements JournalEntry {
+    private static final String GROUP_ID = "test";
+    private static final JournalEntryWriter<TestEntry> WRITER = (buffer, entry) -> buffer.addFixed32(entry.value());
+
+    private static JournalBuffer<TestEntry> newBuffer() {
+      return new JournalGroupedBuffer<>(WRITER);
+    }
+
+    @Override
+    public String getGroupId() {
+      return GROUP_ID;
+    }
+
+    @Override
+    public void release() {
+      // no-op
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package tech.dnaco.logging.format;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.logging.LogEntryMessage;
+import tech.dnaco.logging.LogUtil.LogLevel;
+import tech.dnaco.tracing.SpanId;
+import tech.dnaco.tracing.TraceId;
+
+/**
+ * Encoding of a log message in the journal buffer, V0 (inline strings) vs V1 (dictionary).
+ * Run with "-prof gc": "gc.alloc.rate.norm" is the allocations/op,
+ * the "bytesPerOp" counter is the encoded size of the entry.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchLogFormat {
+  private static final int MAX_BUFFER_SIZE = 1 << 20;
+
+  @State(Scope.Thread)
+  public static class FormatState {
+    @Param({ "0", "1" })
+    public int version;
+
+    private final PagedByteArray buffer = new PagedByteArray(4096);
+    private final LogEntryMessage entry = new LogEntryMessage();
+    private LogFormat format;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      format = LogFormat.VERSIONS[version];
+      entry.setLevel(LogLevel.INFO);
+      entry.setClassAndMethod("BenchLogFormat.writeEntryMessage():123");
+      entry.setMsgFormat("processed request {} for user {} in {}");
+      entry.setMsgArgs(new String[] { "7f3a91c2", "user-1234", "12.3msec" });
+      entry.setModule("bench-module");
+      entry.setOwner("bench-owner");
+      entry.setTimestamp(System.currentTimeMillis());
+      entry.setTraceId(new TraceId(0x1234, 0x5678));
+      entry.setSpanId(new SpanId(0x9abc));
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class EncodedBytes {
+    // the last encoded size, the entry is always the same
+    public long bytesPerOp;
+  }
+
+  @Benchmark
+  public int writeEntryMessage(final FormatState state, final EncodedBytes counters) {
+    final PagedByteArray buffer = state.buffer;
+    if (buffer.size() > MAX_BUFFER_SIZE) buffer.clear();
+
+    final int offset = buffer.size();
+    state.format.writeEntryMessage(buffer, state.entry);
+    counters.bytesPerOp = buffer.size() - offset;
+    return buffer.size();
+  }
+
+  @Benchmark
+  public int writeEntry(final FormatState state, final EncodedBytes counters) {
+    final PagedByteArray buffer = state.buffer;
+    if (buffer.size() > MAX_BUFFER_SIZE) buffer.clear();
+
+    final int offset = buffer.size();
+    LogFormat.writeJournalHeader(buffer, state.entry);
+    buffer.addFixed32(0);
+    state.format.writeEntryMessage(buffer, state.entry);
+    counters.bytesPerOp = buffer.size() - offset;
+    return buffer.size();
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchLogFormat.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.logging.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import tech.dnaco.journal.JournalBuffer;
+import tech.dnaco.journal.JournalGroupedBuffer;
+import tech.dnaco.logging.LogEntry;
+import tech.dnaco.logging.LogEntryMessage;
+import tech.dnaco.logging.LogUtil.LogLevel;
+import tech.dnaco.tracing.SpanId;
+import tech.dnaco.tracing.TraceId;
+
+public class TestLogFileWriter {
+  private static final String[] TENANTS = new String[] { "tenant-a", "tenant-b", "tenant-c" };
+
+  @TempDir
+  File logDir;
+
+  private PrintStream stdout;
+  private PrintStream stderr;
+
+  @BeforeEach
+  public void saveStdio() {
+    // LogFileWriter redirects stdout/stderr to the Logger
+    stdout = System.out;
+    stderr = System.err;
+  }
+
+  @AfterEach
+  public void restoreStdio() {
+    System.setOut(stdout);
+    System.setErr(stderr);
+  }
+
+  @Test
+  public void testAppendAcrossFlushes() throws IOException {
+    // only one file open at the time, the tenants keep evicting each other
+    final LogFileWriter writer = new LogFileWriter(logDir, 1, 1);
+    int entryId = 0;
+    for (int flush = 0; flush < 5; ++flush) {
+      for (final String tenantId: TENANTS) {
+        final JournalBuffer<LogEntry> buffer = newBuffer();
+        for (int i = 0; i < 10; ++i) {
+          buffer.add(newEntry(tenantId, entryId++));
+        }
+        writer.writeBuffers(tenantId, List.of(buffer));
+      }
+
+      // the data is readable as soon as the flush is done, even if the file is still open
+      Assertions.assertEquals((flush + 1) * 10, countEntries(TENANTS[TENANTS.length - 1]));
+    }
+    writer.close();
+
+    for (final String tenantId: TENANTS) {
+      Assertions.assertEquals(50, countEntries(tenantId));
+    }
+  }
+
+  @Test
+  public void testReopenAfterClose() throws IOException {
+    final LogFileWriter writer = new LogFileWriter(logDir, 1);
+    final JournalBuffer<LogEntry> buffer = newBuffer();
+    for (int i = 0; i < 10; ++i) {
+      buffer.add(newEntry(TENANTS[0], i));
+    }
+    writer.writeBuffers(TENANTS[0], List.of(buffer));
+    writer.close();
+
+    // a closed segment appends a new gzip member to the same file
+    writer.writeBuffers(TENANTS[0], List.of(buffer));
+    writer.close();
+    Assertions.assertEquals(20, countEntries(TENANTS[0]));
+  }
+
+  @Test
+  public void testBlockIndexSkipScan() throws IOException {
+    final LogFileWriter writer = new LogFileWriter(logDir, 1);
+    for (int block = 0; block < 10; ++block) {
+      final JournalBuffer<LogEntry> buffer = newBuffer();
+      for (int i = 0; i < 10; ++i) {
+        buffer.add(newEntry(TENANTS[0], block * 10 + i));
+      }
+      writer.writeBuffers(TENANTS[0], List.of(buffer));
+    }
+    writer.close();
+
+    final File logFile = logFile(TENANTS[0]);
+    final List<LogBlockIndex> blocks = LogBlockIndex.readIndex(LogBlockIndex.indexFile(logFile));
+    Assertions.assertEquals(10, blocks.size());
+    for (int i = 0; i < blocks.size(); ++i) {
+      final LogBlockIndex block = blocks.get(i);
+      Assertions.assertEquals(10, block.getEntries());
+      Assertions.assertTrue(block.mightContainTraceId(new TraceId(1, i * 10 + 5)));
+      Assertions.assertTrue(block.mightContainModule("test"));
+      Assertions.assertTrue(block.mightContainLevels(List.of(LogLevel.INFO)));
+      if (i > 0) Assertions.assertEquals(blocks.get(i - 1).getDataEndOffset(), block.getDataOffset());
+    }
+
+    // only the blocks that may contain the trace are decompressed
+    final TraceId traceId = new TraceId(1, 42);
+    final int[] decodedBlocks = new int[1];
+    final long[] lineNos = new long[2];
+    new LogFileReader(logFile).read(block -> {
+      final boolean match = block.mightContainTraceId(traceId);
+      if (match) decodedBlocks[0]++;
+      return match;
+    }, header -> header.getTraceId().equals(traceId), (entry, lineNo) -> {
+      lineNos[0]++;
+      lineNos[1] = lineNo;
+    });
+    Assertions.assertTrue(decodedBlocks[0] < blocks.size(), "decoded " + decodedBlocks[0] + " blocks");
+    Assertions.assertEquals(1, lineNos[0]);
+    Assertions.assertEquals(43, lineNos[1]);
+
+    // without the index the file is still readable as a plain gzip stream
+    Assertions.assertTrue(LogBlockIndex.indexFile(logFile).delete());
+    Assertions.assertEquals(100, countEntries(TENANTS[0]));
+  }
+
+  private File logFile(final String tenantId) {
+    final File dayDir = new File(logDir, DateTimeFormatter.ofPattern("yyyy-MM-dd").format(ZonedDateTime.now()));
+    return new File(dayDir, tenantId);
+  }
+
+  private long countEntries(final String tenantId) throws IOException {
+    final long[] count = new long[1];
+    new LogFileReader(logFile(tenantId)).read(header -> true, (entry, lineNo) -> count[0]++);
+    return count[0];
+  }
+
+  private static JournalBuffer<LogEntry> newBuffer() {
+    return new JournalGroupedBuffer<>((buffer, entry) -> entry.write(buffer));
+  }
+
+  private static LogEntry newEntry(final String tenantId, final int id) {
+    final LogEntryMessage entry = new LogEntryMessage();
+    entry.setTenantId(tenantId);
+    entry.setTimestamp(System.currentTimeMillis());
+    entry.setTraceId(new TraceId(1, id));
+    entry.setSpanId(new SpanId(id));
+    entry.setModule("test");
+    entry.setOwner("owner");
+    entry.setLevel(LogLevel.INFO);
+    entry.setClassAndMethod("TestLogFileWriter.newEntry()");
+    entry.setMsgFormat("entry {}");
+    entry.setMsgArgs(new String[] { String.valueOf(id) });
+    return entry;
+  }
+}
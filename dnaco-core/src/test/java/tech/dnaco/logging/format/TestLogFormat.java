@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package tech.dnaco.logging.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.logging.LogEntryMessage;
+import tech.dnaco.logging.LogUtil.LogLevel;
+import tech.dnaco.logging.format.LogFormat.LogEntryWriter;
+import tech.dnaco.tracing.SpanId;
+import tech.dnaco.tracing.TraceId;
+
+public class TestLogFormat {
+  @Test
+  public void testUtf8() {
+    final String[] values = new String[] {
+      "", "ascii", "café", "€ 10", "emoji 😀", "bad \ud83d surrogate", "\ude00"
+    };
+    for (final String value: values) {
+      final PagedByteArray buffer = new PagedByteArray(16);
+      buffer.addUtf8(value);
+      Assertions.assertEquals(value.getBytes(StandardCharsets.UTF_8).length, PagedByteArray.utf8Length(value));
+      Assertions.assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+    }
+
+    // blob8 is truncated to 255 bytes, without splitting a char
+    final String longValue = "€".repeat(100);
+    final PagedByteArray buffer = new PagedByteArray();
+    buffer.addBlob8(longValue);
+    Assertions.assertEquals(255, buffer.get(0));
+    Assertions.assertEquals(longValue.substring(0, 85), new String(buffer.getBlob8(0), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    for (final LogFormat format: LogFormat.VERSIONS) {
+      final List<LogEntryMessage> entries = new ArrayList<>();
+      for (int i = 0; i < 20; ++i) {
+        entries.add(newEntry(i));
+      }
+
+      // two reset sections, each one must carry its own dictionary entries
+      final byte[] data = writeEntries(format, entries);
+      final List<LogEntryMessage> result = readEntries(data);
+      Assertions.assertEquals(entries.size() * 2, result.size());
+      for (int i = 0; i < result.size(); ++i) {
+        final LogEntryMessage expected = entries.get(i % entries.size());
+        final LogEntryMessage actual = result.get(i);
+        Assertions.assertEquals(expected.getLevel(), actual.getLevel());
+        Assertions.assertEquals(expected.getClassAndMethod(), actual.getClassAndMethod());
+        Assertions.assertEquals(expected.getMsgFormat(), actual.getMsgFormat());
+        Assertions.assertArrayEquals(expected.getMsgArgs(), actual.getMsgArgs());
+        Assertions.assertEquals(expected.getModule(), actual.getModule());
+      }
+    }
+  }
+
+  @Test
+  public void testDictionarySize() throws IOException {
+    final List<LogEntryMessage> entries = new ArrayList<>();
+    for (int i = 0; i < 100; ++i) {
+      entries.add(newEntry(i % 4));
+    }
+    final int v0Size = writeEntries(LogFormat.VERSIONS[0], entries).length;
+    final int v1Size = writeEntries(LogFormat.VERSIONS[1], entries).length;
+    Assertions.assertTrue(v1Size < v0Size, "v0 " + v0Size + " v1 " + v1Size);
+  }
+
+  private static byte[] writeEntries(final LogFormat format, final List<LogEntryMessage> entries) throws IOException {
+    final PagedByteArray buffer = new PagedByteArray();
+    final int[] offsets = new int[entries.size()];
+    for (int i = 0; i < offsets.length; ++i) {
+      offsets[i] = buffer.size();
+      LogFormat.writeJournalHeader(buffer, entries.get(i));
+      final int lengthOffset = buffer.size();
+      buffer.addFixed32(0);
+      format.writeEntryMessage(buffer, entries.get(i));
+      buffer.setFixed32(lengthOffset, buffer.size() - (lengthOffset + 4));
+    }
+
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    try (LogEntryWriter writer = format.newEntryWriter()) {
+      writer.newBlock(stream);
+      for (int section = 0; section < 2; ++section) {
+        writer.reset(stream, Thread.currentThread());
+        for (int i = 0; i < offsets.length; ++i) {
+          writer.add(stream, buffer, offsets[i]);
+        }
+      }
+    } catch (final IOException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw new IOException(e);
+    }
+    return stream.toByteArray();
+  }
+
+  private static List<LogEntryMessage> readEntries(final byte[] data) throws IOException {
+    final ArrayList<LogEntryMessage> entries = new ArrayList<>();
+    final LogReader reader = new LogReader(new ByteArrayInputStream(data));
+    try {
+      while (reader.readEntryHead()) {
+        entries.add((LogEntryMessage) reader.readEntryData());
+      }
+    } catch (final EOFException e) {
+      // no-op
+    }
+    return entries;
+  }
+
+  private static LogEntryMessage newEntry(final int id) {
+    final LogEntryMessage entry = new LogEntryMessage();
+    entry.setTimestamp(1_000_000 + id);
+    entry.setTraceId(new TraceId(1, id));
+    entry.setSpanId(new SpanId(id));
+    entry.setModule("module-" + (id % 3));
+    entry.setOwner("owner");
+    entry.setLevel(LogLevel.values()[id % LogLevel.values().length]);
+    entry.setClassAndMethod("TestLogFormat.newEntry():" + (id % 5));
+    entry.setMsgFormat((id % 7 == 0) ? "" : "entry {} € " + (id % 2));
+    entry.setMsgArgs(new String[] { String.valueOf(id), "café" });
+    return entry;
+  }
+}
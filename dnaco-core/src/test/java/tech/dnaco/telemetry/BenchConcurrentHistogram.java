@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the recording cost of the fixed-bounds ConcurrentHistogram
+ * with the log-linear ConcurrentLogHistogram, on a shared histogram.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchConcurrentHistogram {
+  @State(Scope.Benchmark)
+  public static class HistogramState {
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram(Histogram.DEFAULT_DURATION_BOUNDS_NS);
+    private final ConcurrentLogHistogram logHistogram = new ConcurrentLogHistogram();
+  }
+
+  private static long nextDuration() {
+    // 1us..100ms
+    return ThreadLocalRandom.current().nextLong(1_000, 100_000_000);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void boundsHisto1Thread(final HistogramState state) {
+    state.histogram.add(nextDuration());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void logHisto1Thread(final HistogramState state) {
+    state.logHistogram.add(nextDuration());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void boundsHisto8Threads(final HistogramState state) {
+    state.histogram.add(nextDuration());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void logHisto8Threads(final HistogramState state) {
+    state.logHistogram.add(nextDuration());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public LogHistogramData logHistoSnapshot(final HistogramState state) {
+    return state.logHistogram.getSnapshot();
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchConcurrentHistogram.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the previous synchronized TimeRangeCounter wrapper
+ * with the striped ConcurrentTimeRangeCounter, on a shared counter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchConcurrentTimeRangeCounter {
+  @State(Scope.Benchmark)
+  public static class CounterState {
+    @Param({ "SYNCHRONIZED", "STRIPED" })
+    public String impl;
+
+    private SynchronizedTimeRangeCounter syncCounter;
+    private ConcurrentTimeRangeCounter stripedCounter;
+    private ConcurrentMaxAndAvgTimeRangeGauge stripedGauge;
+    private SynchronizedMaxAndAvgTimeRangeGauge syncGauge;
+    private boolean striped;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      striped = impl.equals("STRIPED");
+      syncCounter = new SynchronizedTimeRangeCounter(24 * 60, 1, TimeUnit.MINUTES);
+      stripedCounter = new ConcurrentTimeRangeCounter(24 * 60, 1, TimeUnit.MINUTES);
+      syncGauge = new SynchronizedMaxAndAvgTimeRangeGauge(24 * 60, 1, TimeUnit.MINUTES);
+      stripedGauge = new ConcurrentMaxAndAvgTimeRangeGauge(24 * 60, 1, TimeUnit.MINUTES);
+    }
+
+    private long inc() {
+      return striped ? stripedCounter.inc() : syncCounter.inc();
+    }
+
+    private void update(final long value) {
+      if (striped) {
+        stripedGauge.update(value);
+      } else {
+        syncGauge.update(value);
+      }
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long inc1Thread(final CounterState state) {
+    return state.inc();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long inc8Threads(final CounterState state) {
+    return state.inc();
+  }
+
+  @Benchmark
+  @Threads(32)
+  public long inc32Threads(final CounterState state) {
+    return state.inc();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void gaugeUpdate8Threads(final CounterState state) {
+    state.update(123);
+  }
+
+  // the ConcurrentTimeRangeCounter before the striping
+  private static final class SynchronizedTimeRangeCounter extends TimeRangeCounter {
+    private SynchronizedTimeRangeCounter(final long maxInterval, final long window, final TimeUnit unit) {
+      super(maxInterval, window, unit);
+    }
+
+    @Override
+    public long add(final long now, final long delta) {
+      synchronized (this) {
+        return super.add(now, delta);
+      }
+    }
+  }
+
+  // the ConcurrentMaxAndAvgTimeRangeGauge before the striping
+  private static final class SynchronizedMaxAndAvgTimeRangeGauge extends MaxAndAvgTimeRangeGauge {
+    private SynchronizedMaxAndAvgTimeRangeGauge(final long maxInterval, final long window, final TimeUnit unit) {
+      super(maxInterval, window, unit);
+    }
+
+    @Override
+    public void set(final long now, final long value) {
+      synchronized (this) {
+        super.set(now, value);
+      }
+    }
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchConcurrentTimeRangeCounter.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
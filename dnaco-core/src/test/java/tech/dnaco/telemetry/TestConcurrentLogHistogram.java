@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestConcurrentLogHistogram {
+  @Test
+  public void testBucketIndex() {
+    final int bits = ConcurrentLogHistogram.DEFAULT_PRECISION_BITS;
+    final Random rand = new Random(42);
+    for (int i = 0; i < 100_000; ++i) {
+      final long value = rand.nextLong() >>> (1 + rand.nextInt(63));
+      final int index = LogHistogramData.bucketIndex(bits, value);
+      Assertions.assertTrue(index >= 0 && index < LogHistogramData.bucketCount(bits), "index " + index);
+
+      final long lower = LogHistogramData.bucketLowerBound(bits, index);
+      final long upper = LogHistogramData.bucketUpperBound(bits, index);
+      Assertions.assertTrue(lower <= value && value <= upper, lower + " <= " + value + " <= " + upper);
+      Assertions.assertTrue((upper - lower) <= (value >>> bits), "bucket too wide for " + value);
+    }
+
+    // the buckets are contiguous
+    for (int index = 0; index < LogHistogramData.bucketCount(bits) - 1; ++index) {
+      Assertions.assertEquals(LogHistogramData.bucketUpperBound(bits, index) + 1, LogHistogramData.bucketLowerBound(bits, index + 1));
+    }
+    Assertions.assertEquals(Long.MAX_VALUE, LogHistogramData.bucketUpperBound(bits, LogHistogramData.bucketCount(bits) - 1));
+  }
+
+  @Test
+  public void testPercentiles() {
+    final ConcurrentLogHistogram histo = new ConcurrentLogHistogram();
+    Assertions.assertSame(LogHistogramData.EMPTY, histo.getSnapshot());
+
+    for (int i = 1; i <= 100_000; ++i) {
+      histo.add(i);
+    }
+
+    final LogHistogramData data = histo.getSnapshot();
+    Assertions.assertEquals(100_000, data.getCount());
+    Assertions.assertEquals(1, data.getMin());
+    Assertions.assertEquals(100_000, data.getMax());
+    Assertions.assertEquals(50_000.5, data.mean(), 0.001);
+    assertPercentile(50_000, data.getP50());
+    assertPercentile(90_000, data.getP90());
+    assertPercentile(99_000, data.getP99());
+    assertPercentile(99_900, data.getP999());
+    Assertions.assertEquals(100_000, data.percentile(100));
+  }
+
+  @Test
+  public void testMerge() {
+    final ConcurrentLogHistogram a = new ConcurrentLogHistogram();
+    final ConcurrentLogHistogram b = new ConcurrentLogHistogram();
+    final ConcurrentLogHistogram all = new ConcurrentLogHistogram();
+    final Random rand = new Random(7);
+    for (int i = 0; i < 10_000; ++i) {
+      final long value = rand.nextInt(1_000_000);
+      ((i & 1) == 0 ? a : b).add(value);
+      all.add(value);
+    }
+
+    final LogHistogramData merged = a.getSnapshot().merge(b.getSnapshot());
+    final LogHistogramData expected = all.getSnapshot();
+    Assertions.assertArrayEquals(expected.getBuckets(), merged.getBuckets());
+    Assertions.assertArrayEquals(expected.getEvents(), merged.getEvents());
+    Assertions.assertEquals(expected.getSum(), merged.getSum());
+    Assertions.assertEquals(expected.getMin(), merged.getMin());
+    Assertions.assertEquals(expected.getMax(), merged.getMax());
+    Assertions.assertEquals(expected.getP99(), merged.getP99());
+  }
+
+  @Test
+  public void testConcurrentAdd() throws InterruptedException {
+    final ConcurrentLogHistogram histo = new ConcurrentLogHistogram();
+    final Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; ++t) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100_000; ++i) {
+          histo.add(i & 1023);
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread: threads) thread.join();
+
+    final LogHistogramData data = histo.getSnapshot();
+    Assertions.assertEquals(800_000, data.getCount());
+    Assertions.assertEquals(0, data.getMin());
+    Assertions.assertEquals(1023, data.getMax());
+  }
+
+  @Test
+  public void testStripePages() throws InterruptedException {
+    final int buckets = LogHistogramData.bucketCount(ConcurrentLogHistogram.DEFAULT_PRECISION_BITS);
+    final StripedLongArray counters = new StripedLongArray(buckets);
+    Assertions.assertEquals(0, counters.pageCount());
+
+    // a narrow range of values touches only a few buckets, the other pages are not allocated
+    final Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; ++t) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100_000; ++i) {
+          counters.add(LogHistogramData.bucketIndex(ConcurrentLogHistogram.DEFAULT_PRECISION_BITS, 1000 + (i & 63)), 1);
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread: threads) thread.join();
+
+    final long[] values = new long[buckets];
+    counters.sum(0, values, buckets);
+    long total = 0;
+    for (final long value: values) total += value;
+    Assertions.assertEquals(800_000, total);
+    Assertions.assertTrue(counters.pageCount() <= 2 * counters.stripeCount(),
+      counters.pageCount() + " pages for " + counters.stripeCount() + " stripes");
+
+    counters.clear(0, buckets);
+    Assertions.assertEquals(0, counters.sum(LogHistogramData.bucketIndex(ConcurrentLogHistogram.DEFAULT_PRECISION_BITS, 1000)));
+  }
+
+  private static void assertPercentile(final long expected, final long actual) {
+    final double error = Math.abs(actual - expected) / (double) expected;
+    Assertions.assertTrue(error <= (1.0 / (1 << ConcurrentLogHistogram.DEFAULT_PRECISION_BITS)),
+      "expected " + expected + " got " + actual);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestConcurrentTimeRangeCounter {
+  private static final int NTHREADS = 8;
+  private static final int NENTRIES = 100_000;
+  // fixed timestamps, the snapshots don't depend on the wall clock
+  private static final long BASE_TIME = TimeUnit.DAYS.toMillis(20_000);
+
+  @Test
+  public void testWindows() {
+    final ConcurrentTimeRangeCounter counter = new ConcurrentTimeRangeCounter(10, 1, TimeUnit.HOURS);
+    final long window = TimeUnit.MINUTES.toMillis(60);
+    final long base = BASE_TIME;
+    final long now = base + 3 * window + 10;
+    counter.clear(base);
+
+    counter.add(base, 1);
+    counter.add(base + 10, 2);
+    counter.add(base + window, 5);
+    // no updates in the third window
+    counter.add(base + 3 * window, 7);
+    // a late update still lands in its own window
+    counter.add(base + window + 1, 1);
+
+    final TimeRangeCounterData data = counter.getSnapshot(now);
+    Assertions.assertArrayEquals(new long[] { 3, 6, 0, 7 }, data.getCounters());
+    Assertions.assertEquals(base + 4 * window, data.getLastInterval());
+    Assertions.assertEquals(base, data.getFirstInterval() + window);
+
+    // the ring only keeps the last 10 windows
+    counter.clear(base - 20 * window);
+    counter.add(base, 1);
+    final long[] counters = counter.getSnapshot(now).getCounters();
+    Assertions.assertEquals(10, counters.length);
+    Assertions.assertEquals(1, counters[6]);
+  }
+
+  @Test
+  public void testHistoryWindows() {
+    // only the last windows are striped, the older ones are moved to the history
+    final long window = TimeUnit.MINUTES.toMillis(1);
+    final ConcurrentTimeRangeCounter counter = new ConcurrentTimeRangeCounter(10, 1, TimeUnit.MINUTES);
+    final ConcurrentMaxAndAvgTimeRangeGauge gauge = new ConcurrentMaxAndAvgTimeRangeGauge(10, 1, TimeUnit.MINUTES);
+    counter.clear(BASE_TIME);
+    gauge.clear(BASE_TIME);
+    for (int w = 0; w < 10; ++w) {
+      final long now = BASE_TIME + w * window;
+      counter.add(now, w + 1);
+      gauge.set(now, 10 * w);
+      gauge.set(now, 10 * w + 20);
+      // late updates of the previous windows, hot and moved to the history
+      if (w >= 1) counter.add(now - window, 100);
+      if (w >= 2) counter.add(now - 2 * window, 1000);
+    }
+
+    final long now = BASE_TIME + 9 * window;
+    final long[] counters = counter.getSnapshot(now).getCounters();
+    Assertions.assertEquals(10, counters.length);
+    for (int w = 0; w < 10; ++w) {
+      final long late = (w < 9 ? 100 : 0) + (w < 8 ? 1000 : 0);
+      Assertions.assertEquals(w + 1 + late, counters[w], "window " + w);
+    }
+
+    final MaxAndAvgTimeRangeGaugeData data = gauge.getSnapshot(now);
+    for (int w = 0; w < 10; ++w) {
+      Assertions.assertEquals(10 * w + 20, data.getMax()[w], "window " + w);
+      Assertions.assertEquals(10 * w + 10, data.getAvg()[w], "window " + w);
+    }
+
+    // the window evicted from the ring is dropped, with its late updates
+    counter.add(now + window, 1);
+    counter.add(BASE_TIME, 5);
+    final long[] shifted = counter.getSnapshot(now + window).getCounters();
+    Assertions.assertEquals(counters[1], shifted[0]);
+    Assertions.assertEquals(1, shifted[9]);
+  }
+
+  @Test
+  public void testConcurrentInc() throws InterruptedException {
+    final ConcurrentTimeRangeCounter counter = new ConcurrentTimeRangeCounter(1, 1, TimeUnit.DAYS);
+    counter.clear(BASE_TIME);
+    final Thread[] threads = new Thread[NTHREADS];
+    for (int t = 0; t < NTHREADS; ++t) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < NENTRIES; ++i) {
+          counter.add(BASE_TIME, 1);
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread: threads) thread.join();
+
+    long total = 0;
+    for (final long value: counter.getSnapshot(BASE_TIME).getCounters()) {
+      total += value;
+    }
+    Assertions.assertEquals((long) NTHREADS * NENTRIES, total);
+  }
+
+  @Test
+  public void testMaxAndAvg() throws InterruptedException {
+    final ConcurrentMaxAndAvgTimeRangeGauge gauge = new ConcurrentMaxAndAvgTimeRangeGauge(1, 1, TimeUnit.DAYS);
+    final long now = BASE_TIME;
+    gauge.clear(now);
+    final Thread[] threads = new Thread[NTHREADS];
+    for (int t = 0; t < NTHREADS; ++t) {
+      threads[t] = new Thread(() -> {
+        for (int i = 1; i <= NENTRIES; ++i) {
+          gauge.set(now, i);
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread: threads) thread.join();
+
+    final MaxAndAvgTimeRangeGaugeData data = gauge.getSnapshot(now);
+    Assertions.assertEquals(1, data.getMax().length);
+    Assertions.assertEquals(NENTRIES, data.getMax()[0]);
+    Assertions.assertEquals((NENTRIES + 1) / 2, data.getAvg()[0]);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.dnaco.telemetry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tech.dnaco.telemetry.TopK.TopType;
+import tech.dnaco.telemetry.TopKData.TopEntry;
+import tech.dnaco.tracing.TraceId;
+
+public class TestConcurrentTopK {
+  private static final int NTHREADS = 8;
+  private static final int NENTRIES = 50_000;
+
+  @Test
+  public void testConcurrentAdd() throws InterruptedException {
+    final ConcurrentTopK topK = new ConcurrentTopK(TopType.COUNT, 4);
+    final Thread[] threads = new Thread[NTHREADS];
+    for (int t = 0; t < NTHREADS; ++t) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < NENTRIES; ++i) {
+          // key-0 is the most frequent, key-1 the second one, and so on
+          final int keyId = Integer.numberOfTrailingZeros(i | 0x100);
+          topK.add("/key-" + keyId + "?param=" + i, 6, i, new TraceId(1, i));
+        }
+      });
+      threads[t].start();
+    }
+
+    // snapshots taken while the threads are running must not lose updates
+    for (int i = 0; i < 10; ++i) {
+      topK.getSnapshot();
+    }
+    for (final Thread thread: threads) thread.join();
+
+    final TopEntry[] entries = topK.getSnapshot().getEntries();
+    Assertions.assertEquals(4, entries.length);
+    for (int i = 0; i < entries.length; ++i) {
+      Assertions.assertEquals("/key-" + i, entries[i].getKey());
+    }
+    Assertions.assertEquals(NTHREADS * (NENTRIES / 2), entries[0].getFrequency());
+    Assertions.assertEquals(NTHREADS * (NENTRIES / 4), entries[1].getFrequency());
+  }
+
+  @Test
+  public void testMinMax() {
+    final ConcurrentTopK topK = new ConcurrentTopK(TopType.MIN_MAX, 2);
+    topK.add("a", 10);
+    topK.add("b", 30);
+    topK.add("c", 20);
+    topK.add("a", 40);
+
+    final TopEntry[] entries = topK.getSnapshot().getEntries();
+    Assertions.assertEquals(2, entries.length);
+    Assertions.assertEquals("a", entries[0].getKey());
+    Assertions.assertEquals(40, entries[0].getMaxValue());
+    Assertions.assertEquals("b", entries[1].getKey());
+
+    topK.clear();
+    Assertions.assertSame(TopKData.EMPTY, topK.getSnapshot());
+  }
+}
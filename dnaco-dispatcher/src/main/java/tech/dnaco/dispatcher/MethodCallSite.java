@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.dispatcher;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Direct call to a handler method, generated once when the handler is registered.
+ * <p>Methods with up to 3 params are bound with {@link LambdaMetafactory} to a fixed-arity
+ * functional interface, the handler instance is captured by the lambda and the params are
+ * passed without allocating an Object[]. The other methods use a spreader {@link MethodHandle}.
+ * <p>Unlike {@link Method#invoke(Object, Object...)} the exceptions thrown by the method
+ * are not wrapped in an InvocationTargetException.
+ */
+public abstract class MethodCallSite {
+  private static final int MAX_DIRECT_ARITY = 3;
+
+  private final Method method;
+
+  private MethodCallSite(final Method method) {
+    this.method = method;
+  }
+
+  public Method method() {
+    return method;
+  }
+
+  public int arity() {
+    return method.getParameterCount();
+  }
+
+  public Object invoke() throws Throwable {
+    throw arityMismatch(0);
+  }
+
+  public Object invoke(final Object a) throws Throwable {
+    throw arityMismatch(1);
+  }
+
+  public Object invoke(final Object a, final Object b) throws Throwable {
+    throw arityMismatch(2);
+  }
+
+  public Object invoke(final Object a, final Object b, final Object c) throws Throwable {
+    throw arityMismatch(3);
+  }
+
+  public Object invoke(final Object[] params) throws Throwable {
+    if (params.length != arity()) throw arityMismatch(params.length);
+    return switch (params.length) {
+      case 0 -> invoke();
+      case 1 -> invoke(params[0]);
+      case 2 -> invoke(params[0], params[1]);
+      case 3 -> invoke(params[0], params[1], params[2]);
+      default -> throw arityMismatch(params.length);
+    };
+  }
+
+  IllegalArgumentException arityMismatch(final int paramsCount) {
+    return new IllegalArgumentException("expected " + arity() + " params, got " + paramsCount + ": " + method);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [method=" + method + "]";
+  }
+
+  // ================================================================================
+  //  Bind Related
+  // ================================================================================
+  public static MethodCallSite bind(final Object handler, final Method method) {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+      final MethodHandle handle = lookup.unreflect(method);
+      if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() > MAX_DIRECT_ARITY) {
+        return new SpreaderCallSite(method, handle, handler);
+      }
+      return bindLambda(lookup, handle, handler, method);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalArgumentException("unable to access the handler method: " + method, e);
+    } catch (final Throwable e) {
+      throw new IllegalArgumentException("unable to bind the handler method: " + method, e);
+    }
+  }
+
+  private static MethodCallSite bindLambda(final MethodHandles.Lookup lookup, final MethodHandle handle,
+      final Object handler, final Method method) throws Throwable {
+    final int arity = method.getParameterCount();
+    final boolean voidResult = method.getReturnType() == void.class;
+    final Class<?> callType = voidResult ? VOID_CALL_TYPES[arity] : CALL_TYPES[arity];
+
+    // (Handler)CallN: the handler is captured, the params are erased to Object
+    final MethodType implType = handle.type().dropParameterTypes(0, 1).wrap();
+    final MethodType instantiatedType = voidResult ? implType.changeReturnType(void.class) : implType;
+    final MethodType samType = voidResult
+      ? MethodType.genericMethodType(arity).changeReturnType(void.class)
+      : MethodType.genericMethodType(arity);
+    final MethodHandle factory = LambdaMetafactory.metafactory(lookup, "call",
+        MethodType.methodType(callType, method.getDeclaringClass()), samType, handle, instantiatedType)
+      .getTarget();
+    final Object call = factory.invoke(handler);
+
+    return switch (arity) {
+      case 0 -> voidResult ? new VoidCallSite0(method, (VoidCall0) call) : new CallSite0(method, (Call0) call);
+      case 1 -> voidResult ? new VoidCallSite1(method, (VoidCall1) call) : new CallSite1(method, (Call1) call);
+      case 2 -> voidResult ? new VoidCallSite2(method, (VoidCall2) call) : new CallSite2(method, (Call2) call);
+      case 3 -> voidResult ? new VoidCallSite3(method, (VoidCall3) call) : new CallSite3(method, (Call3) call);
+      default -> throw new IllegalStateException("unexpected arity " + arity);
+    };
+  }
+
+  // ================================================================================
+  //  Functional interfaces implemented by the generated lambdas
+  // ================================================================================
+  private static final Class<?>[] CALL_TYPES = new Class<?>[] { Call0.class, Call1.class, Call2.class, Call3.class };
+  private static final Class<?>[] VOID_CALL_TYPES = new Class<?>[] { VoidCall0.class, VoidCall1.class, VoidCall2.class, VoidCall3.class };
+
+  @FunctionalInterface public interface Call0 { Object call() throws Throwable; }
+  @FunctionalInterface public interface Call1 { Object call(Object a) throws Throwable; }
+  @FunctionalInterface public interface Call2 { Object call(Object a, Object b) throws Throwable; }
+  @FunctionalInterface public interface Call3 { Object call(Object a, Object b, Object c) throws Throwable; }
+
+  @FunctionalInterface public interface VoidCall0 { void call() throws Throwable; }
+  @FunctionalInterface public interface VoidCall1 { void call(Object a) throws Throwable; }
+  @FunctionalInterface public interface VoidCall2 { void call(Object a, Object b) throws Throwable; }
+  @FunctionalInterface public interface VoidCall3 { void call(Object a, Object b, Object c) throws Throwable; }
+
+  // ================================================================================
+  //  Call Sites
+  // ================================================================================
+  private static final class CallSite0 extends MethodCallSite {
+    private final Call0 call;
+
+    private CallSite0(final Method method, final Call0 call) {
+      super(method);
+      this.call = call;
+    }
+
+    @Override
+    public Object invoke() throws Throwable {
+      return call.call();
+    }
+  }
+
+  private static final class CallSite1 extends MethodCallSite {
+    private final Call1 call;
+
+    private CallSite1(final Method method, final Call1 call) {
+      super(method);
+      this.call = call;
+    }
+
+    @Override
+    public Object invoke(final Object a) throws Throwable {
+      return call.call(a);
+    }
+  }
+
+  private static final class CallSite2 extends MethodCallSite {
+    private final Call2 call;
+
+    private CallSite2(final Method method, final Call2 call) {
+      super(method);
+      this.call = call;
+    }
+
+    @Override
+    public Object invoke(final Object a, final Object b) throws Throwable {
+      return call.call(a, b);
+    }
+  }
+
+  private static final class CallSite3 extends MethodCallSite {
+    private final Call3 call;
+
+    private CallSite3(final Method method, final Call3 call) {
+      super(method);
+      this.call = call;
+    }
+
+    @Override
+    public Object invoke(final Object a, final Object b, final Object c) throws Throwable {
+      return call.call(a, b, c);
+    }
+  }
+
+  private static final class VoidCallSite0 extends MethodCallSite {
+    private final VoidCall0 call;
+
+    private VoidCallSite0(final Method method, final VoidCall0 call) {
+      super(method);
+      this.call = call;
+    }
+
+    @Override
+    public Object invoke() throws Throwable {
+      call.call();
+      return null;
+    }
+  }
+
+  private static final class VoidCallSite1 extends MethodCallSite {
+    private final VoidCall1 call;
+
+    private VoidCallSite1(final Method method, final VoidCall1 call) {
+      super(method);
+      this.call = call;
+    }
+
+    @Override
+    public Object invoke(final Object a) throws Throwable {
+      call.call(a);
+      return null;
+    }
+  }
+
+  private static final class VoidCallSite2 extends MethodCallSite {
+    private final VoidCall2 call;
+
+    private VoidCallSite2(final Method method, final VoidCall2 call) {
+      super(method);
+      this.call = call;
+    }
+
+    @Override
+    public Object invoke(final Object a, final Object b) throws Throwable {
+      call.call(a, b);
+      return null;
+    }
+  }
+
+  private static final class VoidCallSite3 extends MethodCallSite {
+    private final VoidCall3 call;
+
+    private VoidCallSite3(final Method method, final VoidCall3 call) {
+      super(method);
+      this.call = call;
+    }
+
+    @Override
+    public Object invoke(final Object a, final Object b, final Object c) throws Throwable {
+      call.call(a, b, c);
+      return null;
+    }
+  }
+
+  /**
+   * Static methods and methods with more than {@link #MAX_DIRECT_ARITY} params.
+   */
+  private static final class SpreaderCallSite extends MethodCallSite {
+    private final MethodHandle handle;
+
+    private SpreaderCallSite(final Method method, final MethodHandle handle, final Object handler) {
+      super(method);
+      final MethodHandle bound = Modifier.isStatic(method.getModifiers()) ? handle : handle.bindTo(handler);
+      this.handle = bound.asSpreader(Object[].class, method.getParameterCount())
+        .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
+    @Override
+    public Object invoke() throws Throwable {
+      return invoke(new Object[0]);
+    }
+
+    @Override
+    public Object invoke(final Object a) throws Throwable {
+      return invoke(new Object[] { a });
+    }
+
+    @Override
+    public Object invoke(final Object a, final Object b) throws Throwable {
+      return invoke(new Object[] { a, b });
+    }
+
+    @Override
+    public Object invoke(final Object a, final Object b, final Object c) throws Throwable {
+      return invoke(new Object[] { a, b, c });
+    }
+
+    @Override
+    public Object invoke(final Object[] params) throws Throwable {
+      if (params.length != arity()) throw arityMismatch(params.length);
+      return (Object) handle.invokeExact(params);
+    }
+  }
+}
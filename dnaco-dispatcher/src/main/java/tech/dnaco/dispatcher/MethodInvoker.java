@@ -20,17 +20,17 @@
 package tech.dnaco.dispatcher;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 import tech.dnaco.collections.arrays.ArrayUtil;
 import tech.dnaco.dispatcher.Actions.AsyncResult;
 import tech.dnaco.dispatcher.ParamMappers.ParamConverter;
-import tech.dnaco.logging.Logger;
 
 public class MethodInvoker {
   private final Object handler;
   private final Method method;
+  private final MethodCallSite callSite;
+  private final ParsedCall parsedCall;
   private final ParamParser[] paramParsers;
   private final ActionParser[] actionParsers;
   private final boolean asyncResult;
@@ -44,6 +44,8 @@ public class MethodInvoker {
     this.actionParsers = actionParsers;
     this.asyncResult = hasAnnotation(AsyncResult.class);
     this.voidResult = hasVoidResult(method);
+    this.callSite = MethodCallSite.bind(handler, method);
+    this.parsedCall = newParsedCall(callSite, paramParsers);
     //Logger.trace("{handler} {method} {voidResult} {actions} {params}",
       //handler, method, voidResult, actionParsers, paramParsers);
   }
@@ -67,6 +69,11 @@ public class MethodInvoker {
   }
 
   public Object invoke(final CallContext context, final ParamConverter converter, final Object message) throws Throwable {
+    if (actionParsers.length == 0) {
+      // no action-parsers looking at the params, parse and execute without the params array
+      return parsedCall.call(context, converter, message);
+    }
+
     // call action-parsers (before param-parse)
     for (int i = 0; i < actionParsers.length; ++i) {
       if (actionParsers[i].beforeParamParse(context, message)) {
@@ -88,17 +95,46 @@ public class MethodInvoker {
     }
 
     // execute
-    try {
-      final Object result = method.invoke(handler, params);
-
-      // call action-parsers (after execute)
-      return callActionAfterExecute(context, message, result, actionParsers.length);
-    } catch (final InvocationTargetException e) {
-      throw e.getCause();
-    } catch (final IllegalArgumentException e) {
-      Logger.error(e, "failed to call {handler} {method} {params}", handler, method.getName(), params);
-      throw e;
-    }
+    final Object result = callSite.invoke(params);
+
+    // call action-parsers (after execute)
+    return callActionAfterExecute(context, message, result, actionParsers.length);
+  }
+
+  @FunctionalInterface
+  private interface ParsedCall {
+    Object call(CallContext context, ParamConverter converter, Object message) throws Throwable;
+  }
+
+  /**
+   * The param-parsers are fused with the call site, one lambda per arity.
+   */
+  private static ParsedCall newParsedCall(final MethodCallSite callSite, final ParamParser[] parsers) {
+    return switch (parsers.length) {
+      case 0 -> (ctx, conv, msg) -> callSite.invoke();
+      case 1 -> {
+        final ParamParser p0 = parsers[0];
+        yield (ctx, conv, msg) -> callSite.invoke(p0.parse(ctx, conv, msg));
+      }
+      case 2 -> {
+        final ParamParser p0 = parsers[0];
+        final ParamParser p1 = parsers[1];
+        yield (ctx, conv, msg) -> callSite.invoke(p0.parse(ctx, conv, msg), p1.parse(ctx, conv, msg));
+      }
+      case 3 -> {
+        final ParamParser p0 = parsers[0];
+        final ParamParser p1 = parsers[1];
+        final ParamParser p2 = parsers[2];
+        yield (ctx, conv, msg) -> callSite.invoke(p0.parse(ctx, conv, msg), p1.parse(ctx, conv, msg), p2.parse(ctx, conv, msg));
+      }
+      default -> (ctx, conv, msg) -> {
+        final Object[] params = new Object[parsers.length];
+        for (int i = 0; i < params.length; ++i) {
+          params[i] = parsers[i].parse(ctx, conv, msg);
+        }
+        return callSite.invoke(params);
+      };
+    };
   }
 
   private Object callActionAfterExecute(final CallContext context, final Object message,
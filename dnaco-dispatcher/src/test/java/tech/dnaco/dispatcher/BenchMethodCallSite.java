@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.dispatcher;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ns/call of the handler invocation with 0, 1 and 3 params:
+ * Method.invoke() with the params array vs the {@link MethodCallSite} generated at bind time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchMethodCallSite {
+  public static class Handler {
+    private long counter;
+
+    public long noArgs() {
+      return ++counter;
+    }
+
+    public long oneArg(final String key) {
+      counter += key.length();
+      return counter;
+    }
+
+    public long threeArgs(final String key, final Long value, final Object extra) {
+      counter += key.length() + value;
+      return extra != null ? counter : -counter;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class CallState {
+    private final Handler handler = new Handler();
+    private final String key = "bench-key";
+    private final Long value = 12L;
+    private final Object extra = new Object();
+
+    private Method noArgsMethod;
+    private Method oneArgMethod;
+    private Method threeArgsMethod;
+    private MethodCallSite noArgsCallSite;
+    private MethodCallSite oneArgCallSite;
+    private MethodCallSite threeArgsCallSite;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      noArgsMethod = Handler.class.getMethod("noArgs");
+      oneArgMethod = Handler.class.getMethod("oneArg", String.class);
+      threeArgsMethod = Handler.class.getMethod("threeArgs", String.class, Long.class, Object.class);
+      noArgsCallSite = MethodCallSite.bind(handler, noArgsMethod);
+      oneArgCallSite = MethodCallSite.bind(handler, oneArgMethod);
+      threeArgsCallSite = MethodCallSite.bind(handler, threeArgsMethod);
+    }
+  }
+
+  @Benchmark
+  public Object reflectNoArgs(final CallState state) throws Exception {
+    return state.noArgsMethod.invoke(state.handler, new Object[0]);
+  }
+
+  @Benchmark
+  public Object callSiteNoArgs(final CallState state) throws Throwable {
+    return state.noArgsCallSite.invoke();
+  }
+
+  @Benchmark
+  public Object reflectOneArg(final CallState state) throws Exception {
+    return state.oneArgMethod.invoke(state.handler, new Object[] { state.key });
+  }
+
+  @Benchmark
+  public Object callSiteOneArg(final CallState state) throws Throwable {
+    return state.oneArgCallSite.invoke(state.key);
+  }
+
+  @Benchmark
+  public Object reflectThreeArgs(final CallState state) throws Exception {
+    return state.threeArgsMethod.invoke(state.handler, new Object[] { state.key, state.value, state.extra });
+  }
+
+  @Benchmark
+  public Object callSiteThreeArgs(final CallState state) throws Throwable {
+    return state.threeArgsCallSite.invoke(state.key, state.value, state.extra);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchMethodCallSite.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.dispatcher;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestMethodCallSite {
+  private static final class Handler {
+    private final StringBuilder calls = new StringBuilder();
+
+    private void voidNoArgs() { calls.append("voidNoArgs;"); }
+    private void voidOneArg(final int value) { calls.append("voidOneArg:").append(value).append(';'); }
+    private long primitives(final String key, final long value) { return key.length() + value; }
+    private String threeArgs(final Object a, final String b, final double c) { return a + b + c; }
+    private int fourArgs(final int a, final int b, final int c, final int d) { return a + b + c + d; }
+    private static String staticMethod(final String value) { return "static-" + value; }
+    private void failure() throws IOException { throw new IOException("handler failure"); }
+  }
+
+  @Test
+  public void testInvoke() throws Throwable {
+    final Handler handler = new Handler();
+    Assertions.assertNull(MethodCallSite.bind(handler, method("voidNoArgs")).invoke());
+    Assertions.assertNull(MethodCallSite.bind(handler, method("voidOneArg")).invoke(7));
+    Assertions.assertEquals("voidNoArgs;voidOneArg:7;", handler.calls.toString());
+
+    Assertions.assertEquals(13L, MethodCallSite.bind(handler, method("primitives")).invoke("abc", 10L));
+    Assertions.assertEquals("1x2.5", MethodCallSite.bind(handler, method("threeArgs")).invoke(1, "x", 2.5));
+    Assertions.assertEquals("1x2.5", MethodCallSite.bind(handler, method("threeArgs")).invoke(new Object[] { 1, "x", 2.5 }));
+
+    // spreader call sites
+    Assertions.assertEquals(10, MethodCallSite.bind(handler, method("fourArgs")).invoke(new Object[] { 1, 2, 3, 4 }));
+    Assertions.assertEquals("static-z", MethodCallSite.bind(null, method("staticMethod")).invoke("z"));
+  }
+
+  @Test
+  public void testExceptions() {
+    final Handler handler = new Handler();
+
+    // the handler exception is not wrapped
+    final IOException e = Assertions.assertThrows(IOException.class, () -> MethodCallSite.bind(handler, method("failure")).invoke());
+    Assertions.assertEquals("handler failure", e.getMessage());
+
+    final MethodCallSite callSite = MethodCallSite.bind(handler, method("voidOneArg"));
+    Assertions.assertEquals(1, callSite.arity());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> callSite.invoke());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> callSite.invoke(1, 2));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> callSite.invoke(new Object[] { 1, 2 }));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> MethodCallSite.bind(handler, method("fourArgs")).invoke(1));
+  }
+
+  private static Method method(final String name) {
+    for (final Method method: Handler.class.getDeclaredMethods()) {
+      if (method.getName().equals(name)) return method;
+    }
+    throw new IllegalArgumentException("method not found: " + name);
+  }
+}
@@ -24,6 +24,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -63,6 +64,7 @@ public abstract class AbstractClient implements StopSignal {
   private ClientState state = ClientState.DISCONNECTED;
   private boolean userDisconnected;
   private SocketAddress socketAddress;
+  private volatile FlushBatchingHandler.Config writeBatching;
 
   protected AbstractClient(final Bootstrap bootstrap, final RetryUtil.RetryLogic retryLogic) {
     this.retryLogic = retryLogic;
@@ -76,6 +78,7 @@ public abstract class AbstractClient implements StopSignal {
       @Override
       public void initChannel(final SocketChannel channel) {
         setupPipeline(channel.pipeline());
+        addWriteBatching(channel.pipeline());
       }
     });
   }
@@ -85,10 +88,33 @@ public abstract class AbstractClient implements StopSignal {
       @Override
       public void initChannel(final UnixChannel channel) {
         setupPipeline(channel.pipeline());
+        addWriteBatching(channel.pipeline());
       }
     });
   }
 
+  /**
+   * Opt-in write batching, the flushes of the writes are consolidated (see {@link FlushBatchingHandler}).
+   * Applied to the connections created after the call.
+   */
+  public void setWriteBatching(final int maxPackets, final int maxBytes, final long maxDelay, final TimeUnit unit) {
+    this.writeBatching = FlushBatchingHandler.Config.of(maxPackets, maxBytes, maxDelay, unit);
+  }
+
+  /**
+   * Disable the write batching, applied to the connections created after the call.
+   */
+  public void disableWriteBatching() {
+    this.writeBatching = null;
+  }
+
+  private void addWriteBatching(final ChannelPipeline pipeline) {
+    final FlushBatchingHandler.Config config = writeBatching;
+    if (config != null) {
+      pipeline.addFirst(new FlushBatchingHandler(config));
+    }
+  }
+
   protected static Bootstrap newTcpClientBootstrap(final EventLoopGroup eventLoop,
       final Class<? extends Channel> channelClass) {
     return new Bootstrap()
@@ -217,6 +243,15 @@ public abstract class AbstractClient implements StopSignal {
     pendingFrames.add(frame);
   }
 
+  /**
+   * @return the frames queued while the client was not connected, removed from the queue
+   */
+  protected List<ReferenceCounted> drainPendingFrames() {
+    final ArrayList<ReferenceCounted> frames = new ArrayList<>(pendingFrames.size());
+    pendingFrames.drainTo(frames);
+    return frames;
+  }
+
   protected void writePendingFrames() {
     if (pendingFrames.isEmpty()) return;
 
@@ -226,15 +261,37 @@ public abstract class AbstractClient implements StopSignal {
       final ReferenceCounted frame = pendingFrames.poll();
       if (frame == null) break;
 
+      if (isFrameDiscarded(frame)) {
+        Logger.debug("discard pending frame: {}", frame);
+        frame.release();
+        continue;
+      }
+
       Logger.debug("write pending frame: {}", frame);
       write(frame);
     }
     channel.flush();
   }
 
+  /**
+   * Called before writing a frame queued while the client was not connected.
+   * @return true if the frame is no longer needed (e.g. its request was completed), the frame is released
+   */
+  protected boolean isFrameDiscarded(final ReferenceCounted frame) {
+    return false;
+  }
+
+  /**
+   * Called when the frame was written to the connection, before it is released.
+   */
+  protected void frameWritten(final ReferenceCounted frame) {
+    // no-op
+  }
+
   private GenericFutureListener<Future<? super Void>> newWriteFuture(final ReferenceCounted frame) {
     return future -> {
       if (future.isSuccess()) {
+        frameWritten(frame);
         frame.release();
       } else {
         Logger.debug(future.cause(), "write failed add to pending frame to retry queue");
@@ -367,11 +424,11 @@ public abstract class AbstractClient implements StopSignal {
     }
   }
 
-  protected static <T> ClientPromise<T> newFailedPromise(final Throwable cause) {
+  public static <T> ClientPromise<T> newFailedPromise(final Throwable cause) {
     return new FailedClientPromise<T>(cause);
   }
 
-  protected static <T> ClientPromise<T> newCompletedPromise(final T result) {
+  public static <T> ClientPromise<T> newCompletedPromise(final T result) {
     return new CompletedClientPromise<T>(result);
   }
 }
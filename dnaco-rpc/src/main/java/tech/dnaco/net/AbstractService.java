@@ -62,6 +62,7 @@ import tech.dnaco.tracing.Tracer;
 public abstract class AbstractService implements ShutdownUtil.StopSignal {
   private final CopyOnWriteArrayList<Channel> channels = new CopyOnWriteArrayList<>();
   private final AtomicBoolean running = new AtomicBoolean(false);
+  private volatile FlushBatchingHandler.Config writeBatching;
 
   protected AbstractService() {
     // no-op
@@ -82,6 +83,7 @@ public abstract class AbstractService implements ShutdownUtil.StopSignal {
       @Override
       public void initChannel(final SocketChannel channel) {
         setupPipeline(channel.pipeline());
+        addWriteBatching(channel.pipeline());
       }
     });
   }
@@ -91,10 +93,33 @@ public abstract class AbstractService implements ShutdownUtil.StopSignal {
       @Override
       public void initChannel(final UnixChannel channel) {
         setupPipeline(channel.pipeline());
+        addWriteBatching(channel.pipeline());
       }
     });
   }
 
+  /**
+   * Opt-in write batching, the flushes of the session writes are consolidated (see {@link FlushBatchingHandler}).
+   * Applied to the connections accepted after the call.
+   */
+  public void setWriteBatching(final int maxPackets, final int maxBytes, final long maxDelay, final TimeUnit unit) {
+    this.writeBatching = FlushBatchingHandler.Config.of(maxPackets, maxBytes, maxDelay, unit);
+  }
+
+  /**
+   * Disable the write batching, applied to the connections accepted after the call.
+   */
+  public void disableWriteBatching() {
+    this.writeBatching = null;
+  }
+
+  private void addWriteBatching(final ChannelPipeline pipeline) {
+    final FlushBatchingHandler.Config config = writeBatching;
+    if (config != null) {
+      pipeline.addFirst(new FlushBatchingHandler(config));
+    }
+  }
+
   protected static ServerBootstrap newTcpServerBootstrap(final ServiceEventLoop eventLoop, final EventLoopGroup workerGroup) {
     return new ServerBootstrap()
       .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.net;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.util.concurrent.Future;
+import tech.dnaco.strings.HumansUtil;
+import tech.dnaco.telemetry.ConcurrentHistogram;
+import tech.dnaco.telemetry.Histogram;
+import tech.dnaco.telemetry.TelemetryCollector;
+
+/**
+ * Write batching: the flushes are consolidated, so many small writes end up in a single syscall.
+ * <p>The pending writes are flushed when one of these happens:
+ * <ul>
+ *  <li>maxPackets writes or maxBytes are pending
+ *  <li>the end of the read loop, if the flush was requested while reading (e.g. responses)
+ *  <li>the next event-loop tick (maxDelay = 0) or maxDelay after the first flush request
+ *  <li>the channel is closed or it is no longer writable
+ * </ul>
+ * The handler must be the first of the pipeline, to see all the writes.
+ */
+public final class FlushBatchingHandler extends ChannelDuplexHandler {
+  private static final ConcurrentHistogram flushBatchWrites = new TelemetryCollector.Builder()
+    .setUnit(HumansUtil.HUMAN_COUNT)
+    .setName("net_flush_batch_writes")
+    .setLabel("Writes per flush (write batching)")
+    .register(new ConcurrentHistogram(Histogram.DEFAULT_COUNT_BOUNDS));
+
+  private static final ConcurrentHistogram flushBatchSize = new TelemetryCollector.Builder()
+    .setUnit(HumansUtil.HUMAN_SIZE)
+    .setName("net_flush_batch_size")
+    .setLabel("Bytes per flush (write batching)")
+    .register(new ConcurrentHistogram(Histogram.DEFAULT_SIZE_BOUNDS));
+
+  public record Config(int maxPackets, int maxBytes, long maxDelayNanos) {
+    public Config {
+      if (maxPackets <= 0) {
+        throw new IllegalArgumentException("expected a positive maxPackets, got " + maxPackets);
+      }
+      if (maxBytes <= 0) {
+        throw new IllegalArgumentException("expected a positive maxBytes, got " + maxBytes);
+      }
+      if (maxDelayNanos < 0) {
+        throw new IllegalArgumentException("expected a non negative maxDelay, got " + maxDelayNanos);
+      }
+    }
+
+    public static Config of(final int maxPackets, final int maxBytes, final long maxDelay, final TimeUnit unit) {
+      return new Config(maxPackets, maxBytes, unit.toNanos(maxDelay));
+    }
+  }
+
+  private final Config config;
+  private final Runnable flushTask;
+
+  private ChannelHandlerContext ctx;
+  private Future<?> scheduledFlush;
+  private boolean readInProgress;
+  private int pendingWrites;
+  private long pendingBytes;
+
+  public FlushBatchingHandler(final Config config) {
+    this.config = config;
+    this.flushTask = this::scheduledFlush;
+  }
+
+  @Override
+  public void handlerAdded(final ChannelHandlerContext ctx) {
+    this.ctx = ctx;
+  }
+
+  @Override
+  public void handlerRemoved(final ChannelHandlerContext ctx) {
+    flushIfNeeded(ctx);
+  }
+
+  // ================================================================================
+  //  Outbound
+  // ================================================================================
+  @Override
+  public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
+    pendingWrites++;
+    pendingBytes += messageSize(msg);
+    ctx.write(msg, promise);
+  }
+
+  @Override
+  public void flush(final ChannelHandlerContext ctx) {
+    if (pendingWrites == 0) return;
+
+    if (pendingWrites >= config.maxPackets() || pendingBytes >= config.maxBytes()) {
+      flushNow(ctx);
+    } else if (!readInProgress) {
+      // while reading, the flush is done at the end of the read loop
+      scheduleFlush(ctx);
+    }
+  }
+
+  @Override
+  public void close(final ChannelHandlerContext ctx, final ChannelPromise promise) {
+    flushIfNeeded(ctx);
+    ctx.close(promise);
+  }
+
+  @Override
+  public void disconnect(final ChannelHandlerContext ctx, final ChannelPromise promise) {
+    flushIfNeeded(ctx);
+    ctx.disconnect(promise);
+  }
+
+  // ================================================================================
+  //  Inbound
+  // ================================================================================
+  @Override
+  public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+    readInProgress = true;
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelReadComplete(final ChannelHandlerContext ctx) {
+    // the handlers flush on read complete, the flush is consolidated with the ones requested while reading
+    ctx.fireChannelReadComplete();
+    readInProgress = false;
+    flushIfNeeded(ctx);
+  }
+
+  @Override
+  public void channelWritabilityChanged(final ChannelHandlerContext ctx) {
+    if (!ctx.channel().isWritable()) {
+      flushIfNeeded(ctx);
+    }
+    ctx.fireChannelWritabilityChanged();
+  }
+
+  @Override
+  public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+    readInProgress = false;
+    flushIfNeeded(ctx);
+    ctx.fireExceptionCaught(cause);
+  }
+
+  // ================================================================================
+  //  Flush helpers
+  // ================================================================================
+  private void scheduleFlush(final ChannelHandlerContext ctx) {
+    if (scheduledFlush != null) return;
+
+    if (config.maxDelayNanos() == 0) {
+      scheduledFlush = ctx.executor().submit(flushTask);
+    } else {
+      scheduledFlush = ctx.executor().schedule(flushTask, config.maxDelayNanos(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void scheduledFlush() {
+    scheduledFlush = null;
+    flushIfNeeded(ctx);
+  }
+
+  private void flushIfNeeded(final ChannelHandlerContext ctx) {
+    if (pendingWrites != 0) {
+      flushNow(ctx);
+    }
+  }
+
+  private void flushNow(final ChannelHandlerContext ctx) {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+
+    flushBatchWrites.add(pendingWrites);
+    flushBatchSize.add(pendingBytes);
+    pendingWrites = 0;
+    pendingBytes = 0;
+    ctx.flush();
+  }
+
+  private static long messageSize(final Object msg) {
+    if (msg instanceof final ByteBuf buf) return buf.readableBytes();
+    if (msg instanceof final ByteBufHolder holder) return holder.content().readableBytes();
+    if (msg instanceof final FileRegion region) return region.count();
+    return 0;
+  }
+}
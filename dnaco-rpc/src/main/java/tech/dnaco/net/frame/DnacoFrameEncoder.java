@@ -19,23 +19,44 @@
 
 package tech.dnaco.net.frame;
 
+import java.util.List;
+
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 
+/**
+ * Write the frames as | header | data |.
+ * The data of the large frames is not copied: the header is written to a small buffer
+ * and the data buffer is passed through as a separate write, gathered by the channel (writev).
+ */
 @Sharable
-public class DnacoFrameEncoder extends MessageToByteEncoder<DnacoFrame> {
+public class DnacoFrameEncoder extends MessageToMessageEncoder<DnacoFrame> {
   public static final DnacoFrameEncoder INSTANCE = new DnacoFrameEncoder();
 
+  // below this size copying the data is cheaper than an extra buffer in the gather write
+  private static final int COPY_THRESHOLD = 1024;
+
   private DnacoFrameEncoder() {
     // no-op
   }
 
   @Override
-  protected void encode(final ChannelHandlerContext ctx, final DnacoFrame frame, final ByteBuf out) {
+  protected void encode(final ChannelHandlerContext ctx, final DnacoFrame frame, final List<Object> out) {
     //System.out.println("SEND FRAME: " + frame + " -> " + ByteBufUtil.hexDump(frame.getData()));
-    DnacoFrameUtil.encodeFrame(frame, out);
-    DnacoFrameStats.INSTANCE.addWriteFrame(DnacoFrameUtil.HEADER_SIZE + frame.getLength());
+    final int frameSize = DnacoFrameUtil.HEADER_SIZE + frame.getLength();
+    if (frame.getLength() < COPY_THRESHOLD) {
+      final ByteBuf buf = ctx.alloc().ioBuffer(frameSize);
+      DnacoFrameUtil.encodeFrame(frame, buf);
+      out.add(buf);
+    } else {
+      final ByteBuf header = ctx.alloc().ioBuffer(DnacoFrameUtil.HEADER_SIZE);
+      DnacoFrameUtil.encodeFrameHeader(frame, header);
+      out.add(header);
+      // the frame is released once encoded, the data is released once written
+      out.add(frame.getData().retainedDuplicate());
+    }
+    DnacoFrameStats.INSTANCE.addWriteFrame(frameSize);
   }
 }
@@ -24,6 +24,7 @@ import java.util.concurrent.TimeUnit;
 import tech.dnaco.logging.Logger;
 import tech.dnaco.strings.HumansUtil;
 import tech.dnaco.telemetry.ConcurrentHistogram;
+import tech.dnaco.telemetry.ConcurrentLogHistogram;
 import tech.dnaco.telemetry.ConcurrentMaxAndAvgTimeRangeGauge;
 import tech.dnaco.telemetry.ConcurrentTimeRangeCounter;
 import tech.dnaco.telemetry.Histogram;
@@ -93,11 +94,11 @@ public class DnacoFrameStats extends TelemetryCollectorGroup {
     .setLabel("Frame Process time")
     .register(this, new ConcurrentMaxAndAvgTimeRangeGauge(60, 1, TimeUnit.MINUTES));
 
-  private final ConcurrentHistogram frameProcessTimeHisto = new TelemetryCollector.Builder()
+  private final ConcurrentLogHistogram frameProcessTimeHisto = new TelemetryCollector.Builder()
       .setUnit(HumansUtil.HUMAN_TIME_NANOS)
       .setName("frame_process_time_histo")
       .setLabel("Frame Process time histogram")
-      .register(this, new ConcurrentHistogram(Histogram.DEFAULT_DURATION_BOUNDS_NS));
+      .register(this, new ConcurrentLogHistogram());
 
   private DnacoFrameStats() {
     // no-op
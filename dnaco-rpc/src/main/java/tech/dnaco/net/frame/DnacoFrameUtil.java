@@ -22,6 +22,7 @@ package tech.dnaco.net.frame;
 import java.util.function.Consumer;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 
 public final class DnacoFrameUtil {
   public static final int MAX_FRAME_SIZE = 128 << 20;
@@ -71,4 +72,17 @@ public final class DnacoFrameUtil {
     out.writeInt(frame.getHeader());
     out.writeBytes(frame.getData());
   }
+
+  public static void encodeFrameHeader(final DnacoFrame frame, final ByteBuf out) {
+    out.writeInt(frame.getHeader());
+  }
+
+  /**
+   * @return a buffer with the frame header and data, the data is not copied (retained in a composite buffer)
+   */
+  public static ByteBuf newFrameBuffer(final ByteBufAllocator alloc, final DnacoFrame frame) {
+    final ByteBuf header = alloc.buffer(HEADER_SIZE);
+    encodeFrameHeader(frame, header);
+    return alloc.compositeBuffer(2).addComponents(true, header, frame.getData().retainedDuplicate());
+  }
 }
@@ -269,7 +269,7 @@ public class DnacoHttpService extends AbstractService {
 
       final String uri = request.uri();
       final int paramsIndex = uri.indexOf('?');
-      topRequests.add((paramsIndex < 0) ? uri : uri.substring(0, paramsIndex), 0);
+      topRequests.add(uri, (paramsIndex < 0) ? uri.length() : paramsIndex, 0);
     }
   }
 
@@ -21,8 +21,17 @@ package tech.dnaco.net.rpc;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
@@ -36,6 +45,10 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import tech.dnaco.logging.Logger;
 import tech.dnaco.net.AbstractClient;
 import tech.dnaco.net.frame.DnacoFrameDecoder;
@@ -104,12 +117,13 @@ public class DnacoRpcClient extends AbstractClient {
   // ====================================================================================================
   //  Request Related
   // ====================================================================================================
-  private final AtomicLong pkgId = new AtomicLong();
+  // shared by the clients, a request keeps a unique id when it is moved to another client (see disconnect(RequestRedispatcher))
+  private static final AtomicLong PACKET_IDS = new AtomicLong();
 
   public ClientPromise<DnacoRpcResponse> sendRequest(final String requestId, final Object msg) {
     try {
       final DnacoRpcRequest packet = DnacoRpcRequest.alloc(Tracer.getCurrentTraceId(), Tracer.getCurrentSpanId(),
-        pkgId.incrementAndGet(),
+        PACKET_IDS.incrementAndGet(),
         Unpooled.wrappedBuffer(requestId.getBytes()),
         objectMapper.toBytes(msg, msg.getClass()),
         DnacoRpcRequest.SendResultTo.CALLER, null);
@@ -120,9 +134,321 @@ public class DnacoRpcClient extends AbstractClient {
   }
 
   public ClientPromise<DnacoRpcResponse> sendRequest(final DnacoRpcRequest request) {
-    final ClientPromise<DnacoRpcResponse> future = newFuture(request);
-    writeAndFlush(request);
-    return future;
+    return sendRequest(request, requestTimeoutNs, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Send the request, or queue it if the max in-flight requests are already sent.
+   * The queued requests are sent when the responses of the in-flight requests are received.
+   * When the queue is full the promise fails with a {@link RejectedExecutionException}.
+   * @param timeout the deadline of the request, 0 means no timeout.
+   *        the promise fails with a {@link TimeoutException} when the deadline expires,
+   *        and the deadline is sent to the server to skip the execution of the expired requests.
+   */
+  public ClientPromise<DnacoRpcResponse> sendRequest(final DnacoRpcRequest request, final long timeout, final TimeUnit unit) {
+    final PendingRequest pending = new PendingRequest(request);
+    if (timeout > 0) {
+      request.setDeadlineNs(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    // registered before arming the timer, a timeout always finds the request to remove
+    responsesFutures.put(request.getPacketId(), pending);
+    if (timeout > 0) {
+      final Timeout requestTimeout = TIMEOUT_TIMER.newTimeout(t -> requestTimedOut(pending, timeout, unit), timeout, unit);
+      pending.timeout = requestTimeout;
+      // completed (e.g. by a disconnection) before the timeout was set
+      if (pending.state.get() == PendingRequest.COMPLETED) requestTimeout.cancel();
+    }
+
+    if (tryAcquireSlot()) {
+      sendPendingRequest(pending);
+    } else if (waitingCount.incrementAndGet() > maxWaitingRequests) {
+      waitingCount.decrementAndGet();
+      completeRequest(pending, null, new RejectedExecutionException("request " + request.getPacketId()
+        + " rejected, too many requests waiting to be sent: " + maxWaitingRequests));
+      request.release();
+    } else {
+      waitingRequests.add(pending);
+      // a slot may have been released while adding the request to the queue
+      sendWaitingRequests();
+    }
+    return pending.promise;
+  }
+
+  // ====================================================================================================
+  //  In-Flight Requests Related
+  // ====================================================================================================
+  private static final HashedWheelTimer TIMEOUT_TIMER = new HashedWheelTimer(
+    new DefaultThreadFactory("dnaco-rpc-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+  private final NonBlockingHashMapLong<PendingRequest> responsesFutures = new NonBlockingHashMapLong<>();
+  private final ConcurrentLinkedQueue<PendingRequest> waitingRequests = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger waitingCount = new AtomicInteger();
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private volatile long lastFailureNs;
+  private final AtomicInteger inFlightRequests = new AtomicInteger();
+  private volatile int maxInFlightRequests = Integer.MAX_VALUE;
+  private volatile int maxWaitingRequests = 1 << 16;
+  private volatile long requestTimeoutNs = 0;
+
+  /**
+   * Limit the requests sent and waiting for a response, the others are queued.
+   */
+  public DnacoRpcClient setMaxInFlightRequests(final int maxInFlightRequests) {
+    if (maxInFlightRequests <= 0) {
+      throw new IllegalArgumentException("expected a positive number of in-flight requests, got " + maxInFlightRequests);
+    }
+    this.maxInFlightRequests = maxInFlightRequests;
+    sendWaitingRequests();
+    return this;
+  }
+
+  /**
+   * Limit the requests queued waiting for an in-flight slot, the others are rejected.
+   */
+  public DnacoRpcClient setMaxWaitingRequests(final int maxWaitingRequests) {
+    if (maxWaitingRequests <= 0) {
+      throw new IllegalArgumentException("expected a positive number of waiting requests, got " + maxWaitingRequests);
+    }
+    this.maxWaitingRequests = maxWaitingRequests;
+    return this;
+  }
+
+  /**
+   * Default timeout of the requests, 0 means no timeout.
+   */
+  public DnacoRpcClient setRequestTimeout(final long timeout, final TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("expected a non negative timeout, got " + timeout);
+    }
+    this.requestTimeoutNs = unit.toNanos(timeout);
+    return this;
+  }
+
+  public int getInFlightRequests() {
+    return inFlightRequests.get();
+  }
+
+  public int getWaitingRequests() {
+    return waitingCount.get();
+  }
+
+  /**
+   * @return the requests failed in a row, timed out or lost with the connection.
+   *         reset by the next response received
+   */
+  public int getConsecutiveFailures() {
+    return consecutiveFailures.get();
+  }
+
+  /**
+   * @return the {@link System#nanoTime()} of the last request timed out or lost with the connection
+   */
+  public long getLastFailureNs() {
+    return lastFailureNs;
+  }
+
+  private static final class PendingRequest {
+    private static final int WAITING = 0;
+    private static final int SENT = 1;
+    private static final int COMPLETED = 2;
+
+    private final InProgressClientPromise<DnacoRpcResponse> promise = new InProgressClientPromise<>();
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+    private final DnacoRpcRequest request;
+    private volatile Timeout timeout;
+    // written to the connection, the response may be received only from that connection
+    private volatile boolean written;
+
+    private PendingRequest(final DnacoRpcRequest request) {
+      this.request = request;
+    }
+  }
+
+  private boolean tryAcquireSlot() {
+    while (true) {
+      final int count = inFlightRequests.get();
+      if (count >= maxInFlightRequests) return false;
+      if (inFlightRequests.compareAndSet(count, count + 1)) return true;
+    }
+  }
+
+  private void releaseSlot() {
+    inFlightRequests.decrementAndGet();
+    sendWaitingRequests();
+  }
+
+  private void sendWaitingRequests() {
+    while (!waitingRequests.isEmpty() && tryAcquireSlot()) {
+      final PendingRequest pending = waitingRequests.poll();
+      if (pending == null) {
+        inFlightRequests.decrementAndGet();
+        continue;
+      }
+      waitingCount.decrementAndGet();
+      sendPendingRequest(pending);
+    }
+  }
+
+  private void sendPendingRequest(final PendingRequest pending) {
+    if (pending.state.compareAndSet(PendingRequest.WAITING, PendingRequest.SENT)) {
+      writeAndFlush(pending.request);
+    } else {
+      // the request timed out while waiting in the queue, it will never be sent
+      inFlightRequests.decrementAndGet();
+      pending.request.release();
+    }
+  }
+
+  private PendingRequest getPendingRequest(final ReferenceCounted frame) {
+    if (!(frame instanceof final DnacoRpcRequest request)) return null;
+    final PendingRequest pending = responsesFutures.get(request.getPacketId());
+    return (pending != null && pending.request == request) ? pending : null;
+  }
+
+  @Override
+  protected void frameWritten(final ReferenceCounted frame) {
+    final PendingRequest pending = getPendingRequest(frame);
+    if (pending != null) pending.written = true;
+  }
+
+  @Override
+  protected boolean isFrameDiscarded(final ReferenceCounted frame) {
+    // the request was completed (e.g. timed out) while waiting for the connection
+    return frame instanceof DnacoRpcRequest && getPendingRequest(frame) == null;
+  }
+
+  private void completeRequest(final PendingRequest pending, final DnacoRpcResponse response, final Throwable cause) {
+    final int prevState = pending.state.getAndSet(PendingRequest.COMPLETED);
+    if (prevState == PendingRequest.COMPLETED) return;
+
+    if (cause == null) {
+      consecutiveFailures.set(0);
+    } else if (cause instanceof TimeoutException || cause instanceof IOException) {
+      lastFailureNs = System.nanoTime();
+      consecutiveFailures.incrementAndGet();
+    }
+
+    responsesFutures.remove(pending.request.getPacketId(), pending);
+    final Timeout timeout = pending.timeout;
+    if (timeout != null) timeout.cancel();
+
+    if (cause != null) {
+      pending.promise.setFailure(cause);
+    } else {
+      pending.promise.setSuccess(response);
+    }
+
+    if (prevState == PendingRequest.SENT) {
+      releaseSlot();
+    }
+  }
+
+  @FunctionalInterface
+  public interface RequestRedispatcher {
+    ClientPromise<DnacoRpcResponse> sendRequest(DnacoRpcRequest request, long timeout, TimeUnit unit);
+  }
+
+  /**
+   * Disconnect the client, completing all its requests.
+   * The requests not written to the connection (waiting for a slot, or queued while reconnecting)
+   * are sent with the redispatcher, keeping their deadline. The requests already written fail with an IOException.
+   * The other unsent frames (e.g. events) are dropped and released.
+   */
+  public boolean disconnect(final RequestRedispatcher redispatcher) {
+    final boolean disconnected = disconnect();
+
+    // the frames queued while reconnecting were never written
+    final Set<Object> unsentFrames = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (final ReferenceCounted frame: drainPendingFrames()) {
+      if (getPendingRequest(frame) != null) {
+        unsentFrames.add(frame);
+      } else {
+        Logger.debug("client disconnected, drop unsent frame: {}", frame);
+        frame.release();
+      }
+    }
+    final ArrayList<PendingRequest> unsentRequests = new ArrayList<>();
+    for (PendingRequest pending = waitingRequests.poll(); pending != null; pending = waitingRequests.poll()) {
+      waitingCount.decrementAndGet();
+      if (pending.state.compareAndSet(PendingRequest.WAITING, PendingRequest.COMPLETED)) {
+        unsentRequests.add(pending);
+      }
+    }
+    for (final PendingRequest pending: responsesFutures.values()) {
+      if (unsentFrames.contains(pending.request) && pending.state.compareAndSet(PendingRequest.SENT, PendingRequest.COMPLETED)) {
+        inFlightRequests.decrementAndGet();
+        unsentRequests.add(pending);
+      }
+    }
+    for (final PendingRequest pending: unsentRequests) {
+      redispatchRequest(pending, redispatcher);
+    }
+
+    // the responses of the requests written to the connection will never be received
+    final IOException cause = new IOException("client disconnected while waiting for the response");
+    for (final PendingRequest pending: responsesFutures.values()) {
+      completeRequest(pending, null, cause);
+    }
+    return disconnected;
+  }
+
+  private void redispatchRequest(final PendingRequest pending, final RequestRedispatcher redispatcher) {
+    responsesFutures.remove(pending.request.getPacketId(), pending);
+    final Timeout timeout = pending.timeout;
+    if (timeout != null) timeout.cancel();
+
+    final DnacoRpcRequest request = pending.request;
+    final long remainingNs = request.remainingTimeNs();
+    if (remainingNs <= 0) {
+      pending.promise.setFailure(new TimeoutException("request " + request.getPacketId() + " expired before being sent"));
+      request.release();
+      return;
+    }
+
+    final long timeoutNs = request.hasDeadline() ? remainingNs : 0;
+    redispatcher.sendRequest(request, timeoutNs, TimeUnit.NANOSECONDS).whenComplete((response, e) -> {
+      if (e != null) {
+        pending.promise.setFailure(e);
+      } else {
+        pending.promise.setSuccess(response);
+      }
+    });
+  }
+
+  void responseReceived(final DnacoRpcResponse response) {
+    final PendingRequest pending = responsesFutures.get(response.getPacketId());
+    if (pending != null) {
+      completeRequest(pending, response, null);
+    } else {
+      Logger.warn("no response future waiting for response: {}", response);
+    }
+  }
+
+  /**
+   * The connection is closed, the responses of the written requests will never be received:
+   * the written requests fail and release their slots. The requests not yet written
+   * (still in the pending frames) and the waiting ones are sent on the next connection.
+   */
+  void connectionClosed(final Object remoteAddress) {
+    // the released slots send the waiting requests, they must not be failed with the written ones
+    final ArrayList<PendingRequest> sentRequests = new ArrayList<>();
+    for (final PendingRequest pending: responsesFutures.values()) {
+      if (pending.written && pending.state.get() == PendingRequest.SENT) {
+        sentRequests.add(pending);
+      }
+    }
+
+    final IOException cause = new IOException("connection closed while waiting for the response: " + remoteAddress);
+    for (final PendingRequest pending: sentRequests) {
+      completeRequest(pending, null, cause);
+    }
+  }
+
+  private void requestTimedOut(final PendingRequest pending, final long timeout, final TimeUnit unit) {
+    Logger.debug("request timed out: {}", pending.request);
+    completeRequest(pending, null, new TimeoutException("request " + pending.request.getPacketId()
+      + " timed out after " + HumansUtil.humanTimeNanos(unit.toNanos(timeout))));
   }
 
   // ====================================================================================================
@@ -146,7 +472,7 @@ public class DnacoRpcClient extends AbstractClient {
 
   public ClientPromise<Void> sendEvent(final ByteBuf eventId, final ByteBuf msg) {
     final DnacoRpcEvent event = DnacoRpcEvent.alloc(Tracer.getCurrentTraceId(), Tracer.getCurrentSpanId(),
-      pkgId.incrementAndGet(), 0,
+      PACKET_IDS.incrementAndGet(), 0,
       eventId,
       msg);
     writeAndFlush(event);
@@ -180,13 +506,6 @@ public class DnacoRpcClient extends AbstractClient {
     pipeline.addLast(new DnacoRpcClientHandler(this));
   }
 
-  private final NonBlockingHashMapLong<InProgressClientPromise<DnacoRpcResponse>> responsesFutures = new NonBlockingHashMapLong<>();
-  private ClientPromise<DnacoRpcResponse> newFuture(final DnacoRpcRequest request) {
-    final InProgressClientPromise<DnacoRpcResponse> future = new InProgressClientPromise<>();
-    responsesFutures.put(request.getPacketId(), future);
-    return future;
-  }
-
   private static final class DnacoRpcClientHandler extends SimpleChannelInboundHandler<DnacoRpcPacket> {
     private final DnacoRpcClient client;
 
@@ -226,14 +545,9 @@ public class DnacoRpcClient extends AbstractClient {
 
     private void handleRpcResponse(final ChannelHandlerContext ctx, final DnacoRpcResponse response) {
       final long startNs = System.nanoTime();
-      final InProgressClientPromise<DnacoRpcResponse> future = client.responsesFutures.remove(response.getPacketId());
-      if (future != null) {
-        future.setSuccess(response);
-        final long elapsedNs = System.nanoTime() - startNs;
-        Logger.trace("response {} handled in {}", response, HumansUtil.humanTimeNanos(elapsedNs));
-      } else {
-        Logger.warn("no response future waiting for response: {}", response);
-      }
+      client.responseReceived(response);
+      final long elapsedNs = System.nanoTime() - startNs;
+      Logger.trace("response {} handled in {}", response, HumansUtil.humanTimeNanos(elapsedNs));
     }
 
     private void handleRpcEvent(final ChannelHandlerContext ctx, final DnacoRpcEvent event) {
@@ -270,6 +584,7 @@ public class DnacoRpcClient extends AbstractClient {
     public void channelInactive(final ChannelHandlerContext ctx) {
       client.setState(ClientState.DISCONNECTED);
       Logger.debug("channel unregistered: {}", ctx.channel().remoteAddress());
+      client.connectionClosed(ctx.channel().remoteAddress());
       ctx.fireChannelInactive();
     }
 
@@ -0,0 +1,398 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.net.rpc;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.ReferenceCounted;
+import tech.dnaco.logging.Logger;
+import tech.dnaco.net.AbstractClient;
+import tech.dnaco.net.AbstractClient.ClientPromise;
+import tech.dnaco.threading.ShutdownUtil.StopSignal;
+import tech.dnaco.time.RetryUtil;
+
+/**
+ * Pool of {@link DnacoRpcClient} connections over one or more endpoints.
+ * <p>Each endpoint has N connections, each one served by its own event-loop thread.
+ * The requests are sent to the connection with the lowest load (in-flight + queued requests),
+ * selected with one of the {@link Balancer} strategies.
+ * <p>Each connection reconnects on its own, waiting as specified by its {@link RetryUtil.RetryLogic}.
+ * Connections that are not ready are skipped, while they are reconnecting.
+ * Connections with too many requests failed in a row (timed out or lost with the connection)
+ * are skipped for a cooldown period, then they are used again (see {@link #setUnhealthyThreshold(int, long, TimeUnit)}).
+ * If no connection is available, the request is queued in the pending frames of the least loaded connection,
+ * and it is sent once the connection is back.
+ */
+public final class DnacoRpcClientPool implements StopSignal {
+  public enum Balancer {
+    /** scan all the connections, pick the one with the lowest load */
+    LEAST_IN_FLIGHT,
+    /** pick two random connections, use the one with the lowest load */
+    POWER_OF_TWO_CHOICES,
+  }
+
+  private final AtomicInteger nextIndex = new AtomicInteger();
+  private final Supplier<DnacoRpcClient> clientFactory;
+  private final DnacoRpcObjectMapper objectMapper;
+  private final int connectionsPerEndpoint;
+  private final Balancer balancer;
+
+  private volatile PooledConnection[] connections = new PooledConnection[0];
+  private Consumer<DnacoRpcClient> connectedHandler;
+  private int maxInFlightRequests = Integer.MAX_VALUE;
+  private long requestTimeoutNs = 0;
+  private volatile int unhealthyFailures = 3;
+  private volatile long unhealthyCooldownNs = TimeUnit.SECONDS.toNanos(5);
+
+  private record PooledConnection(SocketAddress endpoint, DnacoRpcClient client) {
+    private int load() {
+      return client.getInFlightRequests() + client.getWaitingRequests();
+    }
+  }
+
+  DnacoRpcClientPool(final Supplier<DnacoRpcClient> clientFactory, final DnacoRpcObjectMapper objectMapper,
+      final int connectionsPerEndpoint, final Balancer balancer) {
+    if (connectionsPerEndpoint <= 0) {
+      throw new IllegalArgumentException("expected a positive number of connections per endpoint, got " + connectionsPerEndpoint);
+    }
+    this.clientFactory = clientFactory;
+    this.objectMapper = objectMapper;
+    this.connectionsPerEndpoint = connectionsPerEndpoint;
+    this.balancer = balancer;
+  }
+
+  /**
+   * @param retryLogicFactory each connection has its own retry logic, to track its reconnection attempts
+   */
+  public static DnacoRpcClientPool newTcpPool(final EventLoopGroup eloopGroup,
+      final Class<? extends Channel> channelClass,
+      final Supplier<RetryUtil.RetryLogic> retryLogicFactory,
+      final DnacoRpcObjectMapper objectMapper,
+      final int connectionsPerEndpoint, final Balancer balancer) {
+    return new DnacoRpcClientPool(() -> DnacoRpcClient.newTcpClient(eloopGroup, channelClass, retryLogicFactory.get(), objectMapper),
+      objectMapper, connectionsPerEndpoint, balancer);
+  }
+
+  public DnacoRpcObjectMapper getObjectMapper() {
+    return objectMapper;
+  }
+
+  // ====================================================================================================
+  //  Config Related, applied to all the connections
+  // ====================================================================================================
+  public synchronized DnacoRpcClientPool whenConnected(final Consumer<DnacoRpcClient> consumer) {
+    this.connectedHandler = consumer;
+    for (final PooledConnection conn: connections) {
+      conn.client().whenConnected(consumer);
+    }
+    return this;
+  }
+
+  /**
+   * Limit of the in-flight requests of each connection, see {@link DnacoRpcClient#setMaxInFlightRequests(int)}.
+   */
+  public synchronized DnacoRpcClientPool setMaxInFlightRequests(final int maxInFlightRequests) {
+    if (maxInFlightRequests <= 0) {
+      throw new IllegalArgumentException("expected a positive number of in-flight requests, got " + maxInFlightRequests);
+    }
+    this.maxInFlightRequests = maxInFlightRequests;
+    for (final PooledConnection conn: connections) {
+      conn.client().setMaxInFlightRequests(maxInFlightRequests);
+    }
+    return this;
+  }
+
+  public synchronized DnacoRpcClientPool setRequestTimeout(final long timeout, final TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("expected a non negative timeout, got " + timeout);
+    }
+    this.requestTimeoutNs = unit.toNanos(timeout);
+    for (final PooledConnection conn: connections) {
+      conn.client().setRequestTimeout(requestTimeoutNs, TimeUnit.NANOSECONDS);
+    }
+    return this;
+  }
+
+  /**
+   * A connection with the given number of requests failed in a row (timed out or lost with the connection)
+   * is skipped until the cooldown expires, or until a response is received.
+   */
+  public DnacoRpcClientPool setUnhealthyThreshold(final int failures, final long cooldown, final TimeUnit unit) {
+    if (failures <= 0) {
+      throw new IllegalArgumentException("expected a positive number of failures, got " + failures);
+    }
+    if (cooldown < 0) {
+      throw new IllegalArgumentException("expected a non negative cooldown, got " + cooldown);
+    }
+    this.unhealthyFailures = failures;
+    this.unhealthyCooldownNs = unit.toNanos(cooldown);
+    return this;
+  }
+
+  // ====================================================================================================
+  //  Endpoints Related
+  // ====================================================================================================
+  public void addEndpoint(final String host, final int port) {
+    addEndpoint(InetSocketAddress.createUnresolved(host, port));
+  }
+
+  /**
+   * Open the connections to the endpoint.
+   */
+  public synchronized void addEndpoint(final SocketAddress endpoint) {
+    for (final PooledConnection conn: connections) {
+      if (conn.endpoint().equals(endpoint)) {
+        throw new IllegalArgumentException("endpoint already in the pool: " + endpoint);
+      }
+    }
+
+    final PooledConnection[] newConnections = Arrays.copyOf(connections, connections.length + connectionsPerEndpoint);
+    for (int i = connections.length; i < newConnections.length; ++i) {
+      final DnacoRpcClient client = clientFactory.get();
+      if (connectedHandler != null) client.whenConnected(connectedHandler);
+      if (maxInFlightRequests != Integer.MAX_VALUE) client.setMaxInFlightRequests(maxInFlightRequests);
+      client.setRequestTimeout(requestTimeoutNs, TimeUnit.NANOSECONDS);
+      client.connect(endpoint);
+      newConnections[i] = new PooledConnection(endpoint, client);
+    }
+    this.connections = newConnections;
+    Logger.debug("added endpoint {} with {} connections", endpoint, connectionsPerEndpoint);
+  }
+
+  /**
+   * Disconnect the endpoint connections. The requests not yet written to the endpoint
+   * are sent to the remaining connections, the ones already written fail with an IOException
+   * (see {@link DnacoRpcClient#disconnect(DnacoRpcClient.RequestRedispatcher)}).
+   * @return true if the endpoint was in the pool
+   */
+  public synchronized boolean removeEndpoint(final SocketAddress endpoint) {
+    final ArrayList<PooledConnection> newConnections = new ArrayList<>(connections.length);
+    final ArrayList<PooledConnection> removedConnections = new ArrayList<>(connectionsPerEndpoint);
+    for (final PooledConnection conn: connections) {
+      if (conn.endpoint().equals(endpoint)) {
+        removedConnections.add(conn);
+      } else {
+        newConnections.add(conn);
+      }
+    }
+    if (removedConnections.isEmpty()) return false;
+
+    // the new requests are no longer sent to the removed connections, move their unsent ones
+    this.connections = newConnections.toArray(new PooledConnection[0]);
+    for (final PooledConnection conn: removedConnections) {
+      conn.client().disconnect(this::sendRequest);
+    }
+    Logger.debug("removed endpoint {}", endpoint);
+    return true;
+  }
+
+  public List<SocketAddress> getEndpoints() {
+    final ArrayList<SocketAddress> endpoints = new ArrayList<>();
+    for (final PooledConnection conn: connections) {
+      if (!endpoints.contains(conn.endpoint())) endpoints.add(conn.endpoint());
+    }
+    return endpoints;
+  }
+
+  public int getConnectionsCount() {
+    return connections.length;
+  }
+
+  public int getReadyConnectionsCount() {
+    int count = 0;
+    for (final PooledConnection conn: connections) {
+      if (conn.client().isReady()) count++;
+    }
+    return count;
+  }
+
+  /**
+   * @return the connections ready and not skipped for too many failures
+   */
+  public int getHealthyConnectionsCount() {
+    int count = 0;
+    for (final PooledConnection conn: connections) {
+      if (isHealthy(conn)) count++;
+    }
+    return count;
+  }
+
+  private boolean isHealthy(final PooledConnection conn) {
+    final DnacoRpcClient client = conn.client();
+    if (!client.isReady()) return false;
+    if (client.getConsecutiveFailures() < unhealthyFailures) return true;
+    // after the cooldown the connection is tried again, a response resets the failures
+    return (System.nanoTime() - client.getLastFailureNs()) >= unhealthyCooldownNs;
+  }
+
+  // ====================================================================================================
+  //  Request Related
+  // ====================================================================================================
+  public ClientPromise<DnacoRpcResponse> sendRequest(final String requestId, final Object msg) {
+    final DnacoRpcClient client = selectClient();
+    if (client == null) return noEndpointsPromise();
+    return client.sendRequest(requestId, msg);
+  }
+
+  public ClientPromise<DnacoRpcResponse> sendRequest(final DnacoRpcRequest request) {
+    final DnacoRpcClient client = selectClient();
+    if (client == null) return noEndpointsPromise(request);
+    return client.sendRequest(request);
+  }
+
+  public ClientPromise<DnacoRpcResponse> sendRequest(final DnacoRpcRequest request, final long timeout, final TimeUnit unit) {
+    final DnacoRpcClient client = selectClient();
+    if (client == null) return noEndpointsPromise(request);
+    return client.sendRequest(request, timeout, unit);
+  }
+
+  private static <T> ClientPromise<T> noEndpointsPromise(final ReferenceCounted... frames) {
+    // the pool owns the frames passed to it, as the clients do
+    for (final ReferenceCounted frame: frames) {
+      frame.release();
+    }
+    return AbstractClient.newFailedPromise(new IllegalStateException("no endpoints in the pool"));
+  }
+
+  // ====================================================================================================
+  //  Event Related
+  // ====================================================================================================
+  public ClientPromise<Void> sendEvent(final String eventId, final Object msg) {
+    final DnacoRpcClient client = selectClient();
+    if (client == null) return noEndpointsPromise();
+    return client.sendEvent(eventId, msg);
+  }
+
+  public ClientPromise<Void> sendEvent(final byte[] eventId, final Object msg) {
+    final DnacoRpcClient client = selectClient();
+    if (client == null) return noEndpointsPromise();
+    return client.sendEvent(eventId, msg);
+  }
+
+  public ClientPromise<Void> sendEvent(final ByteBuf eventId, final Object msg) {
+    final DnacoRpcClient client = selectClient();
+    if (client == null) return noEndpointsPromise(eventId);
+    return client.sendEvent(eventId, msg);
+  }
+
+  public ClientPromise<Void> sendEvent(final ByteBuf eventId, final ByteBuf msg) {
+    final DnacoRpcClient client = selectClient();
+    if (client == null) return noEndpointsPromise(eventId, msg);
+    return client.sendEvent(eventId, msg);
+  }
+
+  /**
+   * @return the connection to use for the next request, null if the pool has no endpoints
+   */
+  private DnacoRpcClient selectClient() {
+    final PooledConnection[] conns = this.connections;
+    if (conns.length == 0) return null;
+    if (conns.length == 1) return conns[0].client();
+
+    final PooledConnection conn = switch (balancer) {
+      case LEAST_IN_FLIGHT -> selectLeastLoaded(conns);
+      case POWER_OF_TWO_CHOICES -> selectPowerOfTwoChoices(conns);
+    };
+    // no connection available, the request waits in the pending frames of the least loaded one
+    return (conn != null) ? conn.client() : selectLeastLoadedAny(conns).client();
+  }
+
+  private PooledConnection selectLeastLoaded(final PooledConnection[] conns) {
+    // rotate the start index, so ties are spread across the connections
+    final int offset = Math.floorMod(nextIndex.getAndIncrement(), conns.length);
+    PooledConnection best = null;
+    int bestLoad = Integer.MAX_VALUE;
+    for (int i = 0; i < conns.length; ++i) {
+      final PooledConnection conn = conns[(offset + i) % conns.length];
+      if (!isHealthy(conn)) continue;
+
+      final int load = conn.load();
+      if (load < bestLoad) {
+        best = conn;
+        bestLoad = load;
+        if (load == 0) break;
+      }
+    }
+    return best;
+  }
+
+  private PooledConnection selectPowerOfTwoChoices(final PooledConnection[] conns) {
+    final ThreadLocalRandom rand = ThreadLocalRandom.current();
+    final int a = rand.nextInt(conns.length);
+    final int b = (a + 1 + rand.nextInt(conns.length - 1)) % conns.length;
+    final PooledConnection connA = conns[a];
+    final PooledConnection connB = conns[b];
+    final boolean healthyA = isHealthy(connA);
+    final boolean healthyB = isHealthy(connB);
+    if (healthyA && healthyB) return connA.load() <= connB.load() ? connA : connB;
+    if (healthyA) return connA;
+    if (healthyB) return connB;
+
+    // both the choices are not available, fallback to the full scan
+    PooledConnection best = null;
+    int bestLoad = Integer.MAX_VALUE;
+    for (final PooledConnection conn: conns) {
+      if (!isHealthy(conn)) continue;
+
+      final int load = conn.load();
+      if (load < bestLoad) {
+        best = conn;
+        bestLoad = load;
+      }
+    }
+    return best;
+  }
+
+  private static PooledConnection selectLeastLoadedAny(final PooledConnection[] conns) {
+    PooledConnection best = conns[0];
+    for (int i = 1; i < conns.length; ++i) {
+      if (conns[i].load() < best.load()) best = conns[i];
+    }
+    return best;
+  }
+
+  // ====================================================================================================
+  //  Shutdown Related
+  // ====================================================================================================
+  public synchronized boolean disconnect() {
+    boolean disconnected = false;
+    for (final PooledConnection conn: connections) {
+      disconnected |= conn.client().disconnect();
+    }
+    return disconnected;
+  }
+
+  @Override
+  public boolean sendStopSignal() {
+    return disconnect();
+  }
+}
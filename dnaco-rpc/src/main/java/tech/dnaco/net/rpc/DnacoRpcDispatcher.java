@@ -33,6 +33,7 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.util.ReferenceCounted;
 import tech.dnaco.collections.arrays.ArrayUtil;
+import tech.dnaco.dispatcher.MethodCallSite;
 import tech.dnaco.logging.Logger;
 import tech.dnaco.net.AbstractService.AbstractServiceSession;
 import tech.dnaco.net.rpc.DnacoRpcHandler.Async;
@@ -43,6 +44,7 @@ import tech.dnaco.net.rpc.DnacoRpcHandler.RpcSessionDisconnected;
 import tech.dnaco.strings.HumansUtil;
 import tech.dnaco.strings.StringUtil;
 import tech.dnaco.telemetry.ConcurrentMaxAndAvgTimeRangeGauge;
+import tech.dnaco.telemetry.ConcurrentTimeRangeCounter;
 import tech.dnaco.telemetry.TelemetryCollector;
 
 public class DnacoRpcDispatcher {
@@ -52,6 +54,12 @@ public class DnacoRpcDispatcher {
       .setLabel("RPC Execution Time")
       .register(new ConcurrentMaxAndAvgTimeRangeGauge(24 * 60, 1, TimeUnit.MINUTES));
 
+  private final ConcurrentTimeRangeCounter expiredRequests = new TelemetryCollector.Builder()
+      .setUnit(HumansUtil.HUMAN_COUNT)
+      .setName("dnaco_rpc_expired_requests")
+      .setLabel("RPC Requests dropped, deadline expired")
+      .register(new ConcurrentTimeRangeCounter(24 * 60, 1, TimeUnit.MINUTES));
+
   private final HashMap<ByteBuf, RpcHandler> rpcRequestMapping = new HashMap<>(256);
   private final HashMap<ByteBuf, List<RpcHandler>> rpcEventMapping = new HashMap<>(256);
   private final ArrayList<RpcSessionEventHandler> rpcSessionDisconnectedMappings = new ArrayList<>();
@@ -199,6 +207,13 @@ public class DnacoRpcDispatcher {
   }
 
   private void handleRpcRequest(final DnacoRpcSession ctx, final DnacoRpcRequest request) {
+    if (request.isExpired()) {
+      // the client is no longer waiting for the response
+      Logger.debug("dropping expired request: {}", request);
+      expiredRequests.inc();
+      return;
+    }
+
     final long startNs = System.nanoTime();
     try {
       final RpcHandler handler = rpcRequestMapping.get(request.getRequestId());
@@ -280,6 +295,7 @@ public class DnacoRpcDispatcher {
   private static final class RpcSessionEventHandler {
     private final DnacoRpcHandler handler;
     private final Method method;
+    private final MethodCallSite callSite;
     private final boolean hasSessionParam;
 
     private RpcSessionEventHandler(final DnacoRpcHandler handler, final Method method) {
@@ -299,13 +315,14 @@ public class DnacoRpcDispatcher {
       if (hasSessionParam && !DnacoRpcSession.class.isAssignableFrom(rawParams[0].getType())) {
         throw new UnsupportedOperationException("param must be a DnacoRpcSession. got " + rawParams[0].getType() + " " + method);
       }
+      this.callSite = MethodCallSite.bind(handler, method);
     }
 
-    public void invoke(final DnacoRpcSession session) throws Exception {
+    public void invoke(final DnacoRpcSession session) throws Throwable {
       if (hasSessionParam) {
-        method.invoke(handler, session);
+        callSite.invoke(session);
       } else {
-        method.invoke(handler);
+        callSite.invoke();
       }
     }
   }
@@ -315,6 +332,7 @@ public class DnacoRpcDispatcher {
     private final ResultMapper resultMapper;
     private final DnacoRpcHandler handler;
     private final Method method;
+    private final MappedCall mappedCall;
     private final boolean async;
 
     private RpcHandler(final DnacoRpcHandler handler, final Method method, final DnacoRpcObjectMapper objectMapper) {
@@ -350,26 +368,61 @@ public class DnacoRpcDispatcher {
       } else {
         this.resultMapper = new RpcPacketDataResultMapper(resultType);
       }
+
+      this.mappedCall = newMappedCall(MethodCallSite.bind(handler, method), paramMappers);
     }
 
     public boolean isAsync() {
       return async;
     }
 
-    public Object invoke(final DnacoRpcSession session, final DnacoRpcPacket packet, final DnacoRpcObjectMapper objectMapper) throws Exception {
-      // convert params
-      final Object[] params = new Object[paramMappers.length];
-      for (int i = 0; i < params.length; ++i) {
-        params[i] = paramMappers[i].get(session, packet, objectMapper);
-      }
-
-      // invoke method
-      final Object result = method.invoke(handler, params);
+    public Object invoke(final DnacoRpcSession session, final DnacoRpcPacket packet, final DnacoRpcObjectMapper objectMapper) throws Throwable {
+      // convert params and invoke method
+      final Object result = mappedCall.call(session, packet, objectMapper);
 
       // convert result
       return resultMapper.get(session, packet, result, objectMapper);
     }
 
+    @FunctionalInterface
+    private interface MappedCall {
+      Object call(DnacoRpcSession session, DnacoRpcPacket packet, DnacoRpcObjectMapper objectMapper) throws Throwable;
+    }
+
+    // the param mappers are fused with the call site, no params array for up to 3 params
+    private static MappedCall newMappedCall(final MethodCallSite callSite, final ParamMapper[] mappers) {
+      return switch (mappers.length) {
+        case 0 -> (session, packet, objectMapper) -> callSite.invoke();
+        case 1 -> {
+          final ParamMapper m0 = mappers[0];
+          yield (session, packet, objectMapper) -> callSite.invoke(m0.get(session, packet, objectMapper));
+        }
+        case 2 -> {
+          final ParamMapper m0 = mappers[0];
+          final ParamMapper m1 = mappers[1];
+          yield (session, packet, objectMapper) -> callSite.invoke(
+            m0.get(session, packet, objectMapper),
+            m1.get(session, packet, objectMapper));
+        }
+        case 3 -> {
+          final ParamMapper m0 = mappers[0];
+          final ParamMapper m1 = mappers[1];
+          final ParamMapper m2 = mappers[2];
+          yield (session, packet, objectMapper) -> callSite.invoke(
+            m0.get(session, packet, objectMapper),
+            m1.get(session, packet, objectMapper),
+            m2.get(session, packet, objectMapper));
+        }
+        default -> (session, packet, objectMapper) -> {
+          final Object[] params = new Object[mappers.length];
+          for (int i = 0; i < params.length; ++i) {
+            params[i] = mappers[i].get(session, packet, objectMapper);
+          }
+          return callSite.invoke(params);
+        };
+      };
+    }
+
     @Override
     public String toString() {
       return "RpcHandler [async=" + async + ", handler=" + handler + ", method=" + method + "]";
@@ -39,6 +39,13 @@ public abstract class DnacoRpcPacket extends AbstractReferenceCounted {
 
   protected abstract PacketType getPacketType();
 
+  /**
+   * @return the flags of the rpc header, specific to the packet type
+   */
+  protected int getPacketFlags() {
+    return 0;
+  }
+
   @Override
   protected void deallocate() {
     this.data.release();
@@ -20,6 +20,7 @@
 package tech.dnaco.net.rpc;
 
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import io.netty.buffer.ByteBuf;
@@ -87,7 +88,7 @@ public final class DnacoRpcPacketUtil {
   public static void encodeRpc(final DnacoRpcPacket packet, final ByteBuf out) {
     final int pkgIdLen = IntUtil.size(packet.getPacketId());
 
-    final int rpcHead = (packet.getPacketType().ordinal() << 6) | (pkgIdLen - 1);
+    final int rpcHead = (packet.getPacketType().ordinal() << 6) | (packet.getPacketFlags() << 3) | (pkgIdLen - 1);
     out.writeByte(rpcHead);
     out.writeLong(packet.getTraceId().getHi());
     out.writeLong(packet.getTraceId().getLo());
@@ -115,11 +116,13 @@ public final class DnacoRpcPacketUtil {
     // - Send Result to: 2bit (CALLER, STORE_IN_MEMORY, STORE_WITH_ID, FORWARD_TO)
     // - Request Id Length: 7bit (1 + (0-127)) max 128bytes string
     // - Result Id Length: 7bit (1 + (0-127)) max 128bytes string.  used only when Send Result To is not CALLER.
-    //   +----+---------+--------+ +-------------+ +-------------+
-    //   | 11 | 1111111 | 111111 | | Request Id  | |  Result Id  |
-    //   +----+---------+--------+ +-------------+ +-------------+
-    //   0    2         9       16  (1-128 bytes)   (1-128 bytes)
+    // - Timeout: u32 milliseconds to the deadline. used only when the DEADLINE flag is set.
+    //   +----+---------+--------+ +------------+ +-------------+ +-------------+
+    //   | 11 | 1111111 | 111111 | | Timeout ms | | Request Id  | |  Result Id  |
+    //   +----+---------+--------+ +------------+ +-------------+ +-------------+
+    //   0    2         9       16   (4 bytes)    (1-128 bytes)   (1-128 bytes)
     final int reqHead = in.readShort() & 0xffff;
+    final long timeoutMs = ((pkgFlags & DnacoRpcRequest.FLAG_DEADLINE) != 0) ? in.readUnsignedInt() : -1;
     final int sendResultTo = (reqHead >> 14) & 0x3;
     final int requestIdLen = 1 + ((reqHead >> 7) & 0x7f);
     final int resultIdLen = sendResultTo != 0 ? 1 + (reqHead & 0x7f) : 0;
@@ -129,7 +132,12 @@ public final class DnacoRpcPacketUtil {
     final ByteBuf resultId = in.readRetainedSlice(resultIdLen);
     final ByteBuf data = in.retainedSlice();
     Logger.debug("data:{} -> {}", data.readableBytes(), data.toString(StandardCharsets.UTF_8));
-    return DnacoRpcRequest.alloc(traceId, spanId, pkgId, requestId, data, sendResultTo, resultId);
+    final DnacoRpcRequest request = DnacoRpcRequest.alloc(traceId, spanId, pkgId, requestId, data, sendResultTo, resultId);
+    if (timeoutMs >= 0) {
+      // the deadline is relative to the time the request was received
+      request.setDeadlineNs(request.getStampNs() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    }
+    return request;
   }
 
   private static void encodeRpcRequest(final DnacoRpcRequest request, final ByteBuf out) {
@@ -137,6 +145,10 @@ public final class DnacoRpcPacketUtil {
                       | ((request.getRequestId().readableBytes() - 1) << 7)
                       | (request.hasResultId() ? (request.getResultId().readableBytes() - 1) : 0);
     out.writeShort(reqHead);
+    if (request.hasDeadline()) {
+      final long timeoutMs = TimeUnit.NANOSECONDS.toMillis(request.remainingTimeNs());
+      out.writeInt((int) Math.max(0, Math.min(0xffffffffL, timeoutMs)));
+    }
     out.writeBytes(request.getRequestId());
     if (request.hasResultId()) {
       out.writeBytes(request.getResultId());
@@ -24,6 +24,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import tech.dnaco.strings.HumansUtil;
 import tech.dnaco.tracing.SpanId;
 import tech.dnaco.tracing.TraceId;
 
@@ -34,9 +35,14 @@ public class DnacoRpcRequest extends DnacoRpcPacket {
 
   private static final SendResultTo[] SEND_RESULT_TO = SendResultTo.values();
 
+  // the request header is followed by the remaining time to the deadline
+  protected static final int FLAG_DEADLINE = 1;
+
   private SendResultTo sendResultTo;
   private ByteBuf requestId;
   private ByteBuf resultId;
+  private long deadlineNs;
+  private boolean hasDeadline;
 
   private DnacoRpcRequest() {
     // no-op
@@ -47,6 +53,11 @@ public class DnacoRpcRequest extends DnacoRpcPacket {
     return PacketType.REQUEST;
   }
 
+  @Override
+  protected int getPacketFlags() {
+    return hasDeadline ? FLAG_DEADLINE : 0;
+  }
+
   public static DnacoRpcRequest alloc(final TraceId traceId, final SpanId spanId, final long pkgId,
       final ByteBuf requestId, final ByteBuf data,
       final SendResultTo sendResultTo, final ByteBuf resultId)
@@ -92,12 +103,45 @@ public class DnacoRpcRequest extends DnacoRpcPacket {
     return resultId;
   }
 
+  // ================================================================================
+  //  Deadline related
+  // ================================================================================
+  /**
+   * The deadline is in System.nanoTime() units, and it is sent as the remaining time
+   * so the client and the server clocks do not need to be in sync.
+   */
+  public DnacoRpcRequest setDeadlineNs(final long deadlineNs) {
+    this.deadlineNs = deadlineNs;
+    this.hasDeadline = true;
+    return this;
+  }
+
+  public boolean hasDeadline() {
+    return hasDeadline;
+  }
+
+  public long getDeadlineNs() {
+    return deadlineNs;
+  }
+
+  /**
+   * @return the time left before the deadline, or Long.MAX_VALUE if the request has no deadline
+   */
+  public long remainingTimeNs() {
+    return hasDeadline ? deadlineNs - System.nanoTime() : Long.MAX_VALUE;
+  }
+
+  public boolean isExpired() {
+    return hasDeadline && remainingTimeNs() <= 0;
+  }
+
   @Override
   public String toString() {
     return "DnacoRpcRequest [traceId=" + getTraceId() + ", spanId=" + getSpanId() + ", packetId=" + getPacketId()
       + ", requestId=" + requestId.toString(StandardCharsets.UTF_8)
       + ", sendResultTo=" + sendResultTo
       + ", resultId=" + resultId.toString(StandardCharsets.UTF_8)
+      + (hasDeadline ? ", remainingTime=" + HumansUtil.humanTimeNanos(remainingTimeNs()) : "")
       + ", data=" + getDataSize()
       + "]";
   }
@@ -74,8 +74,7 @@ public class DnacoRpcWsService extends AbstractService {
 
     @Override
     protected void encode(final ChannelHandlerContext ctx, final DnacoFrame frame, final List<Object> out) throws Exception {
-      final ByteBuf buf = ctx.alloc().buffer();
-      DnacoFrameUtil.encodeFrame(frame, buf);
+      final ByteBuf buf = DnacoFrameUtil.newFrameBuffer(ctx.alloc(), frame);
       Logger.debug("dnaco frame to binary web sock frame: {} {}", frame, ByteBufUtil.hexDump(buf));
       out.add(new BinaryWebSocketFrame(buf));
     }
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.net;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class TestFlushBatchingHandler {
+  @Test
+  public void testMaxPackets() {
+    // the writes go through the pipeline, the EmbeddedChannel ones run the pending tasks
+    final EmbeddedChannel channel = newChannel(3, 1 << 20, 1000);
+
+    // below the limits the flush is delayed
+    channel.pipeline().writeAndFlush(newBuffer(8));
+    channel.pipeline().writeAndFlush(newBuffer(8));
+    Assertions.assertEquals(0, channel.outboundMessages().size());
+
+    // the third write reaches maxPackets, everything is flushed
+    channel.pipeline().writeAndFlush(newBuffer(8));
+    Assertions.assertEquals(3, channel.outboundMessages().size());
+    Assertions.assertTrue(channel.finishAndReleaseAll());
+  }
+
+  @Test
+  public void testFlushOnNextTick() {
+    final EmbeddedChannel channel = newChannel(3, 1 << 20, 0);
+
+    // without maxDelay the flush is done on the next event-loop tick
+    channel.pipeline().writeAndFlush(newBuffer(8));
+    Assertions.assertEquals(0, channel.outboundMessages().size());
+    Assertions.assertTrue(channel.hasPendingTasks());
+    channel.runPendingTasks();
+    Assertions.assertEquals(1, channel.outboundMessages().size());
+    Assertions.assertTrue(channel.finishAndReleaseAll());
+  }
+
+  @Test
+  public void testMaxBytesAndDelay() {
+    final EmbeddedChannel channel = newChannel(100, 64, 10);
+    channel.freezeTime();
+
+    // the flush waits for maxDelay
+    channel.pipeline().writeAndFlush(newBuffer(16));
+    channel.runPendingTasks();
+    Assertions.assertEquals(0, channel.outboundMessages().size());
+    channel.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+    channel.runPendingTasks();
+    Assertions.assertEquals(1, channel.outboundMessages().size());
+
+    // the writes reaching maxBytes are flushed right away
+    channel.pipeline().writeAndFlush(newBuffer(16));
+    Assertions.assertEquals(1, channel.outboundMessages().size());
+    channel.pipeline().writeAndFlush(newBuffer(48));
+    Assertions.assertEquals(3, channel.outboundMessages().size());
+
+    // the delayed flush was cancelled, nothing is left to flush
+    channel.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+    channel.runPendingTasks();
+    Assertions.assertEquals(3, channel.outboundMessages().size());
+    Assertions.assertTrue(channel.finishAndReleaseAll());
+  }
+
+  @Test
+  public void testFlushOnReadComplete() {
+    final EmbeddedChannel channel = newChannel(100, 1 << 20, 1000);
+    channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+      @Override
+      public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        // echo each read with its own flush
+        ctx.writeAndFlush(msg);
+      }
+    });
+
+    // the flushes requested while reading are consolidated at the end of the read loop
+    channel.pipeline().fireChannelRead(newBuffer(8));
+    channel.pipeline().fireChannelRead(newBuffer(8));
+    channel.pipeline().fireChannelRead(newBuffer(8));
+    Assertions.assertEquals(0, channel.outboundMessages().size());
+    channel.pipeline().fireChannelReadComplete();
+    Assertions.assertEquals(3, channel.outboundMessages().size());
+
+    // nothing scheduled, the flush was not delayed
+    Assertions.assertFalse(channel.hasPendingTasks());
+    Assertions.assertTrue(channel.finishAndReleaseAll());
+  }
+
+  @Test
+  public void testFlushWhenNotWritable() {
+    final EmbeddedChannel channel = newChannel(100, 1 << 20, 1000);
+    channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1024, 2048));
+
+    channel.pipeline().writeAndFlush(newBuffer(8));
+    Assertions.assertTrue(channel.isWritable());
+    Assertions.assertEquals(0, channel.outboundMessages().size());
+
+    // the pending writes over the high water mark make the channel not writable, and are flushed
+    channel.pipeline().write(newBuffer(4096));
+    Assertions.assertEquals(2, channel.outboundMessages().size());
+    Assertions.assertTrue(channel.isWritable());
+    Assertions.assertTrue(channel.finishAndReleaseAll());
+  }
+
+  @Test
+  public void testRemovedMidStream() {
+    final FlushBatchingHandler handler = new FlushBatchingHandler(FlushBatchingHandler.Config.of(100, 1 << 20, 1, TimeUnit.SECONDS));
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+    channel.pipeline().writeAndFlush(newBuffer(8));
+    channel.pipeline().writeAndFlush(newBuffer(8));
+    Assertions.assertEquals(0, channel.outboundMessages().size());
+
+    // removing the handler flushes the pending writes, the next flushes are no longer delayed
+    channel.pipeline().remove(handler);
+    Assertions.assertEquals(2, channel.outboundMessages().size());
+    channel.pipeline().writeAndFlush(newBuffer(8));
+    Assertions.assertEquals(3, channel.outboundMessages().size());
+    Assertions.assertTrue(channel.finishAndReleaseAll());
+  }
+
+  @Test
+  public void testFlushOnClose() {
+    final EmbeddedChannel channel = newChannel(100, 1 << 20, 1000);
+    final ByteBuf buf = newBuffer(8);
+    channel.pipeline().writeAndFlush(buf);
+    Assertions.assertEquals(0, channel.outboundMessages().size());
+
+    channel.close();
+    Assertions.assertEquals(1, channel.outboundMessages().size());
+    Assertions.assertTrue(channel.finishAndReleaseAll());
+    Assertions.assertEquals(0, buf.refCnt());
+  }
+
+  private static EmbeddedChannel newChannel(final int maxPackets, final int maxBytes, final long maxDelayMs) {
+    final FlushBatchingHandler.Config config = FlushBatchingHandler.Config.of(maxPackets, maxBytes, maxDelayMs, TimeUnit.MILLISECONDS);
+    return new EmbeddedChannel(new FlushBatchingHandler(config));
+  }
+
+  private static ByteBuf newBuffer(final int size) {
+    return Unpooled.buffer(size).writeZero(size);
+  }
+}
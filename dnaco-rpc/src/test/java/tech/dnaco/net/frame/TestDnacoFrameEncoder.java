@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.net.frame;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class TestDnacoFrameEncoder {
+  @Test
+  public void testSmallFrameCopy() {
+    final EmbeddedChannel channel = new EmbeddedChannel(DnacoFrameEncoder.INSTANCE);
+    final byte[] payload = randomBytes(100);
+    final ByteBuf data = Unpooled.wrappedBuffer(payload);
+    final DnacoFrame frame = DnacoFrame.alloc(3, data);
+
+    // below the copy threshold header and data are written in a single buffer
+    Assertions.assertTrue(channel.writeOutbound(frame));
+    final ByteBuf out = channel.readOutbound();
+    Assertions.assertNull(channel.readOutbound());
+    assertFrameBytes(3, payload, out);
+
+    // the frame and its data are released once encoded
+    Assertions.assertEquals(0, frame.refCnt());
+    Assertions.assertEquals(0, data.refCnt());
+    out.release();
+    Assertions.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void testLargeFrameSeparateWrites() {
+    final EmbeddedChannel channel = new EmbeddedChannel(DnacoFrameEncoder.INSTANCE);
+    final byte[] payload = randomBytes(4096);
+    final ByteBuf data = Unpooled.wrappedBuffer(payload);
+    final DnacoFrame frame = DnacoFrame.alloc(7, data);
+
+    // above the copy threshold the header and the data are separate writes, the data is not copied
+    Assertions.assertTrue(channel.writeOutbound(frame));
+    final ByteBuf header = channel.readOutbound();
+    final ByteBuf body = channel.readOutbound();
+    Assertions.assertNull(channel.readOutbound());
+    Assertions.assertEquals(DnacoFrameUtil.HEADER_SIZE, header.readableBytes());
+    Assertions.assertSame(payload, body.array());
+    final ByteBuf out = Unpooled.wrappedBuffer(header.retain(), body.retain());
+    assertFrameBytes(7, payload, out);
+    out.release();
+
+    // the frame is released once encoded, the data once the write is done
+    Assertions.assertEquals(0, frame.refCnt());
+    Assertions.assertEquals(1, data.refCnt());
+    header.release();
+    body.release();
+    Assertions.assertEquals(0, header.refCnt());
+    Assertions.assertEquals(0, data.refCnt());
+    Assertions.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void testCopyThresholdBoundary() {
+    final EmbeddedChannel channel = new EmbeddedChannel(DnacoFrameEncoder.INSTANCE);
+    for (final int length: new int[] { 1, 1023, 1024 }) {
+      final byte[] payload = randomBytes(length);
+      final ByteBuf data = Unpooled.wrappedBuffer(payload);
+      Assertions.assertTrue(channel.writeOutbound(DnacoFrame.alloc(1, data)));
+
+      final int buffers = channel.outboundMessages().size();
+      Assertions.assertEquals(length < 1024 ? 1 : 2, buffers, "length " + length);
+      final ByteBuf[] parts = new ByteBuf[buffers];
+      for (int i = 0; i < buffers; ++i) {
+        parts[i] = channel.readOutbound();
+      }
+      final ByteBuf out = Unpooled.wrappedBuffer(parts);
+      assertFrameBytes(1, payload, out);
+      out.release();
+      Assertions.assertEquals(0, data.refCnt(), "length " + length);
+    }
+    Assertions.assertFalse(channel.finish());
+  }
+
+  @Test
+  public void testEncodeDecodeRoundTrip() {
+    final EmbeddedChannel encoder = new EmbeddedChannel(DnacoFrameEncoder.INSTANCE);
+    final EmbeddedChannel decoder = new EmbeddedChannel(new DnacoFrameDecoder());
+    final byte[][] payloads = new byte[][] { randomBytes(10), randomBytes(5000), randomBytes(1) };
+    for (int i = 0; i < payloads.length; ++i) {
+      Assertions.assertTrue(encoder.writeOutbound(DnacoFrame.alloc(i, Unpooled.wrappedBuffer(payloads[i]))));
+    }
+    for (ByteBuf buf = encoder.readOutbound(); buf != null; buf = encoder.readOutbound()) {
+      decoder.writeInbound(buf);
+    }
+
+    for (int i = 0; i < payloads.length; ++i) {
+      final DnacoFrame frame = decoder.readInbound();
+      Assertions.assertEquals(i, frame.getRev());
+      Assertions.assertArrayEquals(payloads[i], ByteBufUtil.getBytes(frame.getData()));
+      frame.release();
+      Assertions.assertEquals(0, frame.refCnt());
+    }
+    Assertions.assertNull(decoder.readInbound());
+    Assertions.assertFalse(encoder.finish());
+    Assertions.assertFalse(decoder.finish());
+  }
+
+  @Test
+  public void testNewFrameBuffer() {
+    // the buffer of the websocket frames: header and data in a composite buffer, the data is not copied
+    final byte[] payload = randomBytes(2000);
+    final ByteBuf data = Unpooled.wrappedBuffer(payload);
+    final DnacoFrame frame = DnacoFrame.alloc(5, data);
+
+    final ByteBuf buf = DnacoFrameUtil.newFrameBuffer(UnpooledByteBufAllocator.DEFAULT, frame);
+    Assertions.assertInstanceOf(CompositeByteBuf.class, buf);
+    Assertions.assertEquals(2, ((CompositeByteBuf) buf).numComponents());
+    Assertions.assertSame(payload, ((CompositeByteBuf) buf).component(1).array());
+    assertFrameBytes(5, payload, buf);
+
+    final DnacoFrame decoded = DnacoFrameUtil.decodeFrame(buf.duplicate());
+    Assertions.assertEquals(5, decoded.getRev());
+    Assertions.assertArrayEquals(payload, ByteBufUtil.getBytes(decoded.getData()));
+    decoded.release();
+
+    // the frame and the buffer own a reference each to the data
+    Assertions.assertEquals(2, data.refCnt());
+    frame.release();
+    Assertions.assertEquals(1, data.refCnt());
+    buf.release();
+    Assertions.assertEquals(0, buf.refCnt());
+    Assertions.assertEquals(0, data.refCnt());
+  }
+
+  private static void assertFrameBytes(final int rev, final byte[] payload, final ByteBuf buf) {
+    Assertions.assertEquals(DnacoFrameUtil.HEADER_SIZE + payload.length, buf.readableBytes());
+    final int header = buf.getInt(buf.readerIndex());
+    Assertions.assertEquals(rev, DnacoFrame.readRev(header));
+    Assertions.assertEquals(payload.length, DnacoFrame.readDataLength(header));
+    Assertions.assertArrayEquals(payload, ByteBufUtil.getBytes(buf, buf.readerIndex() + DnacoFrameUtil.HEADER_SIZE, payload.length));
+  }
+
+  private static byte[] randomBytes(final int length) {
+    final byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.net.rpc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import tech.dnaco.net.AbstractClient;
+import tech.dnaco.net.rpc.DnacoRpcResponse.OperationStatus;
+import tech.dnaco.time.RetryUtil;
+import tech.dnaco.tracing.SpanId;
+import tech.dnaco.tracing.TraceId;
+
+public class TestDnacoRpcClient {
+  private static final TraceId TRACE_ID = new TraceId(1, 2);
+
+  @Test
+  public void testInFlightWindow() throws Exception {
+    // not connected, the sent requests are queued as pending frames
+    final DnacoRpcClient client = newClient().setMaxInFlightRequests(2);
+
+    final List<CompletableFuture<DnacoRpcResponse>> results = new ArrayList<>();
+    for (int i = 1; i <= 5; ++i) {
+      results.add(send(client, i, 0));
+    }
+    Assertions.assertEquals(2, client.getInFlightRequests());
+    Assertions.assertEquals(3, client.getWaitingRequests());
+
+    // each response sends one of the waiting requests
+    client.responseReceived(newResponse(1));
+    Assertions.assertEquals(1, results.get(0).get().getPacketId());
+    Assertions.assertEquals(2, client.getInFlightRequests());
+    Assertions.assertEquals(2, client.getWaitingRequests());
+
+    // a larger window sends the waiting requests
+    client.setMaxInFlightRequests(10);
+    Assertions.assertEquals(4, client.getInFlightRequests());
+    Assertions.assertEquals(0, client.getWaitingRequests());
+
+    for (int i = 2; i <= 5; ++i) {
+      client.responseReceived(newResponse(i));
+      Assertions.assertEquals(i, results.get(i - 1).get().getPacketId());
+    }
+    Assertions.assertEquals(0, client.getInFlightRequests());
+
+    // a late or unknown response is ignored
+    client.responseReceived(newResponse(3));
+    Assertions.assertEquals(0, client.getInFlightRequests());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> client.setMaxInFlightRequests(0));
+  }
+
+  @Test
+  public void testRequestTimeout() throws Exception {
+    final DnacoRpcClient client = newClient().setMaxInFlightRequests(1);
+
+    // the sent request times out and releases the slot, the waiting one is sent
+    final CompletableFuture<DnacoRpcResponse> sent = send(client, 1, 50);
+    final CompletableFuture<DnacoRpcResponse> waiting = send(client, 2, 0);
+    Assertions.assertEquals(1, client.getWaitingRequests());
+    assertFailure(TimeoutException.class, sent);
+    // the slot is released after the promise is completed
+    waitFor(() -> client.getWaitingRequests() == 0);
+    Assertions.assertEquals(1, client.getInFlightRequests());
+
+    // the response of the timed out request is ignored
+    client.responseReceived(newResponse(1));
+    Assertions.assertFalse(waiting.isDone());
+    client.responseReceived(newResponse(2));
+    Assertions.assertEquals(2, waiting.get().getPacketId());
+    Assertions.assertEquals(0, client.getInFlightRequests());
+
+    // a request timing out in the queue never takes a slot
+    final CompletableFuture<DnacoRpcResponse> first = send(client, 3, 0);
+    final CompletableFuture<DnacoRpcResponse> queued = send(client, 4, 50);
+    assertFailure(TimeoutException.class, queued);
+    Assertions.assertEquals(1, client.getInFlightRequests());
+    client.responseReceived(newResponse(3));
+    Assertions.assertEquals(3, first.get().getPacketId());
+    Assertions.assertEquals(0, client.getInFlightRequests());
+    Assertions.assertEquals(0, client.getWaitingRequests());
+  }
+
+  @Test
+  public void testConnectionClosed() throws Exception {
+    final DnacoRpcClient client = newClient().setMaxInFlightRequests(2);
+    final DnacoRpcRequest requestA = newRequest(1);
+    final CompletableFuture<DnacoRpcResponse> a = send(client, requestA, 0);
+    final CompletableFuture<DnacoRpcResponse> b = send(client, 2, 10_000);
+    final CompletableFuture<DnacoRpcResponse> c = send(client, 3, 0);
+    Assertions.assertEquals(1, client.getWaitingRequests());
+
+    // only the written request fails, its slot sends the waiting one.
+    // the request not written is still pending, and will be sent on the next connection
+    client.frameWritten(requestA);
+    client.connectionClosed("test");
+    assertFailure(IOException.class, a);
+    Assertions.assertFalse(b.isDone());
+    Assertions.assertFalse(c.isDone());
+    Assertions.assertEquals(2, client.getInFlightRequests());
+    Assertions.assertEquals(0, client.getWaitingRequests());
+
+    client.responseReceived(newResponse(2));
+    client.responseReceived(newResponse(3));
+    Assertions.assertEquals(2, b.get().getPacketId());
+    Assertions.assertEquals(3, c.get().getPacketId());
+    Assertions.assertEquals(0, client.getInFlightRequests());
+  }
+
+  @Test
+  public void testRejectWaitingRequests() throws Exception {
+    final DnacoRpcClient client = newClient().setMaxInFlightRequests(1).setMaxWaitingRequests(2);
+    final CompletableFuture<DnacoRpcResponse> a = send(client, 1, 0);
+    final CompletableFuture<DnacoRpcResponse> b = send(client, 2, 0);
+    final CompletableFuture<DnacoRpcResponse> c = send(client, 3, 0);
+
+    // the queue is full, the request fails without being queued and is released
+    final DnacoRpcRequest requestD = newRequest(4);
+    final CompletableFuture<DnacoRpcResponse> d = send(client, requestD, 0);
+    assertFailure(RejectedExecutionException.class, d);
+    Assertions.assertEquals(0, requestD.refCnt());
+    Assertions.assertEquals(2, client.getWaitingRequests());
+
+    for (int i = 1; i <= 3; ++i) {
+      client.responseReceived(newResponse(i));
+    }
+    Assertions.assertEquals(1, a.get().getPacketId());
+    Assertions.assertEquals(2, b.get().getPacketId());
+    Assertions.assertEquals(3, c.get().getPacketId());
+    Assertions.assertEquals(0, client.getInFlightRequests());
+    Assertions.assertEquals(0, client.getWaitingRequests());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> client.setMaxWaitingRequests(0));
+  }
+
+  @Test
+  public void testDroppedRequestsReleased() throws Exception {
+    final DnacoRpcClient client = newClient().setMaxInFlightRequests(1);
+
+    // the request timing out in the queue is released when its turn comes
+    final CompletableFuture<DnacoRpcResponse> a = send(client, 1, 0);
+    final DnacoRpcRequest requestB = newRequest(2);
+    final CompletableFuture<DnacoRpcResponse> b = send(client, requestB, 50);
+    assertFailure(TimeoutException.class, b);
+    Assertions.assertEquals(1, requestB.refCnt());
+    client.responseReceived(newResponse(1));
+    Assertions.assertEquals(1, a.get().getPacketId());
+    Assertions.assertEquals(0, requestB.refCnt());
+
+    // the request timed out while waiting for the connection is released on disconnect
+    final DnacoRpcRequest requestC = newRequest(3);
+    final CompletableFuture<DnacoRpcResponse> c = send(client, requestC, 50);
+    assertFailure(TimeoutException.class, c);
+    client.disconnect((request, timeout, unit) -> AbstractClient.newFailedPromise(new IllegalStateException("unexpected")));
+    Assertions.assertEquals(0, requestC.refCnt());
+  }
+
+  @Test
+  public void testDisconnectRedispatch() throws Exception {
+    final DnacoRpcClient client = newClient().setMaxInFlightRequests(1);
+    final DnacoRpcClient target = newClient();
+
+    // not connected: the sent request is in the pending frames, the others are waiting
+    final CompletableFuture<DnacoRpcResponse> a = send(client, 1, 0);
+    final CompletableFuture<DnacoRpcResponse> b = send(client, 2, 10_000);
+    final CompletableFuture<DnacoRpcResponse> c = send(client, 3, 0);
+    Assertions.assertEquals(2, client.getWaitingRequests());
+
+    // the unsent requests are moved to the target client, and complete with its responses
+    client.disconnect(target::sendRequest);
+    Assertions.assertEquals(0, client.getInFlightRequests());
+    Assertions.assertEquals(0, client.getWaitingRequests());
+    Assertions.assertEquals(3, target.getInFlightRequests());
+    for (int i = 1; i <= 3; ++i) {
+      target.responseReceived(newResponse(i));
+    }
+    Assertions.assertEquals(1, a.get().getPacketId());
+    Assertions.assertEquals(2, b.get().getPacketId());
+    Assertions.assertEquals(3, c.get().getPacketId());
+    Assertions.assertEquals(0, target.getInFlightRequests());
+
+    // without a destination the requests fail
+    final CompletableFuture<DnacoRpcResponse> d = send(client, 4, 0);
+    client.disconnect((request, timeout, unit) -> AbstractClient.newFailedPromise(new IllegalStateException("no endpoints")));
+    assertFailure(IllegalStateException.class, d);
+  }
+
+  private static DnacoRpcClient newClient() {
+    return new DnacoRpcClient(new Bootstrap(), RetryUtil.newFixedRetry(1000), null);
+  }
+
+  private static DnacoRpcRequest newRequest(final long packetId) {
+    return DnacoRpcRequest.alloc(TRACE_ID, new SpanId(packetId), packetId,
+      Unpooled.wrappedBuffer("test".getBytes()), Unpooled.EMPTY_BUFFER,
+      DnacoRpcRequest.SendResultTo.CALLER, null);
+  }
+
+  private static CompletableFuture<DnacoRpcResponse> send(final DnacoRpcClient client, final long packetId, final long timeoutMs) {
+    return send(client, newRequest(packetId), timeoutMs);
+  }
+
+  private static CompletableFuture<DnacoRpcResponse> send(final DnacoRpcClient client, final DnacoRpcRequest request, final long timeoutMs) {
+    final CompletableFuture<DnacoRpcResponse> future = new CompletableFuture<>();
+    client.sendRequest(request, timeoutMs, TimeUnit.MILLISECONDS).whenComplete((response, e) -> {
+      if (e != null) {
+        future.completeExceptionally(e);
+      } else {
+        future.complete(response);
+      }
+    });
+    return future;
+  }
+
+  private static DnacoRpcResponse newResponse(final long packetId) {
+    return DnacoRpcResponse.alloc(TRACE_ID, new SpanId(packetId), packetId, OperationStatus.SUCCEEDED, 0, 0, Unpooled.EMPTY_BUFFER);
+  }
+
+  private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      Assertions.assertTrue(System.nanoTime() < deadline, "condition not reached");
+      Thread.sleep(1);
+    }
+  }
+
+  private static void assertFailure(final Class<? extends Throwable> expected, final CompletableFuture<?> future)
+      throws InterruptedException {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      Assertions.fail("expected " + expected.getSimpleName());
+    } catch (final ExecutionException e) {
+      Assertions.assertEquals(expected, e.getCause().getClass());
+    } catch (final TimeoutException e) {
+      Assertions.fail("the request is not completed");
+    }
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.net.rpc;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import tech.dnaco.net.AbstractClient.ClientPromise;
+import tech.dnaco.net.rpc.DnacoRpcClientPool.Balancer;
+import tech.dnaco.net.rpc.DnacoRpcResponse.OperationStatus;
+import tech.dnaco.time.RetryUtil;
+import tech.dnaco.tracing.SpanId;
+import tech.dnaco.tracing.TraceId;
+
+public class TestDnacoRpcClientPool {
+  private static final TraceId TRACE_ID = new TraceId(1, 2);
+  private static final SocketAddress ENDPOINT_A = InetSocketAddress.createUnresolved("a", 1);
+  private static final SocketAddress ENDPOINT_B = InetSocketAddress.createUnresolved("b", 1);
+
+  private final ArrayList<DnacoRpcClient> clients = new ArrayList<>();
+  private long nextPacketId = 1;
+
+  @Test
+  public void testLeastInFlight() throws Exception {
+    final DnacoRpcClientPool pool = newPool(3, Balancer.LEAST_IN_FLIGHT);
+    pool.addEndpoint(ENDPOINT_A);
+    setReady(0, 1, 2);
+
+    // the requests are spread across the connections
+    for (int i = 0; i < 6; ++i) send(pool);
+    assertLoads(2, 2, 2);
+
+    // the connection with the completed requests is picked
+    completeAll(1);
+    send(pool);
+    assertLoads(2, 1, 2);
+
+    // the connections not ready are skipped
+    clients.get(1).setState(DnacoRpcClient.ClientState.DISCONNECTED);
+    for (int i = 0; i < 4; ++i) send(pool);
+    assertLoads(4, 1, 4);
+  }
+
+  @Test
+  public void testPowerOfTwoChoices() throws Exception {
+    final DnacoRpcClientPool pool = newPool(2, Balancer.POWER_OF_TWO_CHOICES);
+    pool.addEndpoint(ENDPOINT_A);
+    setReady(0, 1);
+
+    // with two connections the least loaded is always picked
+    for (int i = 0; i < 10; ++i) {
+      send(pool);
+      final int diff = clients.get(0).getInFlightRequests() - clients.get(1).getInFlightRequests();
+      Assertions.assertTrue(Math.abs(diff) <= 1, "unbalanced connections: " + diff);
+    }
+    assertLoads(5, 5);
+
+    // the choice not ready is skipped
+    clients.get(1).setState(DnacoRpcClient.ClientState.DISCONNECTED);
+    for (int i = 0; i < 10; ++i) send(pool);
+    assertLoads(15, 5);
+
+    // nothing ready, the request waits on the least loaded connection
+    clients.get(0).setState(DnacoRpcClient.ClientState.DISCONNECTED);
+    send(pool);
+    assertLoads(15, 6);
+  }
+
+  @Test
+  public void testUnhealthyConnection() throws Exception {
+    final DnacoRpcClientPool pool = newPool(2, Balancer.LEAST_IN_FLIGHT)
+      .setUnhealthyThreshold(3, 500, TimeUnit.MILLISECONDS);
+    pool.addEndpoint(ENDPOINT_A);
+    setReady(0);
+
+    // the requests of the only ready connection time out
+    final List<CompletableFuture<DnacoRpcResponse>> results = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      results.add(toFuture(pool.sendRequest(newRequest(), 20, TimeUnit.MILLISECONDS)));
+    }
+    for (final CompletableFuture<DnacoRpcResponse> result: results) {
+      assertFailure(TimeoutException.class, result);
+    }
+    Assertions.assertEquals(3, clients.get(0).getConsecutiveFailures());
+    Assertions.assertEquals(0, pool.getHealthyConnectionsCount());
+
+    // the failing connection is skipped, even if it is the least loaded
+    setReady(1);
+    Assertions.assertEquals(1, pool.getHealthyConnectionsCount());
+    for (int i = 0; i < 3; ++i) send(pool);
+    assertLoads(0, 3);
+
+    // after the cooldown the connection is used again, and a response resets the failures
+    Thread.sleep(600);
+    Assertions.assertEquals(2, pool.getHealthyConnectionsCount());
+    final long packetId = send(pool);
+    assertLoads(1, 3);
+    clients.get(0).responseReceived(newResponse(packetId));
+    Assertions.assertEquals(0, clients.get(0).getConsecutiveFailures());
+  }
+
+  @Test
+  public void testRemoveEndpoint() throws Exception {
+    final DnacoRpcClientPool pool = newPool(1, Balancer.LEAST_IN_FLIGHT);
+    pool.addEndpoint(ENDPOINT_A);
+    pool.addEndpoint(ENDPOINT_B);
+    setReady(0);
+
+    // not connected, the requests of A are in its pending frames
+    final CompletableFuture<DnacoRpcResponse> a = toFuture(pool.sendRequest(newRequest()));
+    final CompletableFuture<DnacoRpcResponse> b = toFuture(pool.sendRequest(newRequest(), 10, TimeUnit.SECONDS));
+    assertLoads(2, 0);
+
+    // the unsent requests are moved to B
+    setReady(1);
+    Assertions.assertTrue(pool.removeEndpoint(ENDPOINT_A));
+    Assertions.assertFalse(pool.removeEndpoint(ENDPOINT_A));
+    Assertions.assertEquals(List.of(ENDPOINT_B), pool.getEndpoints());
+    Assertions.assertFalse(a.isDone());
+    Assertions.assertFalse(b.isDone());
+    assertLoads(0, 2);
+    completeAll(1);
+    Assertions.assertEquals(1, a.get().getPacketId());
+    Assertions.assertEquals(2, b.get().getPacketId());
+
+    // no endpoints left, the unsent requests fail and are released
+    final DnacoRpcRequest unsent = newRequest();
+    final CompletableFuture<DnacoRpcResponse> c = toFuture(pool.sendRequest(unsent));
+    Assertions.assertTrue(pool.removeEndpoint(ENDPOINT_B));
+    assertFailure(IllegalStateException.class, c);
+    Assertions.assertEquals(0, unsent.refCnt());
+    Assertions.assertEquals(0, pool.getConnectionsCount());
+  }
+
+  @Test
+  public void testSendEvent() throws Exception {
+    final DnacoRpcClientPool pool = newPool(1, Balancer.LEAST_IN_FLIGHT);
+
+    // no endpoints, the event buffers are released
+    final ByteBuf eventId = Unpooled.copiedBuffer("event".getBytes());
+    final ByteBuf data = Unpooled.copiedBuffer("data".getBytes());
+    assertFailure(IllegalStateException.class, toFuture(pool.sendEvent(eventId, data)));
+    Assertions.assertEquals(0, eventId.refCnt());
+    Assertions.assertEquals(0, data.refCnt());
+
+    // not connected, the event is dropped and released on remove
+    pool.addEndpoint(ENDPOINT_A);
+    final ByteBuf eventId2 = Unpooled.copiedBuffer("event".getBytes());
+    final ByteBuf data2 = Unpooled.copiedBuffer("data".getBytes());
+    Assertions.assertNull(toFuture(pool.sendEvent(eventId2, data2)).get());
+    Assertions.assertEquals(1, eventId2.refCnt());
+    pool.removeEndpoint(ENDPOINT_A);
+    Assertions.assertEquals(0, eventId2.refCnt());
+    Assertions.assertEquals(0, data2.refCnt());
+  }
+
+  private DnacoRpcClientPool newPool(final int connectionsPerEndpoint, final Balancer balancer) {
+    return new DnacoRpcClientPool(this::newTestClient, null, connectionsPerEndpoint, balancer);
+  }
+
+  private DnacoRpcClient newTestClient() {
+    // never connected, the written requests wait in the pending frames
+    final DnacoRpcClient client = new DnacoRpcClient(new Bootstrap(), RetryUtil.newFixedRetry(1000), null) {
+      @Override
+      protected void connect() {
+        // no-op
+      }
+    };
+    clients.add(client);
+    return client;
+  }
+
+  private void setReady(final int... indexes) {
+    for (final int index: indexes) {
+      clients.get(index).setReady();
+    }
+  }
+
+  private void assertLoads(final int... expected) {
+    final int[] loads = new int[expected.length];
+    for (int i = 0; i < expected.length; ++i) {
+      loads[i] = clients.get(i).getInFlightRequests() + clients.get(i).getWaitingRequests();
+    }
+    Assertions.assertArrayEquals(expected, loads);
+  }
+
+  private void completeAll(final int index) {
+    final DnacoRpcClient client = clients.get(index);
+    for (long packetId = 1; packetId < nextPacketId; ++packetId) {
+      client.responseReceived(newResponse(packetId));
+    }
+  }
+
+  private long send(final DnacoRpcClientPool pool) {
+    final DnacoRpcRequest request = newRequest();
+    pool.sendRequest(request);
+    return request.getPacketId();
+  }
+
+  private DnacoRpcRequest newRequest() {
+    final long packetId = nextPacketId++;
+    return DnacoRpcRequest.alloc(TRACE_ID, new SpanId(packetId), packetId,
+      Unpooled.wrappedBuffer("test".getBytes()), Unpooled.EMPTY_BUFFER,
+      DnacoRpcRequest.SendResultTo.CALLER, null);
+  }
+
+  private static DnacoRpcResponse newResponse(final long packetId) {
+    return DnacoRpcResponse.alloc(TRACE_ID, new SpanId(packetId), packetId, OperationStatus.SUCCEEDED, 0, 0, Unpooled.EMPTY_BUFFER);
+  }
+
+  private static <T> CompletableFuture<T> toFuture(final ClientPromise<T> promise) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    promise.whenComplete((result, e) -> {
+      if (e != null) {
+        future.completeExceptionally(e);
+      } else {
+        future.complete(result);
+      }
+    });
+    return future;
+  }
+
+  private static void assertFailure(final Class<? extends Throwable> expected, final CompletableFuture<?> future)
+      throws InterruptedException {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      Assertions.fail("expected " + expected.getSimpleName());
+    } catch (final ExecutionException e) {
+      Assertions.assertEquals(expected, e.getCause().getClass());
+    } catch (final TimeoutException e) {
+      Assertions.fail("the request is not completed");
+    }
+  }
+}
@@ -34,6 +34,7 @@ public class EntityRow {
   private final Schema schema;
 
   private FieldFormatReader reader;
+  private long loadId;
 
   public EntityRow(final Schema schema) {
     this.values = new Object[schema.fieldsCount()];
@@ -44,6 +45,13 @@ public class EntityRow {
     return schema;
   }
 
+  /**
+   * @return a counter incremented on each load, to detect that the row has changed
+   */
+  public long loadId() {
+    return loadId;
+  }
+
   public void load(final byte[] key, final byte[] value) {
     if (reader == null || reader.getVersion() != (value[0] & 0xff)) {
       reader = FieldFormat.newReader(schema, value[0] & 0xff);
@@ -53,15 +61,23 @@ public class EntityRow {
     load(key, reader);
   }
 
-  public void load(final byte[] key, final FieldFormatReader reader) {
+  /**
+   * Load a row with all the fields in the reader, keys included (e.g. the EntityRows blocks).
+   */
+  public void load(final FieldFormatReader reader) {
     Arrays.fill(values, DUMMY);
     this.reader = reader;
+    this.loadId++;
+  }
+
+  public void load(final byte[] key, final FieldFormatReader reader) {
+    load(reader);
 
     final int[] keys = schema.keys();
     final RowKey rowKey = new RowKey(key);
     for (int i = 0; i < keys.length; ++i) {
       values[keys[i]] = switch (schema.getFieldType(keys[i])) {
-        case INT -> rowKey.getLong(i);
+        case INT -> rowKey.getVarInt(i);
         case BOOL -> rowKey.getBool(i);
         case BYTES -> rowKey.get(i);
         case STRING -> rowKey.getString(i);
@@ -73,19 +89,42 @@ public class EntityRow {
 
   public Object get(final int fieldIndex) {
     Object value = this.values[fieldIndex];
-    if (value != DUMMY) {
-      System.out.println("CACHE FIELD INDEX VALUE " + fieldIndex + " -> " + value);
-      return value;
-    }
+    if (value != DUMMY) return value;
 
     final DataType fieldType = schema.getFieldType(fieldIndex);
     final int fieldId = schema.getFieldId(fieldIndex);
     value = reader.get(fieldType, fieldId);
     this.values[fieldIndex] = value;
-    System.out.println("COMPUTE FIELD INDEX VALUE " + fieldIndex + " -> " + value);
     return value;
   }
 
+  // ================================================================================
+  //  Primitive access, without boxing. check isNull() before calling the getters
+  // ================================================================================
+  public boolean isNull(final int fieldIndex) {
+    final Object value = this.values[fieldIndex];
+    if (value != DUMMY) return value == null;
+    return reader.isNull(schema.getFieldId(fieldIndex));
+  }
+
+  public boolean getBool(final int fieldIndex) {
+    final Object value = this.values[fieldIndex];
+    if (value != DUMMY) return (Boolean) value;
+    return reader.getBool(schema.getFieldId(fieldIndex));
+  }
+
+  public long getInt(final int fieldIndex) {
+    final Object value = this.values[fieldIndex];
+    if (value != DUMMY) return ((Number) value).longValue();
+    return reader.getInt(schema.getFieldId(fieldIndex));
+  }
+
+  public double getFloat(final int fieldIndex) {
+    final Object value = this.values[fieldIndex];
+    if (value != DUMMY) return ((Number) value).doubleValue();
+    return reader.getFloat(schema.getFieldId(fieldIndex));
+  }
+
   public DataType getFieldType(final int fieldIndex) {
     return schema.getFieldType(fieldIndex);
   }
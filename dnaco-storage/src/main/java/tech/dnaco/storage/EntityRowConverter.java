@@ -23,7 +23,6 @@ import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoField;
 import java.time.temporal.TemporalAccessor;
-import java.util.Arrays;
 
 import tech.dnaco.bytes.ByteArraySlice;
 import tech.dnaco.bytes.encoding.RowKey;
@@ -46,17 +45,12 @@ public class EntityRowConverter {
     this.schema = toSchema;
     final SchemaMapping mapping = Schema.map(fromSchema, toSchema);
     this.indexMapping = mapping.fieldIndexMapping();
-    System.out.println("SOURCE: " + rowSchema);
-    System.out.println("TARGET: " + schema);
-    System.out.println("mapping: " + Arrays.toString(indexMapping));
   }
 
   public void convertKey(final FieldFormatReader rowReader, final RowKey.RowKeyBuilder key) {
-    final int[] fieldIds = schema.fieldIds();
     final int[] keys = schema.keys();
     for (int i = 0; i < keys.length; ++i) {
-      final int targetFieldId = fieldIds[keys[i]];
-      final int otherIndex = indexMapping[targetFieldId - 1];
+      final int otherIndex = indexMapping[keys[i]];
       if (otherIndex < 0) throw new IllegalArgumentException("missing key");
 
       final int sourceFieldId = rowSchema.getFieldId(otherIndex);
@@ -75,14 +69,13 @@ public class EntityRowConverter {
     final int[] fieldIds = schema.fieldIds();
     for (int i = 0; i < fieldIds.length; ++i) {
       final int targetFieldId = fieldIds[i];
-      final int otherIndex = indexMapping[targetFieldId - 1];
-      //System.out.println("REWRITE " + (targetFieldId + " -> " + i) + "/" + (" -> " + otherIndex));
+      final int otherIndex = indexMapping[i];
       if (otherIndex < 0) continue;
 
       final int sourceFieldId = rowSchema.getFieldId(otherIndex);
       if (rowReader.isNull(sourceFieldId)) {
         writer.writeNull(targetFieldId);
-        return;
+        continue;
       }
 
       final DataType sourceType = rowSchema.getFieldType(otherIndex);
@@ -28,13 +28,16 @@ import tech.dnaco.collections.LongValue;
 import tech.dnaco.storage.format.FieldFormat;
 import tech.dnaco.storage.format.FieldFormatReader;
 import tech.dnaco.storage.format.SchemaFormat;
+import tech.dnaco.storage.format.v1.FieldFormatReaderV1;
 
 public class EntityRowsReader {
+  private final ByteArraySlice rowSlice = new ByteArraySlice();
   private final Schema schema;
 
   private FieldFormatReader reader;
   private ByteArraySlice block;
   private int nextOffset;
+  private int endRow;
 
   public EntityRowsReader(final Schema schema) {
     this.schema = schema;
@@ -60,6 +63,13 @@ public class EntityRowsReader {
     this.reader = FieldFormat.newReader(schema, version);
     this.block = block;
     this.nextOffset = 1;
+
+    if (reader instanceof final FieldFormatReaderV1 columnReader) {
+      // the columns are decoded lazily, nextOffset is the next row index
+      columnReader.load(new ByteArraySlice(block.rawBuffer(), block.offset() + 1, block.length() - 1));
+      this.nextOffset = 0;
+      this.endRow = columnReader.rowCount();
+    }
   }
 
   public Schema schema() {
@@ -68,14 +78,84 @@ public class EntityRowsReader {
 
   public boolean hasMore() {
     //System.out.println("HAS MORE " + nextOffset + "/" + block.length());
+    if (reader instanceof FieldFormatReaderV1) {
+      return nextOffset < endRow;
+    }
     return nextOffset < block.length();
   }
 
+  /**
+   * @return the reader of a columnar block, or null if the block is in row format
+   */
+  public FieldFormatReaderV1 columnReader() {
+    return (reader instanceof final FieldFormatReaderV1 columnReader) ? columnReader : null;
+  }
+
+  /**
+   * Skip the next rows of a columnar block without loading them,
+   * the skipped rows can still be accessed using the {@link #columnReader()}.
+   * @return the index of the first skipped row
+   */
+  public int skipRows(final int count) {
+    final FieldFormatReaderV1 columnReader = columnReader();
+    if (columnReader == null) {
+      throw new UnsupportedOperationException("skipRows() is supported only by columnar blocks");
+    }
+    final int fromRow = nextOffset;
+    nextOffset = Math.min(endRow, nextOffset + count);
+    return fromRow;
+  }
+
+  /**
+   * Restrict the rows of a columnar block to [fromRow, toRow),
+   * used to split a block in partitions scanned in parallel.
+   */
+  public void setRowRange(final int fromRow, final int toRow) {
+    final FieldFormatReaderV1 columnReader = columnReader();
+    if (columnReader == null) {
+      throw new UnsupportedOperationException("setRowRange() is supported only by columnar blocks");
+    }
+    if (fromRow < 0 || fromRow > toRow || toRow > columnReader.rowCount()) {
+      throw new IllegalArgumentException("invalid row range [" + fromRow + ", " + toRow + ") of " + columnReader.rowCount() + " rows");
+    }
+    this.nextOffset = fromRow;
+    this.endRow = toRow;
+  }
+
+  /**
+   * @return a reader of the rows [fromRow, toRow) of the columnar block, sharing the parsed block
+   *         and the decoded columns with this reader. The readers can be used from different threads.
+   */
+  public EntityRowsReader newRangeReader(final int fromRow, final int toRow) {
+    final FieldFormatReaderV1 columnReader = columnReader();
+    if (columnReader == null) {
+      throw new UnsupportedOperationException("newRangeReader() is supported only by columnar blocks");
+    }
+    final EntityRowsReader rangeReader = new EntityRowsReader(schema);
+    rangeReader.reader = columnReader.share();
+    rangeReader.block = block;
+    rangeReader.setRowRange(fromRow, toRow);
+    return rangeReader;
+  }
+
+  /**
+   * @return the end (excluded) of the rows of a columnar block, see {@link #setRowRange(int, int)}
+   */
+  public int endRow() {
+    return endRow;
+  }
+
   public FieldFormatReader next() {
+    if (reader instanceof final FieldFormatReaderV1 columnReader) {
+      columnReader.setRow(nextOffset++);
+      return columnReader;
+    }
+
     final int offset = nextOffset;
     nextOffset = Math.toIntExact(IntDecoder.LITTLE_ENDIAN.readFixed(block, offset, 4));
-    final ByteArraySlice row = new ByteArraySlice(block.rawBuffer(), block.offset() + offset + 4, nextOffset - offset - 4);
-    reader.load(row);
+    // the row slice is reused, the reader is valid only until the next call
+    rowSlice.set(block.rawBuffer(), block.offset() + offset + 4, nextOffset - offset - 4);
+    reader.load(rowSlice);
     return reader;
   }
 
@@ -26,6 +26,7 @@ import java.util.HashSet;
 import java.util.Objects;
 import java.util.Map.Entry;
 
+import tech.dnaco.bytes.ByteArraySlice;
 import tech.dnaco.bytes.encoding.VarInt;
 import tech.dnaco.collections.arrays.paged.PagedByteArray;
 import tech.dnaco.data.json.JsonArray;
@@ -38,6 +39,7 @@ import tech.dnaco.storage.format.FieldFormat;
 import tech.dnaco.storage.format.FieldFormatReader;
 import tech.dnaco.storage.format.FieldFormatWriter;
 import tech.dnaco.storage.format.SchemaFormat;
+import tech.dnaco.storage.format.v1.FieldFormatWriterV1;
 import tech.dnaco.strings.HumansUtil;
 
 public class EntityRowsWriter implements Closeable {
@@ -53,15 +55,31 @@ public class EntityRowsWriter implements Closeable {
   }
 
   public EntityRowsWriter(final Schema schema, final int bufPageSize) {
+    this(schema, bufPageSize, FieldFormat.ROW_FORMAT);
+  }
+
+  public EntityRowsWriter(final Schema schema, final int bufPageSize, final int formatVersion) {
     this.buffer = new PagedByteArray(bufPageSize);
     this.schema = schema;
 
-    this.writer = FieldFormat.newWriter(schema, buffer);
+    this.writer = FieldFormat.newWriter(schema, buffer, formatVersion);
     this.buffer.add(writer.getVersion()); // format
   }
 
+  public static EntityRowsWriter newColumnarWriter(final Schema schema) {
+    return new EntityRowsWriter(schema, 1 << 20, FieldFormat.COLUMNAR_FORMAT);
+  }
+
+  private boolean isColumnar() {
+    return writer instanceof FieldFormatWriterV1;
+  }
+
   @Override
   public void close() {
+    if (writer instanceof final FieldFormatWriterV1 columnWriter) {
+      columnWriter.flushBlock(); // columns
+    }
+
     final int schemaOffset = buffer.size();
     VarInt.write(buffer, rowCount);     // row-count
     SchemaFormat.writeCompact(schema, buffer);  // schema
@@ -81,6 +99,12 @@ public class EntityRowsWriter implements Closeable {
   }
 
   public FieldFormatWriter newRow() {
+    if (isColumnar()) {
+      // the rows are buffered by the writer until close()
+      writer.reset();
+      return writer;
+    }
+
     lastRowOffset = buffer.size();
     buffer.addFixed32(0);   // next row offset
     writer.reset();
@@ -89,11 +113,21 @@ public class EntityRowsWriter implements Closeable {
 
   public void closeRow() {
     writer.close();
-    buffer.setFixed32(lastRowOffset, buffer.size());
+    if (!isColumnar()) {
+      buffer.setFixed32(lastRowOffset, buffer.size());
+    }
     rowCount++;
   }
 
   public void addRow(final byte[] rowValue) {
+    if (isColumnar()) {
+      // the row is in the row format, convert it to columns
+      final FieldFormatReader rowReader = FieldFormat.newReader(schema, FieldFormat.ROW_FORMAT);
+      rowReader.load(new ByteArraySlice(rowValue));
+      addRow(schema, rowReader);
+      return;
+    }
+
     buffer.addFixed32(buffer.size() + rowValue.length);   // next row offset
     buffer.add(rowValue);
     rowCount++;
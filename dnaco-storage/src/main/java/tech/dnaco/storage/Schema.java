@@ -43,6 +43,7 @@ public final class Schema {
   private int[] fieldsIndex = new int[0];
   private int[] fieldIds = new int[0];
   private int[] keys = new int[0];
+  private Index[] indexes = new Index[0];
 
   private int maxFieldId = 0;
 
@@ -220,6 +221,105 @@ public final class Schema {
     return index;
   }
 
+  // ================================================================================
+  //  Secondary Indexes Related
+  // ================================================================================
+  /**
+   * Secondary index: the values of the index fields are mapped to the row key.
+   * The include fields are stored in the index entries too, so a query that reads
+   * only the index and include fields can be answered without reading the rows.
+   * The fields are referenced by name, the index is resolved on each schema version.
+   */
+  public record Index(String name, String[] fieldNames, String[] includeNames) {
+    public boolean isCovering() {
+      return includeNames.length > 0;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof final Index other)) return false;
+      return name.equals(other.name)
+        && Arrays.equals(fieldNames, other.fieldNames)
+        && Arrays.equals(includeNames, other.includeNames);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * name.hashCode() + Arrays.hashCode(fieldNames)) + Arrays.hashCode(includeNames);
+    }
+
+    @Override
+    public String toString() {
+      return "Index [" + name + ": " + Arrays.toString(fieldNames) + " include " + Arrays.toString(includeNames) + "]";
+    }
+  }
+
+  public boolean hasIndexes() {
+    return indexes.length > 0;
+  }
+
+  public Index[] indexes() {
+    return indexes;
+  }
+
+  public Index getIndex(final String name) {
+    for (final Index index: indexes) {
+      if (index.name().equals(name)) return index;
+    }
+    return null;
+  }
+
+  public boolean addIndex(final String name, final String[] fieldNames) {
+    return addIndex(name, fieldNames, new String[0]);
+  }
+
+  /**
+   * Add a secondary index on the specified fields.
+   * The index fields must have a type that can be encoded in a key (INT, UTC_TIMESTAMP, BOOL, STRING, BYTES).
+   * @return false if an index with the same name already exists
+   */
+  public boolean addIndex(final String name, final String[] fieldNames, final String[] includeNames) {
+    if (!REGEX_FIELD_NAME.matcher(name).matches()) {
+      throw new IllegalArgumentException("invalid index name: " + name);
+    }
+    if (ArrayUtil.isEmpty(fieldNames)) {
+      throw new IllegalArgumentException("expected at least one field for index " + name);
+    }
+    if (getIndex(name) != null) return false;
+
+    for (final String fieldName: fieldNames) {
+      final int fieldIndex = fieldByName(fieldName);
+      if (fieldIndex < 0) {
+        throw new IllegalArgumentException("index " + name + " has an unknown field " + fieldName);
+      }
+      switch (fieldTypes[fieldIndex]) {
+        case INT, UTC_TIMESTAMP, BOOL, STRING, BYTES -> { /* no-op */ }
+        default -> throw new IllegalArgumentException("index " + name + " field " + fieldName
+          + " has a type that cannot be indexed: " + fieldTypes[fieldIndex]);
+      }
+    }
+    for (final String fieldName: includeNames) {
+      if (fieldByName(fieldName) < 0) {
+        throw new IllegalArgumentException("index " + name + " includes an unknown field " + fieldName);
+      }
+    }
+
+    indexes = Arrays.copyOf(indexes, indexes.length + 1);
+    indexes[indexes.length - 1] = new Index(name, fieldNames.clone(), includeNames.clone());
+    return true;
+  }
+
+  public boolean removeIndex(final String name) {
+    for (int i = 0; i < indexes.length; ++i) {
+      if (indexes[i].name().equals(name)) {
+        indexes = ArrayUtil.sortedRemove(indexes, i, Index.class);
+        return true;
+      }
+    }
+    return false;
+  }
+
   // ================================================================================
   //  Schema Mapping
   // ================================================================================
@@ -23,18 +23,27 @@ import tech.dnaco.collections.arrays.paged.PagedByteArray;
 import tech.dnaco.storage.Schema;
 import tech.dnaco.storage.format.v0.FieldFormatReaderV0;
 import tech.dnaco.storage.format.v0.FieldFormatWriterV0;
+import tech.dnaco.storage.format.v1.FieldFormatReaderV1;
+import tech.dnaco.storage.format.v1.FieldFormatWriterV1;
 
 public final class FieldFormat {
+  /** row-major format, one field index per row */
+  public static final int ROW_FORMAT = 0;
+  /** column-major format, one block with all the rows. see {@link FieldFormatWriterV1} */
+  public static final int COLUMNAR_FORMAT = 1;
+
   private FieldFormat() {
     // no-op
   }
 
   private static final FieldFormatWriterFactory[] WRITER_FACTORY = new FieldFormatWriterFactory[] {
     (buffer, schema) -> new FieldFormatWriterV0(buffer, schema.fieldsCount()),
+    FieldFormatWriterV1::new,
   };
 
   private static final FieldFormatReaderFactory[] READER_FACTORY = new FieldFormatReaderFactory[] {
     schema -> new FieldFormatReaderV0(schema.fieldsCount()),
+    FieldFormatReaderV1::new,
   };
 
   public static FieldFormatReader newReader(final Schema schema, final int version) {
@@ -42,7 +51,8 @@ public final class FieldFormat {
   }
 
   public static FieldFormatWriter newWriter(final Schema schema, final PagedByteArray buffer) {
-    return newWriter(schema, buffer, WRITER_FACTORY.length - 1);
+    // single rows (e.g. the key-value stores) are always in the row format
+    return newWriter(schema, buffer, ROW_FORMAT);
   }
 
   public static FieldFormatWriter newWriter(final Schema schema, final PagedByteArray buffer, final int version) {
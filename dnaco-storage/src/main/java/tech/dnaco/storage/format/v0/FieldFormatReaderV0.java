@@ -20,7 +20,6 @@
 package tech.dnaco.storage.format.v0;
 
 import java.util.Arrays;
-import java.util.BitSet;
 
 import tech.dnaco.bytes.ByteArraySlice;
 import tech.dnaco.bytes.encoding.IntDecoder;
@@ -33,16 +32,25 @@ import tech.dnaco.data.json.JsonObject;
 import tech.dnaco.geo.LatLong;
 import tech.dnaco.storage.format.FieldFormatReader;
 
+/**
+ * Row reader: load() only binds the row and reads the length of the field index.
+ * The index is sorted by field id, the entries are decoded on demand up to the
+ * requested field and kept in a cache, so a filter reading a few fields
+ * of a wide schema does not pay for the whole index.
+ */
 public final class FieldFormatReaderV0 implements FieldFormatReader {
-  private final BitSet nullBitmap;
-  private final int[] fieldIndex;
+  private final LongValue varIntResult = new LongValue();
 
-  private ByteArraySlice block;
+  // decoded entries | field id | offset << 1 | null |, sorted by field id
+  private int[] fieldIndex;
   private int fieldIndexSize;
 
+  private ByteArraySlice block;
+  private int indexOffset;
+  private int indexEnd;
+
   public FieldFormatReaderV0(final int fieldsCount) {
-    this.nullBitmap = new BitSet(fieldsCount);
-    this.fieldIndex = new int[fieldsCount * 2];
+    this.fieldIndex = new int[Math.max(2, fieldsCount * 2)];
     this.fieldIndexSize = 0;
   }
 
@@ -53,26 +61,12 @@ public final class FieldFormatReaderV0 implements FieldFormatReader {
 
   @Override
   public void load(final ByteArraySlice blockSlice) {
-    this.block = blockSlice; // TODO: avoid copy
-    this.nullBitmap.set(0, nullBitmap.size());
-    Arrays.fill(fieldIndex, -1);
+    this.block = blockSlice;
     this.fieldIndexSize = 0;
 
-    final LongValue result = new LongValue();
-    final int blockJumper = block.length() - 3;
-    final int indexLength = Math.toIntExact(IntDecoder.LITTLE_ENDIAN.readFixed(block, blockJumper, 3));
-    int indexOffset = blockJumper - indexLength;
-    //System.out.println("INDEX OFFSET: " + indexOffset + " LENGTH " + indexLength + " block " + blockSlice.length());
-    while (indexOffset < blockJumper) {
-      indexOffset += VarInt.read(block, indexOffset, blockJumper - indexOffset, result);
-      final int fieldValue = result.intValue();
-      fieldIndex[fieldIndexSize++] = fieldValue >>> 1;
-      nullBitmap.set(fieldValue >>> 1, (fieldValue & 1) != 0);
-
-      indexOffset += VarInt.read(block, indexOffset, blockJumper - indexOffset, result);
-      fieldIndex[fieldIndexSize++] = result.intValue();
-    }
-    //System.out.println(" -> " + Arrays.toString(fieldIndex));
+    this.indexEnd = block.length() - 3;
+    final int indexLength = Math.toIntExact(IntDecoder.LITTLE_ENDIAN.readFixed(block, indexEnd, 3));
+    this.indexOffset = indexEnd - indexLength;
   }
 
   // ================================================================================
@@ -80,7 +74,8 @@ public final class FieldFormatReaderV0 implements FieldFormatReader {
   // ================================================================================
   @Override
   public boolean isNull(final int fieldId) {
-    return fieldId >= nullBitmap.size() || nullBitmap.get(fieldId);
+    final int index = indexByFieldId(fieldId);
+    return index < 0 || (fieldIndex[index + 1] & 1) != 0;
   }
 
   @Override
@@ -132,10 +127,38 @@ public final class FieldFormatReaderV0 implements FieldFormatReader {
   //  PRIVATE helpers
   // ================================================================================
   private int indexByFieldId(final int fieldId) {
-    return ArraySortUtil.binarySearch(fieldIndex, 0, fieldIndexSize >>> 1, 2, fieldId) * 2;
+    // the field is in the decoded entries, or not present in the row
+    if (fieldIndexSize > 0 && fieldIndex[fieldIndexSize - 2] >= fieldId) {
+      final int index = ArraySortUtil.binarySearch(fieldIndex, 0, fieldIndexSize >>> 1, 2, fieldId);
+      return index < 0 ? -1 : index * 2;
+    }
+
+    // decode the next entries of the index, up to the field
+    while (indexOffset < indexEnd) {
+      indexOffset += VarInt.read(block, indexOffset, indexEnd - indexOffset, varIntResult);
+      final int fieldValue = varIntResult.intValue();
+      indexOffset += VarInt.read(block, indexOffset, indexEnd - indexOffset, varIntResult);
+      final int offset = varIntResult.intValue();
+
+      if (fieldIndexSize == fieldIndex.length) {
+        fieldIndex = Arrays.copyOf(fieldIndex, fieldIndexSize * 2);
+      }
+      final int index = fieldIndexSize;
+      fieldIndex[fieldIndexSize++] = fieldValue >>> 1;
+      fieldIndex[fieldIndexSize++] = (offset << 1) | (fieldValue & 1);
+
+      if ((fieldValue >>> 1) >= fieldId) {
+        return (fieldValue >>> 1) == fieldId ? index : -1;
+      }
+    }
+    return -1;
   }
 
   private int offsetByFieldId(final int fieldId) {
-    return fieldIndex[indexByFieldId(fieldId) + 1];
+    final int index = indexByFieldId(fieldId);
+    if (index < 0) {
+      throw new IllegalArgumentException("field " + fieldId + " is not present in the row");
+    }
+    return fieldIndex[index + 1] >>> 1;
   }
 }
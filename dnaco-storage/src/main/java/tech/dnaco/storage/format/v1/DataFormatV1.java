@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.format.v1;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.bytes.encoding.IntUtil;
+import tech.dnaco.bytes.encoding.VarInt;
+import tech.dnaco.collections.LongValue;
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.data.encoding.BitEncoder;
+import tech.dnaco.data.encoding.IntDeltaEncoder;
+import tech.dnaco.data.encoding.IntDeltaOfDeltaEncoder;
+import tech.dnaco.data.encoding.IntSeqCoding;
+
+/*
+ * Columnar Block
+ * +-----------+--------------+--------+--------+-----
+ * | row-count | column-count | column | column | ...
+ * +-----------+--------------+--------+--------+-----
+ *
+ * Column
+ * +----------+------+----------+-------+--------+-------------+--------+
+ * | field-id | kind | encoding | count | length | null bitmap | values |
+ * +----------+------+----------+-------+--------+-------------+--------+
+ *  - count is the number of non-null values
+ *  - length is the size in bytes of the null bitmap and the values
+ *  - the null bitmap has one bit per row (1: value present), and it is
+ *    written only when the column has nulls (count < row-count)
+ *  - the columns with only nulls are not written
+ */
+final class DataFormatV1 {
+  private DataFormatV1() {
+    // no-op
+  }
+
+  // column kinds
+  static final int KIND_BOOL = 0;
+  static final int KIND_INT = 1;
+  static final int KIND_FLOAT = 2;
+  static final int KIND_BYTES = 3;
+  static final int KIND_GEO_LOCATION = 4;
+
+  // bool encodings
+  static final int BOOL_BITMAP = 0;
+
+  // int encodings
+  static final int INT_PLAIN = 0;
+  static final int INT_DELTA = 1;
+  static final int INT_DELTA_OF_DELTA = 2;
+  static final int INT_SEQ = 3;
+
+  // float encodings
+  static final int FLOAT_XOR = 0;
+
+  // bytes encodings
+  static final int BYTES_PLAIN = 0;
+  static final int BYTES_DICTIONARY = 1;
+
+  // ================================================================================
+  //  Null Bitmap
+  // ================================================================================
+  static int bitmapLength(final int count) {
+    return (count + 7) >>> 3;
+  }
+
+  static boolean bitmapGet(final ByteArraySlice block, final int offset, final int index) {
+    return (block.get(offset + (index >>> 3)) & (1 << (index & 7))) != 0;
+  }
+
+  // ================================================================================
+  //  Int Encoding
+  // ================================================================================
+  // IntSeqCoding works only with non-negative values,
+  // the zig-zag encoded values must also fit the 6bit width of the slices.
+  private static final long SEQ_MAX_VALUE = (1L << 62) - 1;
+
+  // the shortest runs worth a RLE/LIN slice, shorter runs go in a MIN slice
+  private static final int SEQ_MIN_RLE_LENGTH = 3;
+  private static final int SEQ_MIN_LIN_LENGTH = 4;
+  private static final int SEQ_MAX_MIN_LENGTH = 128;
+
+  /**
+   * Encode the values with the encoding that takes less space.
+   * @return the encoding used
+   */
+  static int writeInts(final PagedByteArray buffer, final long[] values, final int count) {
+    int bestEncoding = INT_PLAIN;
+    long bestSize = plainSize(values, count);
+
+    final long deltaSize = deltaSize(values, count);
+    if (deltaSize < bestSize) {
+      bestEncoding = INT_DELTA;
+      bestSize = deltaSize;
+    }
+
+    final long deltaOfDeltaSize = deltaOfDeltaSize(values, count);
+    if (deltaOfDeltaSize < bestSize) {
+      bestEncoding = INT_DELTA_OF_DELTA;
+      bestSize = deltaOfDeltaSize;
+    }
+
+    final long[] zigZag = zigZagForSeq(values, count);
+    if (zigZag != null && seqSize(zigZag, count) < bestSize) {
+      bestEncoding = INT_SEQ;
+    }
+
+    switch (bestEncoding) {
+      case INT_PLAIN -> writePlain(buffer, values, count);
+      case INT_DELTA -> writeDelta(buffer, values, count);
+      case INT_DELTA_OF_DELTA -> writeDeltaOfDelta(buffer, values, count);
+      case INT_SEQ -> writeSeq(buffer, zigZag, count);
+    }
+    return bestEncoding;
+  }
+
+  static void readInts(final ByteArraySlice block, final int offset, final int encoding,
+      final long[] values, final int count) {
+    if (encoding == INT_SEQ) {
+      final int[] index = new int[1];
+      IntSeqCoding.decode(block.rawBuffer(), block.offset() + offset,
+        value -> values[index[0]++] = IntUtil.zigZagDecode(value));
+      return;
+    }
+
+    final LongValue result = new LongValue();
+    int blockOffset = offset;
+    long lastValue = 0;
+    long lastDelta = 0;
+    for (int i = 0; i < count; ++i) {
+      blockOffset += VarInt.read(block, blockOffset, result);
+      final long value = IntUtil.zigZagDecode(result.get());
+      switch (encoding) {
+        case INT_PLAIN -> values[i] = value;
+        case INT_DELTA -> values[i] = lastValue += value;
+        case INT_DELTA_OF_DELTA -> {
+          if (i == 0) {
+            values[i] = lastValue = value;
+          } else {
+            lastDelta += value;
+            values[i] = lastValue += lastDelta;
+          }
+        }
+        default -> throw new IllegalArgumentException("unsupported int encoding " + encoding);
+      }
+    }
+  }
+
+  private static int zigZagLength(final long value) {
+    final long zigZag = IntUtil.zigZagEncode(value);
+    // negative values are the ones with the top bit set, they take the full 9 bytes
+    return zigZag < 0 ? 9 : VarInt.length(zigZag);
+  }
+
+  private static long plainSize(final long[] values, final int count) {
+    long size = 0;
+    for (int i = 0; i < count; ++i) {
+      size += zigZagLength(values[i]);
+    }
+    return size;
+  }
+
+  private static long deltaSize(final long[] values, final int count) {
+    final IntDeltaEncoder encoder = new IntDeltaEncoder();
+    long size = zigZagLength(encoder.addFirst(values[0]));
+    for (int i = 1; i < count; ++i) {
+      size += zigZagLength(encoder.add(values[i]));
+    }
+    return size;
+  }
+
+  private static long deltaOfDeltaSize(final long[] values, final int count) {
+    final IntDeltaOfDeltaEncoder encoder = new IntDeltaOfDeltaEncoder();
+    long size = zigZagLength(encoder.addFirst(values[0]));
+    for (int i = 1; i < count; ++i) {
+      size += zigZagLength(encoder.add(values[i]));
+    }
+    return size;
+  }
+
+  private static void writePlain(final PagedByteArray buffer, final long[] values, final int count) {
+    for (int i = 0; i < count; ++i) {
+      VarInt.write(buffer, IntUtil.zigZagEncode(values[i]));
+    }
+  }
+
+  private static void writeDelta(final PagedByteArray buffer, final long[] values, final int count) {
+    final IntDeltaEncoder encoder = new IntDeltaEncoder();
+    VarInt.write(buffer, IntUtil.zigZagEncode(encoder.addFirst(values[0])));
+    for (int i = 1; i < count; ++i) {
+      VarInt.write(buffer, IntUtil.zigZagEncode(encoder.add(values[i])));
+    }
+  }
+
+  private static void writeDeltaOfDelta(final PagedByteArray buffer, final long[] values, final int count) {
+    final IntDeltaOfDeltaEncoder encoder = new IntDeltaOfDeltaEncoder();
+    VarInt.write(buffer, IntUtil.zigZagEncode(encoder.addFirst(values[0])));
+    for (int i = 1; i < count; ++i) {
+      VarInt.write(buffer, IntUtil.zigZagEncode(encoder.add(values[i])));
+    }
+  }
+
+  // ================================================================================
+  //  Int Seq Encoding (RLE/LIN/MIN slices)
+  // ================================================================================
+  private static long[] zigZagForSeq(final long[] values, final int count) {
+    final long[] zigZag = new long[count];
+    for (int i = 0; i < count; ++i) {
+      zigZag[i] = IntUtil.zigZagEncode(values[i]);
+      if (zigZag[i] < 0 || zigZag[i] > SEQ_MAX_VALUE) return null;
+    }
+    return zigZag;
+  }
+
+  private interface SliceConsumer {
+    void accept(IntSeqCoding.IntSeqSliceType type, int start, int end, long value, long delta);
+  }
+
+  private static long seqSize(final long[] seq, final int count) {
+    final long[] bits = new long[] { 2 }; // EOF
+    slice(seq, count, (type, start, end, value, delta) -> {
+      switch (type) {
+        case RLE -> bits[0] += IntSeqCoding.rleBits(end - start, value);
+        case LIN -> bits[0] += IntSeqCoding.linBits(end - start, value, delta);
+        case MIN -> bits[0] += IntSeqCoding.minBits(end - start, value, delta);
+        case EOF -> throw new IllegalStateException();
+      }
+    });
+    return (bits[0] + 7) >>> 3;
+  }
+
+  private static void writeSeq(final PagedByteArray buffer, final long[] seq, final int count) {
+    final BitEncoder bitEncoder = new BitEncoder(buffer);
+    slice(seq, count, (type, start, end, value, delta) -> {
+      switch (type) {
+        case RLE -> IntSeqCoding.writeRle(bitEncoder, end - start, value);
+        case LIN -> IntSeqCoding.writeLin(bitEncoder, end - start, value, delta);
+        case MIN -> IntSeqCoding.writeMin(bitEncoder, seq, start, end, value, delta);
+        case EOF -> throw new IllegalStateException();
+      }
+    });
+    bitEncoder.add(IntSeqCoding.IntSeqSliceType.EOF.ordinal(), 2);
+    bitEncoder.flush();
+  }
+
+  /**
+   * Greedy split of the sequence: runs of the same value go in a RLE slice,
+   * runs with the same delta go in a LIN slice, everything in between in MIN slices.
+   */
+  private static void slice(final long[] seq, final int count, final SliceConsumer consumer) {
+    final int maxLength = (1 << 16) - 1;
+    int minStart = 0;
+    int index = 0;
+    while (index < count) {
+      final int rleLength = rleLength(seq, index, count, maxLength);
+      if (rleLength >= SEQ_MIN_RLE_LENGTH) {
+        emitMin(seq, minStart, index, consumer);
+        consumer.accept(IntSeqCoding.IntSeqSliceType.RLE, index, index + rleLength, seq[index], 0);
+        index += rleLength;
+        minStart = index;
+        continue;
+      }
+
+      final int linLength = linLength(seq, index, count, maxLength);
+      if (linLength >= SEQ_MIN_LIN_LENGTH) {
+        emitMin(seq, minStart, index, consumer);
+        consumer.accept(IntSeqCoding.IntSeqSliceType.LIN, index, index + linLength, seq[index], seq[index + 1] - seq[index]);
+        index += linLength;
+        minStart = index;
+        continue;
+      }
+
+      if (++index - minStart == SEQ_MAX_MIN_LENGTH) {
+        emitMin(seq, minStart, index, consumer);
+        minStart = index;
+      }
+    }
+    emitMin(seq, minStart, count, consumer);
+  }
+
+  private static void emitMin(final long[] seq, final int start, final int end, final SliceConsumer consumer) {
+    if (start == end) return;
+
+    long minValue = seq[start];
+    long maxValue = seq[start];
+    for (int i = start + 1; i < end; ++i) {
+      minValue = Math.min(minValue, seq[i]);
+      maxValue = Math.max(maxValue, seq[i]);
+    }
+    consumer.accept(IntSeqCoding.IntSeqSliceType.MIN, start, end, minValue, maxValue - minValue);
+  }
+
+  private static int rleLength(final long[] seq, final int start, final int count, final int maxLength) {
+    final int end = Math.min(count, start + maxLength);
+    int index = start + 1;
+    while (index < end && seq[index] == seq[start]) index++;
+    return index - start;
+  }
+
+  private static int linLength(final long[] seq, final int start, final int count, final int maxLength) {
+    if (start + 1 >= count) return 1;
+
+    final int end = Math.min(count, start + maxLength);
+    final long delta = seq[start + 1] - seq[start];
+    int index = start + 2;
+    while (index < end && (seq[index] - seq[index - 1]) == delta) index++;
+    return index - start;
+  }
+}
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.format.v1;
+
+import java.util.Arrays;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.bytes.encoding.VarInt;
+import tech.dnaco.collections.LongValue;
+import tech.dnaco.data.CborFormat;
+import tech.dnaco.data.encoding.BitDecoder;
+import tech.dnaco.data.encoding.IntXorDecoder;
+import tech.dnaco.data.json.JsonArray;
+import tech.dnaco.data.json.JsonObject;
+import tech.dnaco.geo.LatLong;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.format.FieldFormatReader;
+
+/**
+ * Column-major reader: load() parses only the column directory of the block,
+ * the values of a column are decoded on the first access to that column.
+ * Use {@link #setRow(int)} to move between the rows of the block.
+ * <p>The readers created by {@link #share()} use the same decoded columns,
+ * each column is decoded once by the first reader accessing it, from any thread.
+ */
+public final class FieldFormatReaderV1 implements FieldFormatReader {
+  private final ColumnReader[] columns;
+
+  private ByteArraySlice block;
+  private int rowCount;
+  private int row;
+
+  public FieldFormatReaderV1(final Schema schema) {
+    this.columns = new ColumnReader[schema.maxFieldId() + 1];
+  }
+
+  private FieldFormatReaderV1(final FieldFormatReaderV1 other) {
+    this.columns = other.columns.clone();
+    this.block = other.block;
+    this.rowCount = other.rowCount;
+  }
+
+  @Override
+  public int getVersion() {
+    return 1;
+  }
+
+  @Override
+  public void load(final ByteArraySlice blockSlice) {
+    this.block = blockSlice;
+    this.row = 0;
+    Arrays.fill(columns, null);
+
+    final LongValue result = new LongValue();
+    int offset = 0;
+    offset += VarInt.read(block, offset, result);
+    this.rowCount = result.intValue();
+    offset += VarInt.read(block, offset, result);
+    final int columnCount = result.intValue();
+    for (int i = 0; i < columnCount; ++i) {
+      offset += VarInt.read(block, offset, result);
+      final int fieldId = result.intValue();
+      final int kind = block.get(offset++);
+      final int encoding = block.get(offset++);
+      offset += VarInt.read(block, offset, result);
+      final int count = result.intValue();
+      offset += VarInt.read(block, offset, result);
+      final int length = result.intValue();
+      if (fieldId < columns.length) {
+        columns[fieldId] = new ColumnReader(kind, encoding, count, offset);
+      }
+      offset += length;
+    }
+  }
+
+  public int rowCount() {
+    return rowCount;
+  }
+
+  public void setRow(final int row) {
+    this.row = row;
+  }
+
+  /**
+   * @return a reader of the loaded block with its own row position, sharing the decoded columns.
+   *         loading another block in this reader does not change the shared one.
+   */
+  public FieldFormatReaderV1 share() {
+    return new FieldFormatReaderV1(this);
+  }
+
+  // ================================================================================
+  //  Primitive Types
+  // ================================================================================
+  @Override
+  public boolean isNull(final int fieldId) {
+    final ColumnReader column = fieldId < columns.length ? columns[fieldId] : null;
+    return column == null || !column.hasValue(block, rowCount, row);
+  }
+
+  @Override
+  public boolean getBool(final int fieldId) {
+    return column(fieldId, DataFormatV1.KIND_BOOL).bools[row];
+  }
+
+  @Override
+  public long getInt(final int fieldId) {
+    return column(fieldId, DataFormatV1.KIND_INT).ints[row];
+  }
+
+  @Override
+  public double getFloat(final int fieldId) {
+    final ColumnReader column = columns[fieldId];
+    if (column.kind == DataFormatV1.KIND_INT) {
+      return column(fieldId, DataFormatV1.KIND_INT).ints[row];
+    }
+    return column(fieldId, DataFormatV1.KIND_FLOAT).floats[row];
+  }
+
+  @Override
+  public ByteArraySlice getBytes(final int fieldId) {
+    final ColumnReader column = column(fieldId, DataFormatV1.KIND_BYTES);
+    return new ByteArraySlice(block.rawBuffer(), block.offset() + column.offsets[row], column.lengths[row]);
+  }
+
+  @Override
+  public JsonArray getArray(final int fieldId) {
+    final ByteArraySlice value = getBytes(fieldId);
+    return CborFormat.INSTANCE.fromBytes(value, JsonArray.class);
+  }
+
+  @Override
+  public JsonObject getObject(final int fieldId) {
+    final ByteArraySlice value = getBytes(fieldId);
+    return CborFormat.INSTANCE.fromBytes(value, JsonObject.class);
+  }
+
+  // ================================================================================
+  //  Geo Types
+  // ================================================================================
+  @Override
+  public LatLong getGeoLocation(final int fieldId) {
+    final ColumnReader column = column(fieldId, DataFormatV1.KIND_GEO_LOCATION);
+    return new LatLong(column.floats[row], column.longitudes[row]);
+  }
+
+  // ================================================================================
+  //  Column access
+  // ================================================================================
+  /**
+   * @return true if the block has at least one non-null value for the field
+   */
+  public boolean hasColumn(final int fieldId) {
+    return fieldId < columns.length && columns[fieldId] != null;
+  }
+
+  /**
+   * @return true if at least one row of the block has a null value for the field
+   */
+  public boolean hasNulls(final int fieldId) {
+    final ColumnReader column = fieldId < columns.length ? columns[fieldId] : null;
+    return column == null || column.hasNulls(rowCount);
+  }
+
+  /**
+   * Set the bits of the rows in [fromRow, fromRow + count) with a null value.
+   * The bit i of the words is the row fromRow + i, the other bits are not touched.
+   */
+  public void getNulls(final int fieldId, final int fromRow, final int count, final long[] words) {
+    final ColumnReader column = fieldId < columns.length ? columns[fieldId] : null;
+    for (int i = 0; i < count; ++i) {
+      if (column == null || !column.hasValue(block, rowCount, fromRow + i)) {
+        words[i >>> 6] |= 1L << i;
+      }
+    }
+  }
+
+  /**
+   * @return the values of the column indexed by row, or null if the field is not an INT column.
+   *         the values of the null rows are undefined. The array is shared, do not modify it.
+   */
+  public long[] getIntColumn(final int fieldId) {
+    final ColumnReader column = decodedColumn(fieldId, DataFormatV1.KIND_INT);
+    return column != null ? column.ints : null;
+  }
+
+  /**
+   * @return the values of the column indexed by row, or null if the field is not a FLOAT column.
+   *         the values of the null rows are undefined. The array is shared, do not modify it.
+   */
+  public double[] getFloatColumn(final int fieldId) {
+    final ColumnReader column = decodedColumn(fieldId, DataFormatV1.KIND_FLOAT);
+    return column != null ? column.floats : null;
+  }
+
+  /**
+   * @return the values of the column indexed by row, or null if the field is not a BOOL column.
+   *         the values of the null rows are undefined. The array is shared, do not modify it.
+   */
+  public boolean[] getBoolColumn(final int fieldId) {
+    final ColumnReader column = decodedColumn(fieldId, DataFormatV1.KIND_BOOL);
+    return column != null ? column.bools : null;
+  }
+
+  // ================================================================================
+  //  PRIVATE helpers
+  // ================================================================================
+  private ColumnReader decodedColumn(final int fieldId, final int kind) {
+    final ColumnReader column = fieldId < columns.length ? columns[fieldId] : null;
+    if (column == null || column.kind != kind) return null;
+    if (!column.decoded) {
+      column.decode(block, rowCount);
+    }
+    return column;
+  }
+
+  private ColumnReader column(final int fieldId, final int kind) {
+    final ColumnReader column = columns[fieldId];
+    if (column.kind != kind) {
+      throw new IllegalArgumentException("field " + fieldId + " expected column kind " + kind + " got " + column.kind);
+    }
+    if (!column.decoded) {
+      column.decode(block, rowCount);
+    }
+    return column;
+  }
+
+  private static final class ColumnReader {
+    private final int kind;
+    private final int encoding;
+    private final int count;
+    private final int offset;
+
+    // written after the values, the readers sharing the column see the decoded arrays
+    private volatile boolean decoded;
+    private boolean[] bools;
+    private long[] ints;
+    private double[] floats;
+    private double[] longitudes;
+    private int[] offsets;
+    private int[] lengths;
+
+    private ColumnReader(final int kind, final int encoding, final int count, final int offset) {
+      this.kind = kind;
+      this.encoding = encoding;
+      this.count = count;
+      this.offset = offset;
+    }
+
+    private boolean hasNulls(final int rowCount) {
+      return count < rowCount;
+    }
+
+    private boolean hasValue(final ByteArraySlice block, final int rowCount, final int row) {
+      return !hasNulls(rowCount) || DataFormatV1.bitmapGet(block, offset, row);
+    }
+
+    private synchronized void decode(final ByteArraySlice block, final int rowCount) {
+      // another reader sharing the column may have decoded it
+      if (decoded) return;
+
+      final int valuesOffset = offset + (hasNulls(rowCount) ? DataFormatV1.bitmapLength(rowCount) : 0);
+      switch (kind) {
+        case DataFormatV1.KIND_BOOL -> {
+          bools = new boolean[rowCount];
+          for (int i = 0; i < count; ++i) {
+            bools[i] = DataFormatV1.bitmapGet(block, valuesOffset, i);
+          }
+        }
+        case DataFormatV1.KIND_INT -> {
+          ints = new long[rowCount];
+          DataFormatV1.readInts(block, valuesOffset, encoding, ints, count);
+        }
+        case DataFormatV1.KIND_FLOAT -> {
+          floats = new double[rowCount];
+          readXor(block, valuesOffset, floats, count);
+        }
+        case DataFormatV1.KIND_GEO_LOCATION -> {
+          final LongValue result = new LongValue();
+          final int latOffset = valuesOffset + VarInt.read(block, valuesOffset, result);
+          floats = new double[rowCount];
+          longitudes = new double[rowCount];
+          readXor(block, latOffset, floats, count);
+          readXor(block, latOffset + result.intValue(), longitudes, count);
+        }
+        case DataFormatV1.KIND_BYTES -> {
+          offsets = new int[rowCount];
+          lengths = new int[rowCount];
+          readBytes(block, valuesOffset);
+        }
+        default -> throw new IllegalArgumentException("unsupported column kind " + kind);
+      }
+
+      if (hasNulls(rowCount)) {
+        expandNulls(block, rowCount);
+      }
+      decoded = true;
+    }
+
+    private void readBytes(final ByteArraySlice block, int blockOffset) {
+      final LongValue result = new LongValue();
+      if (encoding == DataFormatV1.BYTES_PLAIN) {
+        for (int i = 0; i < count; ++i) {
+          blockOffset += VarInt.read(block, blockOffset, result);
+          offsets[i] = blockOffset;
+          lengths[i] = result.intValue();
+          blockOffset += lengths[i];
+        }
+        return;
+      }
+
+      blockOffset += VarInt.read(block, blockOffset, result);
+      final int dictSize = result.intValue();
+      final int[] dictOffsets = new int[dictSize];
+      final int[] dictLengths = new int[dictSize];
+      for (int i = 0; i < dictSize; ++i) {
+        blockOffset += VarInt.read(block, blockOffset, result);
+        dictOffsets[i] = blockOffset;
+        dictLengths[i] = result.intValue();
+        blockOffset += dictLengths[i];
+      }
+
+      final int indexBits = FieldFormatWriterV1.indexBits(dictSize);
+      final BitDecoder bitDecoder = new BitDecoder(block.rawBuffer(), block.offset() + blockOffset);
+      for (int i = 0; i < count; ++i) {
+        final int index = bitDecoder.readAsInt(indexBits);
+        offsets[i] = dictOffsets[index];
+        lengths[i] = dictLengths[index];
+      }
+    }
+
+    private static void readXor(final ByteArraySlice block, final int blockOffset, final double[] values, final int count) {
+      final IntXorDecoder decoder = new IntXorDecoder(new BitDecoder(block.rawBuffer(), block.offset() + blockOffset));
+      values[0] = decoder.readFirstAsDouble();
+      for (int i = 1; i < count; ++i) {
+        values[i] = decoder.readNextAsDouble();
+      }
+    }
+
+    // the values are decoded packed, move them to the row position (the k-th value is always at row >= k)
+    private void expandNulls(final ByteArraySlice block, final int rowCount) {
+      for (int row = rowCount - 1, index = count - 1; index >= 0 && row > index; --row) {
+        if (!DataFormatV1.bitmapGet(block, offset, row)) continue;
+        switch (kind) {
+          case DataFormatV1.KIND_BOOL -> bools[row] = bools[index];
+          case DataFormatV1.KIND_INT -> ints[row] = ints[index];
+          case DataFormatV1.KIND_FLOAT -> floats[row] = floats[index];
+          case DataFormatV1.KIND_GEO_LOCATION -> {
+            floats[row] = floats[index];
+            longitudes[row] = longitudes[index];
+          }
+          case DataFormatV1.KIND_BYTES -> {
+            offsets[row] = offsets[index];
+            lengths[row] = lengths[index];
+          }
+        }
+        index--;
+      }
+    }
+  }
+}
@@ -0,0 +1,502 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.format.v1;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.bytes.encoding.VarInt;
+import tech.dnaco.collections.arrays.ByteArray;
+import tech.dnaco.collections.arrays.IntArray;
+import tech.dnaco.collections.arrays.LongArray;
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.data.CborFormat;
+import tech.dnaco.data.encoding.BitEncoder;
+import tech.dnaco.data.encoding.IntXorEncoder;
+import tech.dnaco.data.json.JsonArray;
+import tech.dnaco.data.json.JsonObject;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.format.FieldFormatWriter;
+
+/**
+ * Column-major writer: the rows are buffered column by column,
+ * and a block with all the rows is written by {@link #flushBlock()}.
+ * reset()/close() start and end a row, as in the row-major formats.
+ */
+public final class FieldFormatWriterV1 implements FieldFormatWriter {
+  private final PagedByteArray buffer;
+  private final ColumnWriter[] columns;
+
+  private int rowCount;
+
+  public FieldFormatWriterV1(final PagedByteArray buffer, final Schema schema) {
+    this.buffer = buffer;
+    this.columns = new ColumnWriter[schema.maxFieldId() + 1];
+    for (int i = 0, n = schema.fieldsCount(); i < n; ++i) {
+      columns[schema.getFieldId(i)] = newColumnWriter(schema.getFieldId(i), schema.getFieldType(i));
+    }
+    this.rowCount = 0;
+  }
+
+  @Override
+  public int getVersion() {
+    return 1;
+  }
+
+  public int rowCount() {
+    return rowCount;
+  }
+
+  @Override
+  public void reset() {
+    // drop the values of a row that was started but not closed
+    for (final ColumnWriter column: columns) {
+      if (column != null) column.rollback(rowCount);
+    }
+  }
+
+  @Override
+  public void close() {
+    rowCount++;
+  }
+
+  /**
+   * Write the buffered rows as a columnar block, and reset the writer for the next block.
+   */
+  public void flushBlock() {
+    int columnCount = 0;
+    for (final ColumnWriter column: columns) {
+      if (column != null && column.count > 0) columnCount++;
+    }
+
+    VarInt.write(buffer, rowCount);
+    VarInt.write(buffer, columnCount);
+    final PagedByteArray data = new PagedByteArray(4096);
+    for (final ColumnWriter column: columns) {
+      if (column == null || column.count == 0) continue;
+
+      data.clear();
+      if (column.count < rowCount) {
+        writeNullBitmap(data, column.rows, rowCount);
+      }
+      final int encoding = column.encode(data);
+
+      VarInt.write(buffer, column.fieldId);
+      buffer.add(column.kind);
+      buffer.add(encoding);
+      VarInt.write(buffer, column.count);
+      VarInt.write(buffer, data.size());
+      buffer.add(data);
+      column.clear();
+    }
+    rowCount = 0;
+  }
+
+  // ================================================================================
+  //  Primitive Types
+  // ================================================================================
+  @Override
+  public void writeNull(final int fieldId) {
+    // nulls are the rows without a value
+    column(fieldId);
+  }
+
+  @Override
+  public void writeBool(final int fieldId, final boolean value) {
+    column(fieldId).addBool(rowCount, value);
+  }
+
+  @Override
+  public void writeInt(final int fieldId, final long value) {
+    column(fieldId).addInt(rowCount, value);
+  }
+
+  @Override
+  public void writeFloat(final int fieldId, final double value) {
+    column(fieldId).addFloat(rowCount, value);
+  }
+
+  @Override
+  public void writeBytes(final int fieldId, final byte[] value, final int off, final int len) {
+    column(fieldId).addBytes(rowCount, value, off, len);
+  }
+
+  @Override
+  public void writeArray(final int fieldId, final JsonArray value) {
+    try {
+      writeBytes(fieldId, CborFormat.INSTANCE.asBytes(value));
+    } catch (final JsonProcessingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void writeObject(final int fieldId, final JsonObject value) {
+    try {
+      writeBytes(fieldId, CborFormat.INSTANCE.asBytes(value));
+    } catch (final JsonProcessingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // ================================================================================
+  //  Geo Types
+  // ================================================================================
+  @Override
+  public void writeGeoLocation(final int fieldId, final double latitude, final double longitude) {
+    column(fieldId).addGeoLocation(rowCount, latitude, longitude);
+  }
+
+  // ================================================================================
+  //  PRIVATE helpers
+  // ================================================================================
+  private ColumnWriter column(final int fieldId) {
+    final ColumnWriter column = fieldId < columns.length ? columns[fieldId] : null;
+    if (column == null) {
+      throw new IllegalArgumentException("field " + fieldId + " is not part of the schema");
+    }
+    return column;
+  }
+
+  private static ColumnWriter newColumnWriter(final int fieldId, final DataType type) {
+    return switch (type) {
+      case BOOL -> new BoolColumnWriter(fieldId);
+      case INT, UTC_TIMESTAMP -> new IntColumnWriter(fieldId);
+      case FLOAT -> new FloatColumnWriter(fieldId);
+      case BYTES, STRING, ARRAY, OBJECT -> new BytesColumnWriter(fieldId);
+      case GEO_LOCATION -> new GeoLocationColumnWriter(fieldId);
+      case NULL, GEO_LINE, GEO_POLYGON -> null;
+    };
+  }
+
+  private static void writeNullBitmap(final PagedByteArray data, final BitSet rows, final int rowCount) {
+    final byte[] bitmap = rows.toByteArray();
+    data.add(bitmap);
+    for (int i = bitmap.length, n = DataFormatV1.bitmapLength(rowCount); i < n; ++i) {
+      data.add(0);
+    }
+  }
+
+  private static abstract class ColumnWriter {
+    private final BitSet rows = new BitSet();
+    private final int fieldId;
+    private final int kind;
+    private int lastRow = -1;
+    private int count;
+
+    protected ColumnWriter(final int fieldId, final int kind) {
+      this.fieldId = fieldId;
+      this.kind = kind;
+    }
+
+    protected void addRow(final int row) {
+      if (row == lastRow) {
+        throw new IllegalStateException("field " + fieldId + " already written for row " + row);
+      }
+      rows.set(row);
+      lastRow = row;
+      count++;
+    }
+
+    private void rollback(final int row) {
+      if (lastRow != row) return;
+      rows.clear(row);
+      removeLast();
+      lastRow = -1;
+      count--;
+    }
+
+    private void clear() {
+      rows.clear();
+      lastRow = -1;
+      count = 0;
+      reset();
+    }
+
+    protected int count() {
+      return count;
+    }
+
+    protected abstract void removeLast();
+    protected abstract void reset();
+    protected abstract int encode(PagedByteArray data);
+
+    protected void addBool(final int row, final boolean value) {
+      throw new IllegalArgumentException("field " + fieldId + " is not a bool");
+    }
+
+    protected void addInt(final int row, final long value) {
+      throw new IllegalArgumentException("field " + fieldId + " is not an int");
+    }
+
+    protected void addFloat(final int row, final double value) {
+      throw new IllegalArgumentException("field " + fieldId + " is not a float");
+    }
+
+    protected void addBytes(final int row, final byte[] value, final int off, final int len) {
+      throw new IllegalArgumentException("field " + fieldId + " is not a bytes/string");
+    }
+
+    protected void addGeoLocation(final int row, final double latitude, final double longitude) {
+      throw new IllegalArgumentException("field " + fieldId + " is not a geo-location");
+    }
+  }
+
+  private static final class BoolColumnWriter extends ColumnWriter {
+    private final BitSet values = new BitSet();
+
+    private BoolColumnWriter(final int fieldId) {
+      super(fieldId, DataFormatV1.KIND_BOOL);
+    }
+
+    @Override
+    protected void addBool(final int row, final boolean value) {
+      values.set(count(), value);
+      addRow(row);
+    }
+
+    @Override
+    protected void removeLast() {
+      values.clear(count() - 1);
+    }
+
+    @Override
+    protected void reset() {
+      values.clear();
+    }
+
+    @Override
+    protected int encode(final PagedByteArray data) {
+      writeNullBitmap(data, values, count());
+      return DataFormatV1.BOOL_BITMAP;
+    }
+  }
+
+  private static final class IntColumnWriter extends ColumnWriter {
+    private final LongArray values = new LongArray(64);
+
+    private IntColumnWriter(final int fieldId) {
+      super(fieldId, DataFormatV1.KIND_INT);
+    }
+
+    @Override
+    protected void addInt(final int row, final long value) {
+      values.add(value);
+      addRow(row);
+    }
+
+    @Override
+    protected void removeLast() {
+      values.truncate(values.size() - 1);
+    }
+
+    @Override
+    protected void reset() {
+      values.reset();
+    }
+
+    @Override
+    protected int encode(final PagedByteArray data) {
+      return DataFormatV1.writeInts(data, values.rawBuffer(), values.size());
+    }
+  }
+
+  private static final class FloatColumnWriter extends ColumnWriter {
+    private final LongArray values = new LongArray(64);
+
+    private FloatColumnWriter(final int fieldId) {
+      super(fieldId, DataFormatV1.KIND_FLOAT);
+    }
+
+    @Override
+    protected void addInt(final int row, final long value) {
+      // an int can stay in a float column
+      addFloat(row, value);
+    }
+
+    @Override
+    protected void addFloat(final int row, final double value) {
+      values.add(Double.doubleToRawLongBits(value));
+      addRow(row);
+    }
+
+    @Override
+    protected void removeLast() {
+      values.truncate(values.size() - 1);
+    }
+
+    @Override
+    protected void reset() {
+      values.reset();
+    }
+
+    @Override
+    protected int encode(final PagedByteArray data) {
+      writeXor(new BitEncoder(data), values);
+      return DataFormatV1.FLOAT_XOR;
+    }
+  }
+
+  private static final class GeoLocationColumnWriter extends ColumnWriter {
+    private final LongArray latitudes = new LongArray(64);
+    private final LongArray longitudes = new LongArray(64);
+
+    private GeoLocationColumnWriter(final int fieldId) {
+      super(fieldId, DataFormatV1.KIND_GEO_LOCATION);
+    }
+
+    @Override
+    protected void addGeoLocation(final int row, final double latitude, final double longitude) {
+      latitudes.add(Double.doubleToRawLongBits(latitude));
+      longitudes.add(Double.doubleToRawLongBits(longitude));
+      addRow(row);
+    }
+
+    @Override
+    protected void removeLast() {
+      latitudes.truncate(latitudes.size() - 1);
+      longitudes.truncate(longitudes.size() - 1);
+    }
+
+    @Override
+    protected void reset() {
+      latitudes.reset();
+      longitudes.reset();
+    }
+
+    @Override
+    protected int encode(final PagedByteArray data) {
+      // | latitudes length | latitudes | longitudes |
+      final PagedByteArray latBuffer = new PagedByteArray(4096);
+      writeXor(new BitEncoder(latBuffer), latitudes);
+      VarInt.write(data, latBuffer.size());
+      data.add(latBuffer);
+      writeXor(new BitEncoder(data), longitudes);
+      return DataFormatV1.FLOAT_XOR;
+    }
+  }
+
+  private static void writeXor(final BitEncoder bitEncoder, final LongArray values) {
+    final IntXorEncoder encoder = new IntXorEncoder(bitEncoder);
+    final long[] buf = values.rawBuffer();
+    encoder.addFirst(buf[0]);
+    for (int i = 1, n = values.size(); i < n; ++i) {
+      encoder.add(buf[i]);
+    }
+    bitEncoder.flush();
+  }
+
+  private static final class BytesColumnWriter extends ColumnWriter {
+    private final ByteArray values = new ByteArray(1024);
+    private final IntArray offsets = new IntArray(64);
+
+    private BytesColumnWriter(final int fieldId) {
+      super(fieldId, DataFormatV1.KIND_BYTES);
+    }
+
+    @Override
+    protected void addBytes(final int row, final byte[] value, final int off, final int len) {
+      offsets.add(values.size());
+      values.add(value, off, len);
+      addRow(row);
+    }
+
+    @Override
+    protected void removeLast() {
+      values.truncate(offsets.get(offsets.size() - 1));
+      offsets.truncate(offsets.size() - 1);
+    }
+
+    @Override
+    protected void reset() {
+      values.reset();
+      offsets.reset();
+    }
+
+    private ByteArraySlice value(final int index) {
+      final int offset = offsets.get(index);
+      final int end = (index + 1) < offsets.size() ? offsets.get(index + 1) : values.size();
+      return new ByteArraySlice(values.rawBuffer(), offset, end - offset);
+    }
+
+    @Override
+    protected int encode(final PagedByteArray data) {
+      final int count = count();
+
+      // lookup the distinct values, in order of appearance
+      final HashMap<ByteArraySlice, Integer> dictionary = new HashMap<>();
+      final int[] indexes = new int[count];
+      long dictSize = 0;
+      long plainSize = 0;
+      for (int i = 0; i < count; ++i) {
+        final ByteArraySlice value = value(i);
+        final int valueSize = VarInt.length(value.length()) + value.length();
+        plainSize += valueSize;
+
+        final Integer index = dictionary.get(value);
+        if (index != null) {
+          indexes[i] = index;
+        } else {
+          indexes[i] = dictionary.size();
+          dictionary.put(value, indexes[i]);
+          dictSize += valueSize;
+        }
+      }
+
+      final int indexBits = indexBits(dictionary.size());
+      dictSize += VarInt.length(dictionary.size()) + (((long) count * indexBits + 7) >>> 3);
+      if (dictSize >= plainSize) {
+        // | length | value | length | value | ...
+        for (int i = 0; i < count; ++i) {
+          writeBlob(data, value(i));
+        }
+        return DataFormatV1.BYTES_PLAIN;
+      }
+
+      // | dict size | length | value | ... | bit-packed indexes |
+      VarInt.write(data, dictionary.size());
+      for (int i = 0, nextIndex = 0; i < count; ++i) {
+        if (indexes[i] == nextIndex) {
+          writeBlob(data, value(i));
+          nextIndex++;
+        }
+      }
+      final BitEncoder bitEncoder = new BitEncoder(data);
+      for (int i = 0; i < count; ++i) {
+        bitEncoder.add(indexes[i], indexBits);
+      }
+      bitEncoder.flush();
+      return DataFormatV1.BYTES_DICTIONARY;
+    }
+
+    private static void writeBlob(final PagedByteArray data, final ByteArraySlice value) {
+      VarInt.write(data, value.length());
+      data.add(value.rawBuffer(), value.offset(), value.length());
+    }
+  }
+
+  static int indexBits(final int dictionarySize) {
+    return dictionarySize <= 1 ? 1 : (32 - Integer.numberOfLeadingZeros(dictionarySize - 1));
+  }
+}
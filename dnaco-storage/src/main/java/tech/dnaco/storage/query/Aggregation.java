@@ -0,0 +1,495 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.collections.maps.LongToObjectMap;
+import tech.dnaco.collections.sets.IndexedHashSet;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.EntityRow;
+import tech.dnaco.storage.Schema;
+
+/**
+ * Aggregates (count, sum, min, max) of the rows of a scan, optionally grouped by some fields.
+ * <pre>
+ * Aggregation.newBuilder(schema).groupBy("status").count().sum("size").build();
+ * </pre>
+ * The rows are added to a {@link State}, the partial states of a parallel scan can be merged
+ * (see {@link #collector()}). The aggregate values are read from the rows without materializing them,
+ * the rows must have the schema of the aggregation (see {@link Schema#equals(Object)}).
+ * <p>The result is a row for each group: the group values followed by the aggregate values
+ * (see {@link #columnNames()}). Like SQL, the nulls are not aggregated and are a group on their own,
+ * sum/min/max are null when there are no values.
+ */
+public final class Aggregation {
+  public enum AggregateType { COUNT, SUM, MIN, MAX }
+
+  private enum Op {
+    COUNT_ROWS, COUNT,
+    SUM_INT, SUM_FLOAT,
+    MIN_INT, MAX_INT,
+    MIN_FLOAT, MAX_FLOAT,
+    MIN_OBJECT, MAX_OBJECT,
+  }
+
+  private record Aggregate(AggregateType type, String fieldName, int fieldIndex, Op op) {
+    private String name() {
+      return type.name().toLowerCase() + "(" + (fieldName != null ? fieldName : "*") + ")";
+    }
+  }
+
+  private final String[] groupNames;
+  private final int[] groupFields;
+  private final Aggregate[] aggregates;
+  private final boolean longGroupKey;
+
+  private Aggregation(final Schema schema, final String[] groupNames, final Aggregate[] aggregates) {
+    this.groupNames = groupNames;
+    this.groupFields = new int[groupNames.length];
+    for (int i = 0; i < groupNames.length; ++i) {
+      groupFields[i] = schema.fieldByName(groupNames[i]);
+    }
+    this.aggregates = aggregates;
+
+    // a single integer group field is hashed as a primitive long
+    this.longGroupKey = groupFields.length == 1 && switch (schema.getFieldType(groupFields[0])) {
+      case BOOL, INT, UTC_TIMESTAMP -> true;
+      default -> false;
+    };
+  }
+
+  public static Builder newBuilder(final Schema schema) {
+    return new Builder(schema);
+  }
+
+  /**
+   * @return the names of the result columns: the group fields followed by the aggregates, e.g. "count(*)", "sum(size)"
+   */
+  public String[] columnNames() {
+    final String[] names = Arrays.copyOf(groupNames, groupNames.length + aggregates.length);
+    for (int i = 0; i < aggregates.length; ++i) {
+      names[groupNames.length + i] = aggregates[i].name();
+    }
+    return names;
+  }
+
+  /**
+   * @return true if the aggregation is only a count(*) without groups,
+   *         that can be computed without reading the rows (see {@link Query#aggregate(tech.dnaco.storage.EntityRowsReader, State)})
+   */
+  public boolean isRowCountOnly() {
+    if (groupFields.length != 0) return false;
+    for (final Aggregate aggregate: aggregates) {
+      if (aggregate.op() != Op.COUNT_ROWS) return false;
+    }
+    return true;
+  }
+
+  public State newState() {
+    return new State(this);
+  }
+
+  /**
+   * @return a collector of the rows, that can be used with the parallel scans (see {@link ScanExecutor})
+   */
+  public Collector<EntityRow, State, List<Object[]>> collector() {
+    return Collector.of(this::newState, State::add, State::merge, State::results);
+  }
+
+  // ================================================================================
+  //  Builder
+  // ================================================================================
+  public static class Builder {
+    private final ArrayList<Aggregate> aggregates = new ArrayList<>();
+    private final Schema schema;
+    private String[] groupNames = new String[0];
+
+    private Builder(final Schema schema) {
+      this.schema = schema;
+    }
+
+    public Builder groupBy(final String... fieldNames) {
+      for (final String name: fieldNames) {
+        switch (fieldType(name)) {
+          case BOOL, INT, UTC_TIMESTAMP, FLOAT, STRING, BYTES -> {}
+          default -> throw new IllegalArgumentException("group by " + fieldType(name) + " field " + name + " is not supported");
+        }
+      }
+      this.groupNames = fieldNames;
+      return this;
+    }
+
+    /**
+     * count(*): the number of rows
+     */
+    public Builder count() {
+      aggregates.add(new Aggregate(AggregateType.COUNT, null, -1, Op.COUNT_ROWS));
+      return this;
+    }
+
+    /**
+     * count(field): the number of rows where the field is not null
+     */
+    public Builder count(final String fieldName) {
+      return add(AggregateType.COUNT, fieldName, Op.COUNT);
+    }
+
+    public Builder sum(final String fieldName) {
+      return switch (fieldType(fieldName)) {
+        case INT -> add(AggregateType.SUM, fieldName, Op.SUM_INT);
+        case FLOAT -> add(AggregateType.SUM, fieldName, Op.SUM_FLOAT);
+        default -> throw new IllegalArgumentException("sum of " + fieldType(fieldName) + " field " + fieldName + " is not supported");
+      };
+    }
+
+    public Builder min(final String fieldName) {
+      return switch (fieldType(fieldName)) {
+        case INT, UTC_TIMESTAMP -> add(AggregateType.MIN, fieldName, Op.MIN_INT);
+        case FLOAT -> add(AggregateType.MIN, fieldName, Op.MIN_FLOAT);
+        case BOOL, STRING -> add(AggregateType.MIN, fieldName, Op.MIN_OBJECT);
+        default -> throw new IllegalArgumentException("min of " + fieldType(fieldName) + " field " + fieldName + " is not supported");
+      };
+    }
+
+    public Builder max(final String fieldName) {
+      return switch (fieldType(fieldName)) {
+        case INT, UTC_TIMESTAMP -> add(AggregateType.MAX, fieldName, Op.MAX_INT);
+        case FLOAT -> add(AggregateType.MAX, fieldName, Op.MAX_FLOAT);
+        case BOOL, STRING -> add(AggregateType.MAX, fieldName, Op.MAX_OBJECT);
+        default -> throw new IllegalArgumentException("max of " + fieldType(fieldName) + " field " + fieldName + " is not supported");
+      };
+    }
+
+    private Builder add(final AggregateType type, final String fieldName, final Op op) {
+      fieldType(fieldName); // validate the field name
+      aggregates.add(new Aggregate(type, fieldName, schema.fieldByName(fieldName), op));
+      return this;
+    }
+
+    private DataType fieldType(final String fieldName) {
+      final int fieldIndex = schema.fieldByName(fieldName);
+      if (fieldIndex < 0) {
+        throw new IllegalArgumentException("unknown field " + fieldName);
+      }
+      return schema.getFieldType(fieldIndex);
+    }
+
+    public Aggregation build() {
+      if (aggregates.isEmpty() && groupNames.length == 0) {
+        throw new IllegalArgumentException("expected at least one aggregate or group field");
+      }
+      return new Aggregation(schema, groupNames, aggregates.toArray(new Aggregate[0]));
+    }
+  }
+
+  // ================================================================================
+  //  State
+  // ================================================================================
+  /**
+   * The partial aggregates of a scan, not thread-safe.
+   * Each scan task has its own state, merged at the end of the scan.
+   */
+  public static final class State {
+    private final Aggregation aggregation;
+
+    // groups of the single integer key, the null key (or no group fields) is the nullGroup
+    private final LongToObjectMap<Group> longGroups;
+    private Group nullGroup;
+
+    // groups of the other keys, the group index is the key index in the set
+    private final IndexedHashSet<Object> groupKeys;
+    private final ArrayList<Group> groups;
+    private final GroupKey probeKey;
+
+    private State(final Aggregation aggregation) {
+      this.aggregation = aggregation;
+      final int groupFieldsCount = aggregation.groupFields.length;
+      if (aggregation.longGroupKey) {
+        this.longGroups = new LongToObjectMap<>();
+        this.groupKeys = null;
+        this.groups = null;
+        this.probeKey = null;
+      } else if (groupFieldsCount != 0) {
+        this.longGroups = null;
+        this.groupKeys = new IndexedHashSet<>();
+        this.groups = new ArrayList<>();
+        this.probeKey = (groupFieldsCount > 1) ? new GroupKey(new Object[groupFieldsCount]) : null;
+      } else {
+        this.longGroups = null;
+        this.groupKeys = null;
+        this.groups = null;
+        this.probeKey = null;
+      }
+    }
+
+    public Aggregation aggregation() {
+      return aggregation;
+    }
+
+    /**
+     * @return the number of groups
+     */
+    public int groupCount() {
+      final int count = (nullGroup != null) ? 1 : 0;
+      if (longGroups != null) return count + longGroups.size();
+      if (groups != null) return count + groups.size();
+      return count;
+    }
+
+    public void add(final EntityRow row) {
+      group(row).add(aggregation.aggregates, row);
+    }
+
+    /**
+     * Add rows counted without reading them, see {@link Aggregation#isRowCountOnly()}
+     */
+    public void addRowCount(final long count) {
+      if (!aggregation.isRowCountOnly()) {
+        throw new IllegalStateException("expected a count(*) only aggregation, got " + Arrays.toString(aggregation.columnNames()));
+      }
+      final Group group = nullGroup(new Object[0]);
+      for (int i = 0; i < group.counts.length; ++i) {
+        group.counts[i] += count;
+      }
+    }
+
+    public State merge(final State other) {
+      if (other.aggregation != aggregation) {
+        throw new IllegalArgumentException("expected a state of the same aggregation");
+      }
+      other.forEachGroup(otherGroup -> group(otherGroup.keyValues).merge(aggregation.aggregates, otherGroup));
+      return this;
+    }
+
+    /**
+     * @return a row for each group, in no particular order: the group values followed by the aggregate values
+     */
+    public List<Object[]> results() {
+      // without group fields there is always a result, e.g. count(*) = 0
+      if (aggregation.groupFields.length == 0) nullGroup(new Object[0]);
+
+      final ArrayList<Object[]> results = new ArrayList<>(groupCount());
+      forEachGroup(group -> results.add(group.result(aggregation.aggregates)));
+      return results;
+    }
+
+    private void forEachGroup(final Consumer<Group> consumer) {
+      if (nullGroup != null) consumer.accept(nullGroup);
+      if (longGroups != null) {
+        for (final LongToObjectMap.Entry<Group> entry: longGroups) {
+          consumer.accept(entry.getValue());
+        }
+      } else if (groups != null) {
+        for (final Group group: groups) {
+          consumer.accept(group);
+        }
+      }
+    }
+
+    private Group group(final EntityRow row) {
+      final int[] groupFields = aggregation.groupFields;
+      if (longGroups != null) {
+        final int field = groupFields[0];
+        if (row.isNull(field)) return nullGroup(groupValues(row));
+
+        final long key = (row.getFieldType(field) == DataType.BOOL) ? (row.getBool(field) ? 1 : 0) : row.getInt(field);
+        final Group group = longGroups.get(key);
+        return (group != null) ? group : addLongGroup(key, groupValues(row));
+      }
+
+      if (groups == null) return nullGroup(groupValues(row));
+
+      if (probeKey == null) {
+        return group(groupValue(row, groupFields[0]), null);
+      }
+      for (int i = 0; i < groupFields.length; ++i) {
+        probeKey.values[i] = groupValue(row, groupFields[i]);
+      }
+      return group(probeKey, null);
+    }
+
+    private Group group(final Object[] keyValues) {
+      if (longGroups != null) {
+        final Object value = keyValues[0];
+        if (value == null) return nullGroup(keyValues);
+
+        final long key = (value instanceof final Boolean bool) ? (bool ? 1 : 0) : ((Number) value).longValue();
+        final Group group = longGroups.get(key);
+        return (group != null) ? group : addLongGroup(key, keyValues.clone());
+      }
+
+      if (groups == null) return nullGroup(keyValues);
+      return group(probeKey == null ? keyValues[0] : new GroupKey(keyValues), keyValues);
+    }
+
+    private Group group(final Object key, final Object[] keyValues) {
+      final int index = groupKeys.get(key);
+      if (index >= 0) return groups.get(index);
+
+      // the probe key is reused, the set keeps a copy
+      final Object[] values = (keyValues != null) ? keyValues.clone()
+        : (key instanceof final GroupKey groupKey) ? groupKey.values.clone() : new Object[] { key };
+      final int newIndex = groupKeys.add(key == probeKey ? new GroupKey(values) : key);
+      final Group group = new Group(values, aggregation.aggregates.length);
+      if (newIndex != groups.size()) {
+        throw new IllegalStateException("unexpected group index " + newIndex + ", expected " + groups.size());
+      }
+      groups.add(group);
+      return group;
+    }
+
+    private Group addLongGroup(final long key, final Object[] keyValues) {
+      final Group group = new Group(keyValues, aggregation.aggregates.length);
+      longGroups.put(key, group);
+      return group;
+    }
+
+    private Group nullGroup(final Object[] keyValues) {
+      if (nullGroup == null) {
+        nullGroup = new Group(keyValues, aggregation.aggregates.length);
+      }
+      return nullGroup;
+    }
+
+    private Object[] groupValues(final EntityRow row) {
+      final int[] groupFields = aggregation.groupFields;
+      final Object[] values = new Object[groupFields.length];
+      for (int i = 0; i < groupFields.length; ++i) {
+        values[i] = groupValue(row, groupFields[i]);
+      }
+      return values;
+    }
+
+    private static Object groupValue(final EntityRow row, final int field) {
+      // the bytes of the keys are byte[], the bytes of the values are slices
+      final Object value = row.get(field);
+      return (value instanceof final byte[] bytes) ? new ByteArraySlice(bytes) : value;
+    }
+  }
+
+  private record GroupKey(Object[] values) {
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof final GroupKey other && Arrays.equals(values, other.values);
+    }
+  }
+
+  private static final class Group {
+    private final Object[] keyValues;
+    private final long[] counts;
+    private final long[] longs;
+    private final double[] doubles;
+    private final Object[] objects;
+
+    private Group(final Object[] keyValues, final int aggregates) {
+      this.keyValues = keyValues;
+      this.counts = new long[aggregates];
+      this.longs = new long[aggregates];
+      this.doubles = new double[aggregates];
+      this.objects = new Object[aggregates];
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void add(final Aggregate[] aggregates, final EntityRow row) {
+      for (int i = 0; i < aggregates.length; ++i) {
+        final Aggregate aggregate = aggregates[i];
+        if (aggregate.op() == Op.COUNT_ROWS) {
+          counts[i]++;
+          continue;
+        }
+
+        final int field = aggregate.fieldIndex();
+        if (row.isNull(field)) continue;
+
+        final boolean first = counts[i]++ == 0;
+        switch (aggregate.op()) {
+          case COUNT_ROWS, COUNT -> {}
+          case SUM_INT -> longs[i] += row.getInt(field);
+          case SUM_FLOAT -> doubles[i] += row.getFloat(field);
+          case MIN_INT -> longs[i] = first ? row.getInt(field) : Math.min(longs[i], row.getInt(field));
+          case MAX_INT -> longs[i] = first ? row.getInt(field) : Math.max(longs[i], row.getInt(field));
+          case MIN_FLOAT -> doubles[i] = first ? row.getFloat(field) : Math.min(doubles[i], row.getFloat(field));
+          case MAX_FLOAT -> doubles[i] = first ? row.getFloat(field) : Math.max(doubles[i], row.getFloat(field));
+          case MIN_OBJECT -> {
+            final Comparable value = (Comparable) row.get(field);
+            if (first || value.compareTo(objects[i]) < 0) objects[i] = value;
+          }
+          case MAX_OBJECT -> {
+            final Comparable value = (Comparable) row.get(field);
+            if (first || value.compareTo(objects[i]) > 0) objects[i] = value;
+          }
+        }
+      }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void merge(final Aggregate[] aggregates, final Group other) {
+      for (int i = 0; i < aggregates.length; ++i) {
+        if (other.counts[i] == 0) continue;
+
+        final boolean first = counts[i] == 0;
+        switch (aggregates[i].op()) {
+          case COUNT_ROWS, COUNT -> {}
+          case SUM_INT -> longs[i] += other.longs[i];
+          case SUM_FLOAT -> doubles[i] += other.doubles[i];
+          case MIN_INT -> longs[i] = first ? other.longs[i] : Math.min(longs[i], other.longs[i]);
+          case MAX_INT -> longs[i] = first ? other.longs[i] : Math.max(longs[i], other.longs[i]);
+          case MIN_FLOAT -> doubles[i] = first ? other.doubles[i] : Math.min(doubles[i], other.doubles[i]);
+          case MAX_FLOAT -> doubles[i] = first ? other.doubles[i] : Math.max(doubles[i], other.doubles[i]);
+          case MIN_OBJECT -> {
+            if (first || ((Comparable) other.objects[i]).compareTo(objects[i]) < 0) objects[i] = other.objects[i];
+          }
+          case MAX_OBJECT -> {
+            if (first || ((Comparable) other.objects[i]).compareTo(objects[i]) > 0) objects[i] = other.objects[i];
+          }
+        }
+        counts[i] += other.counts[i];
+      }
+    }
+
+    private Object[] result(final Aggregate[] aggregates) {
+      final Object[] result = Arrays.copyOf(keyValues, keyValues.length + aggregates.length);
+      for (int i = 0; i < aggregates.length; ++i) {
+        result[keyValues.length + i] = value(aggregates[i].op(), i);
+      }
+      return result;
+    }
+
+    private Object value(final Op op, final int index) {
+      return switch (op) {
+        case COUNT_ROWS, COUNT -> counts[index];
+        case SUM_INT, MIN_INT, MAX_INT -> (counts[index] != 0) ? longs[index] : null;
+        case SUM_FLOAT, MIN_FLOAT, MAX_FLOAT -> (counts[index] != 0) ? doubles[index] : null;
+        case MIN_OBJECT, MAX_OBJECT -> objects[index];
+      };
+    }
+  }
+}
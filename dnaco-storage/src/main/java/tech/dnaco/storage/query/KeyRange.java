@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.query;
+
+import java.util.Arrays;
+
+import tech.dnaco.bytes.BytesUtil;
+
+/**
+ * Range of row keys [startKey, endKey).
+ * A null startKey means from the first key, a null endKey means until the last key.
+ */
+public record KeyRange(byte[] startKey, byte[] endKey) {
+  public static final KeyRange FULL = new KeyRange(null, null);
+
+  public static KeyRange prefix(final byte[] prefix) {
+    return new KeyRange(prefix, prefixEndKey(prefix));
+  }
+
+  public boolean isFullScan() {
+    return startKey == null && endKey == null;
+  }
+
+  public boolean isEmpty() {
+    return startKey != null && endKey != null && BytesUtil.compare(startKey, endKey) >= 0;
+  }
+
+  public boolean contains(final byte[] key) {
+    return (startKey == null || BytesUtil.compare(key, startKey) >= 0)
+        && (endKey == null || BytesUtil.compare(key, endKey) < 0);
+  }
+
+  /**
+   * @return the keys in both ranges, or null if the ranges do not overlap
+   */
+  public KeyRange intersect(final KeyRange other) {
+    final byte[] start = compareStart(startKey, other.startKey) >= 0 ? startKey : other.startKey;
+    final byte[] end = compareEnd(endKey, other.endKey) <= 0 ? endKey : other.endKey;
+    final KeyRange range = new KeyRange(start, end);
+    return range.isEmpty() ? null : range;
+  }
+
+  static int compareStart(final byte[] a, final byte[] b) {
+    if (a == null) return b == null ? 0 : -1;
+    if (b == null) return 1;
+    return BytesUtil.compare(a, b);
+  }
+
+  static int compareEnd(final byte[] a, final byte[] b) {
+    if (a == null) return b == null ? 0 : 1;
+    if (b == null) return -1;
+    return BytesUtil.compare(a, b);
+  }
+
+  /**
+   * @return the first key without the specified prefix, or null if every key after the prefix has it
+   */
+  static byte[] prefixEndKey(final byte[] prefix) {
+    if (BytesUtil.isEmpty(prefix) || BytesUtil.isFilledWith(prefix, 0xff)) {
+      return null;
+    }
+    try {
+      return BytesUtil.prefixEndKey(prefix);
+    } catch (final Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (!(o instanceof final KeyRange other)) return false;
+    return Arrays.equals(startKey, other.startKey) && Arrays.equals(endKey, other.endKey);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(startKey) + Arrays.hashCode(endKey);
+  }
+
+  @Override
+  public String toString() {
+    return "[" + (startKey != null ? BytesUtil.toHexString(startKey) : "-inf")
+      + ", " + (endKey != null ? BytesUtil.toHexString(endKey) : "+inf") + ")";
+  }
+}
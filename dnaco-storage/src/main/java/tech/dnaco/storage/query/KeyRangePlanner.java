@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.bytes.encoding.IntEncoder;
+import tech.dnaco.bytes.encoding.RowKey;
+import tech.dnaco.bytes.encoding.RowKey.RowKeyBuilder;
+import tech.dnaco.bytes.encoding.VarInt;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.query.Filter.FilterType;
+import tech.dnaco.storage.query.Query.OptimizerConjunction;
+import tech.dnaco.storage.query.Query.OptimizerFieldChecker;
+import tech.dnaco.storage.query.Query.OptimizerFilter;
+
+/**
+ * Converts the predicates on the key fields to the ranges of row keys to scan.
+ * <p>The key is encoded as in the {@link RowKey} of the entity stores: INT as varint,
+ * UTC_TIMESTAMP as int48, STRING/BYTES as they are. The leading key fields with EQ/IN
+ * are expanded to the key prefixes, the first key field with a range or a LIKE prefix
+ * closes the range. The OR branches are the union of their ranges, the AND ones the intersection.
+ * <p>The ranges are always a superset of the matching rows, the filter is still applied on each row.
+ * <p>The same planning is used for the secondary indexes, where the key is made by the index fields
+ * followed by the row key. The index fields can be null (encoded as an empty component), and null
+ * is lower than any value: the LE/LT predicates match the null values, so they are not pushed down.
+ */
+final class KeyRangePlanner {
+  private static final List<KeyRange> FULL_SCAN = List.of(KeyRange.FULL);
+  private static final int MAX_RANGES = 256;
+
+  /**
+   * Predicate on a key field that can be pushed down.
+   * IN with the values (EQ is an IN of one value, no values means no match),
+   * GE/GT/LE/LT with the bound, BW with the two bounds, LIKE with the literal prefix.
+   */
+  record KeyPredicate(FilterType type, Object... values) {}
+
+  private final Schema schema;
+  private final int[] keys;
+  private final boolean secondaryIndex;
+
+  KeyRangePlanner(final Schema schema) {
+    this(schema, schema.keys(), false);
+  }
+
+  /**
+   * @param keys the field indexes of the key components
+   * @param secondaryIndex true if the key components can be null and are followed by the row key
+   */
+  KeyRangePlanner(final Schema schema, final int[] keys, final boolean secondaryIndex) {
+    this.schema = schema;
+    this.keys = keys;
+    this.secondaryIndex = secondaryIndex;
+  }
+
+  List<KeyRange> plan(final OptimizerFilter filter) {
+    if (keys.length == 0) return FULL_SCAN;
+    return planFilter(filter);
+  }
+
+  static boolean isFullScan(final List<KeyRange> ranges) {
+    return ranges.size() == 1 && ranges.get(0).isFullScan();
+  }
+
+  private List<KeyRange> planFilter(final OptimizerFilter filter) {
+    if (filter instanceof final OptimizerConjunction conjunction) {
+      if (conjunction.getType() == FilterType.OR) {
+        return planUnion(conjunction.getFilters());
+      }
+      return planIntersection(conjunction.getFilters());
+    }
+    return planIntersection(new OptimizerFilter[] { filter });
+  }
+
+  private List<KeyRange> planUnion(final OptimizerFilter[] filters) {
+    final ArrayList<KeyRange> ranges = new ArrayList<>();
+    for (final OptimizerFilter filter: filters) {
+      final List<KeyRange> branchRanges = planFilter(filter);
+      if (isFullScan(branchRanges)) return FULL_SCAN;
+      ranges.addAll(branchRanges);
+    }
+    return normalize(ranges);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<KeyRange> planIntersection(final OptimizerFilter[] filters) {
+    final ArrayList<KeyPredicate>[] keyPredicates = new ArrayList[keys.length];
+    List<KeyRange> ranges = FULL_SCAN;
+    for (final OptimizerFilter filter: filters) {
+      if (filter instanceof OptimizerConjunction) {
+        ranges = intersect(ranges, planFilter(filter));
+      } else if (filter instanceof final OptimizerFieldChecker checker) {
+        final int keyIndex = keyIndex(checker.getFieldIndex());
+        if (keyIndex < 0) continue;
+
+        final KeyPredicate predicate = checker.keyPredicate();
+        if (predicate == null || (secondaryIndex && matchesNull(predicate))) continue;
+
+        if (keyPredicates[keyIndex] == null) keyPredicates[keyIndex] = new ArrayList<>();
+        keyPredicates[keyIndex].add(predicate);
+      }
+    }
+    return intersect(ranges, planKeyPredicates(keyPredicates));
+  }
+
+  private int keyIndex(final int fieldIndex) {
+    for (int i = 0; i < keys.length; ++i) {
+      if (keys[i] == fieldIndex) return i;
+    }
+    return -1;
+  }
+
+  private static boolean matchesNull(final KeyPredicate predicate) {
+    return predicate.type() == FilterType.LE || predicate.type() == FilterType.LT;
+  }
+
+  private List<KeyRange> planKeyPredicates(final List<KeyPredicate>[] keyPredicates) {
+    List<byte[]> prefixes = Arrays.asList((byte[]) null);
+    for (int k = 0; k < keys.length; ++k) {
+      final List<KeyPredicate> predicates = keyPredicates[k];
+      if (predicates == null) {
+        return prefixRanges(prefixes);
+      }
+
+      final DataType type = schema.getFieldType(keys[k]);
+      final List<byte[]> points = keyPoints(type, predicates);
+      if (points != null) {
+        if (points.isEmpty()) return List.of();
+
+        if (prefixes.size() * points.size() <= MAX_RANGES) {
+          final ArrayList<byte[]> nextPrefixes = new ArrayList<>(prefixes.size() * points.size());
+          for (final byte[] prefix: prefixes) {
+            for (final byte[] point: points) {
+              nextPrefixes.add(newKeyBuilder(prefix).add(point).drain());
+            }
+          }
+          prefixes = nextPrefixes;
+          continue;
+        }
+      }
+
+      List<KeyRange> ranges = prefixRanges(prefixes);
+      for (final KeyPredicate predicate: predicates) {
+        if (predicate.type() != FilterType.IN) {
+          ranges = intersect(ranges, componentRanges(prefixes, type, predicate));
+        }
+      }
+      return ranges;
+    }
+
+    // all the key fields are fixed, we have just point lookups
+    if (secondaryIndex) return prefixRanges(prefixes);
+    final ArrayList<KeyRange> ranges = new ArrayList<>(prefixes.size());
+    for (final byte[] key: prefixes) {
+      ranges.add(new KeyRange(key, Arrays.copyOf(key, key.length + 1)));
+    }
+    return normalize(ranges);
+  }
+
+  // ================================================================================
+  //  Key component related
+  // ================================================================================
+  /**
+   * @return the encoded values allowed by all the IN predicates, or null if there are no IN predicates
+   */
+  private static List<byte[]> keyPoints(final DataType type, final List<KeyPredicate> predicates) {
+    List<byte[]> points = null;
+    for (final KeyPredicate predicate: predicates) {
+      if (predicate.type() != FilterType.IN) continue;
+
+      final ArrayList<byte[]> values = new ArrayList<>(predicate.values().length);
+      boolean encoded = true;
+      for (final Object value: predicate.values()) {
+        final byte[] point = encodeComponent(type, value);
+        if (point == null) {
+          encoded = false;
+          break;
+        }
+        if (points == null || containsBytes(points, point)) {
+          values.add(point);
+        }
+      }
+      if (encoded) points = values;
+    }
+    return points;
+  }
+
+  private static boolean containsBytes(final List<byte[]> items, final byte[] value) {
+    for (final byte[] item: items) {
+      if (Arrays.equals(item, value)) return true;
+    }
+    return false;
+  }
+
+  private static List<KeyRange> componentRanges(final List<byte[]> prefixes, final DataType type, final KeyPredicate predicate) {
+    final ArrayList<KeyRange> ranges = new ArrayList<>(prefixes.size() * 2);
+    for (final byte[] prefix: prefixes) {
+      switch (type) {
+        case INT, UTC_TIMESTAMP -> addSignedRanges(ranges, prefix, type, predicate);
+        case STRING, BYTES -> addBytesRange(ranges, prefix, type, predicate);
+        default -> ranges.add(prefixRange(prefix));
+      }
+    }
+    return normalize(ranges);
+  }
+
+  /**
+   * the signed values are encoded as unsigned, the negative ones are sorted after the positive ones.
+   * a range crossing zero is split in two: [0, hi] and [lo, -1]
+   */
+  private static void addSignedRanges(final List<KeyRange> ranges, final byte[] prefix,
+      final DataType type, final KeyPredicate predicate) {
+    final long minValue = type == DataType.UTC_TIMESTAMP ? -(1L << 47) : Long.MIN_VALUE;
+    final long maxValue = type == DataType.UTC_TIMESTAMP ? (1L << 47) - 1 : Long.MAX_VALUE;
+    final Object[] values = predicate.values();
+    for (final Object value: values) {
+      if (!(value instanceof Number)) {
+        ranges.add(prefixRange(prefix));
+        return;
+      }
+    }
+
+    long lo = minValue;
+    long hi = maxValue;
+    switch (predicate.type()) {
+      case GE -> lo = ((Number) values[0]).longValue();
+      case GT -> lo = ((Number) values[0]).longValue() + 1;
+      case LE -> hi = ((Number) values[0]).longValue();
+      case LT -> hi = ((Number) values[0]).longValue() - 1;
+      case BW -> {
+        lo = ((Number) values[0]).longValue();
+        hi = ((Number) values[1]).longValue();
+      }
+      default -> {
+        ranges.add(prefixRange(prefix));
+        return;
+      }
+    }
+
+    // GT MAX and LT MIN overflow, there is nothing to match
+    if ((predicate.type() == FilterType.GT && lo == Long.MIN_VALUE) || (predicate.type() == FilterType.LT && hi == Long.MAX_VALUE)) {
+      return;
+    }
+
+    lo = Math.max(lo, minValue);
+    hi = Math.min(hi, maxValue);
+    if (lo > hi) return;
+
+    if (lo < 0 && hi >= 0) {
+      ranges.add(signedRange(prefix, type, 0, hi));
+      ranges.add(signedRange(prefix, type, lo, -1));
+    } else {
+      ranges.add(signedRange(prefix, type, lo, hi));
+    }
+  }
+
+  private static KeyRange signedRange(final byte[] prefix, final DataType type, final long lo, final long hi) {
+    final byte[] startKey = newKeyBuilder(prefix).add(encodeComponent(type, lo)).drain();
+    final byte[] hiKey = newKeyBuilder(prefix).add(encodeComponent(type, hi)).drain();
+    return new KeyRange(startKey, KeyRange.prefixEndKey(hiKey));
+  }
+
+  private static void addBytesRange(final List<KeyRange> ranges, final byte[] prefix,
+      final DataType type, final KeyPredicate predicate) {
+    final Object[] values = predicate.values();
+    if (predicate.type() == FilterType.LIKE) {
+      if (type != DataType.STRING) {
+        ranges.add(prefixRange(prefix));
+      } else {
+        ranges.add(KeyRange.prefix(newKeyBuilder(prefix).add((String) values[0]).drain()));
+      }
+      return;
+    }
+
+    final byte[] lower;
+    final byte[] upper;
+    final boolean upperInclusive;
+    switch (predicate.type()) {
+      case GE, GT -> {
+        lower = encodeComponent(type, values[0]);
+        upper = null;
+        upperInclusive = false;
+      }
+      case LE, LT -> {
+        lower = null;
+        upper = encodeComponent(type, values[0]);
+        upperInclusive = predicate.type() == FilterType.LE;
+      }
+      case BW -> {
+        lower = encodeComponent(type, values[0]);
+        upper = encodeComponent(type, values[1]);
+        upperInclusive = true;
+      }
+      default -> {
+        lower = null;
+        upper = null;
+        upperInclusive = false;
+      }
+    }
+
+    final KeyRange componentRange = prefixRange(prefix);
+    final byte[] startKey = lower != null ? newKeyBuilder(prefix).add(lower).drain() : componentRange.startKey();
+    final byte[] endKey;
+    if (upper != null) {
+      final byte[] upperKey = newKeyBuilder(prefix).add(upper).drain();
+      endKey = upperInclusive ? KeyRange.prefixEndKey(upperKey) : upperKey;
+    } else {
+      endKey = componentRange.endKey();
+    }
+
+    final KeyRange range = new KeyRange(startKey, endKey);
+    if (!range.isEmpty()) ranges.add(range);
+  }
+
+  /**
+   * @return the raw value of the key component, or null if the value cannot be encoded
+   */
+  private static byte[] encodeComponent(final DataType type, final Object value) {
+    return switch (type) {
+      case INT -> {
+        if (!(value instanceof final Number number)) yield null;
+        final byte[] buf = new byte[9];
+        yield Arrays.copyOf(buf, VarInt.write(buf, number.longValue()));
+      }
+      case UTC_TIMESTAMP -> {
+        if (!(value instanceof final Number number)) yield null;
+        final byte[] buf = new byte[6];
+        IntEncoder.BIG_ENDIAN.writeFixed(buf, 0, number.longValue(), 6);
+        yield buf;
+      }
+      case BOOL -> (value instanceof final Boolean bool) ? new byte[] { (byte) (bool ? 1 : 0) } : null;
+      case STRING -> (value instanceof final String str) ? str.getBytes(StandardCharsets.UTF_8) : null;
+      case BYTES -> {
+        if (value instanceof final byte[] bytes) yield bytes;
+        if (value instanceof final ByteArraySlice slice) yield slice.buffer();
+        yield null;
+      }
+      default -> null;
+    };
+  }
+
+  // ================================================================================
+  //  Ranges related
+  // ================================================================================
+  private static RowKeyBuilder newKeyBuilder(final byte[] prefix) {
+    return prefix != null ? RowKey.newKeyBuilder(prefix) : RowKey.newKeyBuilder();
+  }
+
+  private static List<KeyRange> prefixRanges(final List<byte[]> prefixes) {
+    final ArrayList<KeyRange> ranges = new ArrayList<>(prefixes.size());
+    for (final byte[] prefix: prefixes) {
+      ranges.add(prefixRange(prefix));
+    }
+    return normalize(ranges);
+  }
+
+  /**
+   * @return the range of the rows with the specified leading key components
+   */
+  private static KeyRange prefixRange(final byte[] prefix) {
+    if (prefix == null) return KeyRange.FULL;
+    // match the whole key component, 'foo' is not a prefix of 'foobar'
+    return KeyRange.prefix(RowKey.newKeyBuilder(prefix).addKeySeparator().drain());
+  }
+
+  private static List<KeyRange> intersect(final List<KeyRange> a, final List<KeyRange> b) {
+    if (isFullScan(a)) return b;
+    if (isFullScan(b)) return a;
+
+    final ArrayList<KeyRange> ranges = new ArrayList<>();
+    for (final KeyRange ra: a) {
+      for (final KeyRange rb: b) {
+        final KeyRange range = ra.intersect(rb);
+        if (range != null) ranges.add(range);
+      }
+    }
+    return normalize(ranges);
+  }
+
+  /**
+   * sort the ranges by start key and merge the overlapping ones.
+   * If there are too many ranges they are merged in a single one.
+   */
+  private static List<KeyRange> normalize(final List<KeyRange> ranges) {
+    if (ranges.size() <= 1) return ranges;
+
+    ranges.sort((a, b) -> KeyRange.compareStart(a.startKey(), b.startKey()));
+    final ArrayList<KeyRange> merged = new ArrayList<>(ranges.size());
+    KeyRange current = ranges.get(0);
+    for (int i = 1, n = ranges.size(); i < n; ++i) {
+      final KeyRange range = ranges.get(i);
+      if (current.endKey() == null || KeyRange.compareStart(range.startKey(), current.endKey()) <= 0) {
+        if (KeyRange.compareEnd(range.endKey(), current.endKey()) > 0) {
+          current = new KeyRange(current.startKey(), range.endKey());
+        }
+      } else {
+        merged.add(current);
+        current = range;
+      }
+    }
+    merged.add(current);
+
+    if (merged.size() > MAX_RANGES) {
+      byte[] endKey = merged.get(0).endKey();
+      for (final KeyRange range: merged) {
+        if (KeyRange.compareEnd(range.endKey(), endKey) > 0) endKey = range.endKey();
+      }
+      return List.of(new KeyRange(merged.get(0).startKey(), endKey));
+    }
+    return merged;
+  }
+}
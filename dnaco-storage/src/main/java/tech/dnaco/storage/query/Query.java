@@ -22,23 +22,28 @@ package tech.dnaco.storage.query;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import tech.dnaco.bytes.ByteArraySlice;
 import tech.dnaco.bytes.BytesSlice;
 import tech.dnaco.bytes.BytesUtil;
-import tech.dnaco.bytes.encoding.RowKey;
-import tech.dnaco.bytes.encoding.RowKey.RowKeyBuilder;
-import tech.dnaco.collections.caches.LruCache;
+import tech.dnaco.collections.caches.ConcurrentLruCache;
 import tech.dnaco.data.json.JsonArray;
 import tech.dnaco.data.json.JsonObject;
 import tech.dnaco.storage.DataTypes.DataType;
 import tech.dnaco.storage.EntityRow;
+import tech.dnaco.storage.EntityRowsReader;
 import tech.dnaco.storage.Schema;
 import tech.dnaco.storage.format.FieldFormatReader;
+import tech.dnaco.storage.format.v1.FieldFormatReaderV1;
 import tech.dnaco.storage.query.Filter.FilterType;
+import tech.dnaco.storage.query.KeyRangePlanner.KeyPredicate;
+import tech.dnaco.storage.query.RowBatch.ColumnVector;
 import tech.dnaco.strings.StringUtil;
 import tech.dnaco.strings.StringUtil.LikePattern;
 import tech.dnaco.strings.StringUtil.RegexLikePattern;
@@ -46,85 +51,202 @@ import tech.dnaco.strings.StringUtil.RegexLikePattern;
 public final class Query {
   private static final QueryCache QUERY_CACHE = new QueryCache();
 
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  private final List<KeyRange> keyRanges;
   private final OptimizerFilter filter;
+  private final RowFilter rowFilter;
+  private final int[] fieldIndexes;
+  private final Schema schema;
   private final EntityRow row;
 
   public Query(final Schema schema, final Filter filter) {
-    this(schema, compile(new HashMap<>(32), schema, filter));
+    this(schema, compile(new HashMap<>(32), schema, filter), filter);
+  }
+
+  Query(final Schema schema, final OptimizerFilter filter) {
+    this(schema, filter, null);
   }
 
-  public Query(final Schema schema, final OptimizerFilter filter) {
+  private Query(final Schema schema, final OptimizerFilter filter, final Filter source) {
+    this.schema = schema;
     this.filter = filter;
+    this.rowFilter = (source != null)
+      ? QUERY_CACHE.rowFilter(schema, source, () -> filter.compile(schema))
+      : filter.compile(schema);
     this.row = new EntityRow(schema);
-    extractKeyPrefixes();
+    this.keyRanges = new KeyRangePlanner(schema).plan(filter);
+
+    final BitSet fields = new BitSet(schema.fieldsCount());
+    collectFieldIndexes(filter, fields);
+    this.fieldIndexes = fields.stream().toArray();
   }
 
   public boolean process(final byte[] key, final FieldFormatReader fieldReader) {
     row.load(key, fieldReader);
-    return filter.process(row);
+    return rowFilter.test(row);
   }
 
-  public record KeyField (int keyIndex, OptimizerFieldChecker checker) {}
+  /**
+   * Evaluate the filter on a row that contains all the fields, keys included (e.g. the EntityRows blocks).
+   */
+  public boolean process(final FieldFormatReader fieldReader) {
+    row.load(fieldReader);
+    return rowFilter.test(row);
+  }
 
-  private void extractKeyPrefixes() {
-    final HashSet<OptimizerFilter> processed = new HashSet<>();
-    final Schema schema = row.schema();
-    if (filter instanceof final OptimizerConjunction conjunction) {
-      extractKeyPrefixes(processed, schema, conjunction);
-    } else {
-      throw new UnsupportedOperationException("unexpected filter type: " + filter);
+  /**
+   * @return the row loaded by the last process() call
+   */
+  public EntityRow row() {
+    return row;
+  }
+
+  /**
+   * @return a batch with the columns referenced by the filter of this query
+   */
+  public RowBatch newBatch(final int capacity) {
+    return new RowBatch(schema, fieldIndexes, capacity);
+  }
+
+  /**
+   * Evaluate the filter on all the rows of the batch, a column at the time.
+   * The AND/OR are evaluated on the selection bitmaps: each filter of an AND
+   * is evaluated only on the rows selected by the previous ones, and each filter
+   * of an OR only on the rows not yet matched.
+   * The matching rows are marked as selected, see {@link RowBatch#nextSelected(int)}.
+   * @return the number of rows matching the filter
+   */
+  public int process(final RowBatch batch) {
+    final int words = batch.words();
+    final long[] candidates = batch.acquireWords();
+    Arrays.fill(candidates, 0, words, -1L);
+    if (words > 0 && (batch.size() & 63) != 0) {
+      candidates[words - 1] = (1L << batch.size()) - 1;
     }
+    filter.computeBatch(batch, candidates, batch.selection());
+    batch.releaseWords(1);
+    return batch.selectedCount();
   }
 
-  private void extractKeyPrefixes(final HashSet<OptimizerFilter> processed,
-      final Schema schema, final OptimizerConjunction conjunction) {
-    if (!processed.add(conjunction)) return;
-
-    final ArrayList<KeyField> keys = new ArrayList<>();
-    for (final OptimizerFilter f: conjunction.filters) {
-      if (f instanceof final OptimizerFieldChecker fieldChecker) {
-        final int keyIndex = schema.isKey(fieldChecker.getFieldIndex());
-        if (keyIndex >= 0) keys.add(new KeyField(keyIndex, fieldChecker));
-      } else if (f instanceof final OptimizerConjunction subConjunction) {
-        extractKeyPrefixes(processed, schema, subConjunction);
+  /**
+   * Filter the remaining rows of the block, the matching rows are passed to the consumer
+   * until it returns false. The query must be created with the schema of the block.
+   * The columnar blocks are filtered in batches, see {@link #process(RowBatch)},
+   * the row blocks are filtered a row at the time.
+   * @return the number of rows passed to the consumer
+   */
+  public long scan(final EntityRowsReader rows, final Predicate<EntityRow> consumer) {
+    long count = 0;
+    final FieldFormatReaderV1 columnReader = rows.columnReader();
+    if (columnReader == null) {
+      while (rows.hasMore()) {
+        if (process(rows.next())) {
+          count++;
+          if (!consumer.test(row)) break;
+        }
       }
+      return count;
     }
 
-    if (keys.isEmpty()) {
-      return;
+    final RowBatch batch = newBatch(DEFAULT_BATCH_SIZE);
+    while (rows.hasMore()) {
+      final int fromRow = rows.skipRows(batch.capacity());
+      batch.load(columnReader, fromRow, rows.endRow() - fromRow);
+      if (process(batch) == 0) continue;
+
+      for (int i = batch.nextSelected(0); i >= 0; i = batch.nextSelected(i + 1)) {
+        columnReader.setRow(fromRow + i);
+        row.load(columnReader);
+        count++;
+        if (!consumer.test(row)) return count;
+      }
     }
+    return count;
+  }
 
-    keys.sort((a, b) -> Integer.compare(a.keyIndex(), b.keyIndex()));
-    if (keys.get(0).keyIndex() > 0) {
-      // we need the first key element
-      return;
+  /**
+   * Count the remaining rows of the block matching the filter, without loading the rows.
+   */
+  public long count(final EntityRowsReader rows) {
+    long count = 0;
+    final FieldFormatReaderV1 columnReader = rows.columnReader();
+    if (columnReader == null) {
+      while (rows.hasMore()) {
+        if (process(rows.next())) count++;
+      }
+      return count;
     }
 
-    final RowKeyBuilder rowKey = RowKey.newKeyBuilder();
-    for (int i = 0; i < keys.size(); ++i) {
-      final OptimizerFieldChecker checker = keys.get(i).checker();
-      switch (checker.matchType()) {
-        case FULL:
-          switch (schema.getFieldType(checker.getFieldIndex())) {
-            //case STRING: rowKey.add(checker.value());
-            //case INT: rowKey.add(checker.value())
-          }
-          break;
-        case PREFIX:
-        case RANGE:
-          for (int j = keys.size() - 1; j > i; --j) {
-            keys.remove(i);
-          }
-          break;
-        case RANDOM:
-          for (int j = keys.size() - 1; j >= i; --j) {
-            keys.remove(i);
-          }
-          break;
-      }
+    final RowBatch batch = newBatch(DEFAULT_BATCH_SIZE);
+    while (rows.hasMore()) {
+      final int fromRow = rows.skipRows(batch.capacity());
+      batch.load(columnReader, fromRow, rows.endRow() - fromRow);
+      count += process(batch);
     }
+    return count;
+  }
+
+  /**
+   * Add the remaining rows of the block matching the filter to the aggregation state.
+   * The aggregate values are read from the rows, a count(*) only aggregation does not load the rows.
+   * @return the number of rows aggregated
+   */
+  public long aggregate(final EntityRowsReader rows, final Aggregation.State state) {
+    if (state.aggregation().isRowCountOnly()) {
+      final long count = count(rows);
+      state.addRowCount(count);
+      return count;
+    }
+    return scan(rows, row -> {
+      state.add(row);
+      return true;
+    });
+  }
+
+  /**
+   * @return the ranges of row keys that may contain the rows matching the filter,
+   *         sorted and not overlapping. An empty list means that no row can match.
+   */
+  public List<KeyRange> keyRanges() {
+    return keyRanges;
+  }
 
-    System.out.println(" -> " + keys);
+  public boolean isFullScan() {
+    return KeyRangePlanner.isFullScan(keyRanges);
+  }
+
+  /**
+   * @param indexFields the field indexes of a secondary index, in the index order
+   * @return the ranges of the index keys that may contain the rows matching the filter,
+   *         relative to the index (the index id is not included). A full scan means
+   *         that the index is not useful for this query.
+   */
+  public List<KeyRange> indexRanges(final int[] indexFields) {
+    return new KeyRangePlanner(schema, indexFields, true).plan(filter);
+  }
+
+  /**
+   * @return the indexes of the fields referenced by the filter, sorted
+   */
+  public int[] fieldIndexes() {
+    return fieldIndexes;
+  }
+
+  public String explain() {
+    final StringBuilder report = new StringBuilder();
+    if (isFullScan()) {
+      report.append("FULL-SCAN\n");
+    } else if (keyRanges.isEmpty()) {
+      report.append("NO-SCAN: the key predicates cannot match\n");
+    } else {
+      report.append("RANGE-SCAN ").append(keyRanges.size()).append(" key ranges\n");
+      for (final KeyRange range: keyRanges) {
+        report.append(" - ").append(range).append('\n');
+      }
+    }
+    report.append("FILTER: ").append(filter).append('\n');
+    return report.toString();
   }
 
   private static OptimizerFilter compile(final HashMap<Filter, OptimizerFilter> uniqFilters,
@@ -151,18 +273,19 @@ public final class Query {
         case LIKE, NLIKE -> {
           // TODO: we can remove this query branch if match is nothing and remove the filter if it is everything
           final LikePattern like = QUERY_CACHE.likePattern((String) filter.getValue());
-          yield new OptimizerLike(filter.getType(), fieldIndex, like);
+          yield new OptimizerLike(filter.getType(), fieldIndex, (String) filter.getValue(), like);
         }
         case REGEX -> {
           final LikePattern like = QUERY_CACHE.regexMatchPattern((String) filter.getValue());
-          yield new OptimizerLike(FilterType.LIKE, fieldIndex, like);
+          yield new OptimizerLike(FilterType.LIKE, fieldIndex, null, like);
         }
         case IN, NIN -> {
           final Object[] inValues = filter.getValues();
           if (inValues.length == 1) {
-            yield new OptimizerComparator(FilterType.EQ, fieldIndex, inValues[0]);
+            yield new OptimizerComparator(filter.getType() == FilterType.IN ? FilterType.EQ : FilterType.NE, fieldIndex, inValues[0]);
           }
-          yield new OptimizerIn(filter.getType(), fieldIndex, inValues);
+          final DataType fieldType = fieldIndex >= 0 ? schema.getFieldType(fieldIndex) : null;
+          yield new OptimizerIn(filter.getType(), fieldIndex, fieldType, inValues);
         }
       };
     }
@@ -170,6 +293,17 @@ public final class Query {
     return optimizedFilter;
   }
 
+  private static void collectFieldIndexes(final OptimizerFilter filter, final BitSet fields) {
+    if (filter instanceof final OptimizerConjunction conjunction) {
+      for (final OptimizerFilter subFilter: conjunction.getFilters()) {
+        collectFieldIndexes(subFilter, fields);
+      }
+    } else {
+      final int fieldIndex = ((OptimizerFieldChecker)filter).getFieldIndex();
+      if (fieldIndex >= 0) fields.set(fieldIndex);
+    }
+  }
+
   private static int filterSorter(final Schema schema, final OptimizerFilter a, final OptimizerFilter b) {
     if (a instanceof OptimizerConjunction || b instanceof OptimizerConjunction) {
       if (!(a instanceof OptimizerConjunction)) return -1;
@@ -190,31 +324,107 @@ public final class Query {
     return Integer.compare(fa.getFieldIndex(), fb.getFieldIndex());
   }
 
-  private static abstract class OptimizerFilter {
-    private Boolean result;
-
-    protected boolean process(final EntityRow row) {
-      if (result != null) {
-        //System.out.println("CACHED " + this + " -> result: " + result);
-        return result;
-      }
+  /**
+   * A filter specialized for the field types of a schema: the comparison values are
+   * constants captured by the lambdas, and the INT/FLOAT/BOOL fields are read without boxing.
+   * The compiled filters have no state, they are cached and shared between queries.
+   */
+  @FunctionalInterface
+  interface RowFilter {
+    boolean test(EntityRow row);
+  }
 
-      this.result = compute(row);
-      //System.out.println("COMPUTE " + this + " -> result: " + result);
-      return result;
-    }
+  static abstract class OptimizerFilter {
+    protected abstract RowFilter compile(Schema schema);
 
-    protected abstract boolean compute(EntityRow row);
+    /**
+     * Evaluate the filter on the candidate rows of the batch.
+     * The result has the bits of the candidates matching the filter, and it may be the candidates array.
+     */
+    protected abstract void computeBatch(RowBatch batch, long[] candidates, long[] result);
   }
 
-  private static abstract class OptimizerFieldChecker extends OptimizerFilter {
+  static abstract class OptimizerFieldChecker extends OptimizerFilter {
     enum MatchType { FULL, PREFIX, RANGE, RANDOM }
 
     protected abstract int getFieldIndex();
     protected abstract MatchType matchType();
+
+    /**
+     * @return the predicate to push down to the key ranges, or null if the checker cannot be pushed down
+     */
+    protected KeyPredicate keyPredicate() {
+      return null;
+    }
+
+    protected abstract boolean matches(DataType type, Object value);
+
+    @Override
+    protected RowFilter compile(final Schema schema) {
+      final int index = getFieldIndex();
+      if (index < 0) {
+        // unknown field, fails on evaluation like the row.get() does
+        return row -> matches(null, row.get(index));
+      }
+
+      final DataType fieldType = schema.getFieldType(index);
+      final RowFilter filter = specialize(index, fieldType);
+      return (filter != null) ? filter : row -> matches(fieldType, row.get(index));
+    }
+
+    /**
+     * @return the filter specialized for the field type, or null to use the boxed {@link #matches(DataType, Object)}
+     */
+    protected RowFilter specialize(final int index, final DataType fieldType) {
+      return null;
+    }
+
+    /**
+     * @return true if the filter can be evaluated with {@link #batchMask(ColumnVector, int, int)} on the column
+     */
+    protected boolean hasBatchMask(final ColumnVector column) {
+      return false;
+    }
+
+    /**
+     * @return the word with the bit i set if the row (word * 64) + i matches, null rows included.
+     *         the bits after the rows count are ignored.
+     */
+    protected long batchMask(final ColumnVector column, final int word, final int rows) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void computeBatch(final RowBatch batch, final long[] candidates, final long[] result) {
+      final ColumnVector column = batch.column(getFieldIndex());
+      final int words = batch.words();
+      if (hasBatchMask(column)) {
+        // evaluate all the rows of a word, the tight loop is cheaper than skipping the non-candidates
+        for (int w = 0; w < words; ++w) {
+          final long bits = candidates[w];
+          result[w] = (bits != 0) ? bits & batchMask(column, w, batch.wordRows(w)) : 0;
+        }
+        return;
+      }
+
+      // fallback on the boxed values, only the candidates are evaluated
+      final DataType type = column.type();
+      for (int w = 0; w < words; ++w) {
+        long bits = candidates[w];
+        long mask = 0;
+        while (bits != 0) {
+          final int bit = Long.numberOfTrailingZeros(bits);
+          if (matches(type, column.get((w << 6) + bit))) {
+            mask |= 1L << bit;
+          }
+          bits &= bits - 1;
+        }
+        result[w] = mask;
+      }
+    }
   }
 
-  private static class OptimizerConjunction extends OptimizerFilter {
+  static class OptimizerConjunction extends OptimizerFilter {
     private final OptimizerFilter[] filters;
     private final FilterType type;
 
@@ -227,22 +437,83 @@ public final class Query {
       return filters.length;
     }
 
+    FilterType getType() {
+      return type;
+    }
+
+    OptimizerFilter[] getFilters() {
+      return filters;
+    }
+
     @Override
-    protected boolean compute(final EntityRow row) {
+    protected RowFilter compile(final Schema schema) {
+      final RowFilter[] compiled = new RowFilter[filters.length];
+      for (int i = 0; i < filters.length; ++i) {
+        compiled[i] = filters[i].compile(schema);
+      }
+
       if (type == FilterType.OR) {
+        return switch (compiled.length) {
+          case 0 -> row -> false;
+          case 1 -> compiled[0];
+          case 2 -> {
+            final RowFilter a = compiled[0];
+            final RowFilter b = compiled[1];
+            yield row -> a.test(row) || b.test(row);
+          }
+          default -> row -> {
+            for (int i = 0; i < compiled.length; ++i) {
+              if (compiled[i].test(row)) return true;
+            }
+            return false;
+          };
+        };
+      }
+
+      return switch (compiled.length) {
+        case 0 -> row -> true;
+        case 1 -> compiled[0];
+        case 2 -> {
+          final RowFilter a = compiled[0];
+          final RowFilter b = compiled[1];
+          yield row -> a.test(row) && b.test(row);
+        }
+        default -> row -> {
+          for (int i = 0; i < compiled.length; ++i) {
+            if (!compiled[i].test(row)) return false;
+          }
+          return true;
+        };
+      };
+    }
+
+    @Override
+    protected void computeBatch(final RowBatch batch, final long[] candidates, final long[] result) {
+      final int words = batch.words();
+      if (type == FilterType.OR) {
+        // each filter is evaluated only on the rows not matched by the previous ones
+        final long[] pending = batch.acquireWords();
+        final long[] matched = batch.acquireWords();
+        System.arraycopy(candidates, 0, pending, 0, words);
+        Arrays.fill(result, 0, words, 0);
         for (int i = 0; i < filters.length; ++i) {
-          if (filters[i].process(row)) {
-            return true;
+          filters[i].computeBatch(batch, pending, matched);
+          long remaining = 0;
+          for (int w = 0; w < words; ++w) {
+            result[w] |= matched[w];
+            pending[w] &= ~matched[w];
+            remaining |= pending[w];
           }
+          if (remaining == 0) break;
         }
-        return false;
+        batch.releaseWords(2);
       } else {
+        // each filter is evaluated only on the rows matched by the previous ones
+        System.arraycopy(candidates, 0, result, 0, words);
         for (int i = 0; i < filters.length; ++i) {
-          if (!filters[i].process(row)) {
-            return false;
-          }
+          filters[i].computeBatch(batch, result, result);
+          if (RowBatch.isEmpty(result, words)) break;
         }
-        return true;
       }
     }
 
@@ -272,11 +543,10 @@ public final class Query {
     }
 
     @Override
-    protected boolean compute(final EntityRow row) {
-      final Object value = row.get(fieldIndex);
+    protected boolean matches(final DataType type, final Object value) {
       if (value == null) return empty;
 
-      return switch (row.getFieldType(fieldIndex)) {
+      return switch (type) {
         case BYTES -> ((ByteArraySlice)value).isEmpty() == empty;
         case STRING -> ((String)value).isEmpty() == empty;
         case ARRAY -> ((JsonArray)value).isEmpty() == empty;
@@ -285,6 +555,28 @@ public final class Query {
       };
     }
 
+    @Override
+    protected RowFilter specialize(final int index, final DataType fieldType) {
+      return switch (fieldType) {
+        case BYTES, STRING, ARRAY, OBJECT -> null;
+        default -> empty ? row -> row.isNull(index) : row -> false;
+      };
+    }
+
+    @Override
+    protected boolean hasBatchMask(final ColumnVector column) {
+      // the other types are never empty, only the null bitmap is needed
+      return switch (column.type()) {
+        case BYTES, STRING, ARRAY, OBJECT -> false;
+        default -> true;
+      };
+    }
+
+    @Override
+    protected long batchMask(final ColumnVector column, final int word, final int rows) {
+      return empty ? column.nullMask(word) : 0;
+    }
+
     @Override
     public String toString() {
       return "Filter-" + (empty ? "EMPTY" : "NOT-EMPTY") + " [fieldIndex:" + fieldIndex + "]";
@@ -317,8 +609,20 @@ public final class Query {
     }
 
     @Override
-    protected boolean compute(final EntityRow row) {
-      final int cmp = compare(row.getFieldType(fieldIndex), row.get(fieldIndex), value);
+    protected KeyPredicate keyPredicate() {
+      return switch (type) {
+        case EQ -> new KeyPredicate(FilterType.IN, value);
+        case GE, GT, LE, LT -> new KeyPredicate(type, value);
+        default -> null;
+      };
+    }
+
+    @Override
+    protected boolean matches(final DataType fieldType, final Object fieldValue) {
+      return matches(compare(fieldType, fieldValue, value));
+    }
+
+    private boolean matches(final int cmp) {
       return switch (type) {
         case EQ -> cmp == 0;
         case NE -> cmp != 0;
@@ -330,6 +634,84 @@ public final class Query {
       };
     }
 
+    @Override
+    protected RowFilter specialize(final int index, final DataType fieldType) {
+      if (value == null) {
+        // null is equal to null and lower than any value
+        final boolean nullMatch = matches(0);
+        final boolean valueMatch = matches(1);
+        return row -> row.isNull(index) ? nullMatch : valueMatch;
+      }
+
+      // null values are lower than any value, see compare()
+      final boolean nullMatch = matches(-1);
+      return switch (fieldType) {
+        case INT, UTC_TIMESTAMP -> (value instanceof final Number n) ? specializeInt(index, n.longValue(), nullMatch) : null;
+        case FLOAT -> (value instanceof final Number n) ? specializeFloat(index, n.doubleValue(), nullMatch) : null;
+        case BOOL -> {
+          if (!(value instanceof final Boolean b)) yield null;
+          final boolean v = b;
+          yield row -> row.isNull(index) ? nullMatch : matches(Boolean.compare(row.getBool(index), v));
+        }
+        case STRING -> {
+          if (!(value instanceof final String v)) yield null;
+          yield switch (type) {
+            case EQ -> row -> v.equals(row.get(index));
+            case NE -> row -> !v.equals(row.get(index));
+            default -> null;
+          };
+        }
+        default -> null;
+      };
+    }
+
+    private RowFilter specializeInt(final int index, final long v, final boolean nullMatch) {
+      return switch (type) {
+        case EQ -> row -> row.isNull(index) ? nullMatch : row.getInt(index) == v;
+        case NE -> row -> row.isNull(index) ? nullMatch : row.getInt(index) != v;
+        case GE -> row -> row.isNull(index) ? nullMatch : row.getInt(index) >= v;
+        case GT -> row -> row.isNull(index) ? nullMatch : row.getInt(index) > v;
+        case LE -> row -> row.isNull(index) ? nullMatch : row.getInt(index) <= v;
+        case LT -> row -> row.isNull(index) ? nullMatch : row.getInt(index) < v;
+        default -> throw new IllegalArgumentException("Unexpected value: " + type);
+      };
+    }
+
+    private RowFilter specializeFloat(final int index, final double v, final boolean nullMatch) {
+      return switch (type) {
+        case EQ -> row -> row.isNull(index) ? nullMatch : Double.compare(row.getFloat(index), v) == 0;
+        case NE -> row -> row.isNull(index) ? nullMatch : Double.compare(row.getFloat(index), v) != 0;
+        case GE -> row -> row.isNull(index) ? nullMatch : Double.compare(row.getFloat(index), v) >= 0;
+        case GT -> row -> row.isNull(index) ? nullMatch : Double.compare(row.getFloat(index), v) > 0;
+        case LE -> row -> row.isNull(index) ? nullMatch : Double.compare(row.getFloat(index), v) <= 0;
+        case LT -> row -> row.isNull(index) ? nullMatch : Double.compare(row.getFloat(index), v) < 0;
+        default -> throw new IllegalArgumentException("Unexpected value: " + type);
+      };
+    }
+
+    @Override
+    protected boolean hasBatchMask(final ColumnVector column) {
+      if (!column.isPrimitive()) return false;
+      return switch (column.type()) {
+        case INT, UTC_TIMESTAMP, FLOAT -> value instanceof Number;
+        case BOOL -> value instanceof Boolean;
+        default -> false;
+      };
+    }
+
+    @Override
+    protected long batchMask(final ColumnVector column, final int word, final int rows) {
+      final long mask = switch (column.type()) {
+        case INT, UTC_TIMESTAMP -> column.compareMask(word, rows, type, ((Number) value).longValue());
+        case FLOAT -> column.compareMask(word, rows, type, ((Number) value).doubleValue());
+        case BOOL -> column.compareMask(word, rows, type, ((Boolean) value).booleanValue());
+        default -> throw new IllegalStateException("unexpected batch column type " + column.type());
+      };
+      // null values are lower than any value, see compare()
+      final long nulls = column.nullMask(word);
+      return (mask & ~nulls) | (matches(-1) ? nulls : 0);
+    }
+
     @Override
     public String toString() {
       return "Filter-" + type + " [field=" + fieldIndex + ", value=" + value + "]";
@@ -361,12 +743,14 @@ public final class Query {
 
   private static class OptimizerLike extends OptimizerFieldChecker {
     private final int fieldIndex;
+    private final String pattern;
     private final LikePattern expr;
     private final boolean match;
 
-    private OptimizerLike(final FilterType filterType, final int fieldIndex, final LikePattern expr) {
+    private OptimizerLike(final FilterType filterType, final int fieldIndex, final String pattern, final LikePattern expr) {
       this.fieldIndex = fieldIndex;
       this.match = (filterType == FilterType.LIKE);
+      this.pattern = pattern;
       this.expr = expr;
     }
 
@@ -385,8 +769,52 @@ public final class Query {
     }
 
     @Override
-    protected boolean compute(final EntityRow row) {
-      final Object value = row.get(fieldIndex);
+    protected KeyPredicate keyPredicate() {
+      if (!match || pattern == null) return null;
+      return switch (expr.matchType()) {
+        case NOTHING -> new KeyPredicate(FilterType.IN);
+        case FULL -> new KeyPredicate(FilterType.IN, pattern);
+        case PREFIX -> {
+          final String prefix = likeLiteralPrefix(pattern);
+          yield prefix.isEmpty() ? null : new KeyPredicate(FilterType.LIKE, prefix);
+        }
+        case EVERYTHING, RANDOM -> null;
+      };
+    }
+
+    private static String likeLiteralPrefix(final String pattern) {
+      final StringBuilder prefix = new StringBuilder(pattern.length());
+      for (int i = 0, n = pattern.length(); i < n; ++i) {
+        final char c = pattern.charAt(i);
+        if (c == '%' || c == '_') break;
+        if (c == '\\' && (i + 1) < n) {
+          prefix.append(pattern.charAt(++i));
+        } else {
+          prefix.append(c);
+        }
+      }
+      return prefix.toString();
+    }
+
+    @Override
+    protected RowFilter specialize(final int index, final DataType fieldType) {
+      if (expr == null) return row -> !match;
+      return switch (expr.matchType()) {
+        case NOTHING -> row -> !match;
+        case EVERYTHING -> row -> row.isNull(index) ? !match : match;
+        default -> {
+          final LikePattern pattern = expr;
+          final boolean isMatch = match;
+          yield row -> {
+            final Object value = row.get(index);
+            return (value == null) ? !isMatch : pattern.matches(String.valueOf(value)) == isMatch;
+          };
+        }
+      };
+    }
+
+    @Override
+    protected boolean matches(final DataType type, final Object value) {
       if (value == null || expr == null) return !match;
 
       final String sValue = String.valueOf(value);
@@ -400,14 +828,46 @@ public final class Query {
   }
 
   private static class OptimizerIn extends OptimizerFieldChecker {
-    private final Set<Object> values;
+    private final Object[] inValues;
+    private final HashSet<Object> values;
     private final int fieldIndex;
     private final boolean match;
 
-    private OptimizerIn(final FilterType filterType, final int fieldIndex, final Object[] values) {
-      this.values = Set.of(values);
+    // sorted non-null values for the batch evaluation, null if the field is not INT/FLOAT
+    private final long[] intValues;
+    private final double[] floatValues;
+    private final boolean hasNull;
+
+    private OptimizerIn(final FilterType filterType, final int fieldIndex, final DataType fieldType, final Object[] values) {
+      this.inValues = values;
       this.fieldIndex = fieldIndex;
       this.match = (filterType == FilterType.IN);
+
+      // the row values are Long/Double, the filter values may be any Number (e.g. Integer)
+      this.values = new HashSet<>(values.length);
+      boolean numbers = fieldType != null;
+      boolean nullValue = false;
+      for (int i = 0; i < values.length; ++i) {
+        final Object value = values[i];
+        nullValue |= (value == null);
+        numbers &= (value == null || value instanceof Number);
+        this.values.add(normalizeNumber(fieldType, value));
+      }
+      this.hasNull = nullValue;
+
+      final boolean isInt = numbers && (fieldType == DataType.INT || fieldType == DataType.UTC_TIMESTAMP);
+      final boolean isFloat = numbers && fieldType == DataType.FLOAT;
+      this.intValues = isInt ? this.values.stream().filter(v -> v != null).mapToLong(v -> (Long) v).sorted().toArray() : null;
+      this.floatValues = isFloat ? this.values.stream().filter(v -> v != null).mapToDouble(v -> (Double) v).sorted().toArray() : null;
+    }
+
+    private static Object normalizeNumber(final DataType fieldType, final Object value) {
+      if (fieldType == null || !(value instanceof final Number number)) return value;
+      return switch (fieldType) {
+        case INT, UTC_TIMESTAMP -> number.longValue();
+        case FLOAT -> number.doubleValue();
+        default -> value;
+      };
     }
 
     @Override
@@ -416,12 +876,49 @@ public final class Query {
     }
 
     @Override
-    protected boolean compute(final EntityRow row) {
-      // TODO: Long vs Integer problem...
-      final Object value = row.get(fieldIndex);
+    protected boolean matches(final DataType type, final Object value) {
       return this.values.contains(value) == match;
     }
 
+    @Override
+    protected RowFilter specialize(final int index, final DataType fieldType) {
+      final boolean isMatch = match;
+      final boolean nullMatch = (hasNull == match);
+      return switch (fieldType) {
+        case INT, UTC_TIMESTAMP -> {
+          if (intValues == null) yield null;
+          final long[] keys = intValues;
+          yield row -> row.isNull(index) ? nullMatch : (Arrays.binarySearch(keys, row.getInt(index)) >= 0) == isMatch;
+        }
+        case FLOAT -> {
+          if (floatValues == null) yield null;
+          final double[] keys = floatValues;
+          yield row -> row.isNull(index) ? nullMatch : (Arrays.binarySearch(keys, row.getFloat(index)) >= 0) == isMatch;
+        }
+        default -> null;
+      };
+    }
+
+    @Override
+    protected boolean hasBatchMask(final ColumnVector column) {
+      if (!column.isPrimitive()) return false;
+      return switch (column.type()) {
+        case INT, UTC_TIMESTAMP -> intValues != null;
+        case FLOAT -> floatValues != null;
+        default -> false;
+      };
+    }
+
+    @Override
+    protected long batchMask(final ColumnVector column, final int word, final int rows) {
+      final long mask = (column.type() == DataType.FLOAT)
+        ? column.inMask(word, rows, floatValues)
+        : column.inMask(word, rows, intValues);
+      final long nulls = column.nullMask(word);
+      final long inMask = (mask & ~nulls) | (hasNull ? nulls : 0);
+      return match ? inMask : ~inMask;
+    }
+
     @Override
     public String toString() {
       return "Filter-" + (match ? "IN" : "NOT-IN") + " [field=" + fieldIndex + ", values=" + values + "]";
@@ -431,6 +928,11 @@ public final class Query {
     protected MatchType matchType() {
       return match ? MatchType.FULL : MatchType.RANDOM;
     }
+
+    @Override
+    protected KeyPredicate keyPredicate() {
+      return match ? new KeyPredicate(FilterType.IN, inValues) : null;
+    }
   }
 
   private static class OptimizerBetween extends OptimizerFieldChecker {
@@ -453,12 +955,65 @@ public final class Query {
     }
 
     @Override
-    protected boolean compute(final EntityRow row) {
-      final DataType type = row.getFieldType(fieldIndex);
-      final Object value = row.get(fieldIndex);
+    protected KeyPredicate keyPredicate() {
+      return new KeyPredicate(FilterType.BW, values);
+    }
+
+    @Override
+    protected boolean matches(final DataType type, final Object value) {
       return compare(type, value, values[0]) >= 0 && compare(type, value, values[1]) <= 0;
     }
 
+    @Override
+    protected RowFilter specialize(final int index, final DataType fieldType) {
+      if (!(values[0] instanceof final Number lo) || !(values[1] instanceof final Number hi)) {
+        return null;
+      }
+
+      // null values are lower than any value, they never match
+      return switch (fieldType) {
+        case INT, UTC_TIMESTAMP -> {
+          final long min = lo.longValue();
+          final long max = hi.longValue();
+          yield row -> {
+            if (row.isNull(index)) return false;
+            final long v = row.getInt(index);
+            return v >= min && v <= max;
+          };
+        }
+        case FLOAT -> {
+          final double min = lo.doubleValue();
+          final double max = hi.doubleValue();
+          yield row -> {
+            if (row.isNull(index)) return false;
+            final double v = row.getFloat(index);
+            return Double.compare(v, min) >= 0 && Double.compare(v, max) <= 0;
+          };
+        }
+        default -> null;
+      };
+    }
+
+    @Override
+    protected boolean hasBatchMask(final ColumnVector column) {
+      if (!column.isPrimitive() || !(values[0] instanceof Number) || !(values[1] instanceof Number)) {
+        return false;
+      }
+      return switch (column.type()) {
+        case INT, UTC_TIMESTAMP, FLOAT -> true;
+        default -> false;
+      };
+    }
+
+    @Override
+    protected long batchMask(final ColumnVector column, final int word, final int rows) {
+      final long mask = (column.type() == DataType.FLOAT)
+        ? column.betweenMask(word, rows, ((Number) values[0]).doubleValue(), ((Number) values[1]).doubleValue())
+        : column.betweenMask(word, rows, ((Number) values[0]).longValue(), ((Number) values[1]).longValue());
+      // null values are lower than any value, they never match
+      return mask & ~column.nullMask(word);
+    }
+
     @Override
     public String toString() {
       return "Filter-BETWEEN [field=" + fieldIndex + ", values=" + Arrays.toString(values) + "]";
@@ -466,8 +1021,9 @@ public final class Query {
   }
 
   public static class QueryCache {
-    private final LruCache<String, RegexLikePattern> regexCache = new LruCache<>(128, 512, Duration.ofMinutes(5));
-    private final LruCache<String, LikePattern> likeCache = new LruCache<>(128, 512, Duration.ofMinutes(5));
+    private final ConcurrentLruCache<String, RegexLikePattern> regexCache = new ConcurrentLruCache<>(128, 512, Duration.ofMinutes(5));
+    private final ConcurrentLruCache<String, LikePattern> likeCache = new ConcurrentLruCache<>(128, 512, Duration.ofMinutes(5));
+    private final ConcurrentLruCache<RowFilterKey, RowFilter> rowFilterCache = new ConcurrentLruCache<>(128, 512, Duration.ofMinutes(5));
 
     private QueryCache() {
       // no-op
@@ -480,5 +1036,15 @@ public final class Query {
     public RegexLikePattern regexMatchPattern(final String expr) {
       return regexCache.computeIfAbsent(expr, RegexLikePattern::new);
     }
+
+    RowFilter rowFilter(final Schema schema, final Filter filter, final Supplier<RowFilter> compiler) {
+      final RowFilterKey key = new RowFilterKey(List.of(schema.fieldNames()), List.of(schema.fieldTypes()), filter);
+      return rowFilterCache.computeIfAbsent(key, k -> compiler.get());
+    }
+
+    // the compiled filter depends only on the field positions and types (see Schema.equals()),
+    // the schema is mutable so the key takes a copy of them. the filter is not copied,
+    // it must not be modified (setValue/setValues) once used by a Query
+    private record RowFilterKey(List<String> fieldNames, List<DataType> fieldTypes, Filter filter) {}
   }
 }
@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.query;
+
+import java.util.Arrays;
+
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.format.v1.FieldFormatReaderV1;
+import tech.dnaco.storage.query.Filter.FilterType;
+
+/**
+ * A window of rows of a columnar block, with the columns referenced by a query.
+ * The INT, FLOAT and BOOL columns are exposed as primitive arrays shared with the reader,
+ * the other columns are read on demand. The rows matching the query are marked
+ * in the selection bitmap, see {@link Query#process(RowBatch)}.
+ */
+public final class RowBatch {
+  private final ColumnVector[] columns;
+  private final long[] selection;
+  private final int capacity;
+
+  // bitmaps used by the filters during the evaluation
+  private long[][] scratch = new long[4][];
+  private int scratchSize;
+
+  private int size;
+
+  RowBatch(final Schema schema, final int[] fieldIndexes, final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("expected a positive batch capacity, got " + capacity);
+    }
+
+    this.capacity = capacity;
+    this.selection = new long[words(capacity)];
+    this.columns = new ColumnVector[schema.fieldsCount()];
+    for (int i = 0; i < fieldIndexes.length; ++i) {
+      final int fieldIndex = fieldIndexes[i];
+      columns[fieldIndex] = new ColumnVector(schema.getFieldType(fieldIndex), schema.getFieldId(fieldIndex), selection.length);
+    }
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Load the rows [fromRow, fromRow + capacity) of the block, or less if the block ends before.
+   * The selection is cleared.
+   * @return the number of rows loaded
+   */
+  public int load(final FieldFormatReaderV1 reader, final int fromRow) {
+    return load(reader, fromRow, reader.rowCount() - fromRow);
+  }
+
+  /**
+   * Load the rows [fromRow, fromRow + min(capacity, rowCount)) of the block.
+   * @return the number of rows loaded
+   */
+  public int load(final FieldFormatReaderV1 reader, final int fromRow, final int rowCount) {
+    this.size = Math.max(0, Math.min(capacity, Math.min(rowCount, reader.rowCount() - fromRow)));
+    this.scratchSize = 0;
+    Arrays.fill(selection, 0);
+    for (int i = 0; i < columns.length; ++i) {
+      if (columns[i] != null) {
+        columns[i].load(reader, fromRow, size);
+      }
+    }
+    return size;
+  }
+
+  // ================================================================================
+  //  Selection
+  // ================================================================================
+  public boolean isSelected(final int row) {
+    return (selection[row >>> 6] & (1L << row)) != 0;
+  }
+
+  /**
+   * @return the first selected row at or after fromRow, or -1 if there are no more selected rows
+   */
+  public int nextSelected(final int fromRow) {
+    int word = fromRow >>> 6;
+    if (word >= selection.length) return -1;
+
+    long bits = selection[word] & (-1L << fromRow);
+    while (bits == 0) {
+      if (++word == selection.length) return -1;
+      bits = selection[word];
+    }
+    return (word << 6) + Long.numberOfTrailingZeros(bits);
+  }
+
+  public int selectedCount() {
+    int count = 0;
+    for (int i = 0; i < selection.length; ++i) {
+      count += Long.bitCount(selection[i]);
+    }
+    return count;
+  }
+
+  long[] selection() {
+    return selection;
+  }
+
+  // ================================================================================
+  //  Filter helpers
+  // ================================================================================
+  ColumnVector column(final int fieldIndex) {
+    final ColumnVector column = (fieldIndex >= 0 && fieldIndex < columns.length) ? columns[fieldIndex] : null;
+    if (column == null) {
+      throw new IllegalArgumentException("field " + fieldIndex + " is not loaded by the batch, use the Query.newBatch() of the query");
+    }
+    return column;
+  }
+
+  int words() {
+    return words(size);
+  }
+
+  int wordRows(final int word) {
+    return Math.min(64, size - (word << 6));
+  }
+
+  /**
+   * @return a bitmap with the same length of the selection, release it with {@link #releaseWords(int)}
+   */
+  long[] acquireWords() {
+    if (scratchSize == scratch.length) {
+      scratch = Arrays.copyOf(scratch, scratchSize << 1);
+    }
+    long[] words = scratch[scratchSize];
+    if (words == null) {
+      words = new long[selection.length];
+      scratch[scratchSize] = words;
+    }
+    scratchSize++;
+    return words;
+  }
+
+  void releaseWords(final int count) {
+    scratchSize -= count;
+  }
+
+  static int words(final int rows) {
+    return (rows + 63) >>> 6;
+  }
+
+  static boolean isEmpty(final long[] words, final int count) {
+    for (int i = 0; i < count; ++i) {
+      if (words[i] != 0) return false;
+    }
+    return true;
+  }
+
+  /**
+   * The values of a field for the rows in the batch.
+   * The mask methods return a word with the bit i set if the row (word * 64) + i matches,
+   * the values of the null rows are undefined so the caller must apply the {@link #nullMask(int)}.
+   */
+  static final class ColumnVector {
+    private final DataType type;
+    private final int fieldId;
+    private final long[] nulls;
+    private boolean hasNulls;
+
+    // primitive columns, shared with the reader. the value of row i is at offset + i
+    private long[] ints;
+    private double[] floats;
+    private boolean[] bools;
+    private int offset;
+
+    // the other columns are read on demand
+    private FieldFormatReaderV1 source;
+
+    private ColumnVector(final DataType type, final int fieldId, final int words) {
+      this.type = type;
+      this.fieldId = fieldId;
+      this.nulls = new long[words];
+    }
+
+    private void load(final FieldFormatReaderV1 reader, final int fromRow, final int size) {
+      this.ints = null;
+      this.floats = null;
+      this.bools = null;
+      this.source = null;
+      this.offset = fromRow;
+
+      this.hasNulls = reader.hasNulls(fieldId);
+      if (hasNulls) {
+        Arrays.fill(nulls, 0);
+        reader.getNulls(fieldId, fromRow, size, nulls);
+      }
+
+      if (!reader.hasColumn(fieldId)) return;
+      switch (type) {
+        case INT, UTC_TIMESTAMP -> ints = reader.getIntColumn(fieldId);
+        case FLOAT -> floats = reader.getFloatColumn(fieldId);
+        case BOOL -> bools = reader.getBoolColumn(fieldId);
+        default -> { /* no-op */ }
+      }
+
+      // not a primitive column, or stored with a different kind (e.g. INT values of a FLOAT field)
+      if (ints == null && floats == null && bools == null) {
+        this.source = reader;
+      }
+    }
+
+    DataType type() {
+      return type;
+    }
+
+    boolean isPrimitive() {
+      return ints != null || floats != null || bools != null;
+    }
+
+    boolean isNull(final int row) {
+      return hasNulls && (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    Object get(final int row) {
+      if (isNull(row)) return null;
+      if (ints != null) return ints[offset + row];
+      if (floats != null) return floats[offset + row];
+      if (bools != null) return bools[offset + row];
+      if (source != null) {
+        source.setRow(offset + row);
+        return source.get(type, fieldId);
+      }
+      return null;
+    }
+
+    long nullMask(final int word) {
+      return hasNulls ? nulls[word] : 0;
+    }
+
+    long compareMask(final int word, final int rows, final FilterType op, final long value) {
+      final long[] values = ints;
+      final int base = offset + (word << 6);
+      long mask = 0;
+      switch (op) {
+        case EQ -> { for (int i = 0; i < rows; ++i) mask |= (values[base + i] == value ? 1L : 0L) << i; }
+        case NE -> { for (int i = 0; i < rows; ++i) mask |= (values[base + i] != value ? 1L : 0L) << i; }
+        case GE -> { for (int i = 0; i < rows; ++i) mask |= (values[base + i] >= value ? 1L : 0L) << i; }
+        case GT -> { for (int i = 0; i < rows; ++i) mask |= (values[base + i] > value ? 1L : 0L) << i; }
+        case LE -> { for (int i = 0; i < rows; ++i) mask |= (values[base + i] <= value ? 1L : 0L) << i; }
+        case LT -> { for (int i = 0; i < rows; ++i) mask |= (values[base + i] < value ? 1L : 0L) << i; }
+        default -> throw new IllegalArgumentException("Unexpected value: " + op);
+      }
+      return mask;
+    }
+
+    long compareMask(final int word, final int rows, final FilterType op, final double value) {
+      // Double.compare() like the per-row evaluation (-0.0 < 0.0, NaN is equal to itself)
+      final double[] values = floats;
+      final int base = offset + (word << 6);
+      long mask = 0;
+      switch (op) {
+        case EQ -> { for (int i = 0; i < rows; ++i) mask |= (Double.compare(values[base + i], value) == 0 ? 1L : 0L) << i; }
+        case NE -> { for (int i = 0; i < rows; ++i) mask |= (Double.compare(values[base + i], value) != 0 ? 1L : 0L) << i; }
+        case GE -> { for (int i = 0; i < rows; ++i) mask |= (Double.compare(values[base + i], value) >= 0 ? 1L : 0L) << i; }
+        case GT -> { for (int i = 0; i < rows; ++i) mask |= (Double.compare(values[base + i], value) > 0 ? 1L : 0L) << i; }
+        case LE -> { for (int i = 0; i < rows; ++i) mask |= (Double.compare(values[base + i], value) <= 0 ? 1L : 0L) << i; }
+        case LT -> { for (int i = 0; i < rows; ++i) mask |= (Double.compare(values[base + i], value) < 0 ? 1L : 0L) << i; }
+        default -> throw new IllegalArgumentException("Unexpected value: " + op);
+      }
+      return mask;
+    }
+
+    long compareMask(final int word, final int rows, final FilterType op, final boolean value) {
+      final boolean[] values = bools;
+      final int base = offset + (word << 6);
+      long mask = 0;
+      for (int i = 0; i < rows; ++i) {
+        final int cmp = Boolean.compare(values[base + i], value);
+        final boolean match = switch (op) {
+          case EQ -> cmp == 0;
+          case NE -> cmp != 0;
+          case GE -> cmp >= 0;
+          case GT -> cmp > 0;
+          case LE -> cmp <= 0;
+          case LT -> cmp < 0;
+          default -> throw new IllegalArgumentException("Unexpected value: " + op);
+        };
+        mask |= (match ? 1L : 0L) << i;
+      }
+      return mask;
+    }
+
+    long inMask(final int word, final int rows, final long[] sortedValues) {
+      final long[] values = ints;
+      final int base = offset + (word << 6);
+      long mask = 0;
+      for (int i = 0; i < rows; ++i) {
+        mask |= (Arrays.binarySearch(sortedValues, values[base + i]) >= 0 ? 1L : 0L) << i;
+      }
+      return mask;
+    }
+
+    long inMask(final int word, final int rows, final double[] sortedValues) {
+      final double[] values = floats;
+      final int base = offset + (word << 6);
+      long mask = 0;
+      for (int i = 0; i < rows; ++i) {
+        mask |= (Arrays.binarySearch(sortedValues, values[base + i]) >= 0 ? 1L : 0L) << i;
+      }
+      return mask;
+    }
+
+    long betweenMask(final int word, final int rows, final long lo, final long hi) {
+      final long[] values = ints;
+      final int base = offset + (word << 6);
+      long mask = 0;
+      for (int i = 0; i < rows; ++i) {
+        final long v = values[base + i];
+        mask |= (v >= lo && v <= hi ? 1L : 0L) << i;
+      }
+      return mask;
+    }
+
+    long betweenMask(final int word, final int rows, final double lo, final double hi) {
+      final double[] values = floats;
+      final int base = offset + (word << 6);
+      long mask = 0;
+      for (int i = 0; i < rows; ++i) {
+        final double v = values[base + i];
+        mask |= (Double.compare(v, lo) >= 0 && Double.compare(v, hi) <= 0 ? 1L : 0L) << i;
+      }
+      return mask;
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.collections.iterators.MergeIterator;
+import tech.dnaco.collections.iterators.PeekIterator;
+import tech.dnaco.storage.EntityRow;
+import tech.dnaco.storage.EntityRowsReader;
+import tech.dnaco.storage.format.v1.FieldFormatReaderV1;
+
+/**
+ * Parallel scan of a set of EntityRows blocks.
+ * <p>The blocks are split in partitions: a row block is a partition, a columnar block
+ * is split in ranges of rows. Each partition is scanned by a task of the pool with its own
+ * {@link Query}, and the partial results are combined in the partition order.
+ * <p>The results are collected with a {@link Collector}: the accumulator is called with the
+ * rows of a partition, and the combiner merges the partial results (e.g. counts, sums, {@link #topN(int, Comparator)}).
+ * The {@link EntityRow} is reused by the scan, the accumulator must not keep a reference to it.
+ */
+public final class ScanExecutor {
+  public static final int DEFAULT_PARTITION_ROWS = 64 * Query.DEFAULT_BATCH_SIZE;
+
+  private final ForkJoinPool pool;
+  private final int partitionRows;
+
+  public ScanExecutor(final ForkJoinPool pool, final int partitionRows) {
+    if (partitionRows <= 0) {
+      throw new IllegalArgumentException("expected a positive number of rows per partition, got " + partitionRows);
+    }
+    this.pool = pool;
+    this.partitionRows = partitionRows;
+  }
+
+  public static ScanExecutor newExecutor() {
+    return new ScanExecutor(ForkJoinPool.commonPool(), DEFAULT_PARTITION_ROWS);
+  }
+
+  /**
+   * Rows [fromRow, toRow) of a block, toRow is -1 for all the rows of a row block.
+   * The partitions of a columnar block share the block reader, each column is decoded
+   * once by the first partition reading it.
+   */
+  public record BlockPartition(EntityRowsReader blockReader, int fromRow, int toRow) {
+    public boolean isRowRange() {
+      return toRow >= 0;
+    }
+
+    public EntityRowsReader newReader() {
+      // a row block is a single partition, the block reader is used as is
+      return isRowRange() ? blockReader.newRangeReader(fromRow, toRow) : blockReader;
+    }
+  }
+
+  /**
+   * @return the partitions of the blocks, in the blocks order
+   */
+  public List<BlockPartition> partitions(final List<? extends ByteArraySlice> blocks) {
+    final ArrayList<BlockPartition> partitions = new ArrayList<>(blocks.size());
+    for (final ByteArraySlice block: blocks) {
+      final EntityRowsReader blockReader = EntityRowsReader.newReader(block);
+      final FieldFormatReaderV1 columnReader = blockReader.columnReader();
+      if (columnReader == null) {
+        partitions.add(new BlockPartition(blockReader, 0, -1));
+        continue;
+      }
+
+      final int rowCount = columnReader.rowCount();
+      for (int fromRow = 0; fromRow < rowCount; fromRow += partitionRows) {
+        partitions.add(new BlockPartition(blockReader, fromRow, Math.min(rowCount, fromRow + partitionRows)));
+      }
+    }
+    return partitions;
+  }
+
+  /**
+   * Scan the blocks in parallel, collecting the rows matching the filter.
+   * The partial results are combined in the blocks order.
+   */
+  public <A, R> R scan(final List<? extends ByteArraySlice> blocks, final Filter filter,
+      final Collector<? super EntityRow, A, R> collector) {
+    A result = collector.supplier().get();
+    for (final A partial: scanPartitions(blocks, reader -> scanPartition(reader, filter, collector))) {
+      result = collector.combiner().apply(result, partial);
+    }
+    return collector.finisher().apply(result);
+  }
+
+  /**
+   * Scan the blocks in parallel, and merge the rows in the comparator order.
+   * The rows of each block must be sorted by the comparator (e.g. blocks sorted by key).
+   * @param mapper extract the values needed from the row, the row is reused
+   */
+  public <T> PeekIterator<T> scanSorted(final List<? extends ByteArraySlice> blocks, final Filter filter,
+      final Function<? super EntityRow, ? extends T> mapper, final Comparator<? super T> comparator) {
+    final Collector<EntityRow, List<T>, List<T>> collector = Collector.of(ArrayList::new,
+      (list, row) -> list.add(mapper.apply(row)),
+      (x, y) -> { throw new UnsupportedOperationException(); });
+
+    final List<List<T>> partials = scanPartitions(blocks, reader -> scanPartition(reader, filter, collector));
+    final ArrayList<Iterator<T>> runs = new ArrayList<>(partials.size());
+    for (final List<T> partial: partials) {
+      runs.add(partial.iterator());
+    }
+    return new MergeIterator<>(runs, comparator);
+  }
+
+  /**
+   * Scan the blocks in parallel, aggregating the rows matching the filter.
+   * Each partition has its own aggregation state, merged at the end of the scan.
+   * @return the aggregation results, see {@link Aggregation.State#results()}
+   */
+  public List<Object[]> aggregate(final List<? extends ByteArraySlice> blocks, final Filter filter,
+      final Aggregation aggregation) {
+    final Aggregation.State result = aggregation.newState();
+    for (final Aggregation.State partial: scanPartitions(blocks, reader -> {
+      final Aggregation.State state = aggregation.newState();
+      new Query(reader.schema(), filter).aggregate(reader, state);
+      return state;
+    })) {
+      result.merge(partial);
+    }
+    return result.results();
+  }
+
+  /**
+   * @return the partial results of the partitions, in the partitions order
+   */
+  private <A> List<A> scanPartitions(final List<? extends ByteArraySlice> blocks,
+      final Function<EntityRowsReader, A> partitionScan) {
+    final List<BlockPartition> partitions = partitions(blocks);
+    final ArrayList<ForkJoinTask<A>> tasks = new ArrayList<>(partitions.size());
+    for (final BlockPartition partition: partitions) {
+      tasks.add(pool.submit(() -> partitionScan.apply(partition.newReader())));
+    }
+
+    final ArrayList<A> results = new ArrayList<>(tasks.size());
+    for (final ForkJoinTask<A> task: tasks) {
+      results.add(task.join());
+    }
+    return results;
+  }
+
+  private static <A> A scanPartition(final EntityRowsReader reader, final Filter filter,
+      final Collector<? super EntityRow, A, ?> collector) {
+    final A result = collector.supplier().get();
+    final BiConsumer<A, ? super EntityRow> accumulator = collector.accumulator();
+    final Query query = new Query(reader.schema(), filter);
+    query.scan(reader, row -> {
+      accumulator.accept(result, row);
+      return true;
+    });
+    return result;
+  }
+
+  // ================================================================================
+  //  Collectors
+  // ================================================================================
+  /**
+   * @return a collector of the first n items in the comparator order, sorted.
+   *         Each partition keeps only its first n items.
+   */
+  public static <T> Collector<T, ?, List<T>> topN(final int n, final Comparator<? super T> comparator) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("expected a positive n, got " + n);
+    }
+
+    // max-heap of the n items, the head is the one to replace
+    final Comparator<? super T> reversed = Collections.reverseOrder(comparator);
+    return Collector.<T, PriorityQueue<T>, List<T>>of(
+      () -> new PriorityQueue<>(n + 1, reversed),
+      (heap, item) -> addTopN(heap, item, n, comparator),
+      (a, b) -> {
+        for (final T item: b) addTopN(a, item, n, comparator);
+        return a;
+      },
+      heap -> {
+        final ArrayList<T> items = new ArrayList<>(heap);
+        items.sort(comparator);
+        return items;
+      });
+  }
+
+  private static <T> void addTopN(final PriorityQueue<T> heap, final T item, final int n, final Comparator<? super T> comparator) {
+    if (heap.size() < n) {
+      heap.add(item);
+    } else if (comparator.compare(item, heap.peek()) < 0) {
+      heap.poll();
+      heap.add(item);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.rocksdb;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntFunction;
+
+import tech.dnaco.bytes.BytesUtil;
+import tech.dnaco.bytes.encoding.RowKey;
+import tech.dnaco.bytes.encoding.RowKey.RowKeyBuilder;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.Schema.Index;
+import tech.dnaco.storage.query.KeyRange;
+
+/**
+ * Secondary index of a {@link RocksEntityTable}, resolved on a schema version.
+ * <p>The entries are in the index column family of the table, with the key
+ * | index name | field values... | row key | encoded as a {@link RowKey}.
+ * The field values use the same encoding of the row key fields, a null value is an empty component.
+ * The value is empty, or the index and include fields in the row value format for the covering indexes.
+ */
+final class RocksEntityIndex {
+  private static final byte[] NULL_COMPONENT = new byte[0];
+
+  private final Index index;
+  private final byte[] prefix;
+  private final int[] fields;
+  private final int[] valueFields;
+
+  private RocksEntityIndex(final Index index, final int[] fields, final int[] valueFields) {
+    this.index = index;
+    this.prefix = prefix(index.name());
+    this.fields = fields;
+    this.valueFields = valueFields;
+  }
+
+  /**
+   * @return the indexes of the schema, resolved on the schema fields
+   */
+  static RocksEntityIndex[] resolve(final Schema schema) {
+    final Index[] indexes = schema.indexes();
+    final RocksEntityIndex[] resolved = new RocksEntityIndex[indexes.length];
+    for (int i = 0; i < indexes.length; ++i) {
+      resolved[i] = resolve(schema, indexes[i]);
+    }
+    return resolved;
+  }
+
+  /**
+   * @return the index resolved on the schema fields, or null if the schema does not have all the index fields
+   */
+  static RocksEntityIndex resolve(final Schema schema, final Index index) {
+    final int[] fields = fieldIndexes(schema, index.fieldNames());
+    if (fields == null) return null;
+
+    final BitSet values = new BitSet(schema.fieldsCount());
+    if (index.isCovering()) {
+      final int[] includes = fieldIndexes(schema, index.includeNames());
+      if (includes == null) return null;
+      for (final int field: fields) values.set(field);
+      for (final int field: includes) values.set(field);
+      // the key fields are in the row key
+      for (final int field: schema.keys()) values.clear(field);
+    }
+    return new RocksEntityIndex(index, fields, values.stream().toArray());
+  }
+
+  private static int[] fieldIndexes(final Schema schema, final String[] names) {
+    final int[] indexes = new int[names.length];
+    for (int i = 0; i < names.length; ++i) {
+      indexes[i] = schema.fieldByName(names[i]);
+      if (indexes[i] < 0) return null;
+    }
+    return indexes;
+  }
+
+  String name() {
+    return index.name();
+  }
+
+  Index index() {
+    return index;
+  }
+
+  boolean isCovering() {
+    return index.isCovering();
+  }
+
+  /**
+   * @return the field indexes of the index fields, in the index order
+   */
+  int[] fields() {
+    return fields;
+  }
+
+  /**
+   * @return the fields stored in the value of the entries, empty if the index is not covering
+   */
+  int[] valueFields() {
+    return valueFields;
+  }
+
+  /**
+   * @return true if the entries contain all the specified fields (the key fields are always available)
+   */
+  boolean covers(final Schema schema, final int[] fieldIndexes) {
+    if (!isCovering()) return false;
+    for (final int field: fieldIndexes) {
+      if (schema.isKey(field) < 0 && Arrays.binarySearch(valueFields, field) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // ================================================================================
+  //  Key related
+  // ================================================================================
+  byte[] newKey(final Schema schema, final IntFunction<Object> values, final byte[] rowKey) {
+    final RowKeyBuilder key = RowKey.newKeyBuilder().add(index.name());
+    for (int i = 0; i < fields.length; ++i) {
+      final Object value = values.apply(fields[i]);
+      if (value == null) {
+        key.add(NULL_COMPONENT);
+      } else {
+        RocksEntityTable.addKeyValue(key, schema, fields[i], value);
+      }
+    }
+    return key.add(rowKey).drain();
+  }
+
+  /**
+   * @return the row key of the index entry
+   */
+  static byte[] rowKey(final byte[] indexKey) {
+    return RowKey.lastKeyComponent(indexKey).buffer();
+  }
+
+  private static byte[] prefix(final String name) {
+    return RowKey.newKeyBuilder().add(name).addKeySeparator().drain();
+  }
+
+  /**
+   * @return the range of all the entries of the index
+   */
+  static KeyRange entriesRange(final String name) {
+    return KeyRange.prefix(prefix(name));
+  }
+
+  /**
+   * @return the range of the index keys, from the index-relative range planned by the query
+   * @see tech.dnaco.storage.query.Query#indexRanges(int[])
+   */
+  KeyRange toIndexRange(final KeyRange range) {
+    // the relative keys are built from the first component, the separator is in the prefix
+    final byte[] startKey = range.startKey() != null ? BytesUtil.concat(prefix, range.startKey()) : prefix;
+    final byte[] endKey = range.endKey() != null ? BytesUtil.concat(prefix, range.endKey()) : KeyRange.prefix(prefix).endKey();
+    return new KeyRange(startKey, endKey);
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.rocksdb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.bytes.BytesUtil;
+import tech.dnaco.bytes.encoding.RowKey;
+import tech.dnaco.bytes.encoding.VarInt;
+import tech.dnaco.collections.LongValue;
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.logging.Logger;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.Schema.Index;
+import tech.dnaco.storage.format.SchemaFormat;
+
+/**
+ * Embedded entity store on top of RocksDB.
+ * <p>Each table has its own column family, with the rows keyed by the
+ * {@link RowKey} of the schema key fields. Every version of a table schema
+ * is kept in the default column family, so the rows are never rewritten
+ * when the schema changes: they are converted on read, see {@link RocksEntityTable}.
+ * <p>The secondary indexes of a table are in a second column family, named as the table
+ * with the {@link #INDEX_FAMILY_SUFFIX}, see {@link RocksEntityIndex}.
+ */
+public final class RocksEntityStore implements Closeable {
+  static {
+    RocksDB.loadLibrary();
+  }
+
+  private static final byte[] SCHEMA_KEY = "schema".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] INDEX_KEY = "index".getBytes(StandardCharsets.UTF_8);
+  private static final String INDEX_FAMILY_SUFFIX = ":index";
+  private static final long BLOCK_CACHE_SIZE = 64L << 20;
+  private static final int BLOOM_BITS_PER_KEY = 10;
+
+  private final ConcurrentHashMap<String, RocksEntityTable> tables = new ConcurrentHashMap<>();
+  private final ColumnFamilyOptions familyOptions;
+  private final ColumnFamilyHandle metaFamily;
+  private final WriteOptions writeOptions;
+  private final DBOptions dbOptions;
+  private final LRUCache blockCache;
+  private final BloomFilter bloomFilter;
+  private final RocksDB db;
+
+  private RocksEntityStore(final RocksDB db, final DBOptions dbOptions, final ColumnFamilyOptions familyOptions,
+      final LRUCache blockCache, final BloomFilter bloomFilter, final ColumnFamilyHandle metaFamily) {
+    this.db = db;
+    this.dbOptions = dbOptions;
+    this.familyOptions = familyOptions;
+    this.blockCache = blockCache;
+    this.bloomFilter = bloomFilter;
+    this.metaFamily = metaFamily;
+    this.writeOptions = new WriteOptions();
+  }
+
+  public static RocksEntityStore open(final File path) throws RocksDBException {
+    final LRUCache blockCache = new LRUCache(BLOCK_CACHE_SIZE);
+    final BloomFilter bloomFilter = new BloomFilter(BLOOM_BITS_PER_KEY);
+    final ColumnFamilyOptions familyOptions = new ColumnFamilyOptions()
+      .setCompressionType(CompressionType.LZ4_COMPRESSION)
+      .setTableFormatConfig(new BlockBasedTableConfig()
+        .setBlockCache(blockCache)
+        .setFilterPolicy(bloomFilter)
+        .setWholeKeyFiltering(true));
+    final DBOptions dbOptions = new DBOptions()
+      .setCreateIfMissing(true)
+      .setCreateMissingColumnFamilies(true);
+
+    path.mkdirs();
+    final List<byte[]> familyNames;
+    try (Options options = new Options()) {
+      familyNames = RocksDB.listColumnFamilies(options, path.getAbsolutePath());
+    }
+
+    final ArrayList<ColumnFamilyDescriptor> descriptors = new ArrayList<>(familyNames.size() + 1);
+    descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, familyOptions));
+    for (final byte[] name: familyNames) {
+      if (!Arrays.equals(name, RocksDB.DEFAULT_COLUMN_FAMILY)) {
+        descriptors.add(new ColumnFamilyDescriptor(name, familyOptions));
+      }
+    }
+
+    final ArrayList<ColumnFamilyHandle> handles = new ArrayList<>(descriptors.size());
+    final RocksDB db = RocksDB.open(dbOptions, path.getAbsolutePath(), descriptors, handles);
+    final RocksEntityStore store = new RocksEntityStore(db, dbOptions, familyOptions, blockCache, bloomFilter, handles.get(0));
+    final HashMap<String, ColumnFamilyHandle> indexFamilies = new HashMap<>();
+    for (int i = 1; i < handles.size(); ++i) {
+      final String name = new String(descriptors.get(i).getName(), StandardCharsets.UTF_8);
+      if (name.endsWith(INDEX_FAMILY_SUFFIX)) {
+        indexFamilies.put(name.substring(0, name.length() - INDEX_FAMILY_SUFFIX.length()), handles.get(i));
+      }
+    }
+    for (int i = 1; i < handles.size(); ++i) {
+      final String name = new String(descriptors.get(i).getName(), StandardCharsets.UTF_8);
+      if (name.endsWith(INDEX_FAMILY_SUFFIX)) continue;
+
+      final List<Schema> schemas = store.loadSchemas(name);
+      if (schemas.isEmpty()) {
+        Logger.warn("column family {} has no schema, ignoring it", name);
+        handles.get(i).close();
+        continue;
+      }
+      store.tables.put(name, new RocksEntityTable(store, name, handles.get(i), indexFamilies.remove(name), schemas));
+    }
+    for (final Map.Entry<String, ColumnFamilyHandle> entry: indexFamilies.entrySet()) {
+      Logger.warn("index column family of {} has no table, ignoring it", entry.getKey());
+      entry.getValue().close();
+    }
+    Logger.debug("opened entity store {}: {} tables", path, store.tables.size());
+    return store;
+  }
+
+  @Override
+  public void close() {
+    for (final RocksEntityTable table: tables.values()) {
+      table.family().close();
+      if (table.indexFamily() != null) table.indexFamily().close();
+    }
+    tables.clear();
+    metaFamily.close();
+    writeOptions.close();
+    db.close();
+    dbOptions.close();
+    familyOptions.close();
+    bloomFilter.close();
+    blockCache.close();
+  }
+
+  // ================================================================================
+  //  Tables related
+  // ================================================================================
+  public Set<String> getTableNames() {
+    return tables.keySet();
+  }
+
+  public RocksEntityTable getTable(final String name) {
+    return tables.get(name);
+  }
+
+  public synchronized RocksEntityTable createTable(final Schema schema) throws RocksDBException {
+    final String name = schema.getName();
+    if (name == null) {
+      throw new IllegalArgumentException("expected a schema with a name");
+    }
+    if (name.endsWith(INDEX_FAMILY_SUFFIX)) {
+      // on open the family would be taken as the index family of another table
+      throw new IllegalArgumentException("invalid table name " + name + ", the " + INDEX_FAMILY_SUFFIX + " suffix is reserved");
+    }
+    if (tables.containsKey(name)) {
+      throw new IllegalArgumentException("table " + name + " already exists");
+    }
+    if (!schema.hasKey()) {
+      throw new IllegalArgumentException("table " + name + " has no key fields");
+    }
+    RocksEntityTable.validateIndexes(schema);
+
+    final ColumnFamilyHandle family = db.createColumnFamily(new ColumnFamilyDescriptor(name.getBytes(StandardCharsets.UTF_8), familyOptions));
+    final ColumnFamilyHandle indexFamily = schema.hasIndexes() ? createIndexFamily(name) : null;
+    putSchema(name, 0, schema);
+    final RocksEntityTable table = new RocksEntityTable(this, name, family, indexFamily, List.of(schema));
+    tables.put(name, table);
+    return table;
+  }
+
+  public synchronized boolean dropTable(final String name) throws RocksDBException {
+    final RocksEntityTable table = tables.remove(name);
+    if (table == null) return false;
+
+    db.dropColumnFamily(table.family());
+    table.family().close();
+    if (table.indexFamily() != null) {
+      db.dropColumnFamily(table.indexFamily());
+      table.indexFamily().close();
+    }
+
+    // the prefix ends with the key separator, the end key is always defined
+    final byte[] prefix = schemaKeyPrefix(name);
+    db.deleteRange(metaFamily, prefix, prefixEndKey(prefix));
+    final byte[] indexPrefix = indexKeyPrefix(name);
+    db.deleteRange(metaFamily, indexPrefix, prefixEndKey(indexPrefix));
+    return true;
+  }
+
+  // ================================================================================
+  //  Package-private helpers used by the tables
+  // ================================================================================
+  RocksDB db() {
+    return db;
+  }
+
+  void write(final WriteBatch batch) throws RocksDBException {
+    db.write(writeOptions, batch);
+  }
+
+  ColumnFamilyHandle createIndexFamily(final String table) throws RocksDBException {
+    final byte[] familyName = (table + INDEX_FAMILY_SUFFIX).getBytes(StandardCharsets.UTF_8);
+    return db.createColumnFamily(new ColumnFamilyDescriptor(familyName, familyOptions));
+  }
+
+  static byte[] prefixEndKey(final byte[] prefix) {
+    try {
+      return BytesUtil.prefixEndKey(prefix);
+    } catch (final Exception e) {
+      // the prefix is all 0xff, every key after it has the prefix
+      return null;
+    }
+  }
+
+  // ================================================================================
+  //  Schema metadata related
+  // ================================================================================
+  // | maxFieldId | keys count | key names... | labels count | labels... | compact schema |
+  void putSchema(final String table, final int version, final Schema schema) throws RocksDBException {
+    final PagedByteArray buffer = new PagedByteArray(1024);
+    VarInt.write(buffer, schema.maxFieldId());
+    VarInt.write(buffer, schema.keys().length);
+    for (final int keyIndex: schema.keys()) {
+      buffer.addBlob(schema.getFieldName(keyIndex).getBytes(StandardCharsets.UTF_8));
+    }
+    VarInt.write(buffer, schema.fieldsCount());
+    for (final String label: schema.fieldLabels()) {
+      buffer.addBlob((label != null ? label : "").getBytes(StandardCharsets.UTF_8));
+    }
+    SchemaFormat.writeCompact(schema, buffer);
+    db.put(metaFamily, writeOptions, schemaKey(table, version), buffer.toByteArray());
+    if (schema.hasIndexes()) {
+      db.put(metaFamily, writeOptions, indexKey(table, version), encodeIndexes(schema.indexes()));
+    }
+  }
+
+  // | indexes count | (name | fields count | field names... | includes count | include names...)... |
+  private static byte[] encodeIndexes(final Index[] indexes) {
+    final PagedByteArray buffer = new PagedByteArray(256);
+    VarInt.write(buffer, indexes.length);
+    for (final Index index: indexes) {
+      buffer.addBlob(index.name().getBytes(StandardCharsets.UTF_8));
+      writeStrings(buffer, index.fieldNames());
+      writeStrings(buffer, index.includeNames());
+    }
+    return buffer.toByteArray();
+  }
+
+  private static void writeStrings(final PagedByteArray buffer, final String[] items) {
+    VarInt.write(buffer, items.length);
+    for (final String item: items) {
+      buffer.addBlob(item.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private void loadIndexes(final String table, final int version, final Schema schema) throws RocksDBException {
+    final byte[] value = db.get(metaFamily, indexKey(table, version));
+    if (value == null) return;
+
+    final ByteArraySlice block = new ByteArraySlice(value);
+    final LongValue result = new LongValue();
+    int offset = VarInt.read(block, 0, result);
+    for (int i = 0, n = result.intValue(); i < n; ++i) {
+      final String[] name = new String[1];
+      offset = readStrings(block, offset, name);
+
+      offset += VarInt.read(block, offset, result);
+      final String[] fieldNames = new String[result.intValue()];
+      offset = readStrings(block, offset, fieldNames);
+
+      offset += VarInt.read(block, offset, result);
+      final String[] includeNames = new String[result.intValue()];
+      offset = readStrings(block, offset, includeNames);
+
+      schema.addIndex(name[0], fieldNames, includeNames);
+    }
+  }
+
+  private List<Schema> loadSchemas(final String table) throws RocksDBException {
+    final ArrayList<Schema> schemas = new ArrayList<>();
+    final byte[] prefix = schemaKeyPrefix(table);
+    try (ReadOptions options = new ReadOptions(); RocksIterator it = db.newIterator(metaFamily, options)) {
+      for (it.seek(prefix); it.isValid() && BytesUtil.hasPrefix(it.key(), prefix); it.next()) {
+        final int version = new RowKey(it.key()).getInt32(2);
+        if (version != schemas.size()) {
+          throw new IllegalStateException("table " + table + " expected schema version " + schemas.size() + " got " + version);
+        }
+        final Schema schema = decodeSchema(table, new ByteArraySlice(it.value()));
+        loadIndexes(table, version, schema);
+        schemas.add(schema);
+      }
+      it.status();
+    }
+    return schemas;
+  }
+
+  private static Schema decodeSchema(final String table, final ByteArraySlice block) {
+    final LongValue result = new LongValue();
+    int offset = 0;
+
+    offset += VarInt.read(block, offset, result);
+    final int maxFieldId = result.intValue();
+
+    offset += VarInt.read(block, offset, result);
+    final String[] keys = new String[result.intValue()];
+    offset = readStrings(block, offset, keys);
+
+    offset += VarInt.read(block, offset, result);
+    final String[] labels = new String[result.intValue()];
+    offset = readStrings(block, offset, labels);
+
+    final Schema compact = SchemaFormat.readCompact(block, offset);
+    final Schema schema = new Schema(table, null, compact.fieldIds(), maxFieldId,
+      compact.fieldNames(), compact.fieldTypes(), labels);
+    schema.setKeys(keys);
+    return schema;
+  }
+
+  private static int readStrings(final ByteArraySlice block, int offset, final String[] items) {
+    final LongValue result = new LongValue();
+    for (int i = 0; i < items.length; ++i) {
+      offset += VarInt.read(block, offset, result);
+      final int length = result.intValue();
+      items[i] = ByteArraySlice.newString(block, offset, length, StandardCharsets.UTF_8);
+      offset += length;
+    }
+    return offset;
+  }
+
+  private static byte[] schemaKeyPrefix(final String table) {
+    return RowKey.newKeyBuilder().add(SCHEMA_KEY).add(table).addKeySeparator().drain();
+  }
+
+  private static byte[] schemaKey(final String table, final int version) {
+    return RowKey.newKeyBuilder().add(SCHEMA_KEY).add(table).addInt32(version).drain();
+  }
+
+  private static byte[] indexKeyPrefix(final String table) {
+    return RowKey.newKeyBuilder().add(INDEX_KEY).add(table).addKeySeparator().drain();
+  }
+
+  private static byte[] indexKey(final String table, final int version) {
+    return RowKey.newKeyBuilder().add(INDEX_KEY).add(table).addInt32(version).drain();
+  }
+}
@@ -0,0 +1,844 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.rocksdb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.Snapshot;
+import org.rocksdb.WriteBatch;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.bytes.encoding.RowKey;
+import tech.dnaco.bytes.encoding.RowKey.RowKeyBuilder;
+import tech.dnaco.bytes.encoding.VarInt;
+import tech.dnaco.collections.LongValue;
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.data.json.JsonArray;
+import tech.dnaco.data.json.JsonObject;
+import tech.dnaco.geo.LatLong;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.EntityRow;
+import tech.dnaco.storage.EntityRowConverter;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.Schema.Index;
+import tech.dnaco.storage.format.FieldFormat;
+import tech.dnaco.storage.format.FieldFormatReader;
+import tech.dnaco.storage.format.FieldFormatWriter;
+import tech.dnaco.storage.query.KeyRange;
+import tech.dnaco.storage.query.Query;
+
+/**
+ * Table of a {@link RocksEntityStore}.
+ * <p>The key of a row is the {@link RowKey} of the schema key fields, the value is
+ * | schema version (varint) | field format version (1b) | fields (key fields excluded) |.
+ * A row written with an older schema is converted to the current one on read,
+ * mapping the fields by name with an {@link EntityRowConverter}.
+ * <p>The secondary indexes of the current schema are updated in the same write batch of the rows,
+ * and used by the scans when the query has no predicates on the key, see {@link RocksEntityIndex}.
+ * The index entries are computed on commit, holding the locks of the rows from the read of the
+ * committed rows to the write: concurrent batches writing the same rows are serialized.
+ */
+public final class RocksEntityTable {
+  private static final byte[][] NO_INDEX_KEYS = new byte[0][];
+  private static final byte[] EMPTY_INDEX_VALUE = new byte[0];
+  private static final int INDEX_BUILD_BATCH_SIZE = 1024;
+  private static final int ROW_LOCK_STRIPES = 64;
+
+  // the commits of batches with index entries hold the locks of their rows (see Batch.commit())
+  private final ReentrantLock[] rowLocks = new ReentrantLock[ROW_LOCK_STRIPES];
+  // the commits hold the read lock, the schema updates the write lock while building the indexes
+  private final ReentrantReadWriteLock schemaLock = new ReentrantReadWriteLock();
+
+  private final ColumnFamilyHandle family;
+  private final RocksEntityStore store;
+  private final String name;
+
+  private volatile ColumnFamilyHandle indexFamily;
+  private volatile Schema[] schemas;
+
+  RocksEntityTable(final RocksEntityStore store, final String name,
+      final ColumnFamilyHandle family, final ColumnFamilyHandle indexFamily, final List<Schema> schemas) {
+    this.store = store;
+    this.name = name;
+    this.family = family;
+    this.indexFamily = indexFamily;
+    this.schemas = schemas.toArray(new Schema[0]);
+    for (int i = 0; i < rowLocks.length; ++i) {
+      rowLocks[i] = new ReentrantLock();
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Schema getSchema() {
+    final Schema[] versions = schemas;
+    return versions[versions.length - 1];
+  }
+
+  public int getSchemaVersion() {
+    return schemas.length - 1;
+  }
+
+  ColumnFamilyHandle family() {
+    return family;
+  }
+
+  ColumnFamilyHandle indexFamily() {
+    return indexFamily;
+  }
+
+  /**
+   * Add a new version of the schema. The existing rows are not rewritten,
+   * they are converted to the new schema on read.
+   * The entries of the removed indexes are deleted, and the new indexes are built
+   * from the existing rows. The commits wait for the end of the update, and the batches
+   * created before it compute the index entries of the new schema on commit.
+   * The schema is stored as is, it must not be modified after this call.
+   * @return false if the schema is the same as the current one
+   */
+  public synchronized boolean updateSchema(final Schema schema) throws RocksDBException {
+    final Schema current = getSchema();
+    if (!Arrays.equals(keyNames(current), keyNames(schema))) {
+      throw new IllegalArgumentException("table " + name + " key fields cannot change: "
+        + Arrays.toString(keyNames(current)) + " -> " + Arrays.toString(keyNames(schema)));
+    }
+    if (current.equals(schema) && Arrays.equals(current.indexes(), schema.indexes())) return false;
+    validateIndexes(schema);
+
+    schemaLock.writeLock().lock();
+    try {
+      if (schema.hasIndexes() && indexFamily == null) {
+        indexFamily = store.createIndexFamily(name);
+      }
+
+      final Schema[] versions = Arrays.copyOf(schemas, schemas.length + 1);
+      versions[versions.length - 1] = schema;
+      store.putSchema(name, versions.length - 1, schema);
+      this.schemas = versions;
+
+      updateIndexes(current, versions);
+    } finally {
+      schemaLock.writeLock().unlock();
+    }
+    return true;
+  }
+
+  static void validateIndexes(final Schema schema) {
+    for (final Index index: schema.indexes()) {
+      if (RocksEntityIndex.resolve(schema, index) == null) {
+        throw new IllegalArgumentException("index " + index.name() + " references fields not in the schema: " + index);
+      }
+    }
+  }
+
+  private static String[] keyNames(final Schema schema) {
+    final int[] keys = schema.keys();
+    final String[] names = new String[keys.length];
+    for (int i = 0; i < keys.length; ++i) {
+      names[i] = schema.getFieldName(keys[i]);
+    }
+    return names;
+  }
+
+  // ================================================================================
+  //  Key related
+  // ================================================================================
+  /**
+   * @return the row key with the specified values of the key fields, in the schema key order
+   */
+  public byte[] newKey(final Object... keyValues) {
+    final Schema schema = getSchema();
+    if (keyValues.length != schema.keys().length) {
+      throw new IllegalArgumentException("expected " + schema.keys().length + " key values, got " + keyValues.length);
+    }
+    return newKeyPrefix(schema, keyValues).drain();
+  }
+
+  /**
+   * @return the prefix of the rows with the specified values of the first key fields
+   */
+  public byte[] newKeyPrefix(final Object... keyValues) {
+    final Schema schema = getSchema();
+    final RowKeyBuilder key = newKeyPrefix(schema, keyValues);
+    if (keyValues.length < schema.keys().length) {
+      // match the whole key component, 'foo' is not a prefix of 'foobar'
+      key.addKeySeparator();
+    }
+    return key.drain();
+  }
+
+  private static RowKeyBuilder newKeyPrefix(final Schema schema, final Object[] keyValues) {
+    final int[] keys = schema.keys();
+    if (keyValues.length > keys.length) {
+      throw new IllegalArgumentException("expected at most " + keys.length + " key values, got " + keyValues.length);
+    }
+
+    final RowKeyBuilder key = RowKey.newKeyBuilder();
+    for (int i = 0; i < keyValues.length; ++i) {
+      addKeyValue(key, schema, keys[i], keyValues[i]);
+    }
+    return key;
+  }
+
+  static void addKeyValue(final RowKeyBuilder key, final Schema schema, final int fieldIndex, final Object value) {
+    if (value == null) {
+      throw new IllegalArgumentException("missing value for key field " + schema.getFieldName(fieldIndex));
+    }
+
+    switch (schema.getFieldType(fieldIndex)) {
+      case INT -> key.addInt(((Number) value).longValue());
+      case BOOL -> key.addBool((Boolean) value);
+      case BYTES -> {
+        if (value instanceof final ByteArraySlice slice) {
+          key.add(slice);
+        } else {
+          key.add((byte[]) value);
+        }
+      }
+      case STRING -> key.add(String.valueOf(value));
+      case UTC_TIMESTAMP -> key.addInt48(((Number) value).longValue());
+      default -> throw new IllegalArgumentException("unsupported key type " + schema.getFieldType(fieldIndex)
+        + " for field " + schema.getFieldName(fieldIndex));
+    }
+  }
+
+  // ================================================================================
+  //  Read related
+  // ================================================================================
+  /**
+   * @return the row with the specified key, or null if the row does not exist
+   */
+  public EntityRow get(final byte[] key) throws RocksDBException {
+    final byte[] value = store.db().get(family, key);
+    if (value == null) return null;
+
+    final RowDecoder decoder = new RowDecoder(schemas, null);
+    return decoder.decode(key, value) ? decoder.row() : null;
+  }
+
+  /**
+   * Scan the rows with the specified key prefix.
+   * @see #scan(byte[], byte[], Query, EntityRowConsumer)
+   */
+  public long scanPrefix(final byte[] prefix, final Query query, final EntityRowConsumer consumer)
+      throws RocksDBException {
+    return scan(prefix, RocksEntityStore.prefixEndKey(prefix), query, consumer);
+  }
+
+  /**
+   * Scan the rows matching the query, only the key ranges of the query are read.
+   * If the query has no predicates on the key fields, a secondary index with
+   * predicates on its fields is used: the rows are returned in the index order.
+   * @see Query#keyRanges()
+   * @see Query#indexRanges(int[])
+   */
+  public long scan(final Query query, final EntityRowConsumer consumer) throws RocksDBException {
+    return scan(null, null, query, consumer);
+  }
+
+  /**
+   * Scan the rows matching the query, as {@link #scan(Query, EntityRowConsumer)}.
+   * The consumer reads only the key fields and the projection fields: if the selected
+   * index is covering the query and projection fields, the rows are read from the index
+   * only, and the other fields of the rows are null.
+   */
+  public long scan(final Query query, final String[] projection, final EntityRowConsumer consumer)
+      throws RocksDBException {
+    if (!query.isFullScan()) {
+      return scan(null, null, query, consumer);
+    }
+
+    final Schema schema = query.row().schema();
+    final int[] projectionFields = new int[projection.length];
+    for (int i = 0; i < projection.length; ++i) {
+      projectionFields[i] = schema.fieldByName(projection[i]);
+      if (projectionFields[i] < 0) {
+        throw new IllegalArgumentException("projection field " + projection[i] + " is not in the schema");
+      }
+    }
+
+    final RowDecoder decoder = new RowDecoder(schemas, query);
+    final IndexScan indexScan = planIndexScan(query, projectionFields);
+    if (indexScan == null) {
+      scanRange(decoder, KeyRange.FULL, consumer);
+    } else {
+      scanIndex(decoder, indexScan, consumer);
+    }
+    return decoder.matchCount();
+  }
+
+  /**
+   * Scan the rows in the range [startKey, endKey).
+   * The rows are passed to the consumer only if they match the query.
+   * The query must be built on one of the schemas of this table, the rows are converted to that schema.
+   * Only the part of the range inside the key ranges of the query is read.
+   * @param startKey the first key of the range, or null to start from the first row
+   * @param endKey the end of the range (excluded), or null to scan until the last row
+   * @param query the filter to apply, or null to get all the rows
+   * @return the number of rows passed to the consumer
+   */
+  public long scan(final byte[] startKey, final byte[] endKey, final Query query, final EntityRowConsumer consumer)
+      throws RocksDBException {
+    final RowDecoder decoder = new RowDecoder(schemas, query);
+    final KeyRange range = new KeyRange(startKey, endKey);
+    if (query == null) {
+      scanRange(decoder, range, consumer);
+      return decoder.matchCount();
+    }
+
+    if (range.isFullScan() && query.isFullScan()) {
+      final IndexScan indexScan = planIndexScan(query, null);
+      if (indexScan != null) {
+        scanIndex(decoder, indexScan, consumer);
+        return decoder.matchCount();
+      }
+    }
+
+    for (final KeyRange keyRange: query.keyRanges()) {
+      final KeyRange scanRange = keyRange.intersect(range);
+      if (scanRange != null && !scanRange(decoder, scanRange, consumer)) {
+        break;
+      }
+    }
+    return decoder.matchCount();
+  }
+
+  /**
+   * @return false if the consumer stopped the scan
+   */
+  private boolean scanRange(final RowDecoder decoder, final KeyRange range, final EntityRowConsumer consumer)
+      throws RocksDBException {
+    return iterate(family, range, (key, value) -> !decoder.decode(key, value) || consumer.accept(decoder.row()));
+  }
+
+  /**
+   * @return false if the visitor stopped the iteration
+   */
+  private boolean iterate(final ColumnFamilyHandle iterFamily, final KeyRange range, final EntryVisitor visitor)
+      throws RocksDBException {
+    return iterate(iterFamily, range, null, visitor);
+  }
+
+  /**
+   * @param snapshot the snapshot to read, or null to read the latest state
+   * @return false if the visitor stopped the iteration
+   */
+  private boolean iterate(final ColumnFamilyHandle iterFamily, final KeyRange range, final Snapshot snapshot,
+      final EntryVisitor visitor) throws RocksDBException {
+    try (ReadOptions options = new ReadOptions(); Slice upperBound = range.endKey() != null ? new Slice(range.endKey()) : null) {
+      if (upperBound != null) options.setIterateUpperBound(upperBound);
+      if (snapshot != null) options.setSnapshot(snapshot);
+
+      try (RocksIterator it = store.db().newIterator(iterFamily, options)) {
+        if (range.startKey() != null) {
+          it.seek(range.startKey());
+        } else {
+          it.seekToFirst();
+        }
+
+        for (; it.isValid(); it.next()) {
+          if (!visitor.visit(it.key(), it.value())) {
+            return false;
+          }
+        }
+        it.status();
+      }
+    }
+    return true;
+  }
+
+  @FunctionalInterface
+  private interface EntryVisitor {
+    boolean visit(byte[] key, byte[] value) throws RocksDBException;
+  }
+
+  // ================================================================================
+  //  Secondary index scan related
+  // ================================================================================
+  private record IndexScan(RocksEntityIndex index, List<KeyRange> ranges, boolean covering) {}
+
+  /**
+   * Select the index to use for the query: the first index (in the schema order)
+   * with predicates on its fields, preferring the covering ones if there is a projection.
+   * @return the index scan, or null if there are no useful indexes
+   */
+  private IndexScan planIndexScan(final Query query, final int[] projection) {
+    final Schema current = getSchema();
+    if (!current.hasIndexes()) return null;
+
+    final Schema schema = query.row().schema();
+    IndexScan selected = null;
+    for (final Index index: current.indexes()) {
+      // the query may use an older schema, the index fields must be there with the same types
+      final RocksEntityIndex queryIndex = RocksEntityIndex.resolve(schema, index);
+      if (queryIndex == null || !sameFieldTypes(current, schema, queryIndex.fields())) continue;
+
+      final List<KeyRange> ranges = query.indexRanges(queryIndex.fields());
+      if (ranges.size() == 1 && ranges.get(0).isFullScan()) continue;
+
+      final boolean covering = projection != null
+        && queryIndex.covers(schema, query.fieldIndexes())
+        && queryIndex.covers(schema, projection);
+      if (covering) return new IndexScan(queryIndex, ranges, true);
+      if (selected == null) selected = new IndexScan(queryIndex, ranges, false);
+    }
+    return selected;
+  }
+
+  private static boolean sameFieldTypes(final Schema current, final Schema schema, final int[] fields) {
+    for (final int field: fields) {
+      final int currentField = current.fieldByName(schema.getFieldName(field));
+      if (currentField < 0 || current.getFieldType(currentField) != schema.getFieldType(field)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void scanIndex(final RowDecoder decoder, final IndexScan indexScan, final EntityRowConsumer consumer)
+      throws RocksDBException {
+    // the index entries and the rows are read from the same snapshot. the index entries are
+    // written with the rows, holding the row locks: a covering entry is the copy of the row in the snapshot.
+    final ColumnFamilyHandle entriesFamily = indexFamily;
+    final Snapshot snapshot = store.db().getSnapshot();
+    try (ReadOptions rowOptions = new ReadOptions()) {
+      rowOptions.setSnapshot(snapshot);
+      for (final KeyRange range: indexScan.ranges()) {
+        final boolean more = iterate(entriesFamily, indexScan.index().toIndexRange(range), snapshot, (key, value) -> {
+          final byte[] rowKey = RocksEntityIndex.rowKey(key);
+          final byte[] rowValue = indexScan.covering() ? value : store.db().get(family, rowOptions, rowKey);
+          // the filter is applied on the row, the index ranges are a superset of the matching rows
+          return rowValue == null || !decoder.decode(rowKey, rowValue) || consumer.accept(decoder.row());
+        });
+        if (!more) return;
+      }
+    } finally {
+      store.db().releaseSnapshot(snapshot);
+    }
+  }
+
+  /**
+   * Called holding the schema write lock, no commits are running.
+   */
+  private void updateIndexes(final Schema oldSchema, final Schema[] versions) throws RocksDBException {
+    final Schema newSchema = versions[versions.length - 1];
+    for (final Index index: oldSchema.indexes()) {
+      if (!index.equals(newSchema.getIndex(index.name()))) {
+        final KeyRange range = RocksEntityIndex.entriesRange(index.name());
+        store.db().deleteRange(indexFamily, range.startKey(), range.endKey());
+      }
+    }
+
+    final ArrayList<RocksEntityIndex> newIndexes = new ArrayList<>();
+    for (final Index index: newSchema.indexes()) {
+      if (!index.equals(oldSchema.getIndex(index.name()))) {
+        newIndexes.add(RocksEntityIndex.resolve(newSchema, index));
+      }
+    }
+    if (newIndexes.isEmpty()) return;
+
+    final IndexEntriesWriter entries = new IndexEntriesWriter(versions, newIndexes.toArray(new RocksEntityIndex[0]));
+    try (WriteBatch batch = new WriteBatch()) {
+      iterate(family, KeyRange.FULL, (key, value) -> {
+        entries.put(batch, key, value);
+        if (batch.count() >= INDEX_BUILD_BATCH_SIZE) {
+          store.write(batch);
+          batch.clear();
+        }
+        return true;
+      });
+      store.write(batch);
+    }
+  }
+
+  /**
+   * Compute the index entries of the rows, converted to the current schema.
+   */
+  private final class IndexEntriesWriter {
+    private final PagedByteArray buffer = new PagedByteArray(4096);
+    private final RocksEntityIndex[] indexes;
+    private final ColumnFamilyHandle entriesFamily;
+    private final FieldFormatWriter writer;
+    private final RowDecoder decoder;
+    private final Schema schema;
+    private final int version;
+
+    private IndexEntriesWriter(final Schema[] versions, final RocksEntityIndex[] indexes) {
+      this.version = versions.length - 1;
+      this.schema = versions[version];
+      this.indexes = indexes;
+      this.entriesFamily = indexFamily;
+      this.writer = FieldFormat.newWriter(schema, buffer);
+      this.decoder = new RowDecoder(versions, null);
+    }
+
+    /**
+     * @return the keys of the index entries added
+     */
+    private byte[][] put(final WriteBatch batch, final byte[] rowKey, final byte[] rowValue) throws RocksDBException {
+      decoder.decode(rowKey, rowValue);
+      final EntityRow row = decoder.row();
+      final byte[][] keys = new byte[indexes.length][];
+      for (int i = 0; i < indexes.length; ++i) {
+        final RocksEntityIndex index = indexes[i];
+        keys[i] = index.newKey(schema, row::get, rowKey);
+        final byte[] value = index.isCovering() ? encodeValue(buffer, writer, schema, version, row::get, index.valueFields()) : EMPTY_INDEX_VALUE;
+        batch.put(entriesFamily, keys[i], value);
+      }
+      return keys;
+    }
+
+    /**
+     * Replace the index entries of the committed row with the ones of the new row.
+     * @param oldValue the committed row, or null if the row does not exist
+     * @param newValue the new row, or null if the row is deleted
+     */
+    private void update(final WriteBatch batch, final byte[] rowKey, final byte[] oldValue, final byte[] newValue)
+        throws RocksDBException {
+      final byte[][] oldKeys = keys(rowKey, oldValue);
+      final byte[][] newKeys = (newValue != null) ? put(batch, rowKey, newValue) : NO_INDEX_KEYS;
+      for (int i = 0; i < oldKeys.length; ++i) {
+        // the entry is replaced by the put
+        if (i < newKeys.length && Arrays.equals(oldKeys[i], newKeys[i])) continue;
+        batch.delete(entriesFamily, oldKeys[i]);
+      }
+    }
+
+    private byte[][] keys(final byte[] rowKey, final byte[] rowValue) {
+      if (rowValue == null) return NO_INDEX_KEYS;
+
+      decoder.decode(rowKey, rowValue);
+      final EntityRow row = decoder.row();
+      final byte[][] keys = new byte[indexes.length][];
+      for (int i = 0; i < indexes.length; ++i) {
+        keys[i] = indexes[i].newKey(schema, row::get, rowKey);
+      }
+      return keys;
+    }
+  }
+
+  @FunctionalInterface
+  public interface EntityRowConsumer {
+    /**
+     * @return false to stop the scan
+     */
+    boolean accept(EntityRow row);
+  }
+
+  /**
+   * Decode the rows to the target schema (the schema of the query or the current one).
+   * The decoder is stateful, and the row is only valid until the next decode.
+   */
+  private static final class RowDecoder {
+    private final LongValue varint = new LongValue();
+    private final FieldFormatReader[] readers;
+    private final EntityRowConverter[] converters;
+    private final Schema[] schemas;
+    private final Query query;
+    private final EntityRow row;
+    private final int targetVersion;
+
+    private PagedByteArray convertBuffer;
+    private FieldFormatWriter convertWriter;
+    private FieldFormatReader targetReader;
+    private long matchCount;
+
+    private RowDecoder(final Schema[] schemas, final Query query) {
+      this.schemas = schemas;
+      this.query = query;
+      this.row = query != null ? query.row() : new EntityRow(schemas[schemas.length - 1]);
+      this.targetVersion = versionOf(schemas, row.schema());
+      this.readers = new FieldFormatReader[schemas.length];
+      this.converters = new EntityRowConverter[schemas.length];
+    }
+
+    private static int versionOf(final Schema[] schemas, final Schema schema) {
+      for (int i = schemas.length - 1; i >= 0; --i) {
+        if (schemas[i] == schema) return i;
+      }
+      throw new IllegalArgumentException("the query schema is not a schema of the table: " + schema);
+    }
+
+    private EntityRow row() {
+      return row;
+    }
+
+    private long matchCount() {
+      return matchCount;
+    }
+
+    /**
+     * @return true if the row matches the query
+     */
+    private boolean decode(final byte[] key, final byte[] value) {
+      final int headerLength = VarInt.read(value, 0, value.length, varint);
+      final int version = varint.intValue();
+      final int formatVersion = value[headerLength] & 0xff;
+      final ByteArraySlice fields = new ByteArraySlice(value, headerLength + 1, value.length - headerLength - 1);
+
+      final FieldFormatReader reader;
+      if (version == targetVersion) {
+        reader = reader(version, formatVersion);
+        reader.load(fields);
+      } else if (version < schemas.length) {
+        reader = convert(version, formatVersion, fields);
+      } else {
+        throw new IllegalStateException("row written with schema version " + version
+          + " newer than the ones known " + (schemas.length - 1));
+      }
+
+      if (query != null) {
+        if (!query.process(key, reader)) return false;
+      } else {
+        row.load(key, reader);
+      }
+      matchCount++;
+      return true;
+    }
+
+    private FieldFormatReader reader(final int version, final int formatVersion) {
+      FieldFormatReader reader = readers[version];
+      if (reader == null || reader.getVersion() != formatVersion) {
+        reader = FieldFormat.newReader(schemas[version], formatVersion);
+        readers[version] = reader;
+      }
+      return reader;
+    }
+
+    private FieldFormatReader convert(final int version, final int formatVersion, final ByteArraySlice fields) {
+      final FieldFormatReader rowReader = reader(version, formatVersion);
+      rowReader.load(fields);
+
+      EntityRowConverter converter = converters[version];
+      if (converter == null) {
+        converter = new EntityRowConverter(schemas[version], schemas[targetVersion]);
+        converters[version] = converter;
+      }
+
+      if (convertBuffer == null) {
+        convertBuffer = new PagedByteArray(Math.max(256, fields.length() * 2));
+        convertWriter = FieldFormat.newWriter(schemas[targetVersion], convertBuffer);
+      }
+      convertBuffer.clear();
+      convertWriter.reset();
+      converter.convert(rowReader, convertWriter);
+      convertWriter.close();
+
+      if (targetReader == null) {
+        targetReader = FieldFormat.newReader(schemas[targetVersion], convertWriter.getVersion());
+      }
+      targetReader.load(new ByteArraySlice(convertBuffer.toByteArray()));
+      return targetReader;
+    }
+  }
+
+  // ================================================================================
+  //  Write related
+  // ================================================================================
+  public void put(final Map<String, ?> row) throws RocksDBException {
+    try (Batch batch = newBatch()) {
+      batch.put(row);
+      batch.commit();
+    }
+  }
+
+  public void delete(final byte[] key) throws RocksDBException {
+    try (Batch batch = newBatch()) {
+      batch.delete(key);
+      batch.commit();
+    }
+  }
+
+  /**
+   * @return a new batch of upserts/deletes, applied atomically on commit.
+   *         the batch uses the current schema, and it is not thread-safe.
+   *         The index entries are computed on commit, with the indexes of the schema at that time.
+   */
+  public Batch newBatch() {
+    return new Batch(schemas);
+  }
+
+  public final class Batch implements AutoCloseable {
+    private final PagedByteArray buffer = new PagedByteArray(4096);
+    // the last value written for each row, null if the row is deleted
+    private final HashMap<ByteBuffer, byte[]> rows = new HashMap<>();
+    private final FieldFormatWriter writer;
+    private final Schema schema;
+    private final int version;
+
+    private Batch(final Schema[] versions) {
+      this.version = versions.length - 1;
+      this.schema = versions[version];
+      this.writer = FieldFormat.newWriter(schema, buffer);
+    }
+
+    @Override
+    public void close() {
+      rows.clear();
+    }
+
+    public int size() {
+      return rows.size();
+    }
+
+    /**
+     * Insert or replace the row. The key is built from the values of the key fields.
+     * @return the key of the row
+     */
+    public byte[] put(final Map<String, ?> row) {
+      final int[] keys = schema.keys();
+      final RowKeyBuilder key = RowKey.newKeyBuilder();
+      for (int i = 0; i < keys.length; ++i) {
+        addKeyValue(key, schema, keys[i], row.get(schema.getFieldName(keys[i])));
+      }
+      final byte[] rowKey = key.drain();
+      final IntFunction<Object> values = fieldIndex -> row.get(schema.getFieldName(fieldIndex));
+      rows.put(ByteBuffer.wrap(rowKey), encodeValue(buffer, writer, schema, version, values, null));
+      return rowKey;
+    }
+
+    public void delete(final byte[] key) {
+      rows.put(ByteBuffer.wrap(key), null);
+    }
+
+    public void commit() throws RocksDBException {
+      if (rows.isEmpty()) return;
+
+      schemaLock.readLock().lock();
+      try {
+        final Schema[] versions = schemas;
+        final RocksEntityIndex[] indexes = RocksEntityIndex.resolve(versions[versions.length - 1]);
+        if (indexes.length == 0) {
+          write(null);
+        } else {
+          commitWithIndexes(versions, indexes);
+        }
+      } finally {
+        schemaLock.readLock().unlock();
+      }
+      rows.clear();
+    }
+
+    /**
+     * The locks of the rows are held from the read of the committed rows to the write,
+     * so the old index entries deleted are the ones of the row replaced.
+     * The locks are acquired in the stripe order, to avoid deadlocks between batches.
+     */
+    private void commitWithIndexes(final Schema[] versions, final RocksEntityIndex[] indexes) throws RocksDBException {
+      final boolean[] stripes = new boolean[rowLocks.length];
+      for (final ByteBuffer rowKey: rows.keySet()) {
+        stripes[rowLockStripe(rowKey.array())] = true;
+      }
+
+      int locked = 0;
+      try {
+        for (; locked < stripes.length; ++locked) {
+          if (stripes[locked]) rowLocks[locked].lock();
+        }
+        write(new IndexEntriesWriter(versions, indexes));
+      } finally {
+        for (int i = 0; i < locked; ++i) {
+          if (stripes[i]) rowLocks[i].unlock();
+        }
+      }
+    }
+
+    private void write(final IndexEntriesWriter indexEntries) throws RocksDBException {
+      try (WriteBatch batch = new WriteBatch()) {
+        for (final Map.Entry<ByteBuffer, byte[]> entry: rows.entrySet()) {
+          final byte[] rowKey = entry.getKey().array();
+          final byte[] rowValue = entry.getValue();
+          if (indexEntries != null) {
+            indexEntries.update(batch, rowKey, store.db().get(family, rowKey), rowValue);
+          }
+          if (rowValue != null) {
+            batch.put(family, rowKey, rowValue);
+          } else {
+            batch.delete(family, rowKey);
+          }
+        }
+        store.write(batch);
+      }
+    }
+  }
+
+  private static int rowLockStripe(final byte[] rowKey) {
+    return (Arrays.hashCode(rowKey) & 0x7fffffff) % ROW_LOCK_STRIPES;
+  }
+
+  /**
+   * | schema version (varint) | field format version (1b) | fields |
+   * @param fields the fields to write, or null to write all the fields except the keys
+   */
+  private static byte[] encodeValue(final PagedByteArray buffer, final FieldFormatWriter writer,
+      final Schema schema, final int version, final IntFunction<Object> values, final int[] fields) {
+    buffer.clear();
+    VarInt.write(buffer, version);
+    buffer.add(writer.getVersion());
+    writer.reset();
+    final int count = (fields != null) ? fields.length : schema.fieldsCount();
+    for (int f = 0; f < count; ++f) {
+      final int i = (fields != null) ? fields[f] : f;
+      if (schema.isKey(i) >= 0) continue;
+
+      final Object value = values.apply(i);
+      if (value != null) {
+        writeField(writer, schema.getFieldType(i), schema.getFieldId(i), value);
+      }
+    }
+    writer.close();
+    return buffer.toByteArray();
+  }
+
+  private static void writeField(final FieldFormatWriter writer, final DataType type, final int fieldId, final Object value) {
+    switch (type) {
+      case BOOL -> writer.writeBool(fieldId, (Boolean) value);
+      case INT, UTC_TIMESTAMP -> writer.writeInt(fieldId, ((Number) value).longValue());
+      case FLOAT -> writer.writeFloat(fieldId, ((Number) value).doubleValue());
+      case BYTES -> {
+        if (value instanceof final ByteArraySlice slice) {
+          writer.writeBytes(fieldId, slice);
+        } else {
+          writer.writeBytes(fieldId, (byte[]) value);
+        }
+      }
+      case STRING -> writer.writeString(fieldId, String.valueOf(value));
+      case ARRAY -> writer.writeArray(fieldId, (JsonArray) value);
+      case OBJECT -> writer.writeObject(fieldId, (JsonObject) value);
+      case GEO_LOCATION -> writer.writeGeoLocation(fieldId, (LatLong) value);
+      default -> throw new UnsupportedOperationException("unsupported field type " + type);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.format.FieldFormat;
+import tech.dnaco.storage.format.FieldFormatReader;
+import tech.dnaco.storage.format.FieldFormatWriter;
+
+/**
+ * Write (row append + close) and full scan of an EntityRows block,
+ * in row (0) and columnar (1) format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchEntityRows {
+  private static final int NROWS = 10_000;
+
+  @State(Scope.Thread)
+  public static class BlockState {
+    @Param({ "0", "1" })
+    private int format;
+
+    private Schema schema;
+    private byte[] block;
+
+    @Setup
+    public void setup() {
+      this.schema = newSchema();
+      this.block = writeRows(schema, format, NROWS).toByteArray();
+    }
+  }
+
+  public static Schema newSchema() {
+    final Schema schema = new Schema();
+    schema.addField("id", DataType.INT);
+    schema.addField("ts", DataType.UTC_TIMESTAMP);
+    schema.addField("enabled", DataType.BOOL);
+    schema.addField("score", DataType.FLOAT);
+    schema.addField("name", DataType.STRING);
+    schema.addField("status", DataType.STRING);
+    return schema;
+  }
+
+  public static EntityRowsWriter writeRows(final Schema schema, final int format, final int rowCount) {
+    final int idField = schema.fieldIdByName("id");
+    final int tsField = schema.fieldIdByName("ts");
+    final int enabledField = schema.fieldIdByName("enabled");
+    final int scoreField = schema.fieldIdByName("score");
+    final int nameField = schema.fieldIdByName("name");
+    final int statusField = schema.fieldIdByName("status");
+
+    final EntityRowsWriter rows = new EntityRowsWriter(schema, 1 << 20, format);
+    for (int i = 0; i < rowCount; ++i) {
+      final FieldFormatWriter writer = rows.newRow();
+      writer.writeInt(idField, i);
+      writer.writeInt(tsField, 1_600_000_000_000L + (i * 1000L));
+      writer.writeBool(enabledField, (i % 3) != 0);
+      writer.writeFloat(scoreField, (i % 1000) * 0.25);
+      writer.writeString(nameField, "user-" + i);
+      writer.writeString(statusField, (i % 11 == 0) ? "FAILED" : "OK");
+      rows.closeRow();
+    }
+    rows.close();
+    return rows;
+  }
+
+  @Benchmark
+  public int writeRows(final BlockState state) {
+    return writeRows(state.schema, state.format, NROWS).bufferSize();
+  }
+
+  @Benchmark
+  public long scanRows(final BlockState state) {
+    final EntityRowsReader reader = EntityRowsReader.newReader(new ByteArraySlice(state.block));
+    final Schema schema = reader.schema();
+    final int idField = schema.fieldIdByName("id");
+    final int nameField = schema.fieldIdByName("name");
+
+    long checksum = 0;
+    while (reader.hasMore()) {
+      final FieldFormatReader row = reader.next();
+      checksum += row.getInt(idField);
+      checksum += row.getBytes(nameField).length();
+    }
+    return checksum;
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchEntityRows.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
@@ -94,6 +94,78 @@ public class TestEntityRows {
     Assertions.assertEquals(NROWS, count);
   }
 
+  @Test
+  public void testColumnarWriteAndRead() {
+    final int NROWS = 100_000;
+
+    final Schema schema = new Schema();
+    schema.addField("bool", DataType.BOOL);
+    schema.addField("int", DataType.INT);
+    schema.addField("float", DataType.FLOAT);
+    schema.addField("status", DataType.STRING);
+
+    // writing the data
+    final EntityRowsWriter rows = EntityRowsWriter.newColumnarWriter(schema);
+    for (int i = 1; i <= NROWS; ++i) {
+      final FieldFormatWriter writer = rows.newRow();
+      if (i % 3 == 0) {
+        writer.writeNull(schema.fieldIdByName("bool"));
+      } else {
+        writer.writeBool(schema.fieldIdByName("bool"), i % 3 == 1);
+      }
+
+      if (i % 5 == 0) {
+        writer.writeNull(schema.fieldIdByName("int"));
+      } else {
+        writer.writeInt(schema.fieldIdByName("int"), i * 100);
+      }
+
+      if (i % 7 == 0) {
+        writer.writeNull(schema.fieldIdByName("float"));
+      } else {
+        writer.writeFloat(schema.fieldIdByName("float"), i * 100.32);
+      }
+
+      writer.writeString(schema.fieldIdByName("status"), (i % 11 == 0) ? "FAILED" : "OK");
+      rows.closeRow();
+    }
+    rows.close();
+    // same rows of testWriteAndRead() plus the status, the row format takes 2_457_607 bytes without it
+    Assertions.assertTrue(rows.bufferSize() < 2_457_607 / 3, "columnar block size " + rows.bufferSize());
+
+    // Reading the data
+    int count = 0;
+    final EntityRowsReader rdRows = EntityRowsReader.newReader(new ByteArraySlice(rows.toByteArray()));
+    while (rdRows.hasMore()) {
+      final FieldFormatReader reader = rdRows.next();
+      count++;
+
+      if (count % 3 == 0) {
+        Assertions.assertTrue(reader.isNull(schema.fieldIdByName("bool")));
+      } else {
+        Assertions.assertFalse(reader.isNull(schema.fieldIdByName("bool")));
+        Assertions.assertEquals(count % 3 == 1, reader.getBool(schema.fieldIdByName("bool")));
+      }
+
+      if (count % 5 == 0) {
+        Assertions.assertTrue(reader.isNull(schema.fieldIdByName("int")));
+      } else {
+        Assertions.assertFalse(reader.isNull(schema.fieldIdByName("int")));
+        Assertions.assertEquals(count * 100L, reader.getInt(schema.fieldIdByName("int")));
+      }
+
+      if (count % 7 == 0) {
+        Assertions.assertTrue(reader.isNull(schema.fieldIdByName("float")));
+      } else {
+        Assertions.assertFalse(reader.isNull(schema.fieldIdByName("float")));
+        Assertions.assertEquals(count * 100.32, reader.getFloat(schema.fieldIdByName("float")));
+      }
+
+      Assertions.assertEquals((count % 11 == 0) ? "FAILED" : "OK", reader.getString(schema.fieldIdByName("status")));
+    }
+    Assertions.assertEquals(NROWS, count);
+  }
+
   @Test
   public void testCopy() {
     final Schema schemaA = new Schema();
@@ -19,6 +19,7 @@
 
 package tech.dnaco.storage;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import tech.dnaco.storage.DataTypes.DataType;
@@ -29,4 +30,23 @@ public class TestSchema {
     final Schema schema = new Schema();
     schema.addField("a", DataType.INT);
   }
+
+  @Test
+  public void testIndexes() {
+    final Schema schema = new Schema();
+    schema.addField("owner", DataType.INT);
+    schema.addField("score", DataType.FLOAT);
+    Assertions.assertFalse(schema.hasIndexes());
+
+    Assertions.assertTrue(schema.addIndex("by_owner", new String[] { "owner" }, new String[] { "score" }));
+    Assertions.assertFalse(schema.addIndex("by_owner", new String[] { "owner" }));
+    Assertions.assertTrue(schema.getIndex("by_owner").isCovering());
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> schema.addIndex("by_score", new String[] { "score" }));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> schema.addIndex("by_x", new String[] { "x" }));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> schema.addIndex("by-owner", new String[] { "owner" }));
+
+    Assertions.assertTrue(schema.removeIndex("by_owner"));
+    Assertions.assertFalse(schema.hasIndexes());
+  }
 }
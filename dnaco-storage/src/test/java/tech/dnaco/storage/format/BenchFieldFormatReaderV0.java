@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.format;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.Schema;
+
+/**
+ * Cost of load() + field reads of a row, on schemas of different width.
+ * The filters usually read one or two fields, the full read is the row conversion.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchFieldFormatReaderV0 {
+  @State(Scope.Thread)
+  public static class RowState {
+    @Param({ "10", "100", "1000" })
+    private int fieldsCount;
+
+    private final ByteArraySlice rowSlice = new ByteArraySlice();
+    private FieldFormatReader reader;
+    private int[] fieldIds;
+    private byte[] row;
+
+    @Setup
+    public void setup() {
+      final Schema schema = new Schema();
+      for (int i = 0; i < fieldsCount; ++i) {
+        schema.addField("f" + i, DataType.INT);
+      }
+      this.fieldIds = schema.fieldIds();
+
+      final PagedByteArray buffer = new PagedByteArray(1 << 16);
+      try (FieldFormatWriter writer = FieldFormat.newWriter(schema, buffer, 0)) {
+        for (int i = 0; i < fieldIds.length; ++i) {
+          writer.writeInt(fieldIds[i], i * 1000L);
+        }
+      }
+      this.row = buffer.toByteArray();
+      this.reader = FieldFormat.newReader(schema, 0);
+    }
+  }
+
+  @Benchmark
+  public long loadOnly(final RowState state) {
+    state.rowSlice.set(state.row);
+    state.reader.load(state.rowSlice);
+    return state.rowSlice.length();
+  }
+
+  @Benchmark
+  public long readFirstField(final RowState state) {
+    state.rowSlice.set(state.row);
+    state.reader.load(state.rowSlice);
+    return state.reader.getInt(state.fieldIds[0]);
+  }
+
+  @Benchmark
+  public long readMiddleField(final RowState state) {
+    state.rowSlice.set(state.row);
+    state.reader.load(state.rowSlice);
+    return state.reader.getInt(state.fieldIds[state.fieldIds.length / 2]);
+  }
+
+  @Benchmark
+  public long readRandomField(final RowState state) {
+    state.rowSlice.set(state.row);
+    state.reader.load(state.rowSlice);
+    return state.reader.getInt(state.fieldIds[ThreadLocalRandom.current().nextInt(state.fieldIds.length)]);
+  }
+
+  @Benchmark
+  public long readAllFields(final RowState state) {
+    state.rowSlice.set(state.row);
+    state.reader.load(state.rowSlice);
+    long sum = 0;
+    for (int i = 0; i < state.fieldIds.length; ++i) {
+      sum += state.reader.getInt(state.fieldIds[i]);
+    }
+    return sum;
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchFieldFormatReaderV0.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
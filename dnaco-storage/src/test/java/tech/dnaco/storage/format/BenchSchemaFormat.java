@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.format;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.Schema;
+
+/**
+ * Compact schema encoding, written and read once per EntityRows block.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchSchemaFormat {
+  private static final DataType[] FIELD_TYPES = new DataType[] {
+    DataType.INT, DataType.STRING, DataType.FLOAT, DataType.BOOL, DataType.UTC_TIMESTAMP, DataType.BYTES
+  };
+
+  @State(Scope.Thread)
+  public static class SchemaState {
+    @Param({ "10", "100", "1000" })
+    private int fieldsCount;
+
+    private Schema schema;
+    private ByteArraySlice encoded;
+
+    @Setup
+    public void setup() {
+      this.schema = new Schema();
+      for (int i = 0; i < fieldsCount; ++i) {
+        schema.addField("field_" + i, FIELD_TYPES[i % FIELD_TYPES.length]);
+      }
+
+      final PagedByteArray buffer = new PagedByteArray(1 << 16);
+      SchemaFormat.writeCompact(schema, buffer);
+      this.encoded = new ByteArraySlice(buffer.toByteArray());
+    }
+  }
+
+  @Benchmark
+  public int writeCompact(final SchemaState state) {
+    final PagedByteArray buffer = new PagedByteArray(1 << 16);
+    SchemaFormat.writeCompact(state.schema, buffer);
+    return buffer.size();
+  }
+
+  @Benchmark
+  public Schema readCompact(final SchemaState state) {
+    return SchemaFormat.readCompact(state.encoded, 0);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchSchemaFormat.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
@@ -19,6 +19,8 @@
 
 package tech.dnaco.storage.format;
 
+import java.util.Random;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -110,4 +112,42 @@ public class TestFieldFormatV0 {
       Assertions.assertEquals(-0.1802646, latlng.getLongitude(), 0.0000001);
     }
   }
+
+  @Test
+  public void testWideSchemaLazyIndex() {
+    final int NFIELDS = 1000;
+    final Schema schema = new Schema();
+    for (int i = 0; i < NFIELDS; ++i) {
+      schema.addField("f" + i, DataType.INT);
+    }
+
+    final FieldFormatReader reader = FieldFormat.newReader(schema, 0);
+    final Random rand = new Random(42);
+    for (int row = 0; row < 5; ++row) {
+      // even fields have a value, every 3rd odd field is null, the others are missing
+      final PagedByteArray buffer = new PagedByteArray(1 << 16);
+      try (FieldFormatWriter writer = FieldFormat.newWriter(schema, buffer, 0)) {
+        for (int i = NFIELDS - 1; i >= 0; --i) {
+          final int fieldId = schema.fieldIdByName("f" + i);
+          if ((i & 1) == 0) {
+            writer.writeInt(fieldId, (row * 10_000L) + i);
+          } else if (i % 3 == 0) {
+            writer.writeNull(fieldId);
+          }
+        }
+      }
+
+      // the same reader is reused, the fields are read in random order
+      reader.load(new ByteArraySlice(buffer.toByteArray()));
+      for (int k = 0; k < NFIELDS * 2; ++k) {
+        final int i = (k < NFIELDS) ? rand.nextInt(NFIELDS) : (k - NFIELDS);
+        final int fieldId = schema.fieldIdByName("f" + i);
+        Assertions.assertEquals((i & 1) != 0, reader.isNull(fieldId));
+        if ((i & 1) == 0) {
+          Assertions.assertEquals((row * 10_000L) + i, reader.getInt(fieldId));
+        }
+      }
+      Assertions.assertTrue(reader.isNull(NFIELDS + 100));
+    }
+  }
 }
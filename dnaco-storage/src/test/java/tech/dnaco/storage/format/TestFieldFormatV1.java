@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.format;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.collections.arrays.paged.PagedByteArray;
+import tech.dnaco.geo.LatLong;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.format.v1.FieldFormatReaderV1;
+import tech.dnaco.storage.format.v1.FieldFormatWriterV1;
+
+public class TestFieldFormatV1 {
+  @Test
+  public void testNullFields() {
+    final Schema schema = new Schema();
+    schema.addField("bool", DataType.BOOL);
+    schema.addField("int", DataType.INT);
+    schema.addField("float", DataType.FLOAT);
+
+    final PagedByteArray buffer = new PagedByteArray(1 << 10);
+    final FieldFormatWriterV1 writer = (FieldFormatWriterV1) FieldFormat.newWriter(schema, buffer, FieldFormat.COLUMNAR_FORMAT);
+    for (int i = 0; i < 10; ++i) {
+      writer.reset();
+      writer.writeNull(schema.fieldIdByName("int"));
+      if (i == 4) writer.writeInt(schema.fieldIdByName("int"), 10);
+      writer.close();
+    }
+    writer.flushBlock();
+
+    final FieldFormatReaderV1 reader = (FieldFormatReaderV1) FieldFormat.newReader(schema, FieldFormat.COLUMNAR_FORMAT);
+    reader.load(new ByteArraySlice(buffer.toByteArray()));
+    Assertions.assertEquals(10, reader.rowCount());
+    for (int i = 0; i < 10; ++i) {
+      reader.setRow(i);
+      Assertions.assertTrue(reader.isNull(schema.fieldIdByName("bool")));
+      Assertions.assertEquals(i != 4, reader.isNull(schema.fieldIdByName("int")));
+      Assertions.assertTrue(reader.isNull(schema.fieldIdByName("float")));
+    }
+    reader.setRow(4);
+    Assertions.assertEquals(10, reader.getInt(schema.fieldIdByName("int")));
+  }
+
+  @Test
+  public void testWriteAndRead() {
+    final Schema schema = new Schema();
+    schema.addField("bool", DataType.BOOL);
+    schema.addField("int", DataType.INT);
+    schema.addField("float", DataType.FLOAT);
+    schema.addField("bytes", DataType.BYTES);
+    schema.addField("string", DataType.STRING);
+    schema.addField("label", DataType.STRING);
+    schema.addField("timestamp", DataType.UTC_TIMESTAMP);
+    schema.addField("geo_location", DataType.GEO_LOCATION);
+
+    final int NROWS = 1000;
+    final PagedByteArray buffer = new PagedByteArray(1 << 20);
+    final FieldFormatWriterV1 writer = (FieldFormatWriterV1) FieldFormat.newWriter(schema, buffer, FieldFormat.COLUMNAR_FORMAT);
+    for (int i = 0; i < NROWS; ++i) {
+      writer.reset();
+      if (i % 3 != 0) writer.writeBool(schema.fieldIdByName("bool"), (i & 1) == 0);
+      if (i % 5 != 0) writer.writeInt(schema.fieldIdByName("int"), i * 100L);
+      writer.writeFloat(schema.fieldIdByName("float"), i * 10.25);
+      writer.writeBytes(schema.fieldIdByName("bytes"), new byte[] { (byte) (i & 0xff), (byte) ((i + 1) & 0xff) });
+      writer.writeString(schema.fieldIdByName("string"), "hello-" + i);
+      if (i % 7 != 0) writer.writeString(schema.fieldIdByName("label"), "label-" + (i % 4));
+      writer.writeInt(schema.fieldIdByName("timestamp"), 1_600_000_000_000L + (i * 1000L));
+      writer.writeGeoLocation(schema.fieldIdByName("geo_location"), 51.5320754, -0.1802646 + i);
+      writer.close();
+    }
+    writer.flushBlock();
+
+    final FieldFormatReaderV1 reader = (FieldFormatReaderV1) FieldFormat.newReader(schema, FieldFormat.COLUMNAR_FORMAT);
+    reader.load(new ByteArraySlice(buffer.toByteArray()));
+    Assertions.assertEquals(NROWS, reader.rowCount());
+    for (int i = 0; i < NROWS; ++i) {
+      reader.setRow(i);
+      Assertions.assertEquals(i % 3 == 0, reader.isNull(schema.fieldIdByName("bool")));
+      if (i % 3 != 0) Assertions.assertEquals((i & 1) == 0, reader.getBool(schema.fieldIdByName("bool")));
+      Assertions.assertEquals(i % 5 == 0, reader.isNull(schema.fieldIdByName("int")));
+      if (i % 5 != 0) {
+        Assertions.assertEquals(i * 100L, reader.getInt(schema.fieldIdByName("int")));
+        Assertions.assertEquals(i * 100L, reader.getFloat(schema.fieldIdByName("int")), 0.0001);
+      }
+      Assertions.assertEquals(i * 10.25, reader.getFloat(schema.fieldIdByName("float")));
+      Assertions.assertArrayEquals(new byte[] { (byte) (i & 0xff), (byte) ((i + 1) & 0xff) }, reader.getBytes(schema.fieldIdByName("bytes")).buffer());
+      Assertions.assertEquals("hello-" + i, reader.getString(schema.fieldIdByName("string")));
+      Assertions.assertEquals(i % 7 == 0, reader.isNull(schema.fieldIdByName("label")));
+      if (i % 7 != 0) Assertions.assertEquals("label-" + (i % 4), reader.getString(schema.fieldIdByName("label")));
+      Assertions.assertEquals(1_600_000_000_000L + (i * 1000L), reader.getInt(schema.fieldIdByName("timestamp")));
+
+      final LatLong latlng = reader.getGeoLocation(schema.fieldIdByName("geo_location"));
+      Assertions.assertEquals(51.5320754, latlng.getLatitude());
+      Assertions.assertEquals(-0.1802646 + i, latlng.getLongitude());
+    }
+  }
+
+  @Test
+  public void testIntEncodings() {
+    final Random rand = new Random(42);
+    final long[][] sequences = new long[][] {
+      new long[] { 0 },
+      new long[] { Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MIN_VALUE, Long.MAX_VALUE },
+      rand.longs(300).toArray(),
+      rand.longs(300, -1000, 1000).toArray(),
+      rand.longs(300, 1L << 40, 1L << 41).toArray(),
+      sequence(300, i -> 7),
+      sequence(300, i -> 5 - i * 3),
+      sequence(300, i -> i * i),
+      sequence(70_000, i -> (i / 10) % 4 == 0 ? 100 : i % 50),
+      sequence(300, i -> (i & 1) == 0 ? Long.MIN_VALUE : Long.MAX_VALUE),
+    };
+
+    final Schema schema = new Schema();
+    schema.addField("int", DataType.INT);
+    final int fieldId = schema.fieldIdByName("int");
+    for (final long[] values: sequences) {
+      final PagedByteArray buffer = new PagedByteArray(1 << 16);
+      final FieldFormatWriterV1 writer = (FieldFormatWriterV1) FieldFormat.newWriter(schema, buffer, FieldFormat.COLUMNAR_FORMAT);
+      for (int i = 0; i < values.length; ++i) {
+        writer.reset();
+        writer.writeInt(fieldId, values[i]);
+        writer.close();
+      }
+      writer.flushBlock();
+
+      final FieldFormatReaderV1 reader = (FieldFormatReaderV1) FieldFormat.newReader(schema, FieldFormat.COLUMNAR_FORMAT);
+      reader.load(new ByteArraySlice(buffer.toByteArray()));
+      Assertions.assertEquals(values.length, reader.rowCount());
+      for (int i = 0; i < values.length; ++i) {
+        reader.setRow(i);
+        Assertions.assertEquals(values[i], reader.getInt(fieldId));
+      }
+    }
+  }
+
+  @Test
+  public void testAbortedRow() {
+    final Schema schema = new Schema();
+    schema.addField("int", DataType.INT);
+    schema.addField("string", DataType.STRING);
+
+    final PagedByteArray buffer = new PagedByteArray(1 << 10);
+    final FieldFormatWriterV1 writer = (FieldFormatWriterV1) FieldFormat.newWriter(schema, buffer, FieldFormat.COLUMNAR_FORMAT);
+    writer.reset();
+    writer.writeInt(schema.fieldIdByName("int"), 1);
+    writer.writeString(schema.fieldIdByName("string"), "aborted");
+    // the row is not closed, reset() drops it
+    writer.reset();
+    writer.writeInt(schema.fieldIdByName("int"), 2);
+    writer.close();
+    writer.flushBlock();
+
+    final FieldFormatReaderV1 reader = (FieldFormatReaderV1) FieldFormat.newReader(schema, FieldFormat.COLUMNAR_FORMAT);
+    reader.load(new ByteArraySlice(buffer.toByteArray()));
+    Assertions.assertEquals(1, reader.rowCount());
+    Assertions.assertEquals(2, reader.getInt(schema.fieldIdByName("int")));
+    Assertions.assertTrue(reader.isNull(schema.fieldIdByName("string")));
+  }
+
+  private interface LongSequence {
+    long get(int index);
+  }
+
+  private static long[] sequence(final int length, final LongSequence seq) {
+    final long[] values = new long[length];
+    for (int i = 0; i < length; ++i) {
+      values[i] = seq.get(i);
+    }
+    return values;
+  }
+}
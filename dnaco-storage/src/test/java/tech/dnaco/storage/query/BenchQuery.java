@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.query;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.storage.BenchEntityRows;
+import tech.dnaco.storage.EntityRowsReader;
+import tech.dnaco.storage.Schema;
+
+/**
+ * Filter a block with the different filter types,
+ * in row (0, per-row evaluation) and columnar (1, batch evaluation) format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchQuery {
+  private static final int NROWS = 10_000;
+
+  @State(Scope.Thread)
+  public static class QueryState {
+    @Param({ "0", "1" })
+    private int format;
+
+    @Param({ "EQ", "LIKE", "REGEX", "IN", "RANGE" })
+    private String filterType;
+
+    private byte[] block;
+    private Filter filter;
+
+    @Setup
+    public void setup() {
+      final Schema schema = BenchEntityRows.newSchema();
+      this.block = BenchEntityRows.writeRows(schema, format, NROWS).toByteArray();
+      this.filter = switch (filterType) {
+        case "EQ" -> Filter.newAndFilterBuilder().eq("status", "FAILED").build();
+        case "LIKE" -> Filter.newAndFilterBuilder().like("name", "user-1%").build();
+        case "REGEX" -> Filter.newAndFilterBuilder().regexMatch("name", "user-[0-9]*7").build();
+        case "IN" -> Filter.newAndFilterBuilder().in("id", 10L, 200L, 3000L, 4000L, 9999L).build();
+        case "RANGE" -> Filter.newAndFilterBuilder().ge("score", 100).lt("ts", 1_600_005_000_000L).build();
+        default -> throw new IllegalArgumentException("unexpected filter type " + filterType);
+      };
+    }
+  }
+
+  @Benchmark
+  public long scan(final QueryState state) {
+    final EntityRowsReader reader = EntityRowsReader.newReader(new ByteArraySlice(state.block));
+    final Query query = new Query(reader.schema(), state.filter);
+    return query.scan(reader, row -> true);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(BenchQuery.class.getSimpleName())
+      .addProfiler("gc")
+      .build()).run();
+  }
+}
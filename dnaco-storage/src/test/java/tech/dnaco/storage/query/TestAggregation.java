@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.EntityRowsReader;
+import tech.dnaco.storage.EntityRowsWriter;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.format.FieldFormatWriter;
+
+public class TestAggregation {
+  private static final int BLOCK_ROWS = 2_000;
+
+  @Test
+  public void testGroupBy() {
+    final Schema schema = newSchema();
+    final List<ByteArraySlice> blocks = newBlocks(schema);
+    final Filter filter = Filter.newAndFilterBuilder().ge("id", 100).build();
+
+    // string group key
+    final Aggregation byStatus = Aggregation.newBuilder(schema)
+      .groupBy("status").count().count("size").sum("size").min("ts").max("ts").sum("score").max("status")
+      .build();
+    Assertions.assertArrayEquals(new String[] { "status", "count(*)", "count(size)", "sum(size)", "min(ts)", "max(ts)", "sum(score)", "max(status)" },
+      byStatus.columnNames());
+    assertResults(expected(schema, blocks, filter, byStatus), aggregate(blocks, filter, byStatus));
+
+    // primitive long group key, with null values
+    final Aggregation byCode = Aggregation.newBuilder(schema)
+      .groupBy("code").count().min("size").max("size").min("score").max("score").min("status")
+      .build();
+    assertResults(expected(schema, blocks, filter, byCode), aggregate(blocks, filter, byCode));
+
+    // multiple group fields
+    final Aggregation byStatusAndFlag = Aggregation.newBuilder(schema)
+      .groupBy("status", "flag").count().sum("size")
+      .build();
+    final List<Object[]> results = aggregate(blocks, filter, byStatusAndFlag);
+    assertResults(expected(schema, blocks, filter, byStatusAndFlag), results);
+    Assertions.assertEquals(5 * 3, results.size());
+
+    // parallel scan: one state per partition, merged
+    final ScanExecutor executor = new ScanExecutor(ForkJoinPool.commonPool(), 300);
+    for (final Aggregation aggregation: List.of(byStatus, byCode, byStatusAndFlag)) {
+      assertResults(aggregate(blocks, filter, aggregation), executor.aggregate(blocks, filter, aggregation));
+      assertResults(aggregate(blocks, filter, aggregation), executor.scan(blocks, filter, aggregation.collector()));
+    }
+  }
+
+  @Test
+  public void testCount() {
+    final Schema schema = newSchema();
+    final List<ByteArraySlice> blocks = newBlocks(schema);
+
+    final Aggregation count = Aggregation.newBuilder(schema).count().build();
+    Assertions.assertTrue(count.isRowCountOnly());
+    Assertions.assertFalse(Aggregation.newBuilder(schema).count().count("size").build().isRowCountOnly());
+    Assertions.assertFalse(Aggregation.newBuilder(schema).groupBy("code").count().build().isRowCountOnly());
+
+    final Filter filter = Filter.newAndFilterBuilder().eq("status", "OK").build();
+    final List<Object[]> results = aggregate(blocks, filter, count);
+    assertResults(expected(schema, blocks, filter, count), results);
+    Assertions.assertEquals(blocks.size() * BLOCK_ROWS / 5L, results.get(0)[0]);
+
+    // without groups there is always a result
+    final Filter none = Filter.newAndFilterBuilder().lt("id", 0).build();
+    final Aggregation stats = Aggregation.newBuilder(schema).count().count("size").sum("size").max("ts").build();
+    assertResults(List.<Object[]>of(new Object[] { 0L, 0L, null, null }), aggregate(blocks, none, stats));
+    assertResults(List.<Object[]>of(new Object[] { 0L }), new ScanExecutor(ForkJoinPool.commonPool(), 300).aggregate(blocks, none, count));
+
+    Assertions.assertThrows(IllegalStateException.class, () -> stats.newState().addRowCount(10));
+  }
+
+  @Test
+  public void testInvalidAggregates() {
+    final Schema schema = newSchema();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Aggregation.newBuilder(schema).sum("status"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Aggregation.newBuilder(schema).sum("ts"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Aggregation.newBuilder(schema).count("unknown"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Aggregation.newBuilder(schema).groupBy("unknown"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Aggregation.newBuilder(schema).build());
+
+    final Aggregation a = Aggregation.newBuilder(schema).count().build();
+    final Aggregation b = Aggregation.newBuilder(schema).count().build();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> a.newState().merge(b.newState()));
+  }
+
+  private static List<Object[]> aggregate(final List<ByteArraySlice> blocks, final Filter filter, final Aggregation aggregation) {
+    final Aggregation.State state = aggregation.newState();
+    for (final ByteArraySlice block: blocks) {
+      final EntityRowsReader reader = EntityRowsReader.newReader(block);
+      new Query(reader.schema(), filter).aggregate(reader, state);
+    }
+    return state.results();
+  }
+
+  // aggregation of the materialized rows
+  private static List<Object[]> expected(final Schema schema, final List<ByteArraySlice> blocks,
+      final Filter filter, final Aggregation aggregation) {
+    final String[] columns = aggregation.columnNames();
+    final int aggregateOffset = (int) Arrays.stream(columns).takeWhile(name -> !name.contains("(")).count();
+    final Map<List<Object>, List<Map<String, Object>>> groups = new HashMap<>();
+    for (final ByteArraySlice block: blocks) {
+      final EntityRowsReader reader = EntityRowsReader.newReader(block);
+      final Query query = new Query(reader.schema(), filter);
+      query.scan(reader, entityRow -> {
+        final Map<String, Object> row = new HashMap<>();
+        for (int i = 0; i < schema.fieldsCount(); ++i) {
+          row.put(schema.fieldNames()[i], entityRow.get(i));
+        }
+
+        final List<Object> key = new ArrayList<>();
+        for (int i = 0; i < aggregateOffset; ++i) key.add(row.get(columns[i]));
+        return groups.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+      });
+    }
+    if (aggregateOffset == 0 && groups.isEmpty()) groups.put(List.of(), List.of());
+
+    final List<Object[]> results = new ArrayList<>();
+    for (final Map.Entry<List<Object>, List<Map<String, Object>>> entry: groups.entrySet()) {
+      final Object[] result = Arrays.copyOf(entry.getKey().toArray(), columns.length);
+      for (int i = aggregateOffset; i < columns.length; ++i) {
+        final String function = columns[i].substring(0, columns[i].indexOf('('));
+        final String field = columns[i].substring(function.length() + 1, columns[i].length() - 1);
+        final List<Object> values = entry.getValue().stream()
+          .map(row -> field.equals("*") ? Boolean.TRUE : row.get(field))
+          .filter(Objects::nonNull)
+          .toList();
+        result[i] = switch (function) {
+          case "count" -> (long) values.size();
+          case "sum" -> values.isEmpty() ? null : values.get(0) instanceof Long
+            ? (Object) values.stream().mapToLong(v -> (Long) v).sum()
+            : (Object) values.stream().mapToDouble(v -> (Double) v).sum();
+          case "min" -> values.stream().map(v -> (Comparable) v).min(Comparable::compareTo).orElse(null);
+          case "max" -> values.stream().map(v -> (Comparable) v).max(Comparable::compareTo).orElse(null);
+          default -> throw new IllegalArgumentException(function);
+        };
+      }
+      results.add(result);
+    }
+    return results;
+  }
+
+  private static void assertResults(final List<Object[]> expected, final List<Object[]> actual) {
+    Assertions.assertEquals(sorted(expected), sorted(actual));
+  }
+
+  private static List<List<Object>> sorted(final List<Object[]> results) {
+    final ArrayList<List<Object>> rows = new ArrayList<>();
+    for (final Object[] result: results) rows.add(Arrays.asList(result));
+    rows.sort((a, b) -> a.toString().compareTo(b.toString()));
+    return rows;
+  }
+
+  private static Schema newSchema() {
+    final Schema schema = new Schema();
+    schema.addField("id", DataType.INT);
+    schema.addField("status", DataType.STRING);
+    schema.addField("code", DataType.INT);
+    schema.addField("flag", DataType.BOOL);
+    schema.addField("size", DataType.INT);
+    schema.addField("score", DataType.FLOAT);
+    schema.addField("ts", DataType.UTC_TIMESTAMP);
+    return schema;
+  }
+
+  private static List<ByteArraySlice> newBlocks(final Schema schema) {
+    final String[] statuses = new String[] { "OK", "FAILED", "PENDING", "RUNNING", "CANCELLED" };
+    final List<ByteArraySlice> blocks = new ArrayList<>();
+    for (int b = 0; b < 4; ++b) {
+      final EntityRowsWriter rows = ((b & 1) == 0) ? EntityRowsWriter.newColumnarWriter(schema) : new EntityRowsWriter(schema);
+      for (long id = b * BLOCK_ROWS, lastId = id + BLOCK_ROWS; id < lastId; ++id) {
+        final FieldFormatWriter writer = rows.newRow();
+        writer.writeInt(schema.fieldIdByName("id"), id);
+        writer.writeString(schema.fieldIdByName("status"), statuses[(int) (id % statuses.length)]);
+        if (id % 7 != 0) writer.writeInt(schema.fieldIdByName("code"), (id % 4) * 100 - 100);
+        if (id % 3 != 0) writer.writeBool(schema.fieldIdByName("flag"), (id & 1) == 0);
+        if (id % 11 != 0) writer.writeInt(schema.fieldIdByName("size"), (id * 37) % 1000 - 300);
+        if (id % 13 != 0) writer.writeFloat(schema.fieldIdByName("score"), (id % 50) * 0.25);
+        writer.writeInt(schema.fieldIdByName("ts"), 1_600_000_000_000L + id * 1000);
+        rows.closeRow();
+      }
+      rows.close();
+      blocks.add(new ByteArraySlice(rows.toByteArray()));
+    }
+    return blocks;
+  }
+}
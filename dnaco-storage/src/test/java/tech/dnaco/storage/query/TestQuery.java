@@ -19,16 +19,25 @@
 
 package tech.dnaco.storage.query;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import tech.dnaco.bytes.ByteArraySlice;
 import tech.dnaco.bytes.encoding.RowKey;
 import tech.dnaco.collections.arrays.paged.PagedByteArray;
 import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.EntityRowsReader;
+import tech.dnaco.storage.EntityRowsWriter;
 import tech.dnaco.storage.Schema;
 import tech.dnaco.storage.format.FieldFormat;
 import tech.dnaco.storage.format.FieldFormatReader;
 import tech.dnaco.storage.format.FieldFormatWriter;
+import tech.dnaco.storage.format.v1.FieldFormatReaderV1;
 import tech.dnaco.storage.query.Filter.FilterType;
 
 public class TestQuery {
@@ -84,4 +93,232 @@ public class TestQuery {
     final boolean result = query.process(key, reader);
     System.out.println("RESULT: " + result);
   }
+
+  @Test
+  public void testKeyRanges() {
+    final Schema schema = new Schema();
+    schema.addField("bool", DataType.BOOL);
+    schema.addField("int", DataType.INT);
+    schema.addField("float", DataType.FLOAT);
+    schema.addField("string", DataType.STRING);
+    schema.setKeys(new String[] { "string", "int" });
+
+    // no key predicates
+    Assertions.assertTrue(new Query(schema, Filter.newAndFilterBuilder().gt("float", 10).build()).isFullScan());
+    Assertions.assertTrue(new Query(schema, Filter.newAndFilterBuilder().eq("int", 10).build()).isFullScan());
+
+    // point lookups
+    final Query points = new Query(schema, Filter.newAndFilterBuilder()
+      .eq("string", "foo")
+      .in("int", 1L, 2L, 3L)
+      .gt("float", 10)
+      .build());
+    Assertions.assertEquals(3, points.keyRanges().size());
+    assertMatch(points, true, key("foo", 1), key("foo", 2), key("foo", 3));
+    assertMatch(points, false, key("foo", 4), key("foo", 0), key("fo", 2), key("fooo", 2));
+
+    // prefix and ranges on the key
+    final Query prefix = new Query(schema, Filter.newAndFilterBuilder().eq("string", "foo").build());
+    Assertions.assertEquals(1, prefix.keyRanges().size());
+    assertMatch(prefix, true, key("foo", 0), key("foo", 1000), key("foo", -1));
+    assertMatch(prefix, false, key("fo", 0), key("foobar", 1), key("bar", 1));
+
+    final Query like = new Query(schema, Filter.newAndFilterBuilder().like("string", "fo%").build());
+    assertMatch(like, true, key("fo", 1), key("foo", 2), key("fozzy", 3));
+    assertMatch(like, false, key("f", 1), key("bar", 2), key("gz", 3));
+
+    final Query range = new Query(schema, Filter.newAndFilterBuilder().eq("string", "foo").gt("int", 5).lt("int", 1000).build());
+    assertMatch(range, true, key("foo", 6), key("foo", 240), key("foo", 999));
+    assertMatch(range, false, key("foo", 5), key("foo", 1000), key("foo", -3), key("bar", 10));
+
+    final Query negRange = new Query(schema, Filter.newAndFilterBuilder().eq("string", "foo").lt("int", 10).build());
+    Assertions.assertEquals(2, negRange.keyRanges().size());
+    assertMatch(negRange, true, key("foo", 0), key("foo", 9), key("foo", -1), key("foo", Long.MIN_VALUE));
+    assertMatch(negRange, false, key("foo", 10), key("foo", Long.MAX_VALUE));
+
+    // or branches are merged
+    final Query union = new Query(schema, Filter.newOrFilterBuilder()
+      .add(Filter.newAndFilterBuilder().eq("string", "foo").eq("int", 1).build())
+      .add(Filter.newAndFilterBuilder().eq("string", "bar").build())
+      .build());
+    Assertions.assertEquals(2, union.keyRanges().size());
+    assertMatch(union, true, key("foo", 1), key("bar", 1), key("bar", 2));
+    assertMatch(union, false, key("foo", 2), key("baz", 1));
+
+    final Query unionFull = new Query(schema, Filter.newOrFilterBuilder()
+      .eq("string", "foo")
+      .gt("float", 10)
+      .build());
+    Assertions.assertTrue(unionFull.isFullScan());
+    Assertions.assertTrue(unionFull.explain().startsWith("FULL-SCAN"));
+
+    // the key predicates cannot match
+    final Query empty = new Query(schema, Filter.newAndFilterBuilder().eq("string", "foo").eq("string", "bar").build());
+    Assertions.assertTrue(empty.keyRanges().isEmpty());
+    Assertions.assertTrue(range.explain().startsWith("RANGE-SCAN"));
+  }
+
+  @Test
+  public void testBatchFilter() {
+    final Schema schema = new Schema();
+    schema.addField("bool", DataType.BOOL);
+    schema.addField("int", DataType.INT);
+    schema.addField("float", DataType.FLOAT);
+    schema.addField("string", DataType.STRING);
+    schema.addField("ts", DataType.UTC_TIMESTAMP);
+
+    final int NROWS = 5_000;
+    final EntityRowsWriter rows = EntityRowsWriter.newColumnarWriter(schema);
+    for (int i = 0; i < NROWS; ++i) {
+      final FieldFormatWriter writer = rows.newRow();
+      if (i % 3 != 0) writer.writeBool(schema.fieldIdByName("bool"), (i & 1) == 0);
+      if (i % 5 != 0) writer.writeInt(schema.fieldIdByName("int"), (i % 100) - 50);
+      if (i % 7 != 0) writer.writeFloat(schema.fieldIdByName("float"), i * 0.5);
+      writer.writeString(schema.fieldIdByName("string"), (i % 11 == 0) ? "FAILED" : "OK-" + (i % 4));
+      writer.writeInt(schema.fieldIdByName("ts"), 1_600_000_000_000L + i);
+      rows.closeRow();
+    }
+    rows.close();
+    final byte[] block = rows.toByteArray();
+
+    final Filter[] filters = new Filter[] {
+      Filter.newAndFilterBuilder().eq("int", 10).build(),
+      Filter.newAndFilterBuilder().ne("int", 10).build(),
+      Filter.newAndFilterBuilder().lt("int", 0).ge("float", 100).build(),
+      Filter.newAndFilterBuilder().in("int", 1, 2L, 3, -50).build(),
+      Filter.newAndFilterBuilder().notIn("int", 1, 2L, 3, -50).build(),
+      Filter.newAndFilterBuilder().in("float", 1, 2.5, 1000.0).build(),
+      Filter.newAndFilterBuilder().between("float", 10, 20.5).build(),
+      Filter.newAndFilterBuilder().between("ts", 1_600_000_000_100L, 1_600_000_000_200L).build(),
+      Filter.newAndFilterBuilder().eq("bool", true).empty("int").build(),
+      Filter.newAndFilterBuilder().notEmpty("float").like("string", "OK-%").build(),
+      Filter.newOrFilterBuilder().eq("string", "FAILED").gt("int", 45).empty("bool").build(),
+      Filter.newOrFilterBuilder()
+        .add(Filter.newAndFilterBuilder().eq("bool", false).le("float", 30).build())
+        .add(Filter.newAndFilterBuilder().gt("int", 40).ne("string", "FAILED").build())
+        .build(),
+      Filter.newAndFilterBuilder().gt("int", 1000).lt("float", 10).build(),
+      Filter.newAndFilterBuilder().eq("int", null).build(),
+    };
+
+    final EntityRowsReader reader = EntityRowsReader.newReader(new ByteArraySlice(block));
+    final FieldFormatReaderV1 columnReader = reader.columnReader();
+    Assertions.assertNotNull(columnReader);
+    for (final Filter filter: filters) {
+      final Query query = new Query(reader.schema(), filter);
+
+      // per-row evaluation
+      final List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < NROWS; ++i) {
+        columnReader.setRow(i);
+        if (query.process(columnReader)) expected.add(i);
+      }
+
+      // batch evaluation, with a capacity that is not multiple of the block rows
+      final List<Integer> selected = new ArrayList<>();
+      final RowBatch batch = query.newBatch(700);
+      for (int fromRow = 0; fromRow < NROWS; fromRow += batch.capacity()) {
+        batch.load(columnReader, fromRow);
+        final int count = query.process(batch);
+        Assertions.assertEquals(count, batch.selectedCount());
+        for (int i = batch.nextSelected(0); i >= 0; i = batch.nextSelected(i + 1)) {
+          selected.add(fromRow + i);
+        }
+      }
+      Assertions.assertEquals(expected, selected, filter.toQueryString());
+
+      // scan of the block
+      final List<Object> scanned = new ArrayList<>();
+      final EntityRowsReader scanReader = EntityRowsReader.newReader(new ByteArraySlice(block));
+      final Query scanQuery = new Query(scanReader.schema(), filter);
+      final int tsIndex = scanReader.schema().fieldByName("ts");
+      Assertions.assertEquals(expected.size(), scanQuery.scan(scanReader, row -> scanned.add(row.get(tsIndex))));
+      Assertions.assertEquals(expected.stream().map(i -> 1_600_000_000_000L + i).toList(), scanned);
+    }
+  }
+
+  @Test
+  public void testCompiledFilter() {
+    final Schema schema = new Schema();
+    schema.addField("bool", DataType.BOOL);
+    schema.addField("int", DataType.INT);
+    schema.addField("float", DataType.FLOAT);
+    schema.addField("string", DataType.STRING);
+
+    // row format block, the compiled filters read the fields from the row reader
+    final int NROWS = 1_000;
+    final Object[][] values = new Object[NROWS][];
+    final EntityRowsWriter rows = new EntityRowsWriter(schema);
+    for (int i = 0; i < NROWS; ++i) {
+      final Boolean bool = (i % 3 != 0) ? (i & 1) == 0 : null;
+      final Long intValue = (i % 5 != 0) ? (long) ((i % 100) - 50) : null;
+      final Double floatValue = (i % 7 != 0) ? i * 0.5 : null;
+      final String string = (i % 13 != 0) ? ((i % 11 == 0) ? "FAILED" : "OK-" + (i % 4)) : null;
+      values[i] = new Object[] { bool, intValue, floatValue, string };
+
+      final FieldFormatWriter writer = rows.newRow();
+      if (bool != null) writer.writeBool(schema.fieldIdByName("bool"), bool);
+      if (intValue != null) writer.writeInt(schema.fieldIdByName("int"), intValue);
+      if (floatValue != null) writer.writeFloat(schema.fieldIdByName("float"), floatValue);
+      if (string != null) writer.writeString(schema.fieldIdByName("string"), string);
+      rows.closeRow();
+    }
+    rows.close();
+    final byte[] block = rows.toByteArray();
+
+    // null values are lower than any value
+    final Predicate<Object[]> intLtZero = v -> v[1] == null || (Long) v[1] < 0;
+    final Predicate<Object[]> floatGe100 = v -> v[2] != null && (Double) v[2] >= 100;
+    final Filter[] filters = new Filter[] {
+      Filter.newAndFilterBuilder().eq("int", 10).build(),
+      Filter.newAndFilterBuilder().lt("int", 0).build(),
+      Filter.newAndFilterBuilder().lt("int", 0).ge("float", 100).build(),
+      Filter.newAndFilterBuilder().in("int", 1, 2L, 3).build(),
+      Filter.newAndFilterBuilder().notIn("int", 1, 2L, 3).build(),
+      Filter.newAndFilterBuilder().between("float", 10, 20.5).build(),
+      Filter.newAndFilterBuilder().eq("bool", true).build(),
+      Filter.newAndFilterBuilder().ne("string", "FAILED").build(),
+      Filter.newAndFilterBuilder().like("string", "OK-%").build(),
+      Filter.newAndFilterBuilder().empty("int").build(),
+      Filter.newAndFilterBuilder().ne("int", null).build(),
+      Filter.newOrFilterBuilder().eq("string", "FAILED").ge("float", 100).empty("bool").build(),
+    };
+    final List<Predicate<Object[]>> expectedFilters = List.of(
+      v -> v[1] != null && (Long) v[1] == 10,
+      intLtZero,
+      intLtZero.and(floatGe100),
+      v -> v[1] != null && Set.of(1L, 2L, 3L).contains(v[1]),
+      v -> v[1] == null || !Set.of(1L, 2L, 3L).contains(v[1]),
+      v -> v[2] != null && (Double) v[2] >= 10 && (Double) v[2] <= 20.5,
+      v -> Boolean.TRUE.equals(v[0]),
+      v -> !"FAILED".equals(v[3]),
+      v -> v[3] != null && ((String) v[3]).startsWith("OK-"),
+      v -> v[1] == null,
+      v -> v[1] != null,
+      v -> "FAILED".equals(v[3]) || floatGe100.test(v) || v[0] == null
+    );
+
+    for (int f = 0; f < filters.length; ++f) {
+      final EntityRowsReader reader = EntityRowsReader.newReader(new ByteArraySlice(block));
+      final Query query = new Query(reader.schema(), filters[f]);
+      for (int i = 0; i < NROWS; ++i) {
+        Assertions.assertEquals(expectedFilters.get(f).test(values[i]), query.process(reader.next()),
+          filters[f].toQueryString() + " row " + i);
+      }
+    }
+  }
+
+  private static byte[] key(final String s, final long i) {
+    return RowKey.newKeyBuilder().add(s).addInt(i).drain();
+  }
+
+  private static void assertMatch(final Query query, final boolean expected, final byte[]... keys) {
+    for (final byte[] key: keys) {
+      boolean found = false;
+      for (final KeyRange range: query.keyRanges()) {
+        found |= range.contains(key);
+      }
+      Assertions.assertEquals(expected, found, () -> new RowKey(key).get(0) + " " + query.explain());
+    }
+  }
 }
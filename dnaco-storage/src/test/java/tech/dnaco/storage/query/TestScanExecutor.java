@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tech.dnaco.bytes.ByteArraySlice;
+import tech.dnaco.collections.iterators.PeekIterator;
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.EntityRowsReader;
+import tech.dnaco.storage.EntityRowsWriter;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.format.FieldFormatWriter;
+
+public class TestScanExecutor {
+  private static final int BLOCK_ROWS = 3_000;
+
+  @Test
+  public void testPartitions() {
+    final Schema schema = newSchema();
+    final ByteArraySlice rowBlock = newBlock(schema, false, 0, 100);
+    final ByteArraySlice columnBlock = newBlock(schema, true, 100, 2_500);
+
+    final ScanExecutor executor = new ScanExecutor(ForkJoinPool.commonPool(), 1_000);
+    final List<ScanExecutor.BlockPartition> partitions = executor.partitions(List.of(rowBlock, columnBlock));
+    Assertions.assertEquals(List.of("0:-1", "0:1000", "1000:2000", "2000:2500"),
+      partitions.stream().map(p -> p.fromRow() + ":" + p.toRow()).toList());
+    Assertions.assertNull(partitions.get(0).blockReader().columnReader());
+
+    // the partitions of a block share the parsed block and the decoded columns
+    final EntityRowsReader blockReader = partitions.get(1).blockReader();
+    Assertions.assertSame(blockReader, partitions.get(3).blockReader());
+    final int idField = blockReader.schema().fieldIdByName("id");
+    final long[] ids = partitions.get(1).newReader().columnReader().getIntColumn(idField);
+    Assertions.assertSame(ids, partitions.get(3).newReader().columnReader().getIntColumn(idField));
+    Assertions.assertEquals(2_599L, ids[2_499]);
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ScanExecutor(ForkJoinPool.commonPool(), 0));
+  }
+
+  @Test
+  public void testRowRange() {
+    final Schema schema = newSchema();
+    final ByteArraySlice block = newBlock(schema, true, 0, 2_500);
+
+    final EntityRowsReader reader = EntityRowsReader.newReader(block);
+    reader.setRowRange(1_000, 1_100);
+    final Query query = new Query(reader.schema(), Filter.newAndFilterBuilder().ge("id", 0).build());
+    final int idIndex = reader.schema().fieldByName("id");
+    final List<Object> ids = new ArrayList<>();
+    Assertions.assertEquals(100, query.scan(reader, row -> ids.add(row.get(idIndex))));
+    Assertions.assertEquals(1_000L, ids.get(0));
+    Assertions.assertEquals(1_099L, ids.get(ids.size() - 1));
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> reader.setRowRange(10, 5));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> reader.setRowRange(0, 2_501));
+    final EntityRowsReader rowReader = EntityRowsReader.newReader(newBlock(schema, false, 0, 10));
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> rowReader.setRowRange(0, 5));
+  }
+
+  @Test
+  public void testScan() {
+    final Schema schema = newSchema();
+    final List<ByteArraySlice> blocks = new ArrayList<>();
+    for (int i = 0; i < 6; ++i) {
+      blocks.add(newBlock(schema, (i & 1) == 0, i * BLOCK_ROWS, BLOCK_ROWS));
+    }
+
+    final Filter[] filters = new Filter[] {
+      Filter.newAndFilterBuilder().eq("group", "g-3").build(),
+      Filter.newAndFilterBuilder().lt("value", 0).ge("id", 5_000).build(),
+      Filter.newOrFilterBuilder().eq("group", "g-1").empty("value").build(),
+      Filter.newAndFilterBuilder().gt("id", 1_000_000).build(),
+    };
+
+    final ScanExecutor executor = new ScanExecutor(ForkJoinPool.commonPool(), 700);
+    final int idIndex = schema.fieldByName("id");
+    final int valueIndex = schema.fieldByName("value");
+    for (final Filter filter: filters) {
+      // sequential scan
+      final List<Long> expected = new ArrayList<>();
+      long expectedSum = 0;
+      for (final ByteArraySlice block: blocks) {
+        final EntityRowsReader reader = EntityRowsReader.newReader(block);
+        final Query query = new Query(reader.schema(), filter);
+        query.scan(reader, row -> expected.add(row.getInt(idIndex)));
+      }
+      for (final long id: expected) expectedSum += (id % 100 == 0) ? 0 : (id % 200) - 100;
+
+      // parallel scan, the partial results are combined in the blocks order
+      final List<Long> ids = executor.scan(blocks, filter, Collectors.mapping(row -> row.getInt(idIndex), Collectors.toList()));
+      Assertions.assertEquals(expected, ids, filter.toQueryString());
+
+      final long sum = executor.scan(blocks, filter, Collectors.summingLong(row -> row.isNull(valueIndex) ? 0 : row.getInt(valueIndex)));
+      Assertions.assertEquals(expectedSum, sum, filter.toQueryString());
+
+      // top-N pushed to the partitions
+      final List<Long> top = executor.scan(blocks, filter, Collectors.mapping(row -> row.getInt(idIndex),
+        ScanExecutor.topN(10, Comparator.<Long>reverseOrder())));
+      Assertions.assertEquals(expected.stream().sorted(Comparator.reverseOrder()).limit(10).toList(), top);
+    }
+  }
+
+  @Test
+  public void testScanSorted() {
+    final Schema schema = newSchema();
+    // blocks with interleaved ids, each sorted by id
+    final List<ByteArraySlice> blocks = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      blocks.add(newBlock(schema, (i & 1) == 0, i * 100, BLOCK_ROWS));
+    }
+
+    final Filter filter = Filter.newAndFilterBuilder().eq("group", "g-2").build();
+    final ScanExecutor executor = new ScanExecutor(ForkJoinPool.commonPool(), 500);
+    final int idIndex = schema.fieldByName("id");
+    final PeekIterator<Long> it = executor.scanSorted(blocks, filter, row -> row.getInt(idIndex), Comparator.naturalOrder());
+
+    final List<Long> expected = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      for (long id = i * 100; id < i * 100 + BLOCK_ROWS; ++id) {
+        if (id % 5 == 2) expected.add(id);
+      }
+    }
+    expected.sort(Comparator.naturalOrder());
+
+    final List<Long> ids = new ArrayList<>();
+    while (it.hasNext()) ids.add(it.next());
+    Assertions.assertEquals(expected, ids);
+  }
+
+  @Test
+  public void testTopN() {
+    final List<Integer> items = List.of(5, 3, 9, 1, 7, 3, 8, 2);
+    Assertions.assertEquals(List.of(1, 2, 3), items.stream().collect(ScanExecutor.topN(3, Comparator.naturalOrder())));
+    Assertions.assertEquals(List.of(9, 8), items.parallelStream().collect(ScanExecutor.topN(2, Comparator.reverseOrder())));
+    Assertions.assertEquals(List.of(1, 2, 3, 3, 5, 7, 8, 9), items.stream().collect(ScanExecutor.topN(100, Comparator.naturalOrder())));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ScanExecutor.topN(0, Comparator.naturalOrder()));
+  }
+
+  private static Schema newSchema() {
+    final Schema schema = new Schema();
+    schema.addField("id", DataType.INT);
+    schema.addField("group", DataType.STRING);
+    schema.addField("value", DataType.INT);
+    return schema;
+  }
+
+  private static ByteArraySlice newBlock(final Schema schema, final boolean columnar, final long firstId, final int rowCount) {
+    final EntityRowsWriter rows = columnar ? EntityRowsWriter.newColumnarWriter(schema) : new EntityRowsWriter(schema);
+    for (long id = firstId, lastId = firstId + rowCount; id < lastId; ++id) {
+      final FieldFormatWriter writer = rows.newRow();
+      writer.writeInt(schema.fieldIdByName("id"), id);
+      writer.writeString(schema.fieldIdByName("group"), "g-" + (id % 5));
+      if (id % 100 != 0) writer.writeInt(schema.fieldIdByName("value"), (id % 200) - 100);
+      rows.closeRow();
+    }
+    rows.close();
+    return new ByteArraySlice(rows.toByteArray());
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package tech.dnaco.storage.rocksdb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rocksdb.RocksDBException;
+
+import tech.dnaco.storage.DataTypes.DataType;
+import tech.dnaco.storage.EntityRow;
+import tech.dnaco.storage.Schema;
+import tech.dnaco.storage.query.Filter;
+import tech.dnaco.storage.query.Query;
+import tech.dnaco.storage.rocksdb.RocksEntityTable.Batch;
+
+public class TestRocksEntityStore {
+  @TempDir
+  File storeDir;
+
+  private static Schema newUserSchema() {
+    final Schema schema = new Schema("users", 1);
+    schema.addField("group", DataType.STRING);
+    schema.addField("id", DataType.INT);
+    schema.addField("name", DataType.STRING);
+    schema.addField("score", DataType.FLOAT);
+    schema.setKeys(new String[] { "group", "id" });
+    return schema;
+  }
+
+  @Test
+  public void testPutGetScan() throws RocksDBException {
+    try (RocksEntityStore store = RocksEntityStore.open(storeDir)) {
+      final RocksEntityTable table = store.createTable(newUserSchema());
+      final Schema schema = table.getSchema();
+
+      try (Batch batch = table.newBatch()) {
+        for (int i = 0; i < 100; ++i) {
+          batch.put(Map.of("group", (i & 1) == 0 ? "even" : "odd", "id", i, "name", "user-" + i, "score", i * 1.5));
+        }
+        Assertions.assertEquals(100, batch.size());
+        batch.commit();
+      }
+
+      // point read
+      final EntityRow row = table.get(table.newKey("odd", 7));
+      Assertions.assertNotNull(row);
+      Assertions.assertEquals("odd", row.get(schema.fieldByName("group")));
+      Assertions.assertEquals(7L, row.get(schema.fieldByName("id")));
+      Assertions.assertEquals("user-7", row.get(schema.fieldByName("name")));
+      Assertions.assertEquals(10.5, row.get(schema.fieldByName("score")));
+      Assertions.assertNull(table.get(table.newKey("odd", 8)));
+
+      // prefix scan, with and without query
+      final ArrayList<Object> ids = new ArrayList<>();
+      Assertions.assertEquals(50, table.scanPrefix(table.newKeyPrefix("even"), null, r -> ids.add(r.get(schema.fieldByName("id")))));
+      Assertions.assertEquals(0L, ids.get(0));
+
+      final Query query = new Query(schema, Filter.newAndFilterBuilder().ge("score", 100).build());
+      ids.clear();
+      Assertions.assertEquals(17, table.scanPrefix(table.newKeyPrefix("odd"), query, r -> ids.add(r.get(schema.fieldByName("id")))));
+      Assertions.assertEquals(67L, ids.get(0));
+
+      // the key predicates are pushed down to the key ranges
+      final Query keyQuery = new Query(schema, Filter.newAndFilterBuilder().eq("group", "odd").in("id", 3L, 5L, 8L).build());
+      ids.clear();
+      Assertions.assertEquals(2, table.scan(keyQuery, r -> ids.add(r.get(schema.fieldByName("id")))));
+      Assertions.assertEquals(List.of(3L, 5L), ids);
+
+      // stop the scan early
+      final int[] seen = new int[1];
+      Assertions.assertEquals(3, table.scan(null, null, null, r -> ++seen[0] < 3));
+
+      table.delete(table.newKey("odd", 7));
+      Assertions.assertNull(table.get(table.newKey("odd", 7)));
+    }
+  }
+
+  @Test
+  public void testSchemaEvolution() throws RocksDBException {
+    try (RocksEntityStore store = RocksEntityStore.open(storeDir)) {
+      final RocksEntityTable table = store.createTable(newUserSchema());
+      table.put(Map.of("group", "a", "id", 1, "name", "old-row", "score", 12.5));
+
+      // drop 'score', add 'email'
+      final Schema schemaV1 = new Schema("users", 1);
+      schemaV1.addField("email", DataType.STRING);
+      schemaV1.addField("group", DataType.STRING);
+      schemaV1.addField("id", DataType.INT);
+      schemaV1.addField("name", DataType.STRING);
+      schemaV1.setKeys(new String[] { "group", "id" });
+      Assertions.assertTrue(table.updateSchema(schemaV1));
+      Assertions.assertEquals(1, table.getSchemaVersion());
+      table.put(Map.of("group", "a", "id", 2, "name", "new-row", "email", "new@dnaco.tech"));
+    }
+
+    // reopen, the old row is converted on read
+    try (RocksEntityStore store = RocksEntityStore.open(storeDir)) {
+      final RocksEntityTable table = store.getTable("users");
+      Assertions.assertNotNull(table);
+      Assertions.assertEquals(1, table.getSchemaVersion());
+
+      final Schema schema = table.getSchema();
+      Assertions.assertTrue(schema.fieldByName("score") < 0);
+
+      final EntityRow oldRow = table.get(table.newKey("a", 1));
+      Assertions.assertEquals("old-row", oldRow.get(schema.fieldByName("name")));
+      Assertions.assertNull(oldRow.get(schema.fieldByName("email")));
+
+      final EntityRow newRow = table.get(table.newKey("a", 2));
+      Assertions.assertEquals("new-row", newRow.get(schema.fieldByName("name")));
+      Assertions.assertEquals("new@dnaco.tech", newRow.get(schema.fieldByName("email")));
+
+      Assertions.assertTrue(store.dropTable("users"));
+      Assertions.assertNull(store.getTable("users"));
+    }
+  }
+
+  @Test
+  public void testReservedTableName() throws RocksDBException {
+    try (RocksEntityStore store = RocksEntityStore.open(storeDir)) {
+      store.createTable(newUserSchema());
+
+      // the index family suffix is reserved, the table would be taken as the users index on open
+      final Schema schema = new Schema("users:index", 2);
+      schema.addField("id", DataType.INT);
+      schema.setKeys(new String[] { "id" });
+      Assertions.assertThrows(IllegalArgumentException.class, () -> store.createTable(schema));
+      Assertions.assertNull(store.getTable("users:index"));
+    }
+
+    try (RocksEntityStore store = RocksEntityStore.open(storeDir)) {
+      Assertions.assertNotNull(store.getTable("users"));
+      Assertions.assertNull(store.getTable("users:index"));
+    }
+  }
+
+  @Test
+  public void testSecondaryIndex() throws RocksDBException {
+    final Schema schema = newUserSchema();
+    schema.addField("owner", DataType.INT);
+    schema.addIndex("by_owner", new String[] { "owner" });
+    schema.addIndex("by_name", new String[] { "name" }, new String[] { "score" });
+
+    try (RocksEntityStore store = RocksEntityStore.open(storeDir)) {
+      final RocksEntityTable table = store.createTable(schema);
+      try (Batch batch = table.newBatch()) {
+        for (int i = 0; i < 100; ++i) {
+          final HashMap<String, Object> row = new HashMap<>();
+          row.put("group", (i & 1) == 0 ? "even" : "odd");
+          row.put("id", i);
+          row.put("name", "user-" + i);
+          row.put("score", i * 1.5);
+          if (i % 17 != 0) row.put("owner", i % 10);
+          batch.put(row);
+        }
+        // the same row twice in the batch, the index must have only the last owner
+        batch.put(Map.of("group", "odd", "id", 3, "name", "user-3", "score", 4.5, "owner", 4));
+        batch.commit();
+      }
+
+      Assertions.assertEquals(List.of(3L, 4L, 13L, 14L, 23L, 24L, 33L, 43L, 44L, 53L, 54L, 63L, 64L, 73L, 74L, 83L, 84L, 93L, 94L), scanIds(table, schema,
+        Filter.newOrFilterBuilder().eq("owner", 3).eq("owner", 4).build()));
+      Assertions.assertEquals(List.of(10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L), scanIds(table, schema,
+        Filter.newAndFilterBuilder().in("owner", 0L, 100L).build()));
+
+      // null is lower than any value, LT/LE cannot use the index
+      Assertions.assertEquals(List.of(0L, 10L, 17L, 20L, 30L, 34L, 40L, 50L, 51L, 60L, 68L, 70L, 80L, 85L, 90L), scanIds(table, schema,
+        Filter.newAndFilterBuilder().lt("owner", 1).build()));
+
+      // move a row to another owner, and delete one
+      table.put(Map.of("group", "even", "id", 10, "name", "user-10", "score", 15.0, "owner", 3));
+      table.delete(table.newKey("even", 20));
+      Assertions.assertEquals(List.of(30L, 40L, 50L, 60L, 70L, 80L, 90L), scanIds(table, schema,
+        Filter.newAndFilterBuilder().eq("owner", 0).build()));
+      Assertions.assertEquals(List.of(10L, 13L, 23L, 33L, 43L, 53L, 63L, 73L, 83L, 93L), scanIds(table, schema,
+        Filter.newAndFilterBuilder().eq("owner", 3).build()));
+
+      // covering index, the rows are read from the index: the other fields are null
+      final Query nameQuery = new Query(schema, Filter.newAndFilterBuilder().like("name", "user-4%").gt("score", 65).build());
+      final ArrayList<Object> scores = new ArrayList<>();
+      Assertions.assertEquals(6, table.scan(nameQuery, new String[] { "score" }, r -> {
+        Assertions.assertNull(r.get(schema.fieldByName("owner")));
+        return scores.add(r.get(schema.fieldByName("score")));
+      }));
+      Assertions.assertEquals(List.of(66.0, 67.5, 69.0, 70.5, 72.0, 73.5), scores);
+
+      // not covered projection, the rows are read
+      Assertions.assertEquals(6, table.scan(nameQuery, new String[] { "owner" }, r -> r.get(schema.fieldByName("owner")) != null));
+    }
+
+    // reopen, and build a new index from the existing rows
+    try (RocksEntityStore store = RocksEntityStore.open(storeDir)) {
+      final RocksEntityTable table = store.getTable("users");
+      Assertions.assertNotNull(table.getSchema().getIndex("by_owner"));
+
+      final Schema schemaV1 = newUserSchema();
+      schemaV1.addField("owner", DataType.INT);
+      schemaV1.addIndex("by_id", new String[] { "id" });
+      Assertions.assertTrue(table.updateSchema(schemaV1));
+      Assertions.assertEquals(List.of(5L, 6L, 7L), scanIds(table, schemaV1,
+        Filter.newAndFilterBuilder().between("id", 5, 7).build()));
+      Assertions.assertEquals(List.of(30L, 40L, 50L, 60L, 70L, 80L, 90L), scanIds(table, schemaV1,
+        Filter.newAndFilterBuilder().eq("owner", 0).build()));
+    }
+  }
+
+  @Test
+  public void testConcurrentIndexUpdates() throws Exception {
+    final Schema schema = newUserSchema();
+    schema.addField("owner", DataType.INT);
+    schema.addIndex("by_owner", new String[] { "owner" }, new String[] { "score" });
+
+    final int ROWS = 16;
+    final int THREADS = 8;
+    final int UPDATES = 200;
+    try (RocksEntityStore store = RocksEntityStore.open(storeDir)) {
+      final RocksEntityTable table = store.createTable(schema);
+
+      // every thread moves the same rows between owners, each row must end up with a single index entry
+      final ArrayList<Thread> threads = new ArrayList<>();
+      final ArrayList<Throwable> failures = new ArrayList<>();
+      final CountDownLatch startLatch = new CountDownLatch(1);
+      for (int t = 0; t < THREADS; ++t) {
+        final int threadId = t;
+        threads.add(new Thread(() -> {
+          try {
+            startLatch.await();
+            for (int i = 0; i < UPDATES; ++i) {
+              try (Batch batch = table.newBatch()) {
+                for (int r = 0; r < ROWS; ++r) {
+                  final int owner = (threadId + i + r) % 5;
+                  batch.put(Map.of("group", "g", "id", r, "name", "user-" + r, "score", owner * 1.5, "owner", owner));
+                }
+                batch.commit();
+              }
+            }
+          } catch (final Throwable e) {
+            synchronized (failures) {
+              failures.add(e);
+            }
+          }
+        }));
+      }
+      for (final Thread thread: threads) thread.start();
+      startLatch.countDown();
+      for (final Thread thread: threads) thread.join();
+      Assertions.assertEquals(List.of(), failures);
+
+      final ArrayList<Object> ids = new ArrayList<>();
+      for (int owner = 0; owner < 5; ++owner) {
+        final Query query = new Query(schema, Filter.newAndFilterBuilder().eq("owner", owner).build());
+        final double score = owner * 1.5;
+        table.scan(query, new String[] { "id", "score" }, r -> {
+          Assertions.assertEquals(score, r.get(schema.fieldByName("score")));
+          return ids.add(r.get(schema.fieldByName("id")));
+        });
+      }
+      ids.sort(null);
+      final ArrayList<Object> expected = new ArrayList<>();
+      for (long r = 0; r < ROWS; ++r) expected.add(r);
+      Assertions.assertEquals(expected, ids);
+    }
+  }
+
+  private static List<Object> scanIds(final RocksEntityTable table, final Schema schema, final Filter filter)
+      throws RocksDBException {
+    final ArrayList<Object> ids = new ArrayList<>();
+    table.scan(new Query(table.getSchema(), filter), r -> ids.add(r.get(schema.fieldByName("id"))));
+    ids.sort(null);
+    return ids;
+  }
+}